@@ -0,0 +1,391 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import processing.data.Table;
+import processing.data.TableRow;
+
+
+/**
+ * Keeps track of where the time goes in each frame, turned on with
+ * frameTimer(). Each part of the frame is timed separately: registered
+ * pre() methods, the sketch's draw(), handling of mouse and key events,
+ * registered draw() methods, the renderer (beginDraw() and endDraw(),
+ * along with any recording), registered post() methods, and the time the
+ * animation thread spends asleep waiting for the next frame (and how much
+ * longer that took than it asked for).
+ * <p>
+ * Besides the last, average, and longest time of each part, every frame is
+ * added to a histogram, which takes a fixed amount of memory so that it can
+ * be left running for weeks. It can be saved as a CSV file with:
+ * <pre>
+ * saveTable(frameTimer().getHistogramTable(), "timing.csv");
+ * </pre>
+ * A frame counts as dropped if it took more than one and a half times as
+ * long as frameRate() asks for.
+ *
+ * @nowebref
+ */
+public class FrameTimer {
+  /** Registered pre() methods. */
+  static public final int PRE = 0;
+  /** The sketch's draw(). */
+  static public final int DRAW = 1;
+  /** Mouse and key events, see dequeueEvents(). */
+  static public final int EVENTS = 2;
+  /** Registered draw() methods. */
+  static public final int DRAW_METHODS = 3;
+  /** beginDraw() and endDraw() of the renderer, and recording. */
+  static public final int RENDER = 4;
+  /** Registered post() methods. */
+  static public final int POST = 5;
+  /** Asleep, waiting for the next frame. */
+  static public final int SLEEP = 6;
+  /** How much longer the sleep took than the animation thread asked for. */
+  static public final int OVERSLEEP = 7;
+  /** The whole frame, from the start of one to the start of the next. */
+  static public final int FRAME = 8;
+
+  static public final String[] NAMES = {
+    "pre", "draw", "events", "draw methods", "render",
+    "post", "sleep", "oversleep", "frame"
+  };
+  static final int PHASES = NAMES.length;
+
+  /**
+   * Each power of two (in microseconds) is split into 4 buckets, which
+   * covers 1 us to several seconds with about 20% resolution.
+   */
+  static final int SUB_BUCKETS = 4;
+  static final int BUCKETS = 23 * SUB_BUCKETS;
+
+  /** Number of recent frames kept for the overlay. */
+  static final int RECENT = 120;
+
+  PApplet sketch;
+  boolean overlay;
+
+  // the frame that's running now
+  long frameStart;
+  long lastMark;
+  long[] current = new long[PHASES];
+
+  // the frames so far
+  long frameCount;
+  long droppedCount;
+  long[] last = new long[PHASES];
+  long[] total = new long[PHASES];
+  long[] max = new long[PHASES];
+  long[] maxFrame = new long[PHASES];
+  long[][] histogram = new long[PHASES][BUCKETS];
+  long[] recent = new long[RECENT];
+
+
+  public FrameTimer(PApplet sketch) {
+    this.sketch = sketch;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+  // called from the animation thread
+
+
+  /**
+   * Start timing a frame, and add the one before it (if any) to the totals.
+   */
+  public void beginFrame() {
+    long now = System.nanoTime();
+    if (frameStart != 0) {
+      current[FRAME] = now - frameStart;
+      addFrame();
+    } else {
+      clearCurrent();
+    }
+    frameStart = now;
+    lastMark = now;
+  }
+
+
+  /**
+   * Add the time since the last mark to one part of the frame.
+   */
+  public void mark(int phase) {
+    long now = System.nanoTime();
+    current[phase] += now - lastMark;
+    lastMark = now;
+  }
+
+
+  /**
+   * Leave the current frame out, for instance because it ran setup().
+   */
+  public void skipFrame() {
+    frameStart = 0;
+    clearCurrent();
+  }
+
+
+  /**
+   * Called by the animation thread after it sleeps between frames.
+   */
+  public void sleep(long sleepNanos, long overSleepNanos) {
+    current[SLEEP] += sleepNanos;
+    current[OVERSLEEP] += overSleepNanos;
+  }
+
+
+  synchronized void addFrame() {
+    frameCount++;
+    for (int i = 0; i < PHASES; i++) {
+      long nanos = current[i];
+      last[i] = nanos;
+      total[i] += nanos;
+      if (nanos > max[i]) {
+        max[i] = nanos;
+        maxFrame[i] = sketch.frameCount - 1;
+      }
+      histogram[i][bucket(nanos)]++;
+    }
+    long period = (long) (1e9 / sketch.frameRateTarget);
+    if (current[FRAME] > period + period / 2) {
+      droppedCount++;
+    }
+    recent[(int) (frameCount % RECENT)] = current[FRAME];
+    clearCurrent();
+  }
+
+
+  private void clearCurrent() {
+    for (int i = 0; i < PHASES; i++) {
+      current[i] = 0;
+    }
+  }
+
+
+  static int bucket(long nanos) {
+    long micros = Math.max(1, nanos / 1000);
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    int sub = (exponent >= 2) ?
+      (int) (micros >>> (exponent - 2)) & 3 : (int) (micros << (2 - exponent)) & 3;
+    return Math.min(exponent * SUB_BUCKETS + sub, BUCKETS - 1);
+  }
+
+
+  /** Lower limit of a histogram bucket, in milliseconds. */
+  static public float bucketLimit(int bucket) {
+    int exponent = bucket / SUB_BUCKETS;
+    int sub = bucket % SUB_BUCKETS;
+    return (SUB_BUCKETS + sub) * (float) Math.pow(2, exponent) / SUB_BUCKETS / 1000f;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Number of frames timed so far. */
+  synchronized public long getFrameCount() {
+    return frameCount;
+  }
+
+
+  /** Number of frames that took more than 1.5x the frame rate's period. */
+  synchronized public long getDroppedCount() {
+    return droppedCount;
+  }
+
+
+  /** Time spent in this part of the last frame, in milliseconds. */
+  synchronized public float getLast(int phase) {
+    return last[phase] / 1e6f;
+  }
+
+
+  synchronized public float getAverage(int phase) {
+    return (frameCount == 0) ? 0 : (float) (total[phase] / 1e6 / frameCount);
+  }
+
+
+  synchronized public float getMax(int phase) {
+    return max[phase] / 1e6f;
+  }
+
+
+  /** The frameCount of the frame where this part took the longest. */
+  synchronized public long getMaxFrame(int phase) {
+    return maxFrame[phase];
+  }
+
+
+  /**
+   * Number of frames in each bucket of the histogram, see bucketLimit()
+   * for the range of each one.
+   */
+  synchronized public long[] getHistogram(int phase) {
+    return histogram[phase].clone();
+  }
+
+
+  /**
+   * The histograms as a table, with a row for each bucket (from the first
+   * to the last one that has anything in it) and a column for each part of
+   * the frame. Save it with saveTable() to look at it elsewhere.
+   */
+  synchronized public Table getHistogramTable() {
+    Table table = new Table();
+    table.addColumn("from_ms", Table.FLOAT);
+    table.addColumn("to_ms", Table.FLOAT);
+    for (String name : NAMES) {
+      table.addColumn(name.replace(' ', '_'), Table.LONG);
+    }
+    int first = BUCKETS;
+    int stop = 0;
+    for (long[] counts : histogram) {
+      for (int b = 0; b < BUCKETS; b++) {
+        if (counts[b] != 0) {
+          first = Math.min(first, b);
+          stop = Math.max(stop, b + 1);
+        }
+      }
+    }
+    for (int b = first; b < stop; b++) {
+      TableRow row = table.addRow();
+      row.setFloat(0, bucketLimit(b));
+      row.setFloat(1, (b == BUCKETS - 1) ? Float.POSITIVE_INFINITY : bucketLimit(b + 1));
+      for (int i = 0; i < PHASES; i++) {
+        row.setLong(2 + i, histogram[i][b]);
+      }
+    }
+    return table;
+  }
+
+
+  /** Start over, forgetting all frames so far. */
+  synchronized public void reset() {
+    frameCount = 0;
+    droppedCount = 0;
+    for (int i = 0; i < PHASES; i++) {
+      last[i] = 0;
+      total[i] = 0;
+      max[i] = 0;
+      maxFrame[i] = 0;
+      histogram[i] = new long[BUCKETS];
+    }
+    recent = new long[RECENT];
+  }
+
+
+  /** Show the timings on top of the sketch. */
+  public void overlay(boolean overlay) {
+    this.overlay = overlay;
+  }
+
+
+  public boolean isOverlay() {
+    return overlay;
+  }
+
+
+  @Override
+  synchronized public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%d frames, %d dropped", frameCount, droppedCount));
+    for (int i = 0; i < PHASES; i++) {
+      sb.append(String.format("%n%-12s last %7.2f  avg %7.2f  max %7.2f ms (frame %d)",
+                              NAMES[i], getLast(i), getAverage(i), getMax(i),
+                              maxFrame[i]));
+    }
+    return sb.toString();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Draw the timings in the upper left corner: a line for each part of the
+   * frame, and a graph of the recent frame times, with a line at the frame
+   * rate's period.
+   */
+  void drawOverlay(PGraphics g) {
+    final int lineHeight = 14;
+    final int graphHeight = 40;
+    final int w = 300;
+    final int h = (PHASES + 2) * lineHeight + graphHeight + 12;
+
+    g.pushStyle();
+    g.pushMatrix();
+    boolean depthTest = g.is3D() && !g.hints[PConstants.DISABLE_DEPTH_TEST];
+    if (g.is3D()) {
+      g.hint(PConstants.DISABLE_DEPTH_TEST);
+      g.camera();
+    } else {
+      g.resetMatrix();
+    }
+    g.noStroke();
+    g.fill(0, 192);
+    g.rectMode(PConstants.CORNER);
+    g.rect(0, 0, w, h);
+
+    g.fill(255);
+    g.textAlign(PConstants.LEFT, PConstants.TOP);
+    g.textSize(11);
+    float y = 4;
+    synchronized (this) {
+      g.text(String.format("%.1f fps, %d dropped of %d",
+                           sketch.frameRate, droppedCount, frameCount), 4, y);
+      y += lineHeight;
+      g.text("ms", 4, y);
+      String[] columns = { "last", "avg", "max" };
+      for (int c = 0; c < 3; c++) {
+        g.textAlign(PConstants.RIGHT, PConstants.TOP);
+        g.text(columns[c], 160 + c * 64, y);
+      }
+      for (int i = 0; i < PHASES; i++) {
+        y += lineHeight;
+        g.textAlign(PConstants.LEFT, PConstants.TOP);
+        g.text(NAMES[i], 4, y);
+        g.textAlign(PConstants.RIGHT, PConstants.TOP);
+        g.text(PApplet.nf(getLast(i), 0, 2), 160, y);
+        g.text(PApplet.nf(getAverage(i), 0, 2), 224, y);
+        g.text(PApplet.nf(getMax(i), 0, 2), 288, y);
+      }
+      y += lineHeight + 4;
+
+      float period = 1e9f / sketch.frameRateTarget;
+      float scale = graphHeight / (2 * period);
+      g.stroke(255, 0, 0);
+      g.line(4, y + graphHeight - period * scale, w - 4, y + graphHeight - period * scale);
+      g.stroke(255);
+      for (int i = 0; i < RECENT; i++) {
+        long nanos = recent[(int) ((frameCount + 1 + i) % RECENT)];
+        float x = 4 + i * (w - 8) / (float) RECENT;
+        float top = Math.max(y, y + graphHeight - nanos * scale);
+        g.line(x, y + graphHeight, x, top);
+      }
+    }
+    if (depthTest) {
+      g.hint(PConstants.ENABLE_DEPTH_TEST);
+    }
+    g.popMatrix();
+    g.popStyle();
+  }
+}
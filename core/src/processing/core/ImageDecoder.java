@@ -0,0 +1,152 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * Reads an image file straight into the pixels[] array of a new PImage,
+ * without going through ImageIO or AWT. loadImage() asks each registered
+ * decoder (most recently registered first) whether it recognizes the first
+ * bytes of the file, and uses the first one that does. If none do, or the
+ * decoder returns null because it doesn't handle that variant of the format,
+ * loadImage() falls back to ImageIO and AWT as before.
+ * <p>
+ * Built-in decoders handle PNG, baseline JPEG, and QOI files. Libraries
+ * can add others (or replace the built-in ones) with register().
+ *
+ * @nowebref
+ */
+public abstract class ImageDecoder {
+  /** Number of bytes that are passed to accepts(). */
+  static public final int HEADER_LENGTH = 16;
+
+  static private final CopyOnWriteArrayList<ImageDecoder> decoders =
+    new CopyOnWriteArrayList<>(new ImageDecoder[] {
+      new PNGDecoder(), new JPEGDecoder(), new QOIDecoder()
+    });
+
+
+  /**
+   * Return true if this decoder can read a file that starts with these bytes.
+   * @param header the first bytes of the file
+   * @param length number of valid bytes in header, at most HEADER_LENGTH
+   */
+  abstract public boolean accepts(byte[] header, int length);
+
+
+  /**
+   * Read an image from the stream, which is positioned at the start of the
+   * file. Returns null if this decoder can't handle this particular image
+   * (for instance, a JPEG that isn't baseline), so that loadImage() can try
+   * something else. The stream is closed by the caller.
+   */
+  abstract public PImage decode(InputStream input) throws IOException;
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Add a decoder, which will be asked before any of the others.
+   */
+  static public void register(ImageDecoder decoder) {
+    decoders.add(0, decoder);
+  }
+
+
+  static public void unregister(ImageDecoder decoder) {
+    decoders.remove(decoder);
+  }
+
+
+  static public ImageDecoder[] list() {
+    return decoders.toArray(new ImageDecoder[0]);
+  }
+
+
+  /**
+   * Find the decoder for a file that starts with these bytes, or null.
+   */
+  static public ImageDecoder find(byte[] header, int length) {
+    for (ImageDecoder decoder : decoders) {
+      if (decoder.accepts(header, length)) {
+        return decoder;
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Decode an image with whichever decoder recognizes it. Returns null if
+   * none of them do, or the decoder couldn't handle it.
+   * @param input a stream that supports mark() and reset()
+   */
+  static public PImage decodeImage(InputStream input) throws IOException {
+    byte[] header = new byte[HEADER_LENGTH];
+    input.mark(HEADER_LENGTH);
+    int length = 0;
+    while (length < HEADER_LENGTH) {
+      int count = input.read(header, length, HEADER_LENGTH - length);
+      if (count == -1) {
+        break;
+      }
+      length += count;
+    }
+    input.reset();
+
+    ImageDecoder decoder = find(header, length);
+    return (decoder == null) ? null : decoder.decode(input);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static void readFully(InputStream input, byte[] buffer,
+                        int offset, int length) throws IOException {
+    while (length > 0) {
+      int count = input.read(buffer, offset, length);
+      if (count == -1) {
+        throw new EOFException("Unexpected end of image data");
+      }
+      offset += count;
+      length -= count;
+    }
+  }
+
+
+  static void skipFully(InputStream input, long count) throws IOException {
+    while (count > 0) {
+      long skipped = input.skip(count);
+      if (skipped <= 0) {
+        if (input.read() == -1) {
+          throw new EOFException("Unexpected end of image data");
+        }
+        skipped = 1;
+      }
+      count -= skipped;
+    }
+  }
+}
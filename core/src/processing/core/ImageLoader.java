@@ -0,0 +1,504 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Loads images on background threads for requestImage(). Requests with a
+ * higher priority are loaded first, and requests for a file that is already
+ * being loaded share that load instead of starting another. Images that
+ * have been loaded are kept in a cache (least recently used are dropped
+ * first) up to a maximum number of bytes, so asking for the same file again
+ * doesn't read it from disk or the network again.
+ * <p>
+ * Each PImage returned by request() has its own pixels, so it's safe to
+ * modify it without affecting the cache or other requests. (Only images
+ * that are kept in the cache, or requested more than once at a time, are
+ * copied.) Local files are checked for changes (size and modification time)
+ * before using a cached copy.
+ * <p>
+ * Loading threads are started as they're needed, up to the number passed
+ * to the constructor, and take whichever waiting request has the highest
+ * priority. When a batch of requests arrives while all the threads are
+ * idle, the first few may already be loading by the time the rest have been
+ * added, so priorities only decide the order of the requests that have to
+ * wait.
+ * <p>
+ * Use cancel() to drop requests that are no longer needed, for instance
+ * images that have scrolled out of view. A cancelled image will keep its
+ * width and height of 0.
+ *
+ * @nowebref
+ * @see PApplet#requestImage(String, String, int)
+ * @see PApplet#getImageLoader()
+ */
+public class ImageLoader {
+  static public final long DEFAULT_CACHE_SIZE = 64L << 20;
+
+  PApplet parent;
+  ThreadPoolExecutor executor;
+
+  /** Requests that haven't finished, by key(). */
+  final Map<String, Request> pending = new HashMap<>();
+
+  /** The request for each image that is still waiting to be filled in. */
+  final Map<PImage, Request> vessels = new WeakHashMap<>();
+
+  final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+  long cacheSize = DEFAULT_CACHE_SIZE;
+  long cacheBytes;
+
+  long sequence;
+
+  // statistics
+  long hits;
+  long misses;
+  long shared;
+  long cancelled;
+  long evicted;
+  long failed;
+
+
+  public ImageLoader(PApplet parent, int threads) {
+    this.parent = parent;
+    ThreadFactory factory = new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, PApplet.REQUEST_IMAGE_THREAD_PREFIX);
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+    // PriorityBlockingQueue sorts the (Comparable) Requests added to it
+    executor = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS,
+                                      new PriorityBlockingQueue<Runnable>(),
+                                      factory);
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+
+  /**
+   * Queue a request and make sure there's a thread to run it. Unlike
+   * execute(), which hands tasks straight to new threads until all of them
+   * have been started, this puts everything in the queue, so the threads
+   * always take the highest priority request that's waiting.
+   */
+  private void enqueue(Request request) {
+    executor.getQueue().add(request);
+    executor.prestartCoreThread();
+  }
+
+
+  /**
+   * Start loading an image, returning a PImage that will be filled in once
+   * it's ready (or immediately, if the image is in the cache). Until then,
+   * its width and height are 0, and they're set to -1 if it can't be loaded
+   * (or if dispose() has already been called).
+   * @param priority higher numbers are loaded first, the default is 0
+   */
+  public PImage request(String filename, String extension, int priority) {
+    PImage vessel = parent.createImage(0, 0, PConstants.ARGB);
+    String key = key(filename, extension);
+    synchronized (this) {
+      Entry entry = cache.get(key);
+      if (entry != null) {
+        if (entry.isCurrent()) {
+          hits++;
+          fill(vessel, entry.image, true);
+          return vessel;
+        }
+        remove(key);
+      }
+
+      if (executor.isShutdown()) {
+        failed++;
+        vessel.width = -1;
+        vessel.height = -1;
+        return vessel;
+      }
+
+      Request request = pending.get(key);
+      if (request != null) {
+        shared++;
+        request.vessels.add(vessel);
+        vessels.put(vessel, request);
+        if (priority > request.priority) {
+          setPriority(request, priority);
+        }
+        return vessel;
+      }
+
+      misses++;
+      request = new Request(filename, extension, key, priority, sequence++);
+      request.vessels.add(vessel);
+      vessels.put(vessel, request);
+      pending.put(key, request);
+      enqueue(request);
+    }
+    return vessel;
+  }
+
+
+  /**
+   * Change the priority of an image that hasn't been loaded yet. If the
+   * file was requested more than once, this affects all of them.
+   */
+  public synchronized void setPriority(PImage vessel, int priority) {
+    Request request = vessels.get(vessel);
+    if (request != null) {
+      setPriority(request, priority);
+    }
+  }
+
+
+  private void setPriority(Request request, int priority) {
+    // re-insert so that the queue puts it in the right place
+    if (executor.remove(request)) {
+      request.priority = priority;
+      enqueue(request);
+    } else {
+      request.priority = priority;  // already running
+    }
+  }
+
+
+  /**
+   * Stop waiting for an image. If nothing else is waiting for the same file,
+   * it won't be loaded at all (unless it has already started). Returns true
+   * if the image was still waiting.
+   */
+  public synchronized boolean cancel(PImage vessel) {
+    Request request = vessels.remove(vessel);
+    if (request == null) {
+      return false;
+    }
+    cancelled++;
+    request.vessels.remove(vessel);
+    if (request.vessels.isEmpty() && executor.remove(request)) {
+      pending.remove(request.key);
+    }
+    return true;
+  }
+
+
+  /**
+   * Cancel every request that's waiting, for instance when the images
+   * that have been requested so far have been superseded by others.
+   */
+  public synchronized void cancelAll() {
+    for (PImage vessel : new ArrayList<>(vessels.keySet())) {
+      cancel(vessel);
+    }
+  }
+
+
+  /** Number of files that are waiting to be loaded or are being loaded. */
+  public synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Set the maximum number of bytes of image data kept in the cache, or 0
+   * to turn off caching.
+   */
+  public synchronized void setCacheSize(long bytes) {
+    cacheSize = bytes;
+    trimCache();
+  }
+
+
+  public synchronized long getCacheSize() {
+    return cacheSize;
+  }
+
+
+  /** Number of bytes used by the images in the cache. */
+  public synchronized long getCacheBytes() {
+    return cacheBytes;
+  }
+
+
+  /** Remove a file from the cache, so that it's loaded again next time. */
+  public synchronized void invalidate(String filename) {
+    // the extension is part of the key, so check all the entries
+    Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
+    while (it.hasNext()) {
+      Entry entry = it.next().getValue();
+      if (entry.filename.equals(filename)) {
+        cacheBytes -= entry.bytes;
+        it.remove();
+      }
+    }
+  }
+
+
+  public synchronized void clearCache() {
+    cache.clear();
+    cacheBytes = 0;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Requests that were answered from the cache. */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+
+  /** Requests that needed the file to be loaded. */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+
+  /** Requests that were added to a load already in progress. */
+  public synchronized long getSharedCount() {
+    return shared;
+  }
+
+
+  public synchronized long getCancelledCount() {
+    return cancelled;
+  }
+
+
+  /** Images dropped from the cache to make room for others. */
+  public synchronized long getEvictedCount() {
+    return evicted;
+  }
+
+
+  /** Loads that didn't produce an image. */
+  public synchronized long getFailedCount() {
+    return failed;
+  }
+
+
+  @Override
+  public synchronized String toString() {
+    return "ImageLoader hits " + hits + ", misses " + misses +
+      ", shared " + shared + ", cancelled " + cancelled +
+      ", failed " + failed + ", evicted " + evicted +
+      ", cache " + cache.size() + " images, " +
+      cacheBytes + " of " + cacheSize + " bytes";
+  }
+
+
+  /**
+   * Stop the loading threads, waiting requests are dropped (their images
+   * keep a width and height of 0). Images requested after this fail to load,
+   * unless they're already in the cache.
+   */
+  public synchronized void dispose() {
+    for (Runnable dropped : executor.shutdownNow()) {
+      Request request = (Request) dropped;
+      for (PImage vessel : request.vessels) {
+        vessels.remove(vessel);
+      }
+      request.vessels.clear();
+      pending.remove(request.key);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static String key(String filename, String extension) {
+    return (extension == null) ? filename : filename + '\0' + extension;
+  }
+
+
+  /**
+   * Fill in a vessel with a loaded image, using a copy of its pixels if
+   * anything else (the cache or another vessel) will also be using them.
+   */
+  static void fill(PImage vessel, PImage actual, boolean copy) {
+    vessel.format = actual.format;
+    vessel.pixels = copy ? actual.pixels.clone() : actual.pixels;
+    vessel.pixelWidth = actual.width;
+    vessel.pixelHeight = actual.height;
+    vessel.pixelDensity = 1;
+    // set these last, since they're what sketches check to see if it's done
+    vessel.height = actual.height;
+    vessel.width = actual.width;
+  }
+
+
+  private void finished(Request request, PImage actual) {
+    boolean cached = false;
+    List<PImage> waiting;
+    synchronized (this) {
+      if (actual == null) {
+        failed++;
+      } else {
+        cached = store(request, actual);
+      }
+      // Later requests for the same file will use the cache, or load it
+      // again if it wasn't cached, since the pixels are handed off below.
+      pending.remove(request.key);
+      waiting = new ArrayList<>(request.vessels);
+      request.vessels.clear();
+      for (PImage vessel : waiting) {
+        vessels.remove(vessel);
+      }
+    }
+    // fill in the images outside the lock
+    for (int i = 0; i < waiting.size(); i++) {
+      PImage vessel = waiting.get(i);
+      if (actual == null) {
+        // An error message should have already printed
+        vessel.width = -1;
+        vessel.height = -1;
+      } else {
+        // unless the cache is keeping it, the last one gets the original
+        boolean last = (i == waiting.size() - 1);
+        fill(vessel, actual, cached || !last);
+      }
+    }
+  }
+
+
+  /** Add an image to the cache, returning false if it's too large. */
+  private boolean store(Request request, PImage actual) {
+    long bytes = 4L * actual.pixels.length;
+    if (bytes > cacheSize) {
+      return false;
+    }
+    Entry entry = new Entry(request.filename, actual, bytes, parent);
+    Entry previous = cache.put(request.key, entry);
+    if (previous != null) {
+      cacheBytes -= previous.bytes;
+    }
+    cacheBytes += bytes;
+    trimCache();
+    return true;
+  }
+
+
+  private void remove(String key) {
+    Entry entry = cache.remove(key);
+    if (entry != null) {
+      cacheBytes -= entry.bytes;
+    }
+  }
+
+
+  private void trimCache() {
+    Iterator<Entry> it = cache.values().iterator();
+    while (cacheBytes > cacheSize && it.hasNext()) {
+      cacheBytes -= it.next().bytes;
+      it.remove();
+      evicted++;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  class Request implements Runnable, Comparable<Request> {
+    final String filename;
+    final String extension;
+    final String key;
+    final long order;
+    volatile int priority;
+    final List<PImage> vessels = new ArrayList<>(1);
+
+    Request(String filename, String extension, String key,
+            int priority, long order) {
+      this.filename = filename;
+      this.extension = extension;
+      this.key = key;
+      this.priority = priority;
+      this.order = order;
+    }
+
+    @Override
+    public void run() {
+      PImage actual = null;
+      try {
+        actual = parent.loadImage(filename, extension);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+      finished(this, actual);
+    }
+
+    @Override
+    public int compareTo(Request other) {
+      // higher priority first, then oldest first
+      if (priority != other.priority) {
+        return (priority > other.priority) ? -1 : 1;
+      }
+      return Long.compare(order, other.order);
+    }
+  }
+
+
+  static class Entry {
+    final String filename;
+    final PImage image;
+    final long bytes;
+
+    // for local files, to tell whether it has changed since it was loaded
+    final File file;
+    final long modified;
+    final long length;
+
+    Entry(String filename, PImage image, long bytes, PApplet parent) {
+      this.filename = filename;
+      this.image = image;
+      this.bytes = bytes;
+
+      File found = null;
+      if (!filename.contains(":/")) {
+        // same order as createInputRaw(): the data folder, then the sketch
+        try {
+          found = new File(parent.dataPath(filename));
+          if (!found.exists()) {
+            found = parent.sketchFile(filename);
+          }
+          if (!found.exists()) {
+            found = null;
+          }
+        } catch (RuntimeException e) { }
+      }
+      file = found;
+      modified = (file == null) ? 0 : file.lastModified();
+      length = (file == null) ? 0 : file.length();
+    }
+
+    boolean isCurrent() {
+      return file == null ||
+        (file.lastModified() == modified && file.length() == length);
+    }
+  }
+}
@@ -0,0 +1,366 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+
+/**
+ * Separable image resampler used by PImage.resize(). Works directly on the
+ * pixels[] array: each band of output rows first resamples the source rows
+ * it needs horizontally into a scratch buffer, then resamples that buffer
+ * vertically into the output. Bands are handled in parallel, and their size
+ * is capped, so that shrinking a very large image only needs memory for the
+ * source, the result, and a few small scratch buffers.
+ * <p>
+ * When shrinking, the filters are widened by the scale factor, so that every
+ * source pixel contributes to the result (no aliasing like the multi-step
+ * drawImage() approach). ARGB images are filtered with premultiplied alpha,
+ * so that the colors of fully transparent pixels don't bleed into the edges.
+ * The premultiplied colors are kept as the full products of color and alpha
+ * until the very end, so that translucent colors don't drift by a level.
+ */
+class ImageResampler implements PConstants {
+  /** Weights are fixed point, with this many bits after the point. */
+  static final int WEIGHT_BITS = 14;
+
+  /**
+   * Extra bits of precision kept in the horizontal pass results, so that
+   * they aren't rounded to 8 bits before the vertical pass.
+   */
+  static final int EXTRA_BITS = 7;
+
+  /** Maximum number of ints in the scratch buffer for a band of rows. */
+  static final int BAND_INTS = 1 << 20;
+
+  // the last weights used for each axis, since they're often reused
+  // (for thumbnails of several images of the same size, for instance)
+  static private volatile Weights lastX;
+  static private volatile Weights lastY;
+
+  static private final ThreadLocal<int[]> bandBuffer = new ThreadLocal<>();
+
+
+  /**
+   * Resample an image, returning a new pixel array.
+   * @param format RGB, ARGB, or ALPHA
+   * @param kind BOX, BILINEAR, BICUBIC, or LANCZOS
+   */
+  static int[] resample(final int[] src, final int srcWidth, int srcHeight,
+                        final int dstWidth, int dstHeight,
+                        final int format, int kind) {
+    final Weights wx = getWeights(srcWidth, dstWidth, kind, true);
+    final Weights wy = getWeights(srcHeight, dstHeight, kind, false);
+    final int[] dst = new int[dstWidth * dstHeight];
+
+    PImage.parallelRange(dstHeight, src.length + dst.length, (start, stop) -> {
+      int y = start;
+      while (y < stop) {
+        // add rows to this band until it would need too much scratch space
+        int rowStart = wy.start[y];
+        int end = y + 1;
+        while (end < stop &&
+               (wy.start[end] + wy.count[end] - rowStart) * dstWidth * 4 <= BAND_INTS) {
+          end++;
+        }
+        resampleBand(src, srcWidth, dst, dstWidth, format, wx, wy, y, end);
+        y = end;
+      }
+    });
+    return dst;
+  }
+
+
+  static private void resampleBand(int[] src, int srcWidth,
+                                   int[] dst, int dstWidth, int format,
+                                   Weights wx, Weights wy,
+                                   int start, int stop) {
+    int rowStart = wy.start[start];
+    int rowStop = 0;
+    for (int y = start; y < stop; y++) {
+      rowStop = Math.max(rowStop, wy.start[y] + wy.count[y]);
+    }
+    int[] band = getBandBuffer((rowStop - rowStart) * dstWidth * 4);
+    boolean premultiply = (format == ARGB);
+
+    // Premultiplied colors are kept as color * alpha, up to 255 * 255, which
+    // is finer than the extra bits, so they're shifted by the weight bits
+    // only. Even with the overshoot of the sharper filters (weights adding
+    // up to less than 1.3 on either side of zero) the sums in the vertical
+    // pass stay below 2^31.
+    int alphaShift = WEIGHT_BITS - EXTRA_BITS;
+    int colorShift = premultiply ? WEIGHT_BITS : alphaShift;
+
+    // horizontal pass, from src into band
+    int bandIndex = 0;
+    for (int row = rowStart; row < rowStop; row++) {
+      int rowOffset = row * srcWidth;
+      for (int x = 0; x < dstWidth; x++) {
+        int a = 0, r = 0, g = 0, b = 0;
+        int index = rowOffset + wx.start[x];
+        int w = x * wx.taps;
+        int wstop = w + wx.count[x];
+        while (w < wstop) {
+          int c = src[index++];
+          int weight = wx.weight[w++];
+          int ca = c >>> 24;
+          int cr = (c >> 16) & 0xff;
+          int cg = (c >> 8) & 0xff;
+          int cb = c & 0xff;
+          if (premultiply) {
+            cr *= ca;
+            cg *= ca;
+            cb *= ca;
+          }
+          a += weight * ca;
+          r += weight * cr;
+          g += weight * cg;
+          b += weight * cb;
+        }
+        int alphaRound = 1 << (alphaShift - 1);
+        int colorRound = 1 << (colorShift - 1);
+        band[bandIndex++] = (a + alphaRound) >> alphaShift;
+        band[bandIndex++] = (r + colorRound) >> colorShift;
+        band[bandIndex++] = (g + colorRound) >> colorShift;
+        band[bandIndex++] = (b + colorRound) >> colorShift;
+      }
+    }
+
+    // vertical pass, from band into dst
+    alphaShift = WEIGHT_BITS + EXTRA_BITS;
+    colorShift = premultiply ? WEIGHT_BITS : alphaShift;
+    int alphaRound = 1 << (alphaShift - 1);
+    int colorRound = 1 << (colorShift - 1);
+    int stride = dstWidth * 4;
+    for (int y = start; y < stop; y++) {
+      int first = (wy.start[y] - rowStart) * stride;
+      int w0 = y * wy.taps;
+      int w1 = w0 + wy.count[y];
+      int out = y * dstWidth;
+      for (int x = 0; x < dstWidth; x++) {
+        int a = 0, r = 0, g = 0, b = 0;
+        int index = first + x*4;
+        for (int w = w0; w < w1; w++) {
+          int weight = wy.weight[w];
+          a += weight * band[index];
+          r += weight * band[index+1];
+          g += weight * band[index+2];
+          b += weight * band[index+3];
+          index += stride;
+        }
+        // alpha with the extra bits, to un-premultiply with
+        int alpha = (a + (1 << (WEIGHT_BITS - 1))) >> WEIGHT_BITS;
+        a = clamp((a + alphaRound) >> alphaShift);
+        r = (r + colorRound) >> colorShift;
+        g = (g + colorRound) >> colorShift;
+        b = (b + colorRound) >> colorShift;
+
+        if (format == RGB) {
+          dst[out++] = 0xff000000 | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+        } else if (format == ALPHA) {
+          dst[out++] = clamp(b);
+        } else {
+          if (a == 0) {
+            r = g = b = 0;
+          } else {
+            r = unpremultiply(r, alpha);
+            g = unpremultiply(g, alpha);
+            b = unpremultiply(b, alpha);
+          }
+          dst[out++] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+      }
+    }
+  }
+
+
+  /**
+   * A color times alpha back to 0..255, rounded, with alpha that has
+   * EXTRA_BITS after the point.
+   */
+  static private int unpremultiply(int value, int alpha) {
+    if (value <= 0 || alpha <= 0) {
+      return 0;
+    }
+    return (int) Math.min(255, (((long) value << EXTRA_BITS) + (alpha >> 1)) / alpha);
+  }
+
+
+  static private int clamp(int value) {
+    return (value < 0) ? 0 : ((value > 255) ? 255 : value);
+  }
+
+
+  static private int[] getBandBuffer(int length) {
+    int[] buffer = bandBuffer.get();
+    if (buffer == null || buffer.length < length) {
+      buffer = new int[length];
+      bandBuffer.set(buffer);
+    }
+    return buffer;
+  }
+
+
+  static private Weights getWeights(int srcLength, int dstLength,
+                                    int kind, boolean horizontal) {
+    // the x weights also work for y (and vice versa) when the sizes match
+    Weights[] recent = { lastX, lastY };
+    for (Weights w : recent) {
+      if (w != null && w.matches(srcLength, dstLength, kind)) {
+        return w;
+      }
+    }
+    Weights outgoing = new Weights(srcLength, dstLength, kind);
+    if (horizontal) {
+      lastX = outgoing;
+    } else {
+      lastY = outgoing;
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * For each output pixel along one axis, the first source pixel used, how
+   * many source pixels are used, and their weights (which add up to exactly
+   * 1 &lt;&lt; WEIGHT_BITS).
+   */
+  static class Weights {
+    final int srcLength, dstLength, kind;
+    final int taps;
+    final int[] start;
+    final int[] count;
+    final int[] weight;
+
+    Weights(int srcLength, int dstLength, int kind) {
+      this.srcLength = srcLength;
+      this.dstLength = dstLength;
+      this.kind = kind;
+
+      double scale = (double) srcLength / dstLength;
+      double filterScale = Math.max(1, scale);
+      double support = support(kind) * filterScale;
+      taps = Math.min(srcLength, (int) Math.ceil(support) * 2 + 1);
+
+      start = new int[dstLength];
+      count = new int[dstLength];
+      weight = new int[dstLength * taps];
+      double[] values = new double[taps];
+
+      for (int i = 0; i < dstLength; i++) {
+        double center = (i + 0.5) * scale;
+        int left = Math.max(0, (int) Math.floor(center - support));
+        int right = Math.min(srcLength, (int) Math.ceil(center + support));
+        right = Math.min(right, left + taps);
+
+        double total = 0;
+        for (int j = left; j < right; j++) {
+          double value = kernel(kind, (j + 0.5 - center) / filterScale);
+          values[j - left] = value;
+          total += value;
+        }
+        // drop any unused taps at either end
+        while (right > left && values[right - left - 1] == 0) {
+          right--;
+        }
+        int skip = 0;
+        while (skip < right - left && values[skip] == 0) {
+          skip++;
+        }
+
+        int offset = i * taps;
+        if (total == 0 || skip == right - left) {
+          // nothing in range (can only happen at the edges), use the nearest
+          start[i] = Math.min(srcLength - 1, (int) center);
+          count[i] = 1;
+          weight[offset] = 1 << WEIGHT_BITS;
+
+        } else {
+          start[i] = left + skip;
+          count[i] = right - left - skip;
+          int sum = 0;
+          int biggest = offset;
+          for (int k = 0; k < count[i]; k++) {
+            int w = (int) Math.round(values[skip + k] / total * (1 << WEIGHT_BITS));
+            weight[offset + k] = w;
+            sum += w;
+            if (w > weight[biggest]) {
+              biggest = offset + k;
+            }
+          }
+          // make up for rounding so that flat areas stay exactly the same
+          weight[biggest] += (1 << WEIGHT_BITS) - sum;
+        }
+      }
+    }
+
+
+    boolean matches(int srcLength, int dstLength, int kind) {
+      return this.srcLength == srcLength &&
+        this.dstLength == dstLength && this.kind == kind;
+    }
+  }
+
+
+  static double support(int kind) {
+    switch (kind) {
+      case BOX: return 0.5;
+      case BILINEAR: return 1;
+      case BICUBIC: return 2;
+      case LANCZOS: return 3;
+    }
+    throw new IllegalArgumentException("Use BOX, BILINEAR, BICUBIC, or LANCZOS " +
+                                       "with resize()");
+  }
+
+
+  static double kernel(int kind, double x) {
+    if (x < 0) {
+      x = -x;
+    }
+    switch (kind) {
+      case BOX:
+        return (x <= 0.5) ? 1 : 0;
+
+      case BILINEAR:
+        return (x < 1) ? 1 - x : 0;
+
+      case BICUBIC:  // Catmull-Rom, a = -0.5
+        if (x < 1) {
+          return (1.5*x - 2.5)*x*x + 1;
+        } else if (x < 2) {
+          return ((-0.5*x + 2.5)*x - 4)*x + 2;
+        }
+        return 0;
+
+      case LANCZOS:  // three lobes
+        if (x == 0) {
+          return 1;
+        } else if (x < 3) {
+          double px = Math.PI * x;
+          return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+        }
+        return 0;
+    }
+    return 0;
+  }
+}
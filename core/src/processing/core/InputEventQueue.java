@@ -0,0 +1,271 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import processing.event.Event;
+import processing.event.MouseEvent;
+
+
+/**
+ * Holds mouse and key events from the time they arrive until the end of
+ * draw(), when they're passed to mousePressed(), keyPressed(), and the rest.
+ * The events are kept in a ring buffer that's allocated up front, and any
+ * number of threads can add to it without taking a lock.
+ * <p>
+ * When the sketch falls behind (or a pen tablet sends hundreds of events a
+ * second), a run of MOVE or DRAG events in a row can be coalesced, so that
+ * only the last of them is handled. This is off by default, since then
+ * mouseMoved() and mouseDragged() aren't called for every position:
+ * <pre>
+ * getEventQueue().setCoalescing(true);
+ * </pre>
+ * If the buffer fills up, because draw() is taking a very long time or
+ * hasn't started yet, new MOVE and DRAG events are dropped until there's
+ * room again. Other events are never dropped, since losing a RELEASE would
+ * leave mousePressed or keyPressed stuck: they wait in a separate overflow
+ * list, and so do the events after them until the list is handled.
+ * getDroppedCount() and getCoalescedCount() report how many events were
+ * lost either way.
+ *
+ * @nowebref
+ */
+public class InputEventQueue {
+  static public final int DEFAULT_CAPACITY = 1024;
+
+  private final Event[] events;
+  // For each slot, the position that can be written there next, or that
+  // position plus one once it holds an event (the usual bounded MPMC queue
+  // scheme). Positions only ever increase, so they never wrap around.
+  private final AtomicLongArray sequence;
+  private final int mask;
+
+  private final AtomicLong tail = new AtomicLong();
+  // only changed by drain(), which is called by one thread at a time
+  private volatile long head;
+
+  // Events that didn't fit, never moves or drags. Only used when the
+  // sketch is far behind, so it doesn't need to be allocation-free.
+  private final ConcurrentLinkedQueue<Event> overflow =
+    new ConcurrentLinkedQueue<>();
+
+  private volatile boolean coalescing;
+
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile long coalesced;
+
+
+  public InputEventQueue() {
+    this(DEFAULT_CAPACITY);
+  }
+
+
+  /**
+   * @param capacity number of events that can be waiting, rounded up to a
+   *                 power of two
+   */
+  public InputEventQueue(int capacity) {
+    if (capacity < 2 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("Event queue capacity must be " +
+                                         "between 2 and 2^30, not " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity - 1) << 1;
+    events = new Event[size];
+    sequence = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequence.set(i, i);
+    }
+    mask = size - 1;
+  }
+
+
+  public int getCapacity() {
+    return events.length;
+  }
+
+
+  /**
+   * Only handle the last of several MOVE (or DRAG) events in a row, when
+   * they have the same buttons and modifiers.
+   */
+  public void setCoalescing(boolean coalescing) {
+    this.coalescing = coalescing;
+  }
+
+
+  public boolean isCoalescing() {
+    return coalescing;
+  }
+
+
+  /** Number of events that didn't fit, since the start or resetCounts(). */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+
+  /** Number of events skipped by coalescing. */
+  public long getCoalescedCount() {
+    return coalesced;
+  }
+
+
+  public void resetCounts() {
+    dropped.set(0);
+    coalesced = 0;
+  }
+
+
+  /** Number of events waiting to be handled. */
+  public int size() {
+    long count = tail.get() - head;
+    return (int) Math.max(0, Math.min(count, events.length)) + overflow.size();
+  }
+
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Add an event, from any thread. Returns false (and counts the event as
+   * dropped) if the queue is full and the event is a MOVE or DRAG. Other
+   * events are always added.
+   */
+  public boolean offer(Event event) {
+    // keep the order, nothing goes into the ring while the overflow waits
+    if (!overflow.isEmpty()) {
+      return addOverflow(event);
+    }
+    long pos = tail.get();
+    while (true) {
+      long available = sequence.get((int) pos & mask);
+      if (available == pos) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          break;
+        }
+        pos = tail.get();
+      } else if (available < pos) {
+        // the slot still holds an event from the last time around
+        return addOverflow(event);
+      } else {
+        // another thread just took this position
+        pos = tail.get();
+      }
+    }
+    int index = (int) pos & mask;
+    events[index] = event;
+    sequence.set(index, pos + 1);
+    return true;
+  }
+
+
+  private boolean addOverflow(Event event) {
+    if (isMotion(event)) {
+      dropped.incrementAndGet();
+      return false;
+    }
+    overflow.add(event);
+    return true;
+  }
+
+
+  /**
+   * Remove the next event, or return null if there are none. Like drain(),
+   * this must not be called by more than one thread at a time.
+   */
+  public Event poll() {
+    long pos = head;
+    int index = (int) pos & mask;
+    if (sequence.get(index) != pos + 1) {
+      // the overflow only has events that came after the ones in the ring
+      return overflow.poll();
+    }
+    Event event = events[index];
+    events[index] = null;
+    sequence.set(index, pos + events.length);
+    head = pos + 1;
+    return event;
+  }
+
+
+  /**
+   * Return the next event without removing it, or null if there are none.
+   * The same rules as poll() apply.
+   */
+  public Event peek() {
+    long pos = head;
+    int index = (int) pos & mask;
+    if (sequence.get(index) != pos + 1) {
+      return overflow.peek();
+    }
+    return events[index];
+  }
+
+
+  /**
+   * Pass each waiting event to the handler, in order, coalescing runs of
+   * moves and drags if that's turned on. Events that are added while this
+   * runs (from the handler, or from other threads) are handled as well.
+   * Must not be called by more than one thread at a time, but the handler
+   * may call it again on the same thread (the way postEvent() does when the
+   * sketch isn't looping), so no event is held back while it runs.
+   */
+  public void drain(Consumer<Event> handler) {
+    Event event;
+    while ((event = poll()) != null) {
+      if (coalescing) {
+        Event next = peek();
+        if (next != null && canCoalesce(event, next)) {
+          coalesced++;
+          continue;
+        }
+      }
+      handler.accept(event);
+    }
+  }
+
+
+  static private boolean isMotion(Event event) {
+    int action = event.getAction();
+    return event.getFlavor() == Event.MOUSE &&
+      (action == MouseEvent.MOVE || action == MouseEvent.DRAG);
+  }
+
+
+  static private boolean canCoalesce(Event event, Event next) {
+    if (!isMotion(event) || next.getFlavor() != Event.MOUSE) {
+      return false;
+    }
+    int action = event.getAction();
+    return next.getAction() == action &&
+      next.getModifiers() == event.getModifiers() &&
+      ((MouseEvent) next).getButton() == ((MouseEvent) event).getButton();
+  }
+}
@@ -0,0 +1,754 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.*;
+import java.util.Arrays;
+
+
+/**
+ * Decoder for baseline (and extended sequential) Huffman-coded JPEG files,
+ * with one (grayscale) or three (YCbCr or RGB) 8-bit components. Progressive,
+ * arithmetic-coded, lossless, and CMYK images return null, so that they're
+ * passed on to ImageIO and AWT instead.
+ * <p>
+ * Each component is decoded into an 8-bit plane at its own resolution, using
+ * the same integer IDCT as libjpeg. The planes are then upsampled (linearly,
+ * like libjpeg's "fancy" upsampling) and converted to RGB directly into
+ * pixels[], with rows split across threads for large images.
+ */
+class JPEGDecoder extends ImageDecoder {
+  static final int[] ZIGZAG = {
+     0,  1,  8, 16,  9,  2,  3, 10,
+    17, 24, 32, 25, 18, 11,  4,  5,
+    12, 19, 26, 33, 40, 48, 41, 34,
+    27, 20, 13,  6,  7, 14, 21, 28,
+    35, 42, 49, 56, 57, 50, 43, 36,
+    29, 22, 15, 23, 30, 37, 44, 51,
+    58, 59, 52, 45, 38, 31, 39, 46,
+    53, 60, 61, 54, 47, 55, 62, 63
+  };
+
+  // constants for the integer IDCT, scaled by 1 << CONST_BITS
+  static final int CONST_BITS = 13;
+  static final int PASS1_BITS = 2;
+  static final int FIX_0_298631336 = 2446;
+  static final int FIX_0_390180644 = 3196;
+  static final int FIX_0_541196100 = 4433;
+  static final int FIX_0_765366865 = 6270;
+  static final int FIX_0_899976223 = 7373;
+  static final int FIX_1_175875602 = 9633;
+  static final int FIX_1_501321110 = 12299;
+  static final int FIX_1_847759065 = 15137;
+  static final int FIX_1_961570560 = 16069;
+  static final int FIX_2_053119869 = 16819;
+  static final int FIX_2_562915447 = 20995;
+  static final int FIX_3_072711026 = 25172;
+
+  // lookup tables for YCbCr to RGB, same as libjpeg
+  static final int[] CR_R = new int[256];
+  static final int[] CB_B = new int[256];
+  static final int[] CR_G = new int[256];
+  static final int[] CB_G = new int[256];
+  static {
+    for (int i = 0; i < 256; i++) {
+      int x = i - 128;
+      CR_R[i] = (int) ((91881L * x + 32768) >> 16);   // 1.40200
+      CB_B[i] = (int) ((116130L * x + 32768) >> 16);  // 1.77200
+      CR_G[i] = -46802 * x;                           // 0.71414
+      CB_G[i] = -22554 * x + 32768;                   // 0.34414
+    }
+  }
+
+  byte[] data;
+  int pos;
+
+  int[][] quantTables = new int[4][];
+  Huffman[] dcTables = new Huffman[4];
+  Huffman[] acTables = new Huffman[4];
+  int restartInterval;
+  int adobeTransform = -1;
+
+  int width, height;
+  Component[] components;
+  int maxH, maxV;
+  int mcusX, mcusY;
+
+  int bitBuffer;
+  int bitCount;
+  boolean hitMarker;
+  int[] block = new int[64];
+  int[] workspace = new int[64];
+
+
+  static class Component {
+    int id, h, v;
+    int quant;
+    Huffman dc, ac;
+    int pred;
+
+    int width, height;  // in samples, at this component's resolution
+    int stride;         // plane width, padded to a whole number of MCUs
+    byte[] plane;
+
+    // for upsampling: left sample and weight of the right one for each x
+    int[] left, weight;
+  }
+
+
+  @Override
+  public boolean accepts(byte[] header, int length) {
+    return length >= 3 &&
+      (header[0] & 0xff) == 0xff &&
+      (header[1] & 0xff) == 0xd8 &&
+      (header[2] & 0xff) == 0xff;
+  }
+
+
+  @Override
+  public PImage decode(InputStream input) throws IOException {
+    return new JPEGDecoder().read(PApplet.loadBytes(input));
+  }
+
+
+  private PImage read(byte[] data) throws IOException {
+    if (data == null) {
+      return null;
+    }
+    this.data = data;
+    if (readMarker() != 0xd8) {
+      throw new IOException("Not a JPEG file");
+    }
+    boolean scanned = false;
+
+    while (true) {
+      int marker = readMarker();
+      if (marker == -1 || marker == 0xd9) {  // EOF or EOI
+        break;
+      }
+      if (marker >= 0xd0 && marker <= 0xd7) {
+        continue;  // stray restart marker
+      }
+      int length = readShort() - 2;
+      int end = pos + length;
+      if (length < 0 || end > data.length) {
+        throw new IOException("Bad JPEG segment length");
+      }
+
+      if (marker == 0xc0 || marker == 0xc1) {
+        if (!readFrame()) {
+          return null;
+        }
+
+      } else if (marker >= 0xc2 && marker <= 0xcf &&
+                 marker != 0xc4 && marker != 0xc8 && marker != 0xcc) {
+        return null;  // progressive, lossless, or arithmetic coding
+
+      } else if (marker == 0xc4) {
+        readHuffmanTables(end);
+
+      } else if (marker == 0xdb) {
+        readQuantTables(end);
+
+      } else if (marker == 0xdd) {
+        restartInterval = readShort();
+
+      } else if (marker == 0xee) {
+        if (length >= 12 && data[pos] == 'A' && data[pos+1] == 'd' &&
+            data[pos+2] == 'o' && data[pos+3] == 'b' && data[pos+4] == 'e') {
+          adobeTransform = data[pos + 11] & 0xff;
+        }
+
+      } else if (marker == 0xda) {
+        if (components == null) {
+          throw new IOException("JPEG scan found before the frame header");
+        }
+        readScan();
+        scanned = true;
+        continue;  // pos is already at the next marker
+      }
+      pos = end;
+    }
+    if (!scanned) {
+      throw new IOException("No image data found in the JPEG file");
+    }
+    return createImage();
+  }
+
+
+  /** Find the next marker, returning its code, or -1 at the end of data. */
+  private int readMarker() {
+    while (pos < data.length - 1) {
+      if ((data[pos] & 0xff) == 0xff) {
+        int code = data[pos + 1] & 0xff;
+        if (code != 0 && code != 0xff) {
+          pos += 2;
+          return code;
+        }
+      }
+      pos++;
+    }
+    return -1;
+  }
+
+
+  private int readShort() throws IOException {
+    if (pos + 2 > data.length) {
+      throw new EOFException("Unexpected end of JPEG data");
+    }
+    int value = (data[pos] & 0xff) << 8 | (data[pos+1] & 0xff);
+    pos += 2;
+    return value;
+  }
+
+
+  private int readByte() throws IOException {
+    if (pos >= data.length) {
+      throw new EOFException("Unexpected end of JPEG data");
+    }
+    return data[pos++] & 0xff;
+  }
+
+
+  private void readQuantTables(int end) throws IOException {
+    while (pos < end) {
+      int info = readByte();
+      int[] table = new int[64];
+      for (int i = 0; i < 64; i++) {
+        table[i] = ((info >> 4) == 0) ? readByte() : readShort();
+      }
+      quantTables[info & 3] = table;
+    }
+  }
+
+
+  private void readHuffmanTables(int end) throws IOException {
+    while (pos < end) {
+      int info = readByte();
+      int[] counts = new int[16];
+      int total = 0;
+      for (int i = 0; i < 16; i++) {
+        counts[i] = readByte();
+        total += counts[i];
+      }
+      int[] symbols = new int[total];
+      for (int i = 0; i < total; i++) {
+        symbols[i] = readByte();
+      }
+      Huffman table = new Huffman(counts, symbols);
+      if ((info >> 4) == 0) {
+        dcTables[info & 3] = table;
+      } else {
+        acTables[info & 3] = table;
+      }
+    }
+  }
+
+
+  /** Returns false if this is a kind of image that isn't supported. */
+  private boolean readFrame() throws IOException {
+    int precision = readByte();
+    height = readShort();
+    width = readShort();
+    int count = readByte();
+    if (precision != 8 || height == 0 || width == 0 ||
+        (count != 1 && count != 3)) {
+      // 12-bit, height defined later by DNL, or CMYK
+      return false;
+    }
+    components = new Component[count];
+    for (int i = 0; i < count; i++) {
+      Component c = new Component();
+      c.id = readByte();
+      int sampling = readByte();
+      c.h = Math.max(1, sampling >> 4);
+      c.v = Math.max(1, sampling & 15);
+      c.quant = readByte() & 3;
+      maxH = Math.max(maxH, c.h);
+      maxV = Math.max(maxV, c.v);
+      components[i] = c;
+    }
+    mcusX = (width + maxH*8 - 1) / (maxH*8);
+    mcusY = (height + maxV*8 - 1) / (maxV*8);
+
+    // make sure the image and its planes can be allocated at all,
+    // before anything is allocated for them
+    long pixelCount = (long) width * height;
+    long memory = 4 * pixelCount;
+    long largestPlane = 0;
+    long[] planeSizes = new long[count];
+    for (int i = 0; i < count; i++) {
+      Component c = components[i];
+      planeSizes[i] = (long) mcusX * c.h * 8 * mcusY * c.v * 8;
+      largestPlane = Math.max(largestPlane, planeSizes[i]);
+      memory += planeSizes[i];
+    }
+    if (pixelCount > PNGDecoder.MAX_PIXELS ||
+        largestPlane >= Integer.MAX_VALUE ||
+        memory > Runtime.getRuntime().maxMemory()) {
+      throw new IOException("JPEG image is too large: " +
+                            width + "x" + height);
+    }
+
+    for (int i = 0; i < count; i++) {
+      Component c = components[i];
+      c.width = (width * c.h + maxH - 1) / maxH;
+      c.height = (height * c.v + maxV - 1) / maxV;
+      c.stride = mcusX * c.h * 8;
+      c.plane = new byte[(int) planeSizes[i]];
+    }
+    return true;
+  }
+
+
+  private void readScan() throws IOException {
+    int count = readByte();
+    Component[] scan = new Component[count];
+    for (int i = 0; i < count; i++) {
+      int id = readByte();
+      int tables = readByte();
+      for (Component c : components) {
+        if (c.id == id) {
+          scan[i] = c;
+        }
+      }
+      if (scan[i] == null) {
+        throw new IOException("Unknown JPEG component " + id);
+      }
+      scan[i].dc = dcTables[tables >> 4];
+      scan[i].ac = acTables[tables & 15];
+      if (scan[i].dc == null || scan[i].ac == null ||
+          quantTables[scan[i].quant] == null) {
+        throw new IOException("Missing JPEG tables");
+      }
+    }
+    pos += 3;  // spectral selection and successive approximation
+
+    resetDecoder(scan);
+    if (count == 1) {
+      // non-interleaved: blocks only cover the component itself
+      Component c = scan[0];
+      int blocksX = (c.width + 7) / 8;
+      int blocksY = (c.height + 7) / 8;
+      int total = blocksX * blocksY;
+      for (int n = 0; n < total; n++) {
+        if (restartInterval > 0 && n > 0 && n % restartInterval == 0) {
+          restart(scan);
+        }
+        decodeBlock(c, n / blocksX, n % blocksX);
+      }
+    } else {
+      int total = mcusX * mcusY;
+      for (int n = 0; n < total; n++) {
+        if (restartInterval > 0 && n > 0 && n % restartInterval == 0) {
+          restart(scan);
+        }
+        int mcuRow = n / mcusX;
+        int mcuCol = n % mcusX;
+        for (Component c : scan) {
+          for (int v = 0; v < c.v; v++) {
+            for (int h = 0; h < c.h; h++) {
+              decodeBlock(c, mcuRow*c.v + v, mcuCol*c.h + h);
+            }
+          }
+        }
+      }
+    }
+    // move to the marker that ends this scan
+    while (pos < data.length - 1 &&
+           ((data[pos] & 0xff) != 0xff || (data[pos+1] & 0xff) == 0 ||
+            ((data[pos+1] & 0xff) >= 0xd0 && (data[pos+1] & 0xff) <= 0xd7))) {
+      pos++;
+    }
+  }
+
+
+  private void resetDecoder(Component[] scan) {
+    bitBuffer = 0;
+    bitCount = 0;
+    hitMarker = false;
+    for (Component c : scan) {
+      c.pred = 0;
+    }
+  }
+
+
+  private void restart(Component[] scan) {
+    // skip anything left over, up to and including the RSTn marker
+    while (pos < data.length - 1) {
+      if ((data[pos] & 0xff) == 0xff) {
+        int code = data[pos+1] & 0xff;
+        if (code >= 0xd0 && code <= 0xd7) {
+          pos += 2;
+          break;
+        } else if (code != 0 && code != 0xff) {
+          break;  // some other marker, the data is damaged
+        }
+      }
+      pos++;
+    }
+    resetDecoder(scan);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Make sure there are at least 25 bits in the buffer. */
+  private void fill() {
+    while (bitCount <= 24) {
+      int b = 0;
+      if (!hitMarker && pos < data.length) {
+        b = data[pos] & 0xff;
+        if (b == 0xff) {
+          int next = (pos + 1 < data.length) ? (data[pos+1] & 0xff) : -1;
+          if (next == 0) {
+            pos += 2;  // stuffed zero byte
+          } else {
+            // a marker: leave it for later, and pad with zeros until then
+            hitMarker = true;
+            b = 0;
+          }
+        } else {
+          pos++;
+        }
+      }
+      bitBuffer |= b << (24 - bitCount);
+      bitCount += 8;
+    }
+  }
+
+
+  private int decode(Huffman table) throws IOException {
+    fill();
+    int entry = table.lookup[bitBuffer >>> (32 - Huffman.LOOKUP_BITS)];
+    if (entry != 0) {
+      int length = entry >> 8;
+      bitBuffer <<= length;
+      bitCount -= length;
+      return entry & 0xff;
+    }
+    for (int length = Huffman.LOOKUP_BITS + 1; length <= 16; length++) {
+      int code = bitBuffer >>> (32 - length);
+      if (code <= table.maxCode[length]) {
+        bitBuffer <<= length;
+        bitCount -= length;
+        return table.symbols[code + table.offset[length]];
+      }
+    }
+    throw new IOException("Bad Huffman code in JPEG data");
+  }
+
+
+  private int receiveExtend(int size) {
+    if (size == 0) {
+      return 0;
+    }
+    fill();
+    int value = bitBuffer >>> (32 - size);
+    bitBuffer <<= size;
+    bitCount -= size;
+    return (value < (1 << (size - 1))) ? value - (1 << size) + 1 : value;
+  }
+
+
+  private void decodeBlock(Component c, int blockRow, int blockCol) throws IOException {
+    int[] q = quantTables[c.quant];
+    Arrays.fill(block, 0);
+    c.pred += receiveExtend(decode(c.dc));
+    block[0] = c.pred * q[0];
+
+    int k = 1;
+    while (k < 64) {
+      int rs = decode(c.ac);
+      int run = rs >> 4;
+      int size = rs & 15;
+      if (size == 0) {
+        if (run != 15) {
+          break;  // end of block
+        }
+        k += 16;
+      } else {
+        k += run;
+        if (k > 63) {
+          break;  // damaged data
+        }
+        block[ZIGZAG[k]] = receiveExtend(size) * q[k];
+        k++;
+      }
+    }
+    idct(block, workspace, c.plane, blockRow*8*c.stride + blockCol*8, c.stride);
+  }
+
+
+  /**
+   * Inverse DCT of a dequantized block, the same as jidctint.c from libjpeg.
+   */
+  static void idct(int[] in, int[] ws, byte[] out, int offset, int stride) {
+    // columns, from in to ws
+    for (int col = 0; col < 8; col++) {
+      if (in[col+8] == 0 && in[col+16] == 0 && in[col+24] == 0 &&
+          in[col+32] == 0 && in[col+40] == 0 && in[col+48] == 0 &&
+          in[col+56] == 0) {
+        int dc = in[col] << PASS1_BITS;
+        for (int i = 0; i < 64; i += 8) {
+          ws[col+i] = dc;
+        }
+        continue;
+      }
+      int z2 = in[col+16];
+      int z3 = in[col+48];
+      int z1 = (z2 + z3) * FIX_0_541196100;
+      int tmp2 = z1 - z3 * FIX_1_847759065;
+      int tmp3 = z1 + z2 * FIX_0_765366865;
+      z2 = in[col];
+      z3 = in[col+32];
+      int tmp0 = (z2 + z3) << CONST_BITS;
+      int tmp1 = (z2 - z3) << CONST_BITS;
+      int tmp10 = tmp0 + tmp3;
+      int tmp13 = tmp0 - tmp3;
+      int tmp11 = tmp1 + tmp2;
+      int tmp12 = tmp1 - tmp2;
+
+      tmp0 = in[col+56];
+      tmp1 = in[col+40];
+      tmp2 = in[col+24];
+      tmp3 = in[col+8];
+      z1 = tmp0 + tmp3;
+      z2 = tmp1 + tmp2;
+      z3 = tmp0 + tmp2;
+      int z4 = tmp1 + tmp3;
+      int z5 = (z3 + z4) * FIX_1_175875602;
+      tmp0 *= FIX_0_298631336;
+      tmp1 *= FIX_2_053119869;
+      tmp2 *= FIX_3_072711026;
+      tmp3 *= FIX_1_501321110;
+      z1 *= -FIX_0_899976223;
+      z2 *= -FIX_2_562915447;
+      z3 = z3 * -FIX_1_961570560 + z5;
+      z4 = z4 * -FIX_0_390180644 + z5;
+      tmp0 += z1 + z3;
+      tmp1 += z2 + z4;
+      tmp2 += z2 + z3;
+      tmp3 += z1 + z4;
+
+      int shift = CONST_BITS - PASS1_BITS;
+      int round = 1 << (shift - 1);
+      ws[col]    = (tmp10 + tmp3 + round) >> shift;
+      ws[col+56] = (tmp10 - tmp3 + round) >> shift;
+      ws[col+8]  = (tmp11 + tmp2 + round) >> shift;
+      ws[col+48] = (tmp11 - tmp2 + round) >> shift;
+      ws[col+16] = (tmp12 + tmp1 + round) >> shift;
+      ws[col+40] = (tmp12 - tmp1 + round) >> shift;
+      ws[col+24] = (tmp13 + tmp0 + round) >> shift;
+      ws[col+32] = (tmp13 - tmp0 + round) >> shift;
+    }
+
+    // rows, from ws to out
+    int shift = CONST_BITS + PASS1_BITS + 3;
+    int round = 1 << (shift - 1);
+    for (int row = 0; row < 64; row += 8) {
+      int z2 = ws[row+2];
+      int z3 = ws[row+6];
+      int z1 = (z2 + z3) * FIX_0_541196100;
+      int tmp2 = z1 - z3 * FIX_1_847759065;
+      int tmp3 = z1 + z2 * FIX_0_765366865;
+      int tmp0 = (ws[row] + ws[row+4]) << CONST_BITS;
+      int tmp1 = (ws[row] - ws[row+4]) << CONST_BITS;
+      int tmp10 = tmp0 + tmp3;
+      int tmp13 = tmp0 - tmp3;
+      int tmp11 = tmp1 + tmp2;
+      int tmp12 = tmp1 - tmp2;
+
+      tmp0 = ws[row+7];
+      tmp1 = ws[row+5];
+      tmp2 = ws[row+3];
+      tmp3 = ws[row+1];
+      z1 = tmp0 + tmp3;
+      z2 = tmp1 + tmp2;
+      z3 = tmp0 + tmp2;
+      int z4 = tmp1 + tmp3;
+      int z5 = (z3 + z4) * FIX_1_175875602;
+      tmp0 *= FIX_0_298631336;
+      tmp1 *= FIX_2_053119869;
+      tmp2 *= FIX_3_072711026;
+      tmp3 *= FIX_1_501321110;
+      z1 *= -FIX_0_899976223;
+      z2 *= -FIX_2_562915447;
+      z3 = z3 * -FIX_1_961570560 + z5;
+      z4 = z4 * -FIX_0_390180644 + z5;
+      tmp0 += z1 + z3;
+      tmp1 += z2 + z4;
+      tmp2 += z2 + z3;
+      tmp3 += z1 + z4;
+
+      int index = offset + (row >> 3) * stride;
+      out[index]   = clamp(((tmp10 + tmp3 + round) >> shift) + 128);
+      out[index+7] = clamp(((tmp10 - tmp3 + round) >> shift) + 128);
+      out[index+1] = clamp(((tmp11 + tmp2 + round) >> shift) + 128);
+      out[index+6] = clamp(((tmp11 - tmp2 + round) >> shift) + 128);
+      out[index+2] = clamp(((tmp12 + tmp1 + round) >> shift) + 128);
+      out[index+5] = clamp(((tmp12 - tmp1 + round) >> shift) + 128);
+      out[index+3] = clamp(((tmp13 + tmp0 + round) >> shift) + 128);
+      out[index+4] = clamp(((tmp13 - tmp0 + round) >> shift) + 128);
+    }
+  }
+
+
+  static private byte clamp(int value) {
+    return (byte) ((value < 0) ? 0 : ((value > 255) ? 255 : value));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private PImage createImage() {
+    final PImage image = new PImage(width, height, PConstants.RGB);
+    for (Component c : components) {
+      c.left = new int[width];
+      c.weight = new int[width];
+      for (int x = 0; x < width; x++) {
+        // position in this component, in units of 1/(2*maxH) samples
+        int position = (2*x + 1) * c.h - maxH;
+        int left = Math.floorDiv(position, 2*maxH);
+        c.weight[x] = position - left * 2*maxH;
+        c.left[x] = left;
+      }
+    }
+    final boolean rgb = (components.length == 3) &&
+      (adobeTransform == 0 ||
+       (components[0].id == 'R' && components[1].id == 'G' && components[2].id == 'B'));
+
+    PImage.parallelRange(height, width * height, (start, stop) -> {
+      int[][] rows = new int[components.length][width];
+      for (int y = start; y < stop; y++) {
+        for (int i = 0; i < components.length; i++) {
+          upsampleRow(components[i], y, rows[i]);
+        }
+        int index = y * width;
+        if (components.length == 1) {
+          int[] gray = rows[0];
+          for (int x = 0; x < width; x++) {
+            image.pixels[index++] = 0xff000000 | gray[x] * 0x010101;
+          }
+        } else if (rgb) {
+          for (int x = 0; x < width; x++) {
+            image.pixels[index++] = 0xff000000 |
+              rows[0][x] << 16 | rows[1][x] << 8 | rows[2][x];
+          }
+        } else {
+          int[] ys = rows[0];
+          int[] cbs = rows[1];
+          int[] crs = rows[2];
+          for (int x = 0; x < width; x++) {
+            int luma = ys[x];
+            int cb = cbs[x];
+            int cr = crs[x];
+            int r = clampInt(luma + CR_R[cr]);
+            int g = clampInt(luma + ((CB_G[cb] + CR_G[cr]) >> 16));
+            int b = clampInt(luma + CB_B[cb]);
+            image.pixels[index++] = 0xff000000 | r << 16 | g << 8 | b;
+          }
+        }
+      }
+    });
+    return image;
+  }
+
+
+  /**
+   * Get row y of the image from a component, interpolating linearly between
+   * the nearest samples if it has been subsampled.
+   */
+  private void upsampleRow(Component c, int y, int[] out) {
+    byte[] plane = c.plane;
+    if (c.h == maxH && c.v == maxV) {
+      int offset = y * c.stride;
+      for (int x = 0; x < width; x++) {
+        out[x] = plane[offset + x] & 0xff;
+      }
+      return;
+    }
+    int divV = 2 * maxV;
+    int position = (2*y + 1) * c.v - maxV;
+    int top = Math.floorDiv(position, divV);
+    int wv = position - top * divV;
+    int bottom = Math.min(top + 1, c.height - 1);
+    top = Math.max(0, Math.min(top, c.height - 1));
+    int row0 = top * c.stride;
+    int row1 = bottom * c.stride;
+
+    int divH = 2 * maxH;
+    int div = divV * divH;
+    int lastX = c.width - 1;
+    for (int x = 0; x < width; x++) {
+      int left = c.left[x];
+      int wh = c.weight[x];
+      int right = Math.min(left + 1, lastX);
+      left = Math.max(0, Math.min(left, lastX));
+      int a = (plane[row0 + left] & 0xff) * (divV - wv) + (plane[row1 + left] & 0xff) * wv;
+      int b = (plane[row0 + right] & 0xff) * (divV - wv) + (plane[row1 + right] & 0xff) * wv;
+      out[x] = (a * (divH - wh) + b * wh + div/2) / div;
+    }
+  }
+
+
+  static private int clampInt(int value) {
+    return (value < 0) ? 0 : ((value > 255) ? 255 : value);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static class Huffman {
+    static final int LOOKUP_BITS = 9;
+
+    /** For codes up to LOOKUP_BITS long: (length << 8) | symbol, or 0. */
+    int[] lookup = new int[1 << LOOKUP_BITS];
+    int[] maxCode = new int[17];
+    int[] offset = new int[17];
+    int[] symbols;
+
+    Huffman(int[] counts, int[] symbols) {
+      this.symbols = symbols;
+      int code = 0;
+      int k = 0;
+      for (int length = 1; length <= 16; length++) {
+        offset[length] = k - code;
+        for (int i = 0; i < counts[length - 1]; i++) {
+          if (length <= LOOKUP_BITS && k < symbols.length) {
+            int shift = LOOKUP_BITS - length;
+            int entry = length << 8 | symbols[k];
+            for (int j = 0; j < (1 << shift); j++) {
+              lookup[((code << shift) | j) & ((1 << LOOKUP_BITS) - 1)] = entry;
+            }
+          }
+          code++;
+          k++;
+        }
+        maxCode[length] = (counts[length - 1] == 0) ? -1 : code - 1;
+        code <<= 1;
+      }
+    }
+  }
+}
@@ -0,0 +1,523 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.*;
+import java.util.*;
+
+
+/**
+ * Writes frames into a single QuickTime movie, using the PNG codec so that
+ * the movie is lossless, like the frames saved by saveFrame(). This is what
+ * beginRecord(MOVIE, "out.mov") uses: each frame is copied out of the sketch
+ * and compressed on the same background threads as saveFrame(), then
+ * appended to the movie in order. Nothing else is written to disk, so there
+ * are no numbered image files to clean up or feed through Movie Maker.
+ * <p>
+ * The file layout follows the QuickTime writer in Movie Maker: a 'wide'
+ * placeholder and the 'mdat' with the frames, followed by the 'moov' header
+ * once the movie is finished. Movies larger than 4 GB switch to 64-bit
+ * sizes and offsets automatically.
+ * <p>
+ * A writer can also be used directly, for instance from a library:
+ * <pre>
+ * MovieWriter movie = new MovieWriter(file, width, height, 30);
+ * movie.addFrame(image);  // repeat for each frame
+ * movie.finish();
+ * </pre>
+ *
+ * @nowebref
+ */
+public class MovieWriter {
+  /** Seconds between 1904 (the QuickTime epoch) and 1970. */
+  static final long MAC_EPOCH_OFFSET = 2082844800L;
+
+  /** Size of the 'ftyp' atom written at the start of the file. */
+  static final int FTYP_SIZE = 20;
+
+  /** Each frame lasts this many units of the movie's time scale. */
+  static final int FRAME_DURATION = 100;
+
+  File file;
+  RandomAccessFile output;
+
+  int width;
+  int height;
+  int timeScale;
+  long creationTime;
+
+  PNGEncoder encoder = new PNGEncoder();
+
+  /** Depth written in the sample description, 24 or 32 if any frame has alpha. */
+  int depth = 24;
+
+  /** Where the mdat (including its 8 byte header) begins. */
+  long mdatOffset;
+  long position;
+
+  long[] sampleOffsets = new long[256];
+  int[] sampleSizes = new int[256];
+  int sampleCount;
+
+  /** Number of frames handed out by nextFrame(), and the next one to write. */
+  int framesReserved;
+  int nextWritten;
+  Map<Integer, byte[]> waiting = new HashMap<>();
+
+  IOException failure;
+  boolean finished;
+
+
+  /**
+   * Create a new movie file, replacing any that's already there.
+   * @param frameRate frames per second for playback
+   */
+  public MovieWriter(File file, int width, int height,
+                     float frameRate) throws IOException {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Movie size must be at least 1x1");
+    }
+    if (!(frameRate > 0)) {
+      throw new IllegalArgumentException("Movie frame rate must be positive");
+    }
+    this.file = file;
+    this.width = width;
+    this.height = height;
+    // a time scale of fps * 100 handles rates like 29.97 exactly
+    this.timeScale = Math.max(1, Math.round(frameRate * FRAME_DURATION));
+    this.creationTime = System.currentTimeMillis() / 1000 + MAC_EPOCH_OFFSET;
+
+    PApplet.createPath(file);
+    output = new RandomAccessFile(file, "rw");
+    output.setLength(0);
+
+    writeAtomHeader(output, FTYP_SIZE, "ftyp");
+    output.writeInt(type("qt  "));  // major brand
+    output.writeInt(0x20050300);    // version
+    output.writeInt(type("qt  "));  // compatible brand
+
+    // room to turn the mdat header into a 64-bit one if the movie gets large
+    writeAtomHeader(output, 8, "wide");
+    mdatOffset = output.getFilePointer();
+    writeAtomHeader(output, 0, "mdat");
+    position = output.getFilePointer();
+  }
+
+
+  public File getFile() {
+    return file;
+  }
+
+
+  public int getWidth() {
+    return width;
+  }
+
+
+  public int getHeight() {
+    return height;
+  }
+
+
+  /**
+   * The encoder used to compress frames. Lower levels are faster to write
+   * at the cost of a larger movie.
+   */
+  public PNGEncoder getEncoder() {
+    return encoder;
+  }
+
+
+  /** Number of frames written so far. */
+  synchronized public int getFrameCount() {
+    return sampleCount;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Compress an image and append it to the movie. The image must be the
+   * same size as the movie.
+   */
+  public void addFrame(PImage image) throws IOException {
+    int frame = nextFrame();
+    byte[] data = null;
+    try {
+      data = encodeFrame(image);
+    } finally {
+      writeFrame(frame, data);
+    }
+    checkFailure();
+  }
+
+
+  /**
+   * Reserve a spot for the next frame. Frames may be compressed on several
+   * threads at once, but they're written in the order they were reserved.
+   * Every frame that's reserved has to be passed to writeFrame(), even if
+   * compressing it failed, otherwise finish() will wait forever.
+   */
+  synchronized public int nextFrame() {
+    if (finished) {
+      throw new IllegalStateException("The movie " + file + " is already finished");
+    }
+    return framesReserved++;
+  }
+
+
+  /**
+   * Compress a frame, can be called from any thread.
+   */
+  public byte[] encodeFrame(PImage image) throws IOException {
+    if (image.pixelWidth != width || image.pixelHeight != height) {
+      throw new IllegalArgumentException("Frame is " +
+                                         image.pixelWidth + "x" + image.pixelHeight +
+                                         " but the movie is " + width + "x" + height);
+    }
+    int format = (image.format == PConstants.ARGB) ? PConstants.ARGB : PConstants.RGB;
+    ByteArrayOutputStream data = new ByteArrayOutputStream(width * height);
+    encoder.write(data, image.pixels, width, height, format);
+    if (format == PConstants.ARGB) {
+      synchronized (this) {
+        depth = 32;
+      }
+    }
+    return data.toByteArray();
+  }
+
+
+  /**
+   * Write a frame returned by encodeFrame(), along with any later frames
+   * that were already waiting for it. If data is null, the frame is left
+   * out (because compressing it failed).
+   */
+  synchronized public void writeFrame(int frame, byte[] data) {
+    waiting.put(frame, data);
+    byte[] next;
+    while (waiting.containsKey(nextWritten)) {
+      next = waiting.remove(nextWritten);
+      nextWritten++;
+      if (next != null && failure == null) {
+        try {
+          output.seek(position);
+          output.write(next);
+        } catch (IOException e) {
+          failure = e;
+          continue;
+        }
+        if (sampleCount == sampleSizes.length) {
+          sampleOffsets = PApplet.expand(sampleOffsets);
+          sampleSizes = PApplet.expand(sampleSizes);
+        }
+        sampleOffsets[sampleCount] = position;
+        sampleSizes[sampleCount] = next.length;
+        sampleCount++;
+        position += next.length;
+      }
+    }
+    notifyAll();
+  }
+
+
+  /**
+   * Make note that a frame couldn't be compressed, finish() will throw it.
+   * The frame still has to be passed to writeFrame() with null data.
+   */
+  synchronized public void frameFailed(Throwable t) {
+    if (failure == null) {
+      failure = (t instanceof IOException) ?
+        (IOException) t : new IOException("Could not compress movie frame", t);
+    }
+  }
+
+
+  synchronized void checkFailure() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+
+  /**
+   * Wait for the frames still being compressed, then write the movie header
+   * and close the file. If a frame could not be written, the movie is still
+   * finished (without it), and the error is thrown afterwards.
+   */
+  synchronized public void finish() throws IOException {
+    if (finished) return;
+    finished = true;
+
+    boolean interrupted = false;
+    while (nextWritten < framesReserved) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    try {
+      long mdatSize = position - mdatOffset;
+      output.seek(position);
+      output.write(createMovieAtom());
+      if (mdatSize <= 0xffffffffL) {
+        output.seek(mdatOffset);
+        output.writeInt((int) mdatSize);
+      } else {
+        // take over the 'wide' atom in front for a 64-bit mdat size
+        output.seek(mdatOffset - 8);
+        writeAtomHeader(output, 1, "mdat");
+        output.writeLong(mdatSize + 8);
+      }
+    } finally {
+      output.close();
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    checkFailure();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Atom that's assembled in memory, so that its size is known before
+   * it's written to its parent.
+   */
+  static class Atom extends DataOutputStream {
+    String type;
+
+    Atom(String type) {
+      super(new ByteArrayOutputStream());
+      this.type = type;
+    }
+
+    void add(Atom child) throws IOException {
+      write(child.toByteArray());
+    }
+
+    void writeType(String type) throws IOException {
+      writeInt(type(type));
+    }
+
+    void writeFixed(double value) throws IOException {
+      writeInt((int) Math.round(value * 65536));
+    }
+
+    void writeMatrix() throws IOException {
+      // identity, the last column is in 2.30 fixed point
+      writeInt(0x00010000); writeInt(0); writeInt(0);
+      writeInt(0); writeInt(0x00010000); writeInt(0);
+      writeInt(0); writeInt(0); writeInt(0x40000000);
+    }
+
+    byte[] toByteArray() throws IOException {
+      ByteArrayOutputStream body = (ByteArrayOutputStream) out;
+      ByteArrayOutputStream atom = new ByteArrayOutputStream(body.size() + 8);
+      DataOutputStream header = new DataOutputStream(atom);
+      header.writeInt(body.size() + 8);
+      header.writeInt(type(type));
+      body.writeTo(atom);
+      return atom.toByteArray();
+    }
+  }
+
+
+  static int type(String type) {
+    return (type.charAt(0) << 24) | (type.charAt(1) << 16) |
+      (type.charAt(2) << 8) | type.charAt(3);
+  }
+
+
+  static void writeAtomHeader(DataOutput output,
+                              int size, String type) throws IOException {
+    output.writeInt(size);
+    output.writeInt(type(type));
+  }
+
+
+  /**
+   * The 'moov' atom with a single video track, one frame per chunk.
+   */
+  byte[] createMovieAtom() throws IOException {
+    long modificationTime = System.currentTimeMillis() / 1000 + MAC_EPOCH_OFFSET;
+    long duration = (long) sampleCount * FRAME_DURATION;
+
+    Atom moov = new Atom("moov");
+
+    Atom mvhd = new Atom("mvhd");
+    mvhd.writeInt(0);  // version and flags
+    mvhd.writeInt((int) creationTime);
+    mvhd.writeInt((int) modificationTime);
+    mvhd.writeInt(timeScale);
+    mvhd.writeInt((int) duration);
+    mvhd.writeFixed(1);  // preferred rate
+    mvhd.writeShort(0x100);  // preferred volume
+    mvhd.write(new byte[10]);
+    mvhd.writeMatrix();
+    mvhd.write(new byte[24]);  // preview, poster, selection, current time
+    mvhd.writeInt(2);  // next track id
+    moov.add(mvhd);
+
+    Atom trak = new Atom("trak");
+    Atom tkhd = new Atom("tkhd");
+    tkhd.writeInt(0xf);  // enabled, in movie, in preview, in poster
+    tkhd.writeInt((int) creationTime);
+    tkhd.writeInt((int) modificationTime);
+    tkhd.writeInt(1);  // track id
+    tkhd.writeInt(0);
+    tkhd.writeInt((int) duration);
+    tkhd.write(new byte[8]);
+    tkhd.writeShort(0);  // layer
+    tkhd.writeShort(0);  // alternate group
+    tkhd.writeShort(0);  // volume
+    tkhd.writeShort(0);
+    tkhd.writeMatrix();
+    tkhd.writeFixed(width);
+    tkhd.writeFixed(height);
+    trak.add(tkhd);
+
+    Atom mdia = new Atom("mdia");
+    Atom mdhd = new Atom("mdhd");
+    mdhd.writeInt(0);
+    mdhd.writeInt((int) creationTime);
+    mdhd.writeInt((int) modificationTime);
+    mdhd.writeInt(timeScale);
+    mdhd.writeInt((int) duration);
+    mdhd.writeShort(0);  // language
+    mdhd.writeShort(0);  // quality
+    mdia.add(mdhd);
+    mdia.add(createHandlerAtom("mhlr", "vide"));
+
+    Atom minf = new Atom("minf");
+    Atom vmhd = new Atom("vmhd");
+    vmhd.writeInt(1);  // flags: no lean ahead
+    vmhd.writeShort(0x40);  // graphics mode: dither copy
+    vmhd.write(new byte[6]);  // opcolor
+    minf.add(vmhd);
+    minf.add(createHandlerAtom("dhlr", "alis"));
+
+    Atom dinf = new Atom("dinf");
+    Atom dref = new Atom("dref");
+    dref.writeInt(0);
+    dref.writeInt(1);  // number of entries
+    dref.writeInt(12);
+    dref.writeType("alis");
+    dref.writeInt(1);  // flags: the data is in this file
+    dinf.add(dref);
+    minf.add(dinf);
+
+    minf.add(createSampleTableAtom());
+    mdia.add(minf);
+    trak.add(mdia);
+    moov.add(trak);
+    return moov.toByteArray();
+  }
+
+
+  Atom createHandlerAtom(String component, String subtype) throws IOException {
+    Atom hdlr = new Atom("hdlr");
+    hdlr.writeInt(0);
+    hdlr.writeType(component);
+    hdlr.writeType(subtype);
+    hdlr.writeInt(0);  // manufacturer
+    hdlr.writeInt(0);  // flags
+    hdlr.writeInt(0);  // flags mask
+    hdlr.writeByte(0);  // empty name
+    return hdlr;
+  }
+
+
+  Atom createSampleTableAtom() throws IOException {
+    Atom stbl = new Atom("stbl");
+
+    Atom stsd = new Atom("stsd");
+    stsd.writeInt(0);
+    stsd.writeInt(1);  // number of entries
+    stsd.writeInt(86);  // size of the entry
+    stsd.writeType("png ");
+    stsd.write(new byte[6]);
+    stsd.writeShort(1);  // data reference index
+    stsd.writeShort(0);  // version
+    stsd.writeShort(0);  // revision
+    stsd.writeType("java");  // vendor
+    stsd.writeInt(0);  // temporal quality
+    stsd.writeInt(0x400);  // spatial quality: lossless
+    stsd.writeShort(width);
+    stsd.writeShort(height);
+    stsd.writeFixed(72);  // horizontal resolution
+    stsd.writeFixed(72);  // vertical resolution
+    stsd.writeInt(0);  // data size
+    stsd.writeShort(1);  // frames per sample
+    byte[] name = new byte[32];
+    name[0] = 3;
+    name[1] = 'P'; name[2] = 'N'; name[3] = 'G';
+    stsd.write(name);  // compressor name, as a Pascal string
+    stsd.writeShort(depth);
+    stsd.writeShort(-1);  // color table id: none
+    stbl.add(stsd);
+
+    Atom stts = new Atom("stts");
+    stts.writeInt(0);
+    stts.writeInt(sampleCount == 0 ? 0 : 1);
+    if (sampleCount != 0) {
+      stts.writeInt(sampleCount);
+      stts.writeInt(FRAME_DURATION);
+    }
+    stbl.add(stts);
+
+    Atom stsc = new Atom("stsc");
+    stsc.writeInt(0);
+    stsc.writeInt(1);
+    stsc.writeInt(1);  // first chunk
+    stsc.writeInt(1);  // samples per chunk
+    stsc.writeInt(1);  // sample description
+    stbl.add(stsc);
+
+    Atom stsz = new Atom("stsz");
+    stsz.writeInt(0);
+    stsz.writeInt(0);  // sizes differ, listed below
+    stsz.writeInt(sampleCount);
+    for (int i = 0; i < sampleCount; i++) {
+      stsz.writeInt(sampleSizes[i]);
+    }
+    stbl.add(stsz);
+
+    boolean wide = sampleCount > 0 &&
+      sampleOffsets[sampleCount - 1] > 0xffffffffL;
+    Atom stco = new Atom(wide ? "co64" : "stco");
+    stco.writeInt(0);
+    stco.writeInt(sampleCount);
+    for (int i = 0; i < sampleCount; i++) {
+      if (wide) {
+        stco.writeLong(sampleOffsets[i]);
+      } else {
+        stco.writeInt((int) sampleOffsets[i]);
+      }
+    }
+    stbl.add(stco);
+
+    return stbl;
+  }
+}
@@ -67,16 +67,15 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.xml.sax.SAXException;
 
 import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.text.*;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 import java.util.regex.*;
 import java.util.zip.*;
 
@@ -215,6 +214,15 @@ public class PApplet implements PConstants {
   /** A leech graphics object that is echoing all events. */
   public PGraphics recorder;
 
+  /** Movie that each frame is added to, set by beginRecord(MOVIE, ...). */
+  protected MovieWriter movieRecorder;
+
+  /** Frame rate requested with frameRate(), used as the movie frame rate. */
+  protected float frameRateTarget = 60;
+
+  /** Times each part of the frame when not null, see frameTimer(). */
+  protected volatile FrameTimer frameTimer;
+
   /**
    * Command line options passed in from main().
    * This does not include the arguments passed in to PApplet itself.
@@ -1416,61 +1424,108 @@ public class PApplet implements PConstants {
   private final Object registerLock = new Object[0];
 
 
+  /**
+   * A pre(), draw(), post(), pause(), resume(), or dispose() method,
+   * usually a lambda, for registerMethod(String, Object, Hook).
+   *
+   * @nowebref
+   */
+  public interface Hook {
+    void run();
+  }
+
+
+  /**
+   * A mouseEvent, keyEvent, or touchEvent method, usually a lambda,
+   * for registerMethod(String, Object, EventHook).
+   *
+   * @nowebref
+   */
+  public interface EventHook<E extends Event> {
+    void handle(E event);
+  }
+
+
+  /**
+   * How RegisteredMethods calls each method. Reflected methods are bound to
+   * a MethodHandle once when they're registered, and lambdas are called
+   * directly, so nothing is looked up, wrapped, or allocated per call.
+   */
+  interface Invoker {
+    void invoke(Object arg) throws Throwable;
+  }
+
+
+  static Invoker bindMethod(Object target, Method method) throws IllegalAccessException {
+    MethodHandle handle;
+    try {
+      handle = MethodHandles.publicLookup().unreflect(method);
+    } catch (IllegalAccessException e) {
+      // a public method inside a class that isn't public (a class inside
+      // the sketch, for instance), which reflection could see but not call
+      method.setAccessible(true);
+      handle = MethodHandles.lookup().unreflect(method);
+    }
+    handle = handle.bindTo(target);
+    if (method.getParameterCount() == 0) {
+      final MethodHandle noArgs =
+        handle.asType(MethodType.methodType(void.class));
+      return arg -> { noArgs.invokeExact(); };
+    }
+    final MethodHandle oneArg =
+      handle.asType(MethodType.methodType(void.class, Object.class));
+    return arg -> { oneArg.invokeExact(arg); };
+  }
+
+
   class RegisteredMethods {
     int count;
+    // The object that was registered, used to find it again when it's
+    // unregistered. For lambdas this is the owner passed to registerMethod().
     Object[] objects;
-    // Because the Method comes from the class being called,
-    // it will be unique for most, if not all, objects.
-    Method[] methods;
-    Object[] emptyArgs = new Object[] { };
+    Invoker[] invokers;
 
 
     void handle() {
-      handle(emptyArgs);
+      handle((Object) null);
     }
 
 
     void handle(Object[] args) {
+      handle(args.length == 0 ? null : args[0]);
+    }
+
+
+    void handle(Object arg) {
       for (int i = 0; i < count; i++) {
         try {
-          methods[i].invoke(objects[i], args);
-        } catch (Exception e) {
-          // check for wrapped exception, get root exception
-          Throwable t;
-          if (e instanceof InvocationTargetException) {
-            InvocationTargetException ite = (InvocationTargetException) e;
-            t = ite.getCause();
-          } else {
-            t = e;
-          }
-          // check for RuntimeException, and allow to bubble up
-          if (t instanceof RuntimeException) {
-            // re-throw exception
-            throw (RuntimeException) t;
-          } else {
-            // trap and print as usual
-            printStackTrace(t);
-          }
+          invokers[i].invoke(arg);
+        } catch (RuntimeException e) {
+          // allow to bubble up
+          throw e;
+        } catch (Throwable t) {
+          // trap and print as usual
+          printStackTrace(t);
         }
       }
     }
 
 
-    void add(Object object, Method method) {
+    void add(Object object, Invoker invoker, String name) {
       if (findIndex(object) == -1) {
         if (objects == null) {
           objects = new Object[5];
-          methods = new Method[5];
+          invokers = new Invoker[5];
 
         } else if (count == objects.length) {
           objects = (Object[]) PApplet.expand(objects);
-          methods = (Method[]) PApplet.expand(methods);
+          invokers = Arrays.copyOf(invokers, count << 1);
         }
         objects[count] = object;
-        methods[count] = method;
+        invokers[count] = invoker;
         count++;
       } else {
-        die(method.getName() + "() already added for this instance of " +
+        die(name + "() already added for this instance of " +
             object.getClass().getName());
       }
     }
@@ -1481,8 +1536,6 @@ public class PApplet implements PConstants {
      * must be called multiple times if object is registered multiple times).
      * Does not shrink array afterwards, silently returns if method not found.
      */
-//    public void remove(Object object, Method method) {
-//      int index = findIndex(object, method);
     public void remove(Object object) {
       int index = findIndex(object);
       if (index != -1) {
@@ -1490,24 +1543,20 @@ public class PApplet implements PConstants {
         count--;
         for (int i = index; i < count; i++) {
           objects[i] = objects[i+1];
-          methods[i] = methods[i+1];
+          invokers[i] = invokers[i+1];
         }
         // clean things out for the gc's sake
         objects[count] = null;
-        methods[count] = null;
+        invokers[count] = null;
       }
     }
 
 
-//    protected int findIndex(Object object, Method method) {
     protected int findIndex(Object object) {
       for (int i = 0; i < count; i++) {
+        //objects[i].equals() might be overridden, so use == for safety
+        // since here we do care about actual object identity
         if (objects[i] == object) {
-//        if (objects[i] == object && methods[i].equals(method)) {
-          //objects[i].equals() might be overridden, so use == for safety
-          // since here we do care about actual object identity
-          //methods[i]==method is never true even for same method, so must use
-          // equals(), this should be safe because of object identity
           return i;
         }
       }
@@ -1555,18 +1604,72 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Register a lambda for one of the events that don't take arguments
+   * (pre, draw, post, pause, resume, or dispose), without going through
+   * reflection. For instance:
+   * <pre>
+   * registerMethod("pre", this, () -> update());
+   * </pre>
+   * @param methodName name of the event
+   * @param owner the object to pass to unregisterMethod() to remove the hook
+   * @param hook what to run for the event
+   * @nowebref
+   */
+  public void registerMethod(String methodName, Object owner, Hook hook) {
+    if (isEventMethod(methodName)) {
+      die(methodName + "() takes an event, use an EventHook to register it");
+    }
+    registerInvoker(methodName, owner, arg -> hook.run());
+  }
+
+
+  /**
+   * Register a lambda for mouseEvent, keyEvent, or touchEvent, without going
+   * through reflection. For instance:
+   * <pre>
+   * registerMethod("mouseEvent", this, (MouseEvent e) -> handleMouse(e));
+   * </pre>
+   * @param methodName name of the event
+   * @param owner the object to pass to unregisterMethod() to remove the hook
+   * @param hook what to call with each event
+   * @nowebref
+   */
+  @SuppressWarnings("unchecked")
+  public <E extends Event> void registerMethod(String methodName, Object owner,
+                                               EventHook<E> hook) {
+    if (!isEventMethod(methodName)) {
+      die(methodName + "() doesn't take an event, use a Hook to register it");
+    }
+    registerInvoker(methodName, owner, arg -> hook.handle((E) arg));
+  }
+
+
+  static private boolean isEventMethod(String name) {
+    return name.equals("mouseEvent") ||
+      name.equals("keyEvent") ||
+      name.equals("touchEvent");
+  }
+
+
+  private void registerInvoker(String name, Object owner, Invoker invoker) {
+    synchronized (registerLock) {
+      RegisteredMethods meth = registerMap.get(name);
+      if (meth == null) {
+        meth = new RegisteredMethods();
+        registerMap.put(name, meth);
+      }
+      meth.add(owner, invoker, name);
+    }
+  }
+
+
   private void registerNoArgs(String name, Object o) {
     Class<?> c = o.getClass();
     try {
       Method method = c.getMethod(name);
-      synchronized (registerLock) {
-        RegisteredMethods meth = registerMap.get(name);
-        if (meth == null) {
-          meth = new RegisteredMethods();
-          registerMap.put(name, meth);
-        }
-        meth.add(o, method);
-      }
+      registerInvoker(name, o, bindMethod(o, method));
+
     } catch (NoSuchMethodException nsme) {
       die("There is no public " + name + "() method in the class " +
           o.getClass().getName());
@@ -1581,14 +1684,8 @@ public class PApplet implements PConstants {
     Class<?> c = o.getClass();
     try {
       Method method = c.getMethod(name, cargs);
-      synchronized (registerLock) {
-        RegisteredMethods meth = registerMap.get(name);
-        if (meth == null) {
-          meth = new RegisteredMethods();
-          registerMap.put(name, meth);
-        }
-        meth.add(o, method);
-      }
+      registerInvoker(name, o, bindMethod(o, method));
+
     } catch (NoSuchMethodException nsme) {
       die("There is no public " + name + "() method in the class " +
           o.getClass().getName());
@@ -1641,6 +1738,16 @@ public class PApplet implements PConstants {
   }
 
 
+  protected void handleMethods(String methodName, Object arg) {
+    synchronized (registerLock) {
+      RegisteredMethods meth = registerMap.get(methodName);
+      if (meth != null) {
+        meth.handle(arg);
+      }
+    }
+  }
+
+
   /*
   @Deprecated
   public void registerSize(Object o) {
@@ -2396,6 +2503,10 @@ public class PApplet implements PConstants {
     // canDraw = g != null && (looping || redraw);
     if (g == null) return;
     if (!looping && !redraw) return;
+
+    // random() on this thread continues the sketch's (seeded) sequence,
+    // even if settings() already used it from the main thread
+    internalRandomThread = Thread.currentThread();
 //    System.out.println("looping/redraw = " + looping + " " + redraw);
 
     // no longer in use by any of our renderers
@@ -2415,11 +2526,17 @@ public class PApplet implements PConstants {
       System.exit(1);
     }
 
+    FrameTimer timer = frameTimer;
+    if (timer != null) {
+      timer.beginFrame();
+    }
+
     insideDraw = true;
     g.beginDraw();
     if (recorder != null) {
       recorder.beginDraw();
     }
+    if (timer != null) timer.mark(FrameTimer.RENDER);
 
     long now = System.nanoTime();
 
@@ -2472,6 +2589,7 @@ public class PApplet implements PConstants {
       if (frameCount != 0) {
         handleMethods("pre");
       }
+      if (timer != null) timer.mark(FrameTimer.PRE);
 
       // use dmouseX/Y as previous mouse pos, since this is the
       // last position the mouse was in during the previous draw.
@@ -2481,6 +2599,7 @@ public class PApplet implements PConstants {
         //println("Calling draw()");
       draw();
         //println("Done calling draw()");
+      if (timer != null) timer.mark(FrameTimer.DRAW);
 
       // dmouseX/Y is updated only once per frame (unlike emouseX/Y)
       dmouseX = mouseX;
@@ -2491,12 +2610,24 @@ public class PApplet implements PConstants {
       // be before, since a call to background() would wipe
       // out anything that had been drawn so far.
       dequeueEvents();
+      if (timer != null) timer.mark(FrameTimer.EVENTS);
 
       handleMethods("draw");
+      if (timer != null) {
+        timer.mark(FrameTimer.DRAW_METHODS);
+        if (timer.isOverlay()) {
+          timer.drawOverlay(g);
+        }
+      }
 
       redraw = false;  // unset 'redraw' flag in case it was set
       // (only do this once draw() has run, not just setup())
     }
+    if (movieRecorder != null) {
+      // while still drawing, so OpenGL can read the frame it just rendered
+      // instead of starting another draw to get at the pixels
+      g.saveMovieFrame(movieRecorder);
+    }
     g.endDraw();
 
 //    if (pquality != g.smooth) {
@@ -2507,10 +2638,18 @@ public class PApplet implements PConstants {
       recorder.endDraw();
     }
     insideDraw = false;
+    if (timer != null) timer.mark(FrameTimer.RENDER);
 
     if (frameCount != 0) {
       handleMethods("post");
     }
+    if (timer != null) {
+      if (frameCount == 0) {
+        timer.skipFrame();  // don't count setup()
+      } else {
+        timer.mark(FrameTimer.POST);
+      }
+    }
 
     frameRateLastNanos = now;
     frameCount++;
@@ -2626,8 +2765,18 @@ public class PApplet implements PConstants {
   //////////////////////////////////////////////////////////////
 
 
-  BlockingQueue<Event> eventQueue = new LinkedBlockingQueue<>();
+  volatile InputEventQueue eventQueue = new InputEventQueue();
   private final Object eventQueueDequeueLock = new Object[0];
+  private final Consumer<Event> eventHandler = e -> {
+    switch (e.getFlavor()) {
+    case Event.MOUSE:
+      handleMouseEvent((MouseEvent) e);
+      break;
+    case Event.KEY:
+      handleKeyEvent((KeyEvent) e);
+      break;
+    }
+  };
 
 
   /**
@@ -2635,7 +2784,7 @@ public class PApplet implements PConstants {
    * the sketch is not currently looping.
    */
   public void postEvent(processing.event.Event pe) {
-    eventQueue.add(pe);
+    eventQueue.offer(pe);
 
     if (!looping) {
       dequeueEvents();
@@ -2645,16 +2794,38 @@ public class PApplet implements PConstants {
 
   protected void dequeueEvents() {
     synchronized (eventQueueDequeueLock) {
-      while (!eventQueue.isEmpty()) {
-        Event e = eventQueue.remove();
-        switch (e.getFlavor()) {
-        case Event.MOUSE:
-          handleMouseEvent((MouseEvent) e);
-          break;
-        case Event.KEY:
-          handleKeyEvent((KeyEvent) e);
-          break;
-        }
+      eventQueue.drain(eventHandler);
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * The queue that holds mouse and key events until they're handled at the
+   * end of draw(). Use it to coalesce moves and drags, or to see how many
+   * events have been dropped or coalesced.
+   */
+  public InputEventQueue getEventQueue() {
+    return eventQueue;
+  }
+
+
+  /**
+   * @nowebref
+   * Set how many events can wait to be handled before new moves and drags
+   * are dropped (1024 by default). Best called from settings() or setup(), since events
+   * that arrive while the queue is being replaced may be lost.
+   */
+  public void eventQueueCapacity(int capacity) {
+    synchronized (eventQueueDequeueLock) {
+      InputEventQueue queue = new InputEventQueue(capacity);
+      queue.setCoalescing(eventQueue.isCoalescing());
+      InputEventQueue previous = eventQueue;
+      eventQueue = queue;
+      // keep anything that was waiting, in order
+      Event e;
+      while ((e = previous.poll()) != null) {
+        queue.offer(e);
       }
     }
   }
@@ -2746,7 +2917,7 @@ public class PApplet implements PConstants {
       break;
     }
 
-    handleMethods("mouseEvent", new Object[] { event });
+    handleMethods("mouseEvent", event);
 
     switch (action) {
     case MouseEvent.PRESS:
@@ -3018,7 +3189,7 @@ public class PApplet implements PConstants {
     }
     */
 
-    handleMethods("keyEvent", new Object[] { event });
+    handleMethods("keyEvent", event);
 
     // if someone else wants to intercept the key, they should
     // set key to zero (or something besides the ESC).
@@ -3414,10 +3585,36 @@ public class PApplet implements PConstants {
    * @see PApplet#redraw()
    */
   public void frameRate(float fps) {
+    frameRateTarget = fps;
     surface.setFrameRate(fps);
   }
 
 
+  /**
+   * @nowebref
+   * Start timing each part of every frame (if it isn't already), and return
+   * the FrameTimer with the results. Use frameTimer().overlay(true) to show
+   * them on top of the sketch.
+   */
+  public FrameTimer frameTimer() {
+    FrameTimer timer = frameTimer;
+    if (timer == null) {
+      timer = new FrameTimer(this);
+      frameTimer = timer;
+    }
+    return timer;
+  }
+
+
+  /**
+   * @nowebref
+   * Stop timing frames, see frameTimer().
+   */
+  public void noFrameTimer() {
+    frameTimer = null;
+  }
+
+
   //////////////////////////////////////////////////////////////
 
 
@@ -3835,6 +4032,20 @@ public class PApplet implements PConstants {
       }
       // run dispose() methods registered by libraries
       handleMethods("dispose");
+
+      if (imageLoader != null) {
+        imageLoader.dispose();
+      }
+
+      // close up the movie so that it plays, if endRecord() wasn't called
+      if (movieRecorder != null) {
+        try {
+          movieRecorder.finish();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        movieRecorder = null;
+      }
     }
 
     if (platform == MACOSX) {
@@ -5104,7 +5315,70 @@ public class PApplet implements PConstants {
   // RANDOM NUMBERS
 
 
-  Random internalRandom;
+  // The generator isn't synchronized, so only the sketch's own thread (the
+  // one running setup() and draw(), or whichever thread used it first) may
+  // touch it. Other threads each get their own stream, created from
+  // threadRandomSeeds the first time they call random().
+  volatile RandomGenerator internalRandom = new RandomGenerator.Legacy();
+  volatile Thread internalRandomThread;
+  volatile ThreadLocal<RandomGenerator> threadRandom;
+  RandomGenerator threadRandomSeeds;
+  final Object randomLock = new Object();
+
+
+  /**
+   * Get the generator for the current thread.
+   */
+  final RandomGenerator currentRandom() {
+    if (Thread.currentThread() == internalRandomThread) {
+      return internalRandom;
+    }
+    ThreadLocal<RandomGenerator> local = threadRandom;
+    if (local != null) {
+      RandomGenerator generator = local.get();
+      if (generator != null) {
+        return generator;
+      }
+    }
+    synchronized (randomLock) {
+      if (internalRandomThread == null) {
+        internalRandomThread = Thread.currentThread();
+        return internalRandom;
+      }
+      if (threadRandom == null) {
+        threadRandom = new ThreadLocal<>();
+        threadRandomSeeds = new RandomGenerator.SplitMix64();
+      }
+      RandomGenerator generator =
+        internalRandom.create(threadRandomSeeds.nextLong());
+      threadRandom.set(generator);
+      return generator;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * Change the generator used by random() and randomGaussian(), for instance
+   * to the faster RandomGenerator.Xoroshiro128. The default produces the
+   * same numbers as earlier releases for a given randomSeed(). Threads other
+   * than the sketch's own will get new streams of the same kind.
+   */
+  public void randomGenerator(RandomGenerator generator) {
+    synchronized (randomLock) {
+      internalRandom = generator;
+      threadRandom = null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   */
+  public RandomGenerator getRandomGenerator() {
+    return currentRandom();
+  }
+
 
   /**
    *
@@ -5115,16 +5389,14 @@ public class PApplet implements PConstants {
       return 0;
     }
 
-    if (internalRandom == null) {
-      internalRandom = new Random();
-    }
+    RandomGenerator generator = currentRandom();
 
     // for some reason (rounding error?) Math.random() * 3
     // can sometimes return '3' (once in ~30 million tries)
     // so a check was added to avoid the inclusion of 'howbig'
     float value = 0;
     do {
-      value = internalRandom.nextFloat() * high;
+      value = generator.nextFloat() * high;
     } while (value == high);
     return value;
   }
@@ -5147,10 +5419,16 @@ public class PApplet implements PConstants {
    * @see PApplet#noise(float, float, float)
    */
   public final float randomGaussian() {
-    if (internalRandom == null) {
-      internalRandom = new Random();
-    }
-    return (float) internalRandom.nextGaussian();
+    return (float) currentRandom().nextGaussian();
+  }
+
+
+  /**
+   * @nowebref
+   * Fill an array with randomGaussian() values.
+   */
+  public final void randomGaussian(float[] out) {
+    currentRandom().nextGaussians(out, 0, out.length);
   }
 
 
@@ -5188,6 +5466,17 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * @nowebref
+   * Fill an array with random numbers from low up to (but not including)
+   * high. Gives the same numbers as calling random(low, high) for each
+   * element, but is much faster for large arrays.
+   */
+  public final void random(float[] out, float low, float high) {
+    currentRandom().nextFloats(out, 0, out.length, low, high);
+  }
+
+
  /**
    * ( begin auto-generated from randomSeed.xml )
    *
@@ -5204,10 +5493,12 @@ public class PApplet implements PConstants {
    * @see PApplet#noiseSeed(long)
    */
   public final void randomSeed(long seed) {
-    if (internalRandom == null) {
-      internalRandom = new Random();
+    synchronized (randomLock) {
+      internalRandom.setSeed(seed);
+      // other threads start new streams, which follow from the seed as well
+      threadRandom = new ThreadLocal<>();
+      threadRandomSeeds = new RandomGenerator.SplitMix64(seed);
     }
-    internalRandom.setSeed(seed);
   }
 
 
@@ -5238,11 +5529,27 @@ public class PApplet implements PConstants {
 
   // [toxi 031112]
   // new vars needed due to recent change of cos table in PGraphics
-  int perlin_TWOPI, perlin_PI;
-  float[] perlin_cosTable;
-  float[] perlin;
+  static final int PERLIN_PI = PGraphics.SINCOS_LENGTH / 2;
+
+  /**
+   * The smoothing curve, 0.5 * (1 - cos(t * PI)) for t from 0 to 1, taken
+   * from the same cosine table as before so that results don't change.
+   */
+  static final float[] PERLIN_FADE = new float[PERLIN_PI + 1];
+  static {
+    for (int i = 0; i <= PERLIN_PI; i++) {
+      PERLIN_FADE[i] = 0.5f*(1.0f-PGraphics.cosLUT[i]);
+    }
+  }
 
-  Random perlinRandom;
+  // Tables are filled right away (and again by noiseSeed()), so that noise()
+  // doesn't need to check for them on every call.
+  RandomGenerator perlinRandom = new RandomGenerator.Legacy();
+  float[] perlin = createPerlinTable(perlinRandom);
+
+  /** PERLIN or SIMPLEX, set with noiseMode() */
+  int noiseMode = PERLIN;
+  SimplexNoise simplexNoise;
 
 
   /**
@@ -5298,22 +5605,73 @@ public class PApplet implements PConstants {
    * @see PApplet#random(float,float)
    */
   public float noise(float x, float y, float z) {
-    if (perlin == null) {
-      if (perlinRandom == null) {
-        perlinRandom = new Random();
-      }
-      perlin = new float[PERLIN_SIZE + 1];
-      for (int i = 0; i < PERLIN_SIZE + 1; i++) {
-        perlin[i] = perlinRandom.nextFloat(); //(float)Math.random();
+    if (noiseMode == SIMPLEX) {
+      return simplexNoise.noise(x, y, z, perlin_octaves, perlin_amp_falloff);
+    }
+    return perlinNoise(perlin, perlin_octaves, perlin_amp_falloff, x, y, z);
+  }
+
+
+  /**
+   * @nowebref
+   * Fill an array with a grid of noise values, the same as calling
+   * noise(x0 + i*dx, y0 + j*dy) for each column i and row j, but much
+   * faster for large grids since rows are computed on several cores.
+   * @param out array of at least w*h values, filled one row after another
+   */
+  public void noise(float[] out, float x0, float y0,
+                    float dx, float dy, int w, int h) {
+    noise(out, x0, y0, 0, dx, dy, w, h);
+  }
+
+
+  /**
+   * @nowebref
+   * Fill an array with a grid of noise values taken from a slice of 3D noise,
+   * the same as calling noise(x0 + i*dx, y0 + j*dy, z) for each column i
+   * and row j. Moving z along with frameCount animates the whole grid.
+   */
+  public void noise(final float[] out, final float x0, final float y0,
+                    final float z, final float dx, final float dy,
+                    final int w, final int h) {
+    if (w < 0 || h < 0 || out.length < w * h) {
+      throw new IllegalArgumentException("noise() needs an array of " +
+                                         w + "x" + h + " values");
+    }
+    // read these once, in case they change while the rows are running
+    final int mode = noiseMode;
+    final float[] table = perlin;
+    final SimplexNoise simplex = simplexNoise;
+    final int octaves = perlin_octaves;
+    final float falloff = perlin_amp_falloff;
+
+    PImage.parallelRange(h, w * h, (start, stop) -> {
+      for (int j = start; j < stop; j++) {
+        float y = y0 + j*dy;
+        int offset = j*w;
+        if (mode == SIMPLEX) {
+          for (int i = 0; i < w; i++) {
+            out[offset + i] = simplex.noise(x0 + i*dx, y, z, octaves, falloff);
+          }
+        } else {
+          perlinRow(table, octaves, falloff, x0, dx, y, z, out, offset, w);
+        }
       }
-      // [toxi 031112]
-      // noise broke due to recent change of cos table in PGraphics
-      // this will take care of it
-      perlin_cosTable = PGraphics.cosLUT;
-      perlin_TWOPI = perlin_PI = PGraphics.SINCOS_LENGTH;
-      perlin_PI >>= 1;
+    });
+  }
+
+
+  static private float[] createPerlinTable(RandomGenerator random) {
+    float[] table = new float[PERLIN_SIZE + 1];
+    for (int i = 0; i < PERLIN_SIZE + 1; i++) {
+      table[i] = random.nextFloat(); //(float)Math.random();
     }
+    return table;
+  }
+
 
+  static private float perlinNoise(float[] perlin, int octaves, float falloff,
+                                   float x, float y, float z) {
     if (x<0) x=-x;
     if (y<0) y=-y;
     if (z<0) z=-z;
@@ -5329,7 +5687,7 @@ public class PApplet implements PConstants {
 
     float n1,n2,n3;
 
-    for (int i=0; i<perlin_octaves; i++) {
+    for (int i=0; i<octaves; i++) {
       int of=xi+(yi<<PERLIN_YWRAPB)+(zi<<PERLIN_ZWRAPB);
 
       rxf=noise_fsc(xf);
@@ -5351,7 +5709,7 @@ public class PApplet implements PConstants {
       n1 += noise_fsc(zf)*(n2-n1);
 
       r += n1*ampl;
-      ampl *= perlin_amp_falloff;
+      ampl *= falloff;
       xi<<=1; xf*=2;
       yi<<=1; yf*=2;
       zi<<=1; zf*=2;
@@ -5363,12 +5721,78 @@ public class PApplet implements PConstants {
     return r;
   }
 
+
+  /**
+   * Same as perlinNoise() for a row of x values, but the parts that only
+   * depend on y and z are worked out once for the whole row.
+   */
+  static private void perlinRow(float[] perlin, int octaves, float falloff,
+                                float x0, float dx, float y, float z,
+                                float[] out, int offset, int count) {
+    if (y<0) y=-y;
+    if (z<0) z=-z;
+
+    int[] yzOffset = new int[octaves];
+    float[] ryf = new float[octaves];
+    float[] rzf = new float[octaves];
+    int yi=(int)y, zi=(int)z;
+    float yf = y - yi;
+    float zf = z - zi;
+    for (int i=0; i<octaves; i++) {
+      yzOffset[i] = (yi<<PERLIN_YWRAPB)+(zi<<PERLIN_ZWRAPB);
+      ryf[i] = noise_fsc(yf);
+      rzf[i] = noise_fsc(zf);
+      yi<<=1; yf*=2;
+      zi<<=1; zf*=2;
+      if (yf>=1.0f) { yi++; yf--; }
+      if (zf>=1.0f) { zi++; zf--; }
+    }
+
+    for (int k = 0; k < count; k++) {
+      float x = x0 + k*dx;
+      if (x<0) x=-x;
+      int xi=(int)x;
+      float xf = x - xi;
+
+      float r=0;
+      float ampl=0.5f;
+
+      for (int i=0; i<octaves; i++) {
+        int of=xi+yzOffset[i];
+        float rxf=noise_fsc(xf);
+
+        float n1  = perlin[of&PERLIN_SIZE];
+        n1 += rxf*(perlin[(of+1)&PERLIN_SIZE]-n1);
+        float n2  = perlin[(of+PERLIN_YWRAP)&PERLIN_SIZE];
+        n2 += rxf*(perlin[(of+PERLIN_YWRAP+1)&PERLIN_SIZE]-n2);
+        n1 += ryf[i]*(n2-n1);
+
+        of += PERLIN_ZWRAP;
+        n2  = perlin[of&PERLIN_SIZE];
+        n2 += rxf*(perlin[(of+1)&PERLIN_SIZE]-n2);
+        float n3  = perlin[(of+PERLIN_YWRAP)&PERLIN_SIZE];
+        n3 += rxf*(perlin[(of+PERLIN_YWRAP+1)&PERLIN_SIZE]-n3);
+        n2 += ryf[i]*(n3-n2);
+
+        n1 += rzf[i]*(n2-n1);
+
+        r += n1*ampl;
+        ampl *= falloff;
+        xi<<=1; xf*=2;
+        if (xf>=1.0f) { xi++; xf--; }
+      }
+      out[offset + k] = r;
+    }
+  }
+
   // [toxi 031112]
   // now adjusts to the size of the cosLUT used via
   // the new variables, defined above
-  private float noise_fsc(float i) {
-    // using bagel's cosine table instead
-    return 0.5f*(1.0f-perlin_cosTable[(int)(i*perlin_PI)%perlin_TWOPI]);
+  static private float noise_fsc(float i) {
+    // i is always in 0..1 (except for infinite or NaN coordinates),
+    // so this is a straight lookup without a % on every call
+    int index = (int)(i*PERLIN_PI);
+    return PERLIN_FADE[(index >= 0 && index <= PERLIN_PI) ? index : 0];
   }
 
   // [toxi 040903]
@@ -5429,10 +5853,32 @@ public class PApplet implements PConstants {
    * @see PApplet#randomSeed(long)
    */
   public void noiseSeed(long seed) {
-    if (perlinRandom == null) perlinRandom = new Random();
     perlinRandom.setSeed(seed);
-    // force table reset after changing the random number seed [0122]
-    perlin = null;
+    // reset the tables after changing the random number seed [0122]
+    perlin = createPerlinTable(perlinRandom);
+    simplexNoise = null;
+    if (noiseMode == SIMPLEX) {
+      simplexNoise = new SimplexNoise(perlinRandom);
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * Choose the kind of noise returned by noise(). PERLIN (the default) is
+   * the classic noise that Processing has always used. SIMPLEX is smoother,
+   * without the faint grid-aligned artifacts, but takes several times longer.
+   * Both respond to noiseDetail() and noiseSeed() the same way.
+   * @param mode either PERLIN or SIMPLEX
+   */
+  public void noiseMode(int mode) {
+    if (mode != PERLIN && mode != SIMPLEX) {
+      throw new IllegalArgumentException("noiseMode() must be PERLIN or SIMPLEX");
+    }
+    if (mode == SIMPLEX && simplexNoise == null) {
+      simplexNoise = new SimplexNoise(perlinRandom);
+    }
+    noiseMode = mode;
   }
 
 
@@ -5556,6 +6002,14 @@ public class PApplet implements PConstants {
       return image;
     }
 
+    // Decode png and jpeg (or anything else registered with ImageDecoder)
+    // straight into the pixels array, without using ImageIO or AWT.
+    PImage decoded = loadImageDecoder(filename);
+    if (decoded != null) {
+      decoded.parent = this;
+      return decoded;
+    }
+
     // For jpeg, gif, and png, load them using createImage(),
     // because the javax.imageio code was found to be much slower.
     // http://dev.processing.org/bugs/show_bug.cgi?id=392
@@ -5637,9 +6091,33 @@ public class PApplet implements PConstants {
   }
 
 
-  static private final String REQUEST_IMAGE_THREAD_PREFIX = "requestImage";
-  // fixed-size thread pool used by requestImage()
-  ExecutorService requestImagePool;
+  /**
+   * Use one of the decoders from ImageDecoder to load an image. Returns null
+   * if none of them recognize the file, or if it could not be read, so that
+   * loadImage() can fall back to ImageIO and AWT (which also report errors).
+   */
+  protected PImage loadImageDecoder(String filename) {
+    InputStream input = createInput(filename);
+    if (input == null) {
+      return null;
+    }
+    try {
+      return ImageDecoder.decodeImage(input);
+
+    } catch (IOException | RuntimeException e) {
+      return null;
+
+    } finally {
+      try {
+        input.close();
+      } catch (IOException e) { }
+    }
+  }
+
+
+  static final String REQUEST_IMAGE_THREAD_PREFIX = "requestImage";
+  // loads images on background threads for requestImage()
+  ImageLoader imageLoader;
 
 
   public PImage requestImage(String filename) {
@@ -5670,42 +6148,41 @@ public class PApplet implements PConstants {
    * @see PApplet#loadImage(String, String)
    */
   public PImage requestImage(String filename, String extension) {
+    return requestImage(filename, extension, 0);
+  }
+
+
+  /**
+   * Same as requestImage(), but images with a higher priority are loaded
+   * before others that are still waiting. Use getImageLoader() to cancel
+   * requests, change their priority, or control the cache.
+   *
+   * @nowebref
+   * @param priority higher numbers are loaded first, the default is 0
+   */
+  public PImage requestImage(String filename, String extension, int priority) {
     // Make sure saving to this file completes before trying to load it
     // Has to be called on main thread, because P2D and P3D need GL functions
     if (g != null) {
       g.awaitAsyncSaveCompletion(filename);
     }
-    PImage vessel = createImage(0, 0, ARGB);
-
-    // if the image loading thread pool hasn't been created, create it
-    if (requestImagePool == null) {
-      ThreadFactory factory = new ThreadFactory() {
-        public Thread newThread(Runnable r) {
-          return new Thread(r, REQUEST_IMAGE_THREAD_PREFIX);
-        }
-      };
-      requestImagePool = Executors.newFixedThreadPool(4, factory);
-    }
-    requestImagePool.execute(() -> {
-      PImage actual = loadImage(filename, extension);
+    return getImageLoader().request(filename, extension, priority);
+  }
 
-      // An error message should have already printed
-      if (actual == null) {
-        vessel.width = -1;
-        vessel.height = -1;
 
-      } else {
-        vessel.width = actual.width;
-        vessel.height = actual.height;
-        vessel.format = actual.format;
-        vessel.pixels = actual.pixels;
-
-        vessel.pixelWidth = actual.width;
-        vessel.pixelHeight = actual.height;
-        vessel.pixelDensity = 1;
+  /**
+   * The ImageLoader used by requestImage(), which keeps recently loaded
+   * images in a cache, and can cancel requests that are no longer needed.
+   *
+   * @nowebref
+   */
+  public ImageLoader getImageLoader() {
+    synchronized (this) {
+      if (imageLoader == null) {
+        imageLoader = new ImageLoader(this, 4);
       }
-    });
-    return vessel;
+    }
+    return imageLoader;
   }
 
 
@@ -5993,8 +6470,12 @@ public class PApplet implements PConstants {
   }
 
 
-  // version that uses 'options' though there are currently no supported options
   /**
+   * Use "trim" to remove whitespace between elements as the file is read,
+   * and "stax" to read it with the streaming (StAX) parser, which is lighter
+   * on memory for large files. For files too large to load at all, see
+   * XML.stream(), which returns matching elements one at a time.
+   *
    * @nowebref
    */
   public XML loadXML(String filename, String options) {
@@ -6179,6 +6660,44 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Read a JSONArray of objects one element at a time, passing each to
+   * the consumer instead of loading the entire array. Use this for files
+   * that are too large to load all at once.
+   * <pre>
+   * loadJSONArray("people.json", person -&gt; {
+   *   println(person.getString("name"));
+   * });
+   * </pre>
+   * @nowebref
+   * @see JSONReader
+   */
+  public void loadJSONArray(String filename, Consumer<JSONObject> consumer) {
+    loadJSONArray(createReader(filename), consumer);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public void loadJSONArray(File file, Consumer<JSONObject> consumer) {
+    loadJSONArray(createReader(file), consumer);
+  }
+
+
+  static protected void loadJSONArray(BufferedReader reader,
+                                      Consumer<JSONObject> consumer) {
+    JSONReader json = new JSONReader(reader);
+    try {
+      for (JSONObject item : json.objects()) {
+        consumer.accept(item);
+      }
+    } finally {
+      json.close();
+    }
+  }
+
+
   /**
    * @webref output:files
    * @param json the JSONArray to save
@@ -6201,6 +6720,20 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Create a JSONWriter to save a large JSONArray or JSONObject a piece at
+   * a time, without building it in memory first. Close the writer when
+   * finished.
+   *
+   * @nowebref
+   * @param options "compact" and "indent=N", replace N with the number of spaces
+   * @see JSONWriter
+   */
+  public JSONWriter createJSONWriter(String filename, String options) {
+    return new JSONWriter(createWriter(filename), options);
+  }
+
+
 
 //  /**
 //   * @webref input:files
@@ -6237,6 +6770,11 @@ public class PApplet implements PConstants {
    * dictionary file can only be tab separated values (.tsv) and its extension
    * will be ignored. This option was added in Processing 2.0.2.
    *
+   * Binary tables may also use the "mapped" option, which maps the file into
+   * memory instead of reading it, and returns a read-only MappedTable. This
+   * makes very large tables available almost immediately, and only the parts
+   * that are actually used will be read from disk.
+   *
    * @param options may contain "header", "tsv", "csv", or "bin" separated by commas
    */
   public Table loadTable(String filename, String options) {
@@ -6251,6 +6789,25 @@ public class PApplet implements PConstants {
           return dictionary.typedParse(createInput(filename), optionStr);
         }
       }
+      boolean mapped = false;
+      boolean binary = false;
+      for (String opt : optionList) {
+        if (opt.equals("mapped")) {
+          mapped = true;
+        } else if (opt.equals("bin")) {
+          binary = true;
+        }
+      }
+      if (mapped && binary) {
+        File file = dataFile(filename);
+        if (file == null || !file.exists()) {
+          file = sketchFile(filename);
+        }
+        if (file.exists()) {
+          return new MappedTable(file);
+        }
+        // not a local file, so it'll be read into memory below
+      }
       InputStream input = createInput(filename);
       if (input == null) {
         System.err.println(filename + " does not exist or could not be read");
@@ -11109,12 +11666,16 @@ public class PApplet implements PConstants {
    * ( end auto-generated )
    *
    * @webref output:files
-   * @param renderer PDF or SVG
+   * @param renderer PDF, SVG, or MOVIE
    * @param filename filename for output
    * @see PApplet#endRecord()
    */
   public PGraphics beginRecord(String renderer, String filename) {
     filename = insertFrame(filename);
+    if (renderer.equals(MOVIE)) {
+      beginRecordMovie(filename);
+      return g;
+    }
     PGraphics rec = createGraphics(width, height, renderer, filename);
     beginRecord(rec);
     return rec;
@@ -11147,6 +11708,38 @@ public class PApplet implements PConstants {
       recorder.dispose();
       recorder = null;
     }
+    if (movieRecorder != null) {
+      MovieWriter movie = movieRecorder;
+      movieRecorder = null;
+      try {
+        movie.finish();
+      } catch (IOException e) {
+        throw new RuntimeException("Could not finish the movie " +
+                                   movie.getFile(), e);
+      }
+    }
+  }
+
+
+  /**
+   * @nowebref
+   * Add each frame that's drawn from now on to a QuickTime movie, until
+   * endRecord() is called. Frames are compressed (as PNG, so nothing is lost)
+   * in the background while the sketch keeps running, and played back at the
+   * rate set with frameRate(). Same as beginRecord(MOVIE, filename).
+   */
+  public MovieWriter beginRecordMovie(String filename) {
+    if (movieRecorder != null) {
+      endRecord();
+    }
+    try {
+      movieRecorder = new MovieWriter(saveFile(filename),
+                                      g.pixelWidth, g.pixelHeight,
+                                      frameRateTarget);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not create the movie " + filename, e);
+    }
+    return movieRecorder;
   }
 
 
@@ -76,6 +76,9 @@ public interface PConstants {
   static final String SVG = "processing.svg.PGraphicsSVG";
   static final String DXF = "processing.dxf.RawDXF";
 
+  // not a renderer, records each frame of the sketch into a QuickTime movie
+  static final String MOVIE = "processing.core.MovieWriter";
+
   // platform IDs for PApplet.platform
 
   static final int OTHER   = 0;
@@ -251,6 +254,19 @@ public interface PConstants {
   static final int DILATE    = 18;
 
 
+  // resize() filters, along with BOX
+
+  static final int BILINEAR = 71;
+  static final int BICUBIC  = 72;
+  static final int LANCZOS  = 73;
+
+
+  // noiseMode() types
+
+  static final int PERLIN  = 81;
+  static final int SIMPLEX = 82;
+
+
   // blend mode keyword definitions
   // @see processing.core.PImage#blendColor(int,int,int)
 
@@ -523,5 +539,14 @@ public interface PConstants {
   static final int DISABLE_ASYNC_SAVEFRAME    =  12;
   static final int ENABLE_ASYNC_SAVEFRAME     = -12;
 
-  static final int HINT_COUNT                 =  13;
+  static final int DISABLE_FAST_TESSELLATION  =  13;
+  static final int ENABLE_FAST_TESSELLATION   = -13;
+
+  static final int ENABLE_PARALLEL_TESSELLATION  =  14;
+  static final int DISABLE_PARALLEL_TESSELLATION = -14;
+
+  static final int ENABLE_FAST_DEPTH_SORT     =  15;
+  static final int DISABLE_FAST_DEPTH_SORT    = -15;
+
+  static final int HINT_COUNT                 =  16;
 }
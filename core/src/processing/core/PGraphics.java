@@ -1127,6 +1127,13 @@ public class PGraphics extends PImage implements PConstants {
    * lines in P3D and OPENGL. This can slow performance considerably, and the
    * algorithm is not yet perfect. Restore the default with hint(DISABLE_DEPTH_SORT).
    * <br/> <br/>
+   * hint(ENABLE_FAST_DEPTH_SORT) - Used with ENABLE_DEPTH_SORT, sorts the
+   * triangles by depth and then only fixes the order of triangles that
+   * overlap their nearest neighbors in that order, instead of comparing
+   * each one with all the others that it overlaps. Much faster with tens of
+   * thousands of triangles, but more likely to leave some in the wrong
+   * order. Use hint(DISABLE_FAST_DEPTH_SORT) to go back to the exact sort.
+   * <br/> <br/>
    * hint(DISABLE_OPENGL_ERROR_REPORT) - Speeds up the P3D renderer setting
    * by not checking for errors while running. Undo with hint(ENABLE_OPENGL_ERROR_REPORT).
    * <br/> <br/>
@@ -1149,6 +1156,18 @@ public class PGraphics extends PImage implements PConstants {
    * is written to the drive. This was the default behavior in 3.0b7 and before.
    * To enable, call hint(ENABLE_ASYNC_SAVEFRAME).
    * <br/> <br/>
+   * hint(DISABLE_FAST_TESSELLATION) - P2D/P3D only - Polygons are split into
+   * triangles with a built-in triangulator unless their edges cross, which is
+   * much faster than the GLU tessellator that's used otherwise. Use this hint
+   * to send every polygon through GLU, and hint(ENABLE_FAST_TESSELLATION) to
+   * restore the default.
+   * <br/> <br/>
+   * hint(ENABLE_PARALLEL_TESSELLATION) - P2D/P3D only - The children of a
+   * GROUP PShape are tessellated on several threads at once, which speeds up
+   * large groups on multicore machines. The result is the same as with one
+   * thread. Disabled by default, use hint(DISABLE_PARALLEL_TESSELLATION) to
+   * turn it off again.
+   * <br/> <br/>
    * As of release 0149, unhint() has been removed in favor of adding
    * additional ENABLE/DISABLE constants to reset the default behavior. This
    * prevents the double negatives, and also reinforces which hints can be
@@ -8423,6 +8442,32 @@ public class PGraphics extends PImage implements PConstants {
   protected void processImageBeforeAsyncSave(PImage image) { }
 
 
+  /**
+   * Copy the current frame into one of the async saver's targets and hand
+   * it to the movie, which compresses it on the saver's threads. Blocks
+   * when all the targets are busy, so a sketch that draws faster than the
+   * movie can be compressed slows down instead of piling up frames.
+   */
+  protected boolean saveMovieFrame(MovieWriter movie) { // ignore
+    if (asyncImageSaver == null) {
+      asyncImageSaver = new AsyncImageSaver();
+    }
+
+    loadPixels();
+    // The primary surface is opaque on screen, even if its pixels (on
+    // OpenGL, the framebuffer alpha) say otherwise, same as in save()
+    int frameFormat = primaryGraphics ? RGB : format;
+    PImage target = asyncImageSaver.getAvailableTarget(pixelWidth, pixelHeight,
+                                                       frameFormat);
+    if (target == null) return false;
+    int count = PApplet.min(pixels.length, target.pixels.length);
+    System.arraycopy(pixels, 0, target.pixels, 0, count);
+    asyncImageSaver.encodeTargetAsync(this, target, movie);
+
+    return true;
+  }
+
+
   /**
    * If there is running async save task for this file, blocks until it completes.
    * Has to be called on main thread because OpenGL overrides this and calls GL.
@@ -8565,6 +8610,34 @@ public class PGraphics extends PImage implements PConstants {
     }
 
 
+    /**
+     * Compress a target as the next frame of a movie. Frames are compressed
+     * in parallel, the movie puts them back in order as they're written.
+     */
+    public void encodeTargetAsync(final PGraphics renderer, final PImage target, // ignore
+                                  final MovieWriter movie) {
+      final int frame = movie.nextFrame();
+      try {
+        saveExecutor.submit(() -> {
+          byte[] data = null;
+          try {
+            renderer.processImageBeforeAsyncSave(target);
+            data = movie.encodeFrame(target);
+          } catch (Exception e) {
+            movie.frameFailed(e);
+          } finally {
+            targetPool.offer(target);
+            movie.writeFrame(frame, data);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // the executor service was probably shut down
+        targetPool.offer(target);
+        movie.writeFrame(frame, null);
+      }
+    }
+
+
     public void awaitAsyncSaveCompletion(final File file) { // ignore
       Future<?> taskWithSameFilename;
       synchronized (runningTasksLock) {
@@ -28,6 +28,8 @@ import java.awt.*;
 import java.awt.image.*;
 import java.io.*;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.imageio.*;
 import javax.imageio.metadata.*;
@@ -145,13 +147,6 @@ public class PImage implements PConstants, Cloneable {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  // private fields
-  private int fracU, ifU, fracV, ifV, u1, u2, v1, v2, sX, sY, iw, iw1, ih1;
-  private int ul, ll, ur, lr, cUL, cLL, cUR, cLR;
-  private int srcXOffset, srcYOffset;
-  private int r, g, b, a;
-  private int[] srcBuffer;
-
   // fixed point precision is limited to 15 bits!!
   static final int PRECISIONB = 15;
   static final int PRECISIONF = 1 << PRECISIONB;
@@ -165,6 +160,23 @@ public class PImage implements PConstants, Cloneable {
   private int[] blurKernel;
   private int[][] blurMult;
 
+  /**
+   * Images with fewer pixels than this are filtered on a single thread,
+   * since splitting up the work costs more than it saves.
+   */
+  static final int PARALLEL_PIXELS = 1 << 16;
+
+  /**
+   * Scratch space for filter(), reused between calls by each thread that
+   * uses it (usually just the animation thread). Only images up to
+   * FILTER_BUFFER_PIXELS use it, so that filtering one huge image doesn't
+   * keep a huge array around for as long as the thread lives.
+   */
+  static private final ThreadLocal<int[]> filterBuffer = new ThreadLocal<>();
+
+  /** Largest scratch buffer that's kept between calls (16 MB). */
+  static final int FILTER_BUFFER_PIXELS = 1 << 22;
+
   // colour component bitmasks (moved from PConstants in 2.0b7)
   public static final int ALPHA_MASK = 0xff000000;
   public static final int RED_MASK   = 0x00ff0000;
@@ -547,6 +559,20 @@ public class PImage implements PConstants, Cloneable {
    * @see PImage#get(int, int, int, int)
    */
   public void resize(int w, int h) {  // ignore
+    resize(w, h, BILINEAR);
+  }
+
+
+  /**
+   * Resize the image using a specific filter. BOX averages the pixels that
+   * are covered by each new pixel (or repeats them when enlarging), BILINEAR
+   * is a little smoother, and BICUBIC and LANCZOS are sharper but slower,
+   * and may produce slight halos around hard edges.
+   *
+   * @nowebref
+   * @param mode BOX, BILINEAR, BICUBIC, or LANCZOS
+   */
+  public void resize(int w, int h, int mode) {  // ignore
     if (w <= 0 && h <= 0) {
       throw new IllegalArgumentException("width or height must be > 0 for resize");
     }
@@ -559,95 +585,24 @@ public class PImage implements PConstants, Cloneable {
       h = (int) (height * diff);
     }
 
-    BufferedImage img =
-      shrinkImage((BufferedImage) getNative(), w*pixelDensity, h*pixelDensity);
-
-    PImage temp = new PImage(img);
-    this.pixelWidth = temp.width;
-    this.pixelHeight = temp.height;
-
-    // Get the resized pixel array
-    this.pixels = temp.pixels;
-
-    this.width = pixelWidth / pixelDensity;
-    this.height = pixelHeight / pixelDensity;
+    int targetWidth = Math.max(1, w*pixelDensity);
+    int targetHeight = Math.max(1, h*pixelDensity);
+    if (targetWidth != pixelWidth || targetHeight != pixelHeight) {
+      this.pixels = ImageResampler.resample(pixels, pixelWidth, pixelHeight,
+                                            targetWidth, targetHeight,
+                                            format, mode);
+      this.pixelWidth = targetWidth;
+      this.pixelHeight = targetHeight;
+
+      this.width = pixelWidth / pixelDensity;
+      this.height = pixelHeight / pixelDensity;
+    }
 
     // Mark the pixels array as altered
     updatePixels();
   }
 
 
-  // Adapted from getFasterScaledInstance() method from page 111 of
-  // "Filthy Rich Clients" by Chet Haase and Romain Guy
-  // Additional modifications and simplifications have been added,
-  // plus a fix to deal with an infinite loop if images are expanded.
-  // http://code.google.com/p/processing/issues/detail?id=1463
-  static private BufferedImage shrinkImage(BufferedImage img,
-                                           int targetWidth, int targetHeight) {
-    int type = (img.getTransparency() == Transparency.OPAQUE) ?
-      BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
-    BufferedImage outgoing = img;
-    BufferedImage scratchImage = null;
-    Graphics2D g2 = null;
-    int prevW = outgoing.getWidth();
-    int prevH = outgoing.getHeight();
-    boolean isTranslucent = img.getTransparency() != Transparency.OPAQUE;
-
-    // Use multi-step technique: start with original size, then scale down in
-    // multiple passes with drawImage() until the target size is reached
-    int w = img.getWidth();
-    int h = img.getHeight();
-
-    do {
-      if (w > targetWidth) {
-        w /= 2;
-        // if this is the last step, do the exact size
-        if (w < targetWidth) {
-          w = targetWidth;
-        }
-      } else if (targetWidth >= w) {
-        w = targetWidth;
-      }
-      if (h > targetHeight) {
-        h /= 2;
-        if (h < targetHeight) {
-          h = targetHeight;
-        }
-      } else if (targetHeight >= h) {
-        h = targetHeight;
-      }
-      if (scratchImage == null || isTranslucent) {
-        // Use a single scratch buffer for all iterations and then copy
-        // to the final, correctly-sized image before returning
-        scratchImage = new BufferedImage(w, h, type);
-        g2 = scratchImage.createGraphics();
-      }
-      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-      g2.drawImage(outgoing, 0, 0, w, h, 0, 0, prevW, prevH, null);
-      prevW = w;
-      prevH = h;
-      outgoing = scratchImage;
-    } while (w != targetWidth || h != targetHeight);
-
-    if (g2 != null) {
-      g2.dispose();
-    }
-
-    // If we used a scratch buffer that is larger than our target size,
-    // create an image of the right size and copy the results into it
-    if (targetWidth != outgoing.getWidth() ||
-        targetHeight != outgoing.getHeight()) {
-      scratchImage = new BufferedImage(targetWidth, targetHeight, type);
-      g2 = scratchImage.createGraphics();
-      g2.drawImage(outgoing, 0, 0, null);
-      g2.dispose();
-      outgoing = scratchImage;
-    }
-    return outgoing;
-  }
-
-
   //////////////////////////////////////////////////////////////
 
   // MARKING IMAGE AS LOADED / FOR USE IN RENDERERS
@@ -1015,33 +970,39 @@ public class PImage implements PConstants, Cloneable {
       case GRAY:
         if (format == ALPHA) {
           // for an alpha image, convert it to an opaque grayscale
-          for (int i = 0; i < pixels.length; i++) {
-            int col = 255 - pixels[i];
-            pixels[i] = 0xff000000 | (col << 16) | (col << 8) | col;
-          }
+          parallelRange(pixels.length, (start, stop) -> {
+            for (int i = start; i < stop; i++) {
+              int col = 255 - pixels[i];
+              pixels[i] = 0xff000000 | (col << 16) | (col << 8) | col;
+            }
+          });
           format = RGB;
 
         } else {
           // Converts RGB image data into grayscale using
           // weighted RGB components, and keeps alpha channel intact.
           // [toxi 040115]
-          for (int i = 0; i < pixels.length; i++) {
-            int col = pixels[i];
-            // luminance = 0.3*red + 0.59*green + 0.11*blue
-            // 0.30 * 256 =  77
-            // 0.59 * 256 = 151
-            // 0.11 * 256 =  28
-            int lum = (77*(col>>16&0xff) + 151*(col>>8&0xff) + 28*(col&0xff))>>8;
-            pixels[i] = (col & ALPHA_MASK) | lum<<16 | lum<<8 | lum;
-          }
+          parallelRange(pixels.length, (start, stop) -> {
+            for (int i = start; i < stop; i++) {
+              int col = pixels[i];
+              // luminance = 0.3*red + 0.59*green + 0.11*blue
+              // 0.30 * 256 =  77
+              // 0.59 * 256 = 151
+              // 0.11 * 256 =  28
+              int lum = (77*(col>>16&0xff) + 151*(col>>8&0xff) + 28*(col&0xff))>>8;
+              pixels[i] = (col & ALPHA_MASK) | lum<<16 | lum<<8 | lum;
+            }
+          });
         }
         break;
 
       case INVERT:
-        for (int i = 0; i < pixels.length; i++) {
-          //pixels[i] = 0xff000000 |
-          pixels[i] ^= 0xffffff;
-        }
+        parallelRange(pixels.length, (start, stop) -> {
+          for (int i = start; i < stop; i++) {
+            //pixels[i] = 0xff000000 |
+            pixels[i] ^= 0xffffff;
+          }
+        });
         break;
 
       case POSTERIZE:
@@ -1049,9 +1010,11 @@ public class PImage implements PConstants, Cloneable {
         "instead of filter(POSTERIZE)");
 
       case OPAQUE:
-        for (int i = 0; i < pixels.length; i++) {
-          pixels[i] |= 0xff000000;
-        }
+        parallelRange(pixels.length, (start, stop) -> {
+          for (int i = start; i < stop; i++) {
+            pixels[i] |= 0xff000000;
+          }
+        });
         format = RGB;
         break;
 
@@ -1156,30 +1119,34 @@ public class PImage implements PConstants, Cloneable {
           throw new RuntimeException("Levels must be between 2 and 255 for " +
                                      "filter(POSTERIZE, levels)");
         }
-        int levels1 = levels - 1;
-        for (int i = 0; i < pixels.length; i++) {
-          int rlevel = (pixels[i] >> 16) & 0xff;
-          int glevel = (pixels[i] >> 8) & 0xff;
-          int blevel = pixels[i] & 0xff;
-          rlevel = (((rlevel * levels) >> 8) * 255) / levels1;
-          glevel = (((glevel * levels) >> 8) * 255) / levels1;
-          blevel = (((blevel * levels) >> 8) * 255) / levels1;
-          pixels[i] = ((0xff000000 & pixels[i]) |
-                       (rlevel << 16) |
-                       (glevel << 8) |
-                       blevel);
-        }
+        final int levels1 = levels - 1;
+        parallelRange(pixels.length, (start, stop) -> {
+          for (int i = start; i < stop; i++) {
+            int rlevel = (pixels[i] >> 16) & 0xff;
+            int glevel = (pixels[i] >> 8) & 0xff;
+            int blevel = pixels[i] & 0xff;
+            rlevel = (((rlevel * levels) >> 8) * 255) / levels1;
+            glevel = (((glevel * levels) >> 8) * 255) / levels1;
+            blevel = (((blevel * levels) >> 8) * 255) / levels1;
+            pixels[i] = ((0xff000000 & pixels[i]) |
+                         (rlevel << 16) |
+                         (glevel << 8) |
+                         blevel);
+          }
+        });
         break;
 
       case THRESHOLD:  // greater than or equal to the threshold
-        int thresh = (int) (param * 255);
-        for (int i = 0; i < pixels.length; i++) {
-          int max = Math.max((pixels[i] & RED_MASK) >> 16,
-                             Math.max((pixels[i] & GREEN_MASK) >> 8,
-                                      (pixels[i] & BLUE_MASK)));
-          pixels[i] = (pixels[i] & ALPHA_MASK) |
-            ((max < thresh) ? 0x000000 : 0xffffff);
-        }
+        final int thresh = (int) (param * 255);
+        parallelRange(pixels.length, (start, stop) -> {
+          for (int i = start; i < stop; i++) {
+            int max = Math.max((pixels[i] & RED_MASK) >> 16,
+                               Math.max((pixels[i] & GREEN_MASK) >> 8,
+                                        (pixels[i] & BLUE_MASK)));
+            pixels[i] = (pixels[i] & ALPHA_MASK) |
+              ((max < thresh) ? 0x000000 : 0xffffff);
+          }
+        });
         break;
 
         // [toxi20050728] added new filters
@@ -1237,89 +1204,41 @@ public class PImage implements PConstants, Cloneable {
 
 
   protected void blurAlpha(float r) {
-    int sum, cb;
-    int read, ri, ym, ymi, bk0;
-    int[] b2 = new int[pixels.length];
-    int yi = 0;
+    blur(r, ALPHA);
+  }
 
-    buildBlurKernel(r);
 
-    for (int y = 0; y < pixelHeight; y++) {
-      for (int x = 0; x < pixelWidth; x++) {
-        //cb = cg = cr = sum = 0;
-        cb = sum = 0;
-        read = x - blurRadius;
-        if (read<0) {
-          bk0=-read;
-          read=0;
-        } else {
-          if (read >= pixelWidth)
-            break;
-          bk0=0;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (read >= pixelWidth)
-            break;
-          int c = pixels[read + yi];
-          int[] bm = blurMult[i];
-          cb += bm[c & BLUE_MASK];
-          sum += blurKernel[i];
-          read++;
-        }
-        ri = yi + x;
-        b2[ri] = cb / sum;
-      }
-      yi += pixelWidth;
-    }
+  protected void blurRGB(float r) {
+    blur(r, RGB);
+  }
 
-    yi = 0;
-    ym = -blurRadius;
-    ymi = ym * pixelWidth;
 
-    for (int y = 0; y < pixelHeight; y++) {
-      for (int x = 0; x < pixelWidth; x++) {
-        cb = sum = 0;
-        if (ym < 0) {
-          bk0 = ri = -ym;
-          read = x;
-        } else {
-          if (ym >= pixelHeight)
-            break;
-          bk0 = 0;
-          ri = ym;
-          read = x + ymi;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (ri >= pixelHeight)
-            break;
-          int[] bm = blurMult[i];
-          cb += bm[b2[read]];
-          sum += blurKernel[i];
-          ri++;
-          read += pixelWidth;
-        }
-        pixels[x+yi] = (cb/sum);
-      }
-      yi += pixelWidth;
-      ymi += pixelWidth;
-      ym++;
-    }
+  protected void blurARGB(float r) {
+    blur(r, ARGB);
   }
 
 
-  protected void blurRGB(float r) {
-    int sum, cr, cg, cb; //, k;
-    int /*pixel,*/ read, ri, /*roff,*/ ym, ymi, /*riw,*/ bk0;
-    int[] r2 = new int[pixels.length];
-    int[] g2 = new int[pixels.length];
-    int[] b2 = new int[pixels.length];
-    int yi = 0;
-
+  /**
+   * Two pass (horizontal, then vertical) blur for ALPHA, RGB, or ARGB
+   * pixels. The horizontal pass stores each channel (all 0..255) packed
+   * into a single int of the scratch buffer, and the vertical pass reads
+   * them back, so that each row can be handled on its own thread.
+   */
+  private void blur(float r, final int kind) {
     buildBlurKernel(r);
+    final int[] b2 = getFilterBuffer();
+    parallelRange(pixelHeight, (start, stop) -> blurRows(b2, kind, start, stop));
+    parallelRange(pixelHeight, (start, stop) -> blurColumns(b2, kind, start, stop));
+  }
+
 
-    for (int y = 0; y < pixelHeight; y++) {
+  private void blurRows(int[] b2, int kind, int start, int stop) {
+    int sum, cr, cg, cb, ca;
+    int read, bk0;
+    for (int y = start; y < stop; y++) {
+      int yi = y * pixelWidth;
       for (int x = 0; x < pixelWidth; x++) {
-        cb = cg = cr = sum = 0;
+        cb = cg = cr = ca = sum = 0;
         read = x - blurRadius;
         if (read < 0) {
           bk0 = -read;
@@ -1336,27 +1255,34 @@ public class PImage implements PConstants, Cloneable {
           }
           int c = pixels[read + yi];
           int[] bm = blurMult[i];
-          cr += bm[(c & RED_MASK) >> 16];
-          cg += bm[(c & GREEN_MASK) >> 8];
-          cb += bm[c & BLUE_MASK];
+          if (kind == ALPHA) {
+            cb += bm[c & BLUE_MASK];
+          } else {
+            if (kind == ARGB) {
+              ca += bm[(c & ALPHA_MASK) >>> 24];
+            }
+            cr += bm[(c & RED_MASK) >> 16];
+            cg += bm[(c & GREEN_MASK) >> 8];
+            cb += bm[c & BLUE_MASK];
+          }
           sum += blurKernel[i];
           read++;
         }
-        ri = yi + x;
-        r2[ri] = cr / sum;
-        g2[ri] = cg / sum;
-        b2[ri] = cb / sum;
+        b2[yi + x] = (ca/sum)<<24 | (cr/sum)<<16 | (cg/sum)<<8 | (cb/sum);
       }
-      yi += pixelWidth;
     }
+  }
 
-    yi = 0;
-    ym = -blurRadius;
-    ymi = ym * pixelWidth;
 
-    for (int y = 0; y < pixelHeight; y++) {
+  private void blurColumns(int[] b2, int kind, int start, int stop) {
+    int sum, cr, cg, cb, ca;
+    int read, ri, bk0;
+    for (int y = start; y < stop; y++) {
+      int yi = y * pixelWidth;
+      int ym = y - blurRadius;
+      int ymi = ym * pixelWidth;
       for (int x = 0; x < pixelWidth; x++) {
-        cb = cg = cr = sum = 0;
+        cb = cg = cr = ca = sum = 0;
         if (ym < 0) {
           bk0 = ri = -ym;
           read = x;
@@ -1372,121 +1298,71 @@ public class PImage implements PConstants, Cloneable {
           if (ri >= pixelHeight) {
             break;
           }
+          int c = b2[read];
           int[] bm = blurMult[i];
-          cr += bm[r2[read]];
-          cg += bm[g2[read]];
-          cb += bm[b2[read]];
+          if (kind == ALPHA) {
+            cb += bm[c];
+          } else {
+            if (kind == ARGB) {
+              ca += bm[c >>> 24];
+            }
+            cr += bm[(c >> 16) & 0xff];
+            cg += bm[(c >> 8) & 0xff];
+            cb += bm[c & 0xff];
+          }
           sum += blurKernel[i];
           ri++;
           read += pixelWidth;
         }
-        pixels[x+yi] = 0xff000000 | (cr/sum)<<16 | (cg/sum)<<8 | (cb/sum);
+        if (kind == ALPHA) {
+          pixels[x+yi] = (cb/sum);
+        } else if (kind == ARGB) {
+          pixels[x+yi] = (ca/sum)<<24 | (cr/sum)<<16 | (cg/sum)<<8 | (cb/sum);
+        } else {
+          pixels[x+yi] = 0xff000000 | (cr/sum)<<16 | (cg/sum)<<8 | (cb/sum);
+        }
       }
-      yi += pixelWidth;
-      ymi += pixelWidth;
-      ym++;
     }
   }
 
 
-  protected void blurARGB(float r) {
-    int sum, cr, cg, cb, ca;
-    int /*pixel,*/ read, ri, /*roff,*/ ym, ymi, /*riw,*/ bk0;
-    int wh = pixels.length;
-    int[] r2 = new int[wh];
-    int[] g2 = new int[wh];
-    int[] b2 = new int[wh];
-    int[] a2 = new int[wh];
-    int yi = 0;
+  /**
+   * Generic dilate/erode filter using luminance values
+   * as decision factor. [toxi 050728]
+   */
+  protected void dilate() {  // formerly dilate(false)
+    dilate(false);
+  }
 
-    buildBlurKernel(r);
 
-    for (int y = 0; y < pixelHeight; y++) {
-      for (int x = 0; x < pixelWidth; x++) {
-        cb = cg = cr = ca = sum = 0;
-        read = x - blurRadius;
-        if (read < 0) {
-          bk0 = -read;
-          read = 0;
-        } else {
-          if (read >= pixelWidth) {
-            break;
-          }
-          bk0=0;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (read >= pixelWidth) {
-            break;
-          }
-          int c = pixels[read + yi];
-          int[] bm=blurMult[i];
-          ca += bm[(c & ALPHA_MASK) >>> 24];
-          cr += bm[(c & RED_MASK) >> 16];
-          cg += bm[(c & GREEN_MASK) >> 8];
-          cb += bm[c & BLUE_MASK];
-          sum += blurKernel[i];
-          read++;
-        }
-        ri = yi + x;
-        a2[ri] = ca / sum;
-        r2[ri] = cr / sum;
-        g2[ri] = cg / sum;
-        b2[ri] = cb / sum;
-      }
-      yi += pixelWidth;
-    }
+  protected void erode() {  // formerly dilate(true)
+    dilate(true);
+  }
 
-    yi = 0;
-    ym = -blurRadius;
-    ymi = ym * pixelWidth;
 
-    for (int y = 0; y < pixelHeight; y++) {
-      for (int x = 0; x < pixelWidth; x++) {
-        cb = cg = cr = ca = sum = 0;
-        if (ym < 0) {
-          bk0 = ri = -ym;
-          read = x;
-        } else {
-          if (ym >= pixelHeight) {
-            break;
-          }
-          bk0 = 0;
-          ri = ym;
-          read = x + ymi;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (ri >= pixelHeight) {
-            break;
-          }
-          int[] bm=blurMult[i];
-          ca += bm[a2[read]];
-          cr += bm[r2[read]];
-          cg += bm[g2[read]];
-          cb += bm[b2[read]];
-          sum += blurKernel[i];
-          ri++;
-          read += pixelWidth;
-        }
-        pixels[x+yi] = (ca/sum)<<24 | (cr/sum)<<16 | (cg/sum)<<8 | (cb/sum);
+  private void dilate(final boolean erode) {
+    final int[] outgoing = getFilterBuffer();
+    parallelRange(pixels.length / pixelWidth, (start, stop) -> {
+      if (erode) {
+        // dilate (grow dark areas)
+        dilateRows(outgoing, start, stop, -1);
+      } else {
+        // erosion (grow light areas)
+        dilateRows(outgoing, start, stop, 1);
       }
-      yi += pixelWidth;
-      ymi += pixelWidth;
-      ym++;
-    }
+    });
+    System.arraycopy(outgoing, 0, pixels, 0, pixels.length);
   }
 
 
   /**
-   * Generic dilate/erode filter using luminance values
-   * as decision factor. [toxi 050728]
+   * Replace each pixel with whichever of its four neighbors has the highest
+   * (direction 1) or lowest (direction -1) luminance, if it's beyond its own.
    */
-  protected void dilate() {  // formerly dilate(false)
-    int index = 0;
+  private void dilateRows(int[] outgoing, int start, int stop, int direction) {
     int maxIndex = pixels.length;
-    int[] outgoing = new int[maxIndex];
-
-    // erosion (grow light areas)
-    while (index < maxIndex) {
+    for (int y = start; y < stop; y++) {
+      int index = y * pixelWidth;
       int curRowIndex = index;
       int maxRowIndex = index + pixelWidth;
       while (index < maxRowIndex) {
@@ -1514,17 +1390,17 @@ public class PImage implements PConstants, Cloneable {
         int colDown = pixels[idxDown];
         int colRight = pixels[idxRight];
 
-        // compute luminance
-        int currLum =
-          77*(orig>>16&0xff) + 151*(orig>>8&0xff) + 28*(orig&0xff);
-        int lumLeft =
-          77*(colLeft>>16&0xff) + 151*(colLeft>>8&0xff) + 28*(colLeft&0xff);
-        int lumRight =
-          77*(colRight>>16&0xff) + 151*(colRight>>8&0xff) + 28*(colRight&0xff);
-        int lumUp =
-          77*(colUp>>16&0xff) + 151*(colUp>>8&0xff) + 28*(colUp&0xff);
-        int lumDown =
-          77*(colDown>>16&0xff) + 151*(colDown>>8&0xff) + 28*(colDown&0xff);
+        // compute luminance (negated when looking for the darkest)
+        int currLum = direction *
+          (77*(orig>>16&0xff) + 151*(orig>>8&0xff) + 28*(orig&0xff));
+        int lumLeft = direction *
+          (77*(colLeft>>16&0xff) + 151*(colLeft>>8&0xff) + 28*(colLeft&0xff));
+        int lumRight = direction *
+          (77*(colRight>>16&0xff) + 151*(colRight>>8&0xff) + 28*(colRight&0xff));
+        int lumUp = direction *
+          (77*(colUp>>16&0xff) + 151*(colUp>>8&0xff) + 28*(colUp&0xff));
+        int lumDown = direction *
+          (77*(colDown>>16&0xff) + 151*(colDown>>8&0xff) + 28*(colDown&0xff));
 
         if (lumLeft > currLum) {
           result = colLeft;
@@ -1545,76 +1421,76 @@ public class PImage implements PConstants, Cloneable {
         outgoing[index++] = result;
       }
     }
-    System.arraycopy(outgoing, 0, pixels, 0, maxIndex);
   }
 
 
-  protected void erode() {  // formerly dilate(true)
-    int index = 0;
-    int maxIndex = pixels.length;
-    int[] outgoing = new int[maxIndex];
+  /** Scratch array at least as large as pixels[], see filterBuffer. */
+  private int[] getFilterBuffer() {
+    if (pixels.length > FILTER_BUFFER_PIXELS) {
+      return new int[pixels.length];
+    }
+    int[] buffer = filterBuffer.get();
+    if (buffer == null || buffer.length < pixels.length) {
+      buffer = new int[pixels.length];
+      filterBuffer.set(buffer);
+    }
+    return buffer;
+  }
 
-    // dilate (grow dark areas)
-    while (index < maxIndex) {
-      int curRowIndex = index;
-      int maxRowIndex = index + pixelWidth;
-      while (index < maxRowIndex) {
-        int orig = pixels[index];
-        int result = orig;
-        int idxLeft = index - 1;
-        int idxRight = index + 1;
-        int idxUp = index - pixelWidth;
-        int idxDown = index + pixelWidth;
-        if (idxLeft < curRowIndex) {
-          idxLeft = index;
-        }
-        if (idxRight >= maxRowIndex) {
-          idxRight = index;
-        }
-        if (idxUp < 0) {
-          idxUp = index;
-        }
-        if (idxDown >= maxIndex) {
-          idxDown = index;
-        }
 
-        int colUp = pixels[idxUp];
-        int colLeft = pixels[idxLeft];
-        int colDown = pixels[idxDown];
-        int colRight = pixels[idxRight];
+  /** Work on a range of rows or pixels, see parallelRange(). */
+  interface RangeTask {
+    void run(int start, int stop);
+  }
 
-        // compute luminance
-        int currLum =
-          77*(orig>>16&0xff) + 151*(orig>>8&0xff) + 28*(orig&0xff);
-        int lumLeft =
-          77*(colLeft>>16&0xff) + 151*(colLeft>>8&0xff) + 28*(colLeft&0xff);
-        int lumRight =
-          77*(colRight>>16&0xff) + 151*(colRight>>8&0xff) + 28*(colRight&0xff);
-        int lumUp =
-          77*(colUp>>16&0xff) + 151*(colUp>>8&0xff) + 28*(colUp&0xff);
-        int lumDown =
-          77*(colDown>>16&0xff) + 151*(colDown>>8&0xff) + 28*(colDown&0xff);
-
-        if (lumLeft < currLum) {
-          result = colLeft;
-          currLum = lumLeft;
-        }
-        if (lumRight < currLum) {
-          result = colRight;
-          currLum = lumRight;
-        }
-        if (lumUp < currLum) {
-          result = colUp;
-          currLum = lumUp;
-        }
-        if (lumDown < currLum) {
-          result = colDown;
-          currLum = lumDown;
-        }
-        outgoing[index++] = result;
+
+  /**
+   * Split 0..count into pieces and run them on the common fork-join pool,
+   * or run it all on this thread if the image is small.
+   */
+  void parallelRange(int count, RangeTask task) {
+    parallelRange(count, pixels.length, task);
+  }
+
+
+  /**
+   * Same as above, for work that touches pixelCount pixels in all, which
+   * decides whether it's worth using more than one thread.
+   */
+  static void parallelRange(int count, int pixelCount, RangeTask task) {
+    int cores = ForkJoinPool.getCommonPoolParallelism();
+    if (pixelCount < PARALLEL_PIXELS || cores < 2 || count < 2) {
+      task.run(0, count);
+    } else {
+      int grain = Math.max(1, count / (cores * 4));
+      ForkJoinPool.commonPool().invoke(new RangeAction(task, 0, count, grain));
+    }
+  }
+
+
+  static class RangeAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final RangeTask task;
+    final int start, stop, grain;
+
+    RangeAction(RangeTask task, int start, int stop, int grain) {
+      this.task = task;
+      this.start = start;
+      this.stop = stop;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+      if (stop - start <= grain) {
+        task.run(start, stop);
+      } else {
+        int middle = (start + stop) >>> 1;
+        invokeAll(new RangeAction(task, start, middle, grain),
+                  new RangeAction(task, middle, stop, grain));
       }
     }
-    System.arraycopy(outgoing, 0, pixels, 0, maxIndex);
   }
 
 
@@ -1924,14 +1800,17 @@ public class PImage implements PConstants, Cloneable {
 
   /**
    * Internal blitter/resizer/copier from toxi.
-   * Uses bilinear filtering if smooth() has been enabled
-   * 'mode' determines the blending mode used in the process.
+   * Uses bilinear filtering, and 'mode' determines the blending mode used
+   * in the process. Each row is sampled from the source into a buffer, then
+   * blended into the destination by a loop written for that one mode, so
+   * the mode isn't checked for every pixel. Rows of large regions are split
+   * across cores.
    */
   private void blit_resize(PImage img,
                            int srcX1, int srcY1, int srcX2, int srcY2,
-                           int[] destPixels, int screenW, int screenH,
+                           final int[] destPixels, final int screenW, int screenH,
                            int destX1, int destY1, int destX2, int destY2,
-                           int mode) {
+                           final int mode) {
     if (srcX1 < 0) srcX1 = 0;
     if (srcY1 < 0) srcY1 = 0;
     if (srcX2 > img.pixelWidth) srcX2 = img.pixelWidth;
@@ -1942,12 +1821,6 @@ public class PImage implements PConstants, Cloneable {
     int destW = destX2 - destX1;
     int destH = destY2 - destY1;
 
-    boolean smooth = true;  // may as well go with the smoothing these days
-
-    if (!smooth) {
-      srcW++; srcH++;
-    }
-
     if (destW <= 0 || destH <= 0 ||
         srcW <= 0 || srcH <= 0 ||
         destX1 >= screenW || destY1 >= screenH ||
@@ -1955,11 +1828,11 @@ public class PImage implements PConstants, Cloneable {
       return;
     }
 
-    int dx = (int) (srcW / (float) destW * PRECISIONF);
-    int dy = (int) (srcH / (float) destH * PRECISIONF);
+    final int dx = (int) (srcW / (float) destW * PRECISIONF);
+    final int dy = (int) (srcH / (float) destH * PRECISIONF);
 
-    srcXOffset = destX1 < 0 ? -destX1 * dx : srcX1 * PRECISIONF;
-    srcYOffset = destY1 < 0 ? -destY1 * dy : srcY1 * PRECISIONF;
+    final int srcXOffset = destX1 < 0 ? -destX1 * dx : srcX1 * PRECISIONF;
+    final int srcYOffset = destY1 < 0 ? -destY1 * dy : srcY1 * PRECISIONF;
 
     if (destX1 < 0) {
       destW += destX1;
@@ -1970,497 +1843,189 @@ public class PImage implements PConstants, Cloneable {
       destY1 = 0;
     }
 
-    destW = min(destW, screenW - destX1);
-    destH = min(destH, screenH - destY1);
-
-    int destOffset = destY1 * screenW + destX1;
-    srcBuffer = img.pixels;
-
-    if (smooth) {
-      // use bilinear filtering
-      iw = img.pixelWidth;
-      iw1 = img.pixelWidth - 1;
-      ih1 = img.pixelHeight - 1;
-
-      switch (mode) {
-
-      case BLEND:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            // davbol  - renamed old blend_multiply to blend_blend
-            destPixels[destOffset + x] =
-              blend_blend(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case ADD:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_add_pin(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case SUBTRACT:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_sub_pin(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case LIGHTEST:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_lightest(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case DARKEST:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_darkest(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case REPLACE:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] = filter_bilinear();
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case DIFFERENCE:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_difference(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case EXCLUSION:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_exclusion(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case MULTIPLY:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_multiply(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case SCREEN:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_screen(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case OVERLAY:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_overlay(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
+    final int width = min(destW, screenW - destX1);
+    final int height = min(destH, screenH - destY1);
+
+    final int destOffset = destY1 * screenW + destX1;
+    final int[] srcBuffer = img.pixels;
+    final int iw = img.pixelWidth;
+    final int ih1 = img.pixelHeight - 1;
+
+    parallelRange(height, width * height, (start, stop) -> {
+      int[] row = (mode == REPLACE) ? null : new int[width];
+      for (int y = start; y < stop; y++) {
+        int offset = destOffset + y * screenW;
+        int sy = srcYOffset + y * dy;
+        if (row == null) {
+          filterRow(srcBuffer, iw, ih1, srcXOffset, dx, sy,
+                    destPixels, offset, width);
+        } else {
+          filterRow(srcBuffer, iw, ih1, srcXOffset, dx, sy, row, 0, width);
+          blendRow(mode, destPixels, offset, row, width);
         }
-        break;
+      }
+    });
+  }
 
-      case HARD_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_hard_light(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
 
-      case SOFT_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_soft_light(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+  /**
+   * Bilinear sample one row of the source, starting at (sx, sy) and moving
+   * dx for each pixel, all in fixed point with PRECISIONB bits.
+   */
+  static private void filterRow(int[] srcBuffer, int iw, int ih1,
+                                int sx, int dx, int sy,
+                                int[] out, int offset, int count) {
+    int fracV = sy & PREC_MAXVAL;
+    int ifV = PREC_MAXVAL - fracV + 1;
+    int v1 = (sy >> PRECISIONB) * iw;
+    int v2 = min((sy >> PRECISIONB) + 1, ih1) * iw;
+    int iw1 = iw - 1;
+
+    if (fracV == 0 && dx == PRECISIONF && (sx & PREC_MAXVAL) == 0) {
+      // lined up exactly with the source pixels, the filter is a no-op
+      System.arraycopy(srcBuffer, v1 + (sx >> PRECISIONB), out, offset, count);
+      return;
+    }
 
-      // davbol - proposed 2007-01-09
-      case DODGE:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_dodge(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    for (int x = 0; x < count; x++) {
+      int fracU = sx & PREC_MAXVAL;
+      int ifU = PREC_MAXVAL - fracU + 1;
+      int ul = (ifU * ifV) >> PRECISIONB;
+      int ll = ifU - ul;
+      int ur = ifV - ul;
+      int lr = PREC_MAXVAL + 1 - ul - ll - ur;
+      int u1 = (sx >> PRECISIONB);
+      int u2 = min(u1 + 1, iw1);
+
+      // get color values of the 4 neighbouring texels
+      int cUL = srcBuffer[v1 + u1];
+      int cUR = srcBuffer[v1 + u2];
+      int cLL = srcBuffer[v2 + u1];
+      int cLR = srcBuffer[v2 + u2];
+
+      int r = ((ul*((cUL&RED_MASK)>>16) + ll*((cLL&RED_MASK)>>16) +
+                ur*((cUR&RED_MASK)>>16) + lr*((cLR&RED_MASK)>>16))
+               << PREC_RED_SHIFT) & RED_MASK;
+
+      int g = ((ul*(cUL&GREEN_MASK) + ll*(cLL&GREEN_MASK) +
+                ur*(cUR&GREEN_MASK) + lr*(cLR&GREEN_MASK))
+               >>> PRECISIONB) & GREEN_MASK;
+
+      int b = (ul*(cUL&BLUE_MASK) + ll*(cLL&BLUE_MASK) +
+               ur*(cUR&BLUE_MASK) + lr*(cLR&BLUE_MASK))
+        >>> PRECISIONB;
+
+      int a = ((ul*((cUL&ALPHA_MASK)>>>24) + ll*((cLL&ALPHA_MASK)>>>24) +
+                ur*((cUR&ALPHA_MASK)>>>24) + lr*((cLR&ALPHA_MASK)>>>24))
+               << PREC_ALPHA_SHIFT) & ALPHA_MASK;
+
+      out[offset + x] = a | r | g | b;
+      sx += dx;
+    }
+  }
 
-      case BURN:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_burn(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
 
+  /**
+   * Blend a row of source pixels into the destination. There's a separate
+   * loop for each mode, so that each one is a simple loop over two arrays
+   * that the JIT can inline the blend function into and unroll.
+   */
+  static private void blendRow(int mode, int[] dest, int offset,
+                               int[] src, int count) {
+    switch (mode) {
+    case BLEND:
+      for (int x = 0; x < count; x++) {
+        // davbol  - renamed old blend_multiply to blend_blend
+        dest[offset + x] = blend_blend(dest[offset + x], src[x]);
       }
+      break;
 
-    } else {
-      // nearest neighbour scaling (++fast!)
-      switch (mode) {
-
-      case BLEND:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            // davbol - renamed old blend_multiply to blend_blend
-            destPixels[destOffset + x] =
-              blend_blend(destPixels[destOffset + x],
-                          srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case ADD:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_add_pin(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case ADD:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_add_pin(dest[offset + x], src[x]);
+      }
+      break;
 
-      case SUBTRACT:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_sub_pin(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case SUBTRACT:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_sub_pin(dest[offset + x], src[x]);
+      }
+      break;
 
-      case LIGHTEST:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_lightest(destPixels[destOffset + x],
-                             srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case LIGHTEST:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_lightest(dest[offset + x], src[x]);
+      }
+      break;
 
-      case DARKEST:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_darkest(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case DARKEST:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_darkest(dest[offset + x], src[x]);
+      }
+      break;
 
-      case REPLACE:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] = srcBuffer[sY + (sX >> PRECISIONB)];
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case REPLACE:
+      System.arraycopy(src, 0, dest, offset, count);
+      break;
 
-      case DIFFERENCE:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_difference(destPixels[destOffset + x],
-                               srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case EXCLUSION:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_exclusion(destPixels[destOffset + x],
-                              srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case DIFFERENCE:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_difference(dest[offset + x], src[x]);
+      }
+      break;
 
-      case MULTIPLY:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_multiply(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case EXCLUSION:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_exclusion(dest[offset + x], src[x]);
+      }
+      break;
 
-      case SCREEN:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_screen(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case MULTIPLY:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_multiply(dest[offset + x], src[x]);
+      }
+      break;
 
-      case OVERLAY:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_overlay(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case SCREEN:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_screen(dest[offset + x], src[x]);
+      }
+      break;
 
-      case HARD_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_hard_light(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case OVERLAY:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_overlay(dest[offset + x], src[x]);
+      }
+      break;
 
-      case SOFT_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_soft_light(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case HARD_LIGHT:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_hard_light(dest[offset + x], src[x]);
+      }
+      break;
 
-      // davbol - proposed 2007-01-09
-      case DODGE:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_dodge(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case SOFT_LIGHT:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_soft_light(dest[offset + x], src[x]);
+      }
+      break;
 
-      case BURN:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_burn(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    // davbol - proposed 2007-01-09
+    case DODGE:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_dodge(dest[offset + x], src[x]);
+      }
+      break;
 
+    case BURN:
+      for (int x = 0; x < count; x++) {
+        dest[offset + x] = blend_burn(dest[offset + x], src[x]);
       }
+      break;
     }
   }
 
 
-  private void filter_new_scanline() {
-    sX = srcXOffset;
-    fracV = srcYOffset & PREC_MAXVAL;
-    ifV = PREC_MAXVAL - fracV + 1;
-    v1 = (srcYOffset >> PRECISIONB) * iw;
-    v2 = min((srcYOffset >> PRECISIONB) + 1, ih1) * iw;
-  }
-
-
-  private int filter_bilinear() {
-    fracU = sX & PREC_MAXVAL;
-    ifU = PREC_MAXVAL - fracU + 1;
-    ul = (ifU * ifV) >> PRECISIONB;
-    ll = ifU - ul;
-    ur = ifV - ul;
-    lr = PREC_MAXVAL + 1 - ul - ll - ur;
-    u1 = (sX >> PRECISIONB);
-    u2 = min(u1 + 1, iw1);
-
-    // get color values of the 4 neighbouring texels
-    cUL = srcBuffer[v1 + u1];
-    cUR = srcBuffer[v1 + u2];
-    cLL = srcBuffer[v2 + u1];
-    cLR = srcBuffer[v2 + u2];
-
-    r = ((ul*((cUL&RED_MASK)>>16) + ll*((cLL&RED_MASK)>>16) +
-          ur*((cUR&RED_MASK)>>16) + lr*((cLR&RED_MASK)>>16))
-         << PREC_RED_SHIFT) & RED_MASK;
-
-    g = ((ul*(cUL&GREEN_MASK) + ll*(cLL&GREEN_MASK) +
-          ur*(cUR&GREEN_MASK) + lr*(cLR&GREEN_MASK))
-         >>> PRECISIONB) & GREEN_MASK;
-
-    b = (ul*(cUL&BLUE_MASK) + ll*(cLL&BLUE_MASK) +
-         ur*(cUR&BLUE_MASK) + lr*(cLR&BLUE_MASK))
-           >>> PRECISIONB;
-
-    a = ((ul*((cUL&ALPHA_MASK)>>>24) + ll*((cLL&ALPHA_MASK)>>>24) +
-          ur*((cUR&ALPHA_MASK)>>>24) + lr*((cLR&ALPHA_MASK)>>>24))
-         << PREC_ALPHA_SHIFT) & ALPHA_MASK;
-
-    return a | r | g | b;
-  }
-
-
 
   //////////////////////////////////////////////////////////////
 
@@ -3204,6 +2769,36 @@ int testFunction(int dst, int src) {
   }
 
 
+  /**
+   * Save as PNG using the settings from PNGEncoder.getDefault().
+   */
+  protected boolean savePNG(OutputStream output) {
+    try {
+      PNGEncoder.getDefault().write(output, pixels, pixelWidth, pixelHeight, format);
+      return true;
+
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return false;
+  }
+
+
+  /**
+   * Save in the QOI format, which is quick to write but larger than PNG.
+   */
+  protected boolean saveQOI(OutputStream output) {
+    try {
+      QOIEncoder.write(output, pixels, pixelWidth, pixelHeight, format);
+      return true;
+
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return false;
+  }
+
+
   /**
    * Use ImageIO functions from Java 1.4 and later to handle image save.
    * Various formats are supported, typically jpeg, png, bmp, and wbmp.
@@ -3362,6 +2957,11 @@ int testFunction(int dst, int src) {
    * extension, or don't include an extension. When no extension is used,
    * the extension .tif will be added to the file name.
    * <p>
+   * PNG files are written by a built-in encoder (see PNGEncoder for its
+   * compression settings) instead of ImageIO. The .qoi extension saves in
+   * the QOI format, which is lossless and much faster to write than PNG,
+   * and can be read by loadImage().
+   * <p>
    * The ImageIO API claims to support wbmp files, however they probably
    * require a black and white image. Basic testing produced a zero-length
    * file with no error.
@@ -3397,6 +2997,14 @@ int testFunction(int dst, int src) {
     try {
       OutputStream os = null;
 
+      String lower = filename.toLowerCase();
+      if (lower.endsWith(".png") || lower.endsWith(".qoi")) {
+        os = new BufferedOutputStream(new FileOutputStream(filename), 1 << 16);
+        success = lower.endsWith(".png") ? savePNG(os) : saveQOI(os);
+        os.close();
+        return success;
+      }
+
       if (saveImageFormats == null) {
         saveImageFormats = javax.imageio.ImageIO.getWriterFormatNames();
       }
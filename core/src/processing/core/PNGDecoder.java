@@ -0,0 +1,579 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.*;
+
+
+/**
+ * PNG decoder that inflates the image data a row at a time and converts
+ * each row straight into pixels[], so the only full-size buffer is the
+ * image itself. Handles all color types and bit depths, transparency (tRNS)
+ * and interlacing. 16-bit samples are reduced to their high byte, and the
+ * gamma and color profile chunks are ignored, same as the AWT decoder.
+ */
+class PNGDecoder extends ImageDecoder {
+  static final byte[] SIGNATURE = {
+    (byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'
+  };
+
+  static final int IHDR = 0x49484452;
+  static final int PLTE = 0x504c5445;
+  static final int TRNS = 0x74524e53;
+  static final int IDAT = 0x49444154;
+  static final int IEND = 0x49454e44;
+
+  static final int GRAY = 0;
+  static final int TRUECOLOR = 2;
+  static final int INDEXED = 3;
+  static final int GRAY_ALPHA = 4;
+  static final int TRUECOLOR_ALPHA = 6;
+
+  // Adam7 interlacing: offset and spacing of the pixels in each pass
+  static final int[] PASS_X  = { 0, 4, 0, 2, 0, 1, 0 };
+  static final int[] PASS_Y  = { 0, 0, 4, 0, 2, 0, 1 };
+  static final int[] PASS_DX = { 8, 8, 4, 4, 2, 2, 1 };
+  static final int[] PASS_DY = { 8, 8, 8, 4, 4, 2, 2 };
+
+  /**
+   * Largest image that the built-in decoders will read, in pixels. Bigger
+   * (or corrupt) headers throw an IOException, so that loadImage() falls
+   * back to AWT instead of running out of memory.
+   */
+  static final long MAX_PIXELS = 1L << 28;
+
+  // reused between images by each thread doing the loading
+  static private final ThreadLocal<Inflater> inflaters = new ThreadLocal<>();
+  static private final ThreadLocal<byte[][]> rowBuffers = new ThreadLocal<>();
+
+  int width, height;
+  int bitDepth, colorType;
+  boolean interlaced;
+  int channels;
+
+  /** Palette as ARGB colors, for INDEXED images. */
+  int[] palette;
+
+  /** Transparent sample values for GRAY or TRUECOLOR, or -1. */
+  int transGray = -1;
+  int transRed = -1, transGreen, transBlue;
+
+
+  @Override
+  public boolean accepts(byte[] header, int length) {
+    if (length < SIGNATURE.length) {
+      return false;
+    }
+    for (int i = 0; i < SIGNATURE.length; i++) {
+      if (header[i] != SIGNATURE[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  @Override
+  public PImage decode(InputStream input) throws IOException {
+    // the fields are per-image, so work on a fresh copy of this decoder
+    return new PNGDecoder().read(new DataInputStream(input));
+  }
+
+
+  private PImage read(DataInputStream input) throws IOException {
+    byte[] signature = new byte[SIGNATURE.length];
+    input.readFully(signature);
+    if (!Arrays.equals(signature, SIGNATURE)) {
+      throw new IOException("Not a PNG file");
+    }
+    byte[] trans = null;
+    while (true) {
+      int length = input.readInt();
+      int type = input.readInt();
+      if (length < 0) {
+        throw new IOException("Bad PNG chunk length " + length);
+      }
+      if (type == IHDR) {
+        if (length != 13) {
+          throw new IOException("Bad PNG header length " + length);
+        }
+        DataInputStream header =
+          new DataInputStream(new ByteArrayInputStream(readChunk(input, type, length)));
+        width = header.readInt();
+        height = header.readInt();
+        bitDepth = header.readUnsignedByte();
+        colorType = header.readUnsignedByte();
+        int compression = header.readUnsignedByte();
+        int filter = header.readUnsignedByte();
+        interlaced = header.readUnsignedByte() == 1;
+        if (width <= 0 || height <= 0 || compression != 0 || filter != 0) {
+          throw new IOException("Unsupported PNG header");
+        }
+        channels = channelCount(colorType);
+        checkBitDepth();
+        checkSize();
+
+      } else if (type == PLTE) {
+        if (length > 256 * 3 || length % 3 != 0) {
+          throw new IOException("Bad PNG palette length " + length);
+        }
+        byte[] data = readChunk(input, type, length);
+        palette = new int[256];
+        Arrays.fill(palette, 0xff000000);
+        for (int i = 0; i < length / 3; i++) {
+          palette[i] = 0xff000000 |
+            (data[i*3] & 0xff) << 16 | (data[i*3+1] & 0xff) << 8 | (data[i*3+2] & 0xff);
+        }
+
+      } else if (type == TRNS) {
+        if (length > 256) {
+          throw new IOException("Bad PNG transparency length " + length);
+        }
+        trans = readChunk(input, type, length);
+
+      } else if (type == IDAT) {
+        if (width == 0) {
+          throw new IOException("PNG image data found before its header");
+        }
+        setTransparency(trans);
+        return readImage(new ChunkStream(input, length));
+
+      } else if (type == IEND) {
+        throw new IOException("No image data found in the PNG file");
+
+      } else {
+        skipChunk(input, type, length);
+      }
+    }
+  }
+
+
+  private void checkBitDepth() throws IOException {
+    boolean valid;
+    switch (colorType) {
+      case GRAY:
+        valid = bitDepth == 1 || bitDepth == 2 || bitDepth == 4 ||
+          bitDepth == 8 || bitDepth == 16;
+        break;
+      case INDEXED:
+        valid = bitDepth == 1 || bitDepth == 2 || bitDepth == 4 ||
+          bitDepth == 8;
+        break;
+      default:
+        valid = bitDepth == 8 || bitDepth == 16;
+    }
+    if (!valid) {
+      throw new IOException("Bad PNG bit depth " + bitDepth +
+                            " for color type " + colorType);
+    }
+  }
+
+
+  /** Make sure the image and its row buffers can be allocated at all. */
+  private void checkSize() throws IOException {
+    long pixelCount = (long) width * height;
+    long rowBytes = ((long) width * channels * bitDepth + 7) >> 3;
+    long memory = 4 * pixelCount + 2 * rowBytes;
+    if (pixelCount > MAX_PIXELS || rowBytes >= Integer.MAX_VALUE ||
+        memory > Runtime.getRuntime().maxMemory()) {
+      throw new IOException("PNG image is too large: " +
+                            width + "x" + height);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static CRC32 startCRC(int type) {
+    CRC32 crc = new CRC32();
+    crc.update(type >>> 24);
+    crc.update(type >>> 16);
+    crc.update(type >>> 8);
+    crc.update(type);
+    return crc;
+  }
+
+
+  static void checkCRC(DataInputStream input, CRC32 crc) throws IOException {
+    if (input.readInt() != (int) crc.getValue()) {
+      throw new IOException("Bad CRC in PNG chunk");
+    }
+  }
+
+
+  /** Read the data of a chunk and check it against the CRC after it. */
+  static byte[] readChunk(DataInputStream input,
+                          int type, int length) throws IOException {
+    byte[] data = new byte[length];
+    input.readFully(data);
+    CRC32 crc = startCRC(type);
+    crc.update(data, 0, length);
+    checkCRC(input, crc);
+    return data;
+  }
+
+
+  /** Skip over a chunk that isn't needed, still checking its CRC. */
+  static void skipChunk(DataInputStream input,
+                        int type, int length) throws IOException {
+    CRC32 crc = startCRC(type);
+    byte[] buffer = new byte[Math.min(length, 1 << 13)];
+    while (length > 0) {
+      int count = Math.min(length, buffer.length);
+      input.readFully(buffer, 0, count);
+      crc.update(buffer, 0, count);
+      length -= count;
+    }
+    checkCRC(input, crc);
+  }
+
+
+  static int channelCount(int colorType) throws IOException {
+    switch (colorType) {
+      case GRAY: return 1;
+      case TRUECOLOR: return 3;
+      case INDEXED: return 1;
+      case GRAY_ALPHA: return 2;
+      case TRUECOLOR_ALPHA: return 4;
+    }
+    throw new IOException("Unknown PNG color type " + colorType);
+  }
+
+
+  private void setTransparency(byte[] trans) throws IOException {
+    if (colorType == INDEXED) {
+      if (palette == null) {
+        throw new IOException("PNG palette is missing");
+      }
+      if (trans != null) {
+        for (int i = 0; i < Math.min(256, trans.length); i++) {
+          palette[i] = (palette[i] & 0xffffff) | (trans[i] & 0xff) << 24;
+        }
+      }
+    } else if (trans != null) {
+      if (colorType == GRAY && trans.length >= 2) {
+        transGray = (trans[0] & 0xff) << 8 | (trans[1] & 0xff);
+      } else if (colorType == TRUECOLOR && trans.length >= 6) {
+        transRed = (trans[0] & 0xff) << 8 | (trans[1] & 0xff);
+        transGreen = (trans[2] & 0xff) << 8 | (trans[3] & 0xff);
+        transBlue = (trans[4] & 0xff) << 8 | (trans[5] & 0xff);
+      }
+    }
+  }
+
+
+  private PImage readImage(ChunkStream idat) throws IOException {
+    PImage image = new PImage(width, height, PConstants.RGB);
+    int[] pixels = image.pixels;
+    int bpp = Math.max(1, (channels * bitDepth) >> 3);  // bytes per pixel
+    int maxRowBytes = (int) (((long) width * channels * bitDepth + 7) >> 3);
+
+    Inflater inflater = inflaters.get();
+    if (inflater == null) {
+      inflater = new Inflater();
+      inflaters.set(inflater);
+    } else {
+      inflater.reset();
+    }
+    byte[][] rows = rowBuffers.get();
+    if (rows == null || rows[0].length < maxRowBytes) {
+      rows = new byte[][] { new byte[maxRowBytes], new byte[maxRowBytes] };
+      rowBuffers.set(rows);
+    }
+    byte[] row = rows[0];
+    byte[] prev = rows[1];
+
+    InputStream data = new InflaterInputStream(idat, inflater, 1 << 15);
+    int passCount = interlaced ? 7 : 1;
+    for (int pass = 0; pass < passCount; pass++) {
+      int x0 = 0, y0 = 0, dx = 1, dy = 1;
+      if (interlaced) {
+        x0 = PASS_X[pass];
+        y0 = PASS_Y[pass];
+        dx = PASS_DX[pass];
+        dy = PASS_DY[pass];
+      }
+      int passWidth = (width - x0 + dx - 1) / dx;
+      int passHeight = (height - y0 + dy - 1) / dy;
+      if (passWidth <= 0 || passHeight <= 0) {
+        continue;
+      }
+      int rowBytes = (int) (((long) passWidth * channels * bitDepth + 7) >> 3);
+      Arrays.fill(prev, 0, rowBytes, (byte) 0);
+
+      for (int py = 0; py < passHeight; py++) {
+        int filter = data.read();
+        if (filter == -1) {
+          throw new EOFException("Unexpected end of PNG image data");
+        }
+        readFully(data, row, 0, rowBytes);
+        unfilter(filter, row, prev, rowBytes, bpp);
+        convertRow(row, pixels, (y0 + py*dy) * width + x0, dx, passWidth);
+
+        byte[] temp = row;
+        row = prev;
+        prev = temp;
+      }
+    }
+    idat.finish();
+    if (isTransparent()) {
+      image.checkAlpha();
+    }
+    return image;
+  }
+
+
+  private boolean isTransparent() {
+    return colorType == GRAY_ALPHA || colorType == TRUECOLOR_ALPHA ||
+      colorType == INDEXED || transGray != -1 || transRed != -1;
+  }
+
+
+  static void unfilter(int filter, byte[] row, byte[] prev,
+                       int length, int bpp) throws IOException {
+    switch (filter) {
+      case 0:  // none
+        break;
+
+      case 1:  // sub
+        for (int i = bpp; i < length; i++) {
+          row[i] += row[i - bpp];
+        }
+        break;
+
+      case 2:  // up
+        for (int i = 0; i < length; i++) {
+          row[i] += prev[i];
+        }
+        break;
+
+      case 3:  // average
+        for (int i = 0; i < bpp; i++) {
+          row[i] += (prev[i] & 0xff) >> 1;
+        }
+        for (int i = bpp; i < length; i++) {
+          row[i] += ((row[i - bpp] & 0xff) + (prev[i] & 0xff)) >> 1;
+        }
+        break;
+
+      case 4:  // paeth
+        for (int i = 0; i < bpp; i++) {
+          row[i] += prev[i];
+        }
+        for (int i = bpp; i < length; i++) {
+          int a = row[i - bpp] & 0xff;
+          int b = prev[i] & 0xff;
+          int c = prev[i - bpp] & 0xff;
+          int pa = Math.abs(b - c);
+          int pb = Math.abs(a - c);
+          int pc = Math.abs(a + b - 2*c);
+          if (pa <= pb && pa <= pc) {
+            row[i] += a;
+          } else if (pb <= pc) {
+            row[i] += b;
+          } else {
+            row[i] += c;
+          }
+        }
+        break;
+
+      default:
+        throw new IOException("Unknown PNG filter type " + filter);
+    }
+  }
+
+
+  /**
+   * Convert one row of samples to ARGB, writing count pixels starting at
+   * pixels[index], with step pixels between each (for interlaced images).
+   */
+  private void convertRow(byte[] row, int[] pixels,
+                          int index, int step, int count) {
+    switch (colorType) {
+      case GRAY:
+        if (bitDepth == 16) {
+          for (int i = 0; i < count; i++) {
+            int value = (row[i*2] & 0xff) << 8 | (row[i*2+1] & 0xff);
+            int gray = value >> 8;
+            int alpha = (value == transGray) ? 0 : 0xff000000;
+            pixels[index] = alpha | gray << 16 | gray << 8 | gray;
+            index += step;
+          }
+        } else {
+          int mask = (1 << bitDepth) - 1;
+          for (int i = 0; i < count; i++) {
+            int value = sample(row, i, mask);
+            int gray = value * 255 / mask;
+            int alpha = (value == transGray) ? 0 : 0xff000000;
+            pixels[index] = alpha | gray << 16 | gray << 8 | gray;
+            index += step;
+          }
+        }
+        break;
+
+      case INDEXED:
+        if (bitDepth == 8) {
+          for (int i = 0; i < count; i++) {
+            pixels[index] = palette[row[i] & 0xff];
+            index += step;
+          }
+        } else {
+          int mask = (1 << bitDepth) - 1;
+          for (int i = 0; i < count; i++) {
+            pixels[index] = palette[sample(row, i, mask)];
+            index += step;
+          }
+        }
+        break;
+
+      case TRUECOLOR:
+        if (bitDepth == 16) {
+          for (int i = 0, j = 0; i < count; i++, j += 6) {
+            int r = (row[j] & 0xff) << 8 | (row[j+1] & 0xff);
+            int g = (row[j+2] & 0xff) << 8 | (row[j+3] & 0xff);
+            int b = (row[j+4] & 0xff) << 8 | (row[j+5] & 0xff);
+            int alpha = (r == transRed && g == transGreen && b == transBlue) ?
+              0 : 0xff000000;
+            pixels[index] = alpha | (r >> 8) << 16 | (g >> 8) << 8 | (b >> 8);
+            index += step;
+          }
+        } else if (transRed != -1) {
+          for (int i = 0, j = 0; i < count; i++, j += 3) {
+            int r = row[j] & 0xff;
+            int g = row[j+1] & 0xff;
+            int b = row[j+2] & 0xff;
+            int alpha = (r == transRed && g == transGreen && b == transBlue) ?
+              0 : 0xff000000;
+            pixels[index] = alpha | r << 16 | g << 8 | b;
+            index += step;
+          }
+        } else {
+          for (int i = 0, j = 0; i < count; i++, j += 3) {
+            pixels[index] = 0xff000000 |
+              (row[j] & 0xff) << 16 | (row[j+1] & 0xff) << 8 | (row[j+2] & 0xff);
+            index += step;
+          }
+        }
+        break;
+
+      case GRAY_ALPHA:
+        int ga = bitDepth >> 3;  // bytes per sample
+        for (int i = 0, j = 0; i < count; i++, j += ga*2) {
+          int gray = row[j] & 0xff;
+          int alpha = row[j + ga] & 0xff;
+          pixels[index] = alpha << 24 | gray << 16 | gray << 8 | gray;
+          index += step;
+        }
+        break;
+
+      case TRUECOLOR_ALPHA:
+        int rgba = bitDepth >> 3;
+        for (int i = 0, j = 0; i < count; i++, j += rgba*4) {
+          pixels[index] = (row[j + rgba*3] & 0xff) << 24 |
+            (row[j] & 0xff) << 16 | (row[j + rgba] & 0xff) << 8 | (row[j + rgba*2] & 0xff);
+          index += step;
+        }
+        break;
+    }
+  }
+
+
+  /** Get sample i from a row of 1, 2, or 4 bit samples. */
+  private int sample(byte[] row, int i, int mask) {
+    int bit = i * bitDepth;
+    return (row[bit >> 3] >> (8 - bitDepth - (bit & 7))) & mask;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * The data from a run of IDAT chunks, as a single stream.
+   */
+  static class ChunkStream extends InputStream {
+    DataInputStream input;
+    int remaining;
+    boolean finished;
+    CRC32 crc;
+
+    ChunkStream(DataInputStream input, int length) {
+      this.input = input;
+      this.remaining = length;
+      crc = startCRC(IDAT);
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      while (remaining == 0) {
+        if (finished) {
+          return -1;
+        }
+        checkCRC(input, crc);
+        remaining = input.readInt();
+        if (input.readInt() != IDAT) {
+          // the image data has ended, and the rest of the file isn't needed
+          finished = true;
+          remaining = 0;
+          return -1;
+        }
+        if (remaining < 0) {
+          throw new IOException("Bad PNG chunk length " + remaining);
+        }
+        crc = startCRC(IDAT);
+      }
+      int count = input.read(buffer, offset, Math.min(length, remaining));
+      if (count == -1) {
+        throw new EOFException("Unexpected end of PNG image data");
+      }
+      crc.update(buffer, offset, count);
+      remaining -= count;
+      return count;
+    }
+
+    /**
+     * Check the CRC of the chunk the image data ended in, which may have
+     * some bytes left that the inflater didn't need.
+     */
+    void finish() throws IOException {
+      if (!finished) {
+        byte[] buffer = new byte[256];
+        while (remaining > 0) {
+          int count = Math.min(remaining, buffer.length);
+          input.readFully(buffer, 0, count);
+          crc.update(buffer, 0, count);
+          remaining -= count;
+        }
+        checkCRC(input, crc);
+        finished = true;
+      }
+    }
+  }
+}
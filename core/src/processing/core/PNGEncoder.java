@@ -0,0 +1,431 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.*;
+
+
+/**
+ * Writes PNG files directly from a pixels[] array, used by PImage.save()
+ * (and so by saveFrame()) for files that end in .png. Rows are filtered,
+ * then the image is split into pieces that are compressed on separate
+ * threads. Each piece is primed with the end of the one before it, so the
+ * file is nearly as small as if it had been compressed all at once.
+ * <p>
+ * The compression level and filter can be changed for all images saved by
+ * the sketch, for instance to record frames faster at the cost of larger
+ * files:
+ * <pre>
+ * PNGEncoder.getDefault().setLevel(1);
+ * PNGEncoder.getDefault().setFilter(PNGEncoder.FILTER_UP);
+ * </pre>
+ *
+ * @nowebref
+ */
+public class PNGEncoder {
+  static public final int FILTER_NONE = 0;
+  static public final int FILTER_SUB = 1;
+  static public final int FILTER_UP = 2;
+  static public final int FILTER_AVERAGE = 3;
+  static public final int FILTER_PAETH = 4;
+  /** Choose the best filter for each row, the slowest but usually smallest. */
+  static public final int FILTER_ADAPTIVE = 5;
+
+  /** Size of the uncompressed data in each piece that's compressed. */
+  static final int CHUNK_BYTES = 1 << 18;
+
+  /** Amount of the previous piece used to prime the compressor. */
+  static final int DICTIONARY_BYTES = 1 << 15;
+
+  static private final PNGEncoder defaultEncoder = new PNGEncoder();
+
+  /**
+   * Largest filtered image that's kept between calls (16 MB, the same as
+   * PImage.FILTER_BUFFER_PIXELS), so that saving one huge image doesn't keep
+   * a huge array around for as long as the thread lives.
+   */
+  static final int FILTER_BUFFER_BYTES = 4 * PImage.FILTER_BUFFER_PIXELS;
+
+  // reused between images by each thread
+  static private final ThreadLocal<byte[]> filterBuffer = new ThreadLocal<>();
+  static private final ThreadLocal<Deflater> deflaters = new ThreadLocal<>();
+
+  int level = 4;
+  int filter = FILTER_ADAPTIVE;
+
+
+  public PNGEncoder() { }
+
+
+  /**
+   * @param level compression from 0 (none, fastest) to 9 (smallest, slowest)
+   * @param filter one of the FILTER_ constants
+   */
+  public PNGEncoder(int level, int filter) {
+    setLevel(level);
+    setFilter(filter);
+  }
+
+
+  /** The encoder used by PImage.save() and saveFrame(). */
+  static public PNGEncoder getDefault() {
+    return defaultEncoder;
+  }
+
+
+  public void setLevel(int level) {
+    if (level < 0 || level > 9) {
+      throw new IllegalArgumentException("PNG compression level must be 0 to 9");
+    }
+    this.level = level;
+  }
+
+
+  public int getLevel() {
+    return level;
+  }
+
+
+  public void setFilter(int filter) {
+    if (filter < FILTER_NONE || filter > FILTER_ADAPTIVE) {
+      throw new IllegalArgumentException("Unknown PNG filter " + filter);
+    }
+    this.filter = filter;
+  }
+
+
+  public int getFilter() {
+    return filter;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Write an image as PNG.
+   * @param format RGB, ARGB, or ALPHA (saved as grayscale)
+   */
+  public void write(OutputStream output, int[] pixels,
+                    int width, int height, int format) throws IOException {
+    // copy the settings, in case they're changed while this is running
+    final int level = this.level;
+    final int filter = this.filter;
+
+    final int bpp = (format == PConstants.ARGB) ? 4 :
+      ((format == PConstants.ALPHA) ? 1 : 3);
+    final int stride = width * bpp + 1;
+    long total = (long) stride * height;
+    if (total > Integer.MAX_VALUE - 8) {
+      throw new IOException("Image is too large to save as PNG");
+    }
+    final byte[] data = getFilterBuffer((int) total);
+
+    // filter the rows, which only depend on the pixels and not each other
+    PImage.parallelRange(height, pixels.length, (start, stop) -> {
+      byte[][] scratch = new byte[6][width * bpp];
+      for (int y = start; y < stop; y++) {
+        filterRow(pixels, width, y, bpp, format, filter, scratch, data, y * stride);
+      }
+    });
+
+    // compress the filtered data in pieces
+    final int chunkRows = Math.max(1, CHUNK_BYTES / stride);
+    final int chunkCount = (height + chunkRows - 1) / chunkRows;
+    final byte[][] compressed = new byte[chunkCount][];
+    final int[] compressedLength = new int[chunkCount];
+    final long[] checksums = new long[chunkCount];
+
+    PImage.parallelRange(chunkCount, pixels.length, (start, stop) -> {
+      for (int i = start; i < stop; i++) {
+        int offset = i * chunkRows * stride;
+        int length = Math.min(chunkRows, height - i * chunkRows) * stride;
+        Deflater deflater = getDeflater(level);
+        if (offset > 0) {
+          int dict = Math.min(DICTIONARY_BYTES, offset);
+          deflater.setDictionary(data, offset - dict, dict);
+        }
+        deflater.setInput(data, offset, length);
+        boolean last = (i == chunkCount - 1);
+        if (last) {
+          deflater.finish();
+        }
+        byte[] out = new byte[length / 2 + 1024];
+        int count = 0;
+        while (true) {
+          count += deflater.deflate(out, count, out.length - count,
+                                    last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+          if (last ? deflater.finished() :
+              (deflater.needsInput() && count < out.length)) {
+            break;
+          }
+          if (count == out.length) {
+            out = Arrays.copyOf(out, out.length * 2);
+          }
+        }
+        compressed[i] = out;
+        compressedLength[i] = count;
+
+        Adler32 adler = new Adler32();
+        adler.update(data, offset, length);
+        checksums[i] = adler.getValue();
+      }
+    });
+
+    long adler = checksums[0];
+    for (int i = 1; i < chunkCount; i++) {
+      int length = Math.min(chunkRows, height - i * chunkRows) * stride;
+      adler = adler32Combine(adler, checksums[i], length);
+    }
+
+    DataOutputStream out = new DataOutputStream(output);
+    out.write(PNGDecoder.SIGNATURE);
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+    DataOutputStream hd = new DataOutputStream(header);
+    hd.writeInt(width);
+    hd.writeInt(height);
+    hd.writeByte(8);  // bit depth
+    hd.writeByte((bpp == 4) ? PNGDecoder.TRUECOLOR_ALPHA :
+                  ((bpp == 1) ? PNGDecoder.GRAY : PNGDecoder.TRUECOLOR));
+    hd.writeByte(0);  // compression
+    hd.writeByte(0);  // filter method
+    hd.writeByte(0);  // no interlace
+    writeChunk(out, PNGDecoder.IHDR, header.toByteArray(), 0, header.size(), null);
+
+    // zlib header (deflate, 32K window) with a hint about the level used
+    int flags = (level < 2) ? 0 : ((level < 6) ? 1 : ((level == 6) ? 2 : 3));
+    int cmf = 0x78;
+    int flg = flags << 6;
+    flg += 31 - ((cmf << 8) + flg) % 31;
+    byte[] zlibHeader = { (byte) cmf, (byte) flg };
+
+    for (int i = 0; i < chunkCount; i++) {
+      byte[] prefix = (i == 0) ? zlibHeader : null;
+      byte[] body = compressed[i];
+      int length = compressedLength[i];
+      if (i == chunkCount - 1) {
+        if (body.length < length + 4) {
+          body = Arrays.copyOf(body, length + 4);
+        }
+        body[length++] = (byte) (adler >>> 24);
+        body[length++] = (byte) (adler >>> 16);
+        body[length++] = (byte) (adler >>> 8);
+        body[length++] = (byte) adler;
+      }
+      writeChunk(out, PNGDecoder.IDAT, body, 0, length, prefix);
+    }
+    writeChunk(out, PNGDecoder.IEND, new byte[0], 0, 0, null);
+    out.flush();
+  }
+
+
+  static private void writeChunk(DataOutputStream out, int type,
+                                 byte[] data, int offset, int length,
+                                 byte[] prefix) throws IOException {
+    int prefixLength = (prefix == null) ? 0 : prefix.length;
+    out.writeInt(length + prefixLength);
+    CRC32 crc = new CRC32();
+    byte[] typeBytes = {
+      (byte) (type >>> 24), (byte) (type >>> 16), (byte) (type >>> 8), (byte) type
+    };
+    out.write(typeBytes);
+    crc.update(typeBytes);
+    if (prefix != null) {
+      out.write(prefix);
+      crc.update(prefix);
+    }
+    out.write(data, offset, length);
+    crc.update(data, offset, length);
+    out.writeInt((int) crc.getValue());
+  }
+
+
+  /**
+   * Checksum of two pieces of data from the checksums of each piece,
+   * the same as adler32_combine() in zlib.
+   */
+  static long adler32Combine(long adler1, long adler2, long length2) {
+    final long BASE = 65521;
+    long rem = length2 % BASE;
+    long sum1 = adler1 & 0xffff;
+    long sum2 = (rem * sum1) % BASE;
+    sum1 += (adler2 & 0xffff) + BASE - 1;
+    sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + BASE - rem;
+    if (sum1 >= BASE) sum1 -= BASE;
+    if (sum1 >= BASE) sum1 -= BASE;
+    if (sum2 >= (BASE << 1)) sum2 -= (BASE << 1);
+    if (sum2 >= BASE) sum2 -= BASE;
+    return sum1 | (sum2 << 16);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Write the filter type and filtered bytes for row y into data[offset].
+   * The scratch arrays hold the current and previous rows (unfiltered),
+   * and the results of each filter when trying all of them.
+   */
+  static private void filterRow(int[] pixels, int width, int y, int bpp,
+                                int format, int filter, byte[][] scratch,
+                                byte[] data, int offset) {
+    byte[] row = scratch[0];
+    byte[] prev = scratch[1];
+    int length = width * bpp;
+    unpackRow(pixels, width, y, bpp, format, row);
+    if (y > 0) {
+      unpackRow(pixels, width, y - 1, bpp, format, prev);
+    } else {
+      Arrays.fill(prev, (byte) 0);
+    }
+
+    if (filter != FILTER_ADAPTIVE) {
+      data[offset] = (byte) filter;
+      applyFilter(filter, row, prev, length, bpp, data, offset + 1);
+      return;
+    }
+
+    // use the filter with the smallest sum of absolute (signed) values
+    int best = FILTER_NONE;
+    long bestSum = Long.MAX_VALUE;
+    for (int f = FILTER_NONE; f <= FILTER_PAETH; f++) {
+      byte[] out = (f == FILTER_NONE) ? row : scratch[1 + f];
+      if (f != FILTER_NONE) {
+        applyFilter(f, row, prev, length, bpp, out, 0);
+      }
+      long sum = 0;
+      for (int i = 0; i < length; i++) {
+        sum += Math.abs((int) out[i]);
+      }
+      if (sum < bestSum) {
+        bestSum = sum;
+        best = f;
+      }
+    }
+    data[offset] = (byte) best;
+    byte[] chosen = (best == FILTER_NONE) ? row : scratch[1 + best];
+    System.arraycopy(chosen, 0, data, offset + 1, length);
+  }
+
+
+  static private void unpackRow(int[] pixels, int width, int y, int bpp,
+                                int format, byte[] row) {
+    int index = y * width;
+    int j = 0;
+    if (bpp == 1) {
+      for (int x = 0; x < width; x++) {
+        row[j++] = (byte) pixels[index++];
+      }
+    } else {
+      for (int x = 0; x < width; x++) {
+        int c = pixels[index++];
+        row[j++] = (byte) (c >> 16);
+        row[j++] = (byte) (c >> 8);
+        row[j++] = (byte) c;
+        if (bpp == 4) {
+          row[j++] = (byte) (c >>> 24);
+        }
+      }
+    }
+  }
+
+
+  static private void applyFilter(int filter, byte[] row, byte[] prev,
+                                  int length, int bpp,
+                                  byte[] out, int offset) {
+    switch (filter) {
+      case FILTER_NONE:
+        System.arraycopy(row, 0, out, offset, length);
+        break;
+
+      case FILTER_SUB:
+        for (int i = 0; i < bpp; i++) {
+          out[offset + i] = row[i];
+        }
+        for (int i = bpp; i < length; i++) {
+          out[offset + i] = (byte) (row[i] - row[i - bpp]);
+        }
+        break;
+
+      case FILTER_UP:
+        for (int i = 0; i < length; i++) {
+          out[offset + i] = (byte) (row[i] - prev[i]);
+        }
+        break;
+
+      case FILTER_AVERAGE:
+        for (int i = 0; i < bpp; i++) {
+          out[offset + i] = (byte) (row[i] - ((prev[i] & 0xff) >> 1));
+        }
+        for (int i = bpp; i < length; i++) {
+          out[offset + i] =
+            (byte) (row[i] - (((row[i - bpp] & 0xff) + (prev[i] & 0xff)) >> 1));
+        }
+        break;
+
+      case FILTER_PAETH:
+        for (int i = 0; i < bpp; i++) {
+          out[offset + i] = (byte) (row[i] - prev[i]);
+        }
+        for (int i = bpp; i < length; i++) {
+          int a = row[i - bpp] & 0xff;
+          int b = prev[i] & 0xff;
+          int c = prev[i - bpp] & 0xff;
+          int pa = Math.abs(b - c);
+          int pb = Math.abs(a - c);
+          int pc = Math.abs(a + b - 2*c);
+          int predictor = (pa <= pb && pa <= pc) ? a : ((pb <= pc) ? b : c);
+          out[offset + i] = (byte) (row[i] - predictor);
+        }
+        break;
+    }
+  }
+
+
+  static private byte[] getFilterBuffer(int length) {
+    if (length > FILTER_BUFFER_BYTES) {
+      return new byte[length];
+    }
+    byte[] buffer = filterBuffer.get();
+    if (buffer == null || buffer.length < length) {
+      buffer = new byte[length];
+      filterBuffer.set(buffer);
+    }
+    return buffer;
+  }
+
+
+  static private Deflater getDeflater(int level) {
+    Deflater deflater = deflaters.get();
+    if (deflater == null) {
+      deflater = new Deflater(level, true);
+      deflaters.set(deflater);
+    } else {
+      deflater.reset();
+      deflater.setLevel(level);
+    }
+    return deflater;
+  }
+}
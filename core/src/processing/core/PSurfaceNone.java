@@ -346,6 +346,11 @@ public class PSurfaceNone implements PSurface {
 
           overSleepTime = (System.nanoTime() - afterTime) - sleepTime;
 
+          FrameTimer timer = sketch.frameTimer;
+          if (timer != null) {
+            timer.sleep(sleepTime, overSleepTime);
+          }
+
         } else {    // sleepTime <= 0; the frame took longer than the period
           overSleepTime = 0L;
           noDelays++;
@@ -0,0 +1,131 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.*;
+
+
+/**
+ * Reads images in the QOI format, see QOIEncoder.
+ */
+class QOIDecoder extends ImageDecoder {
+
+  @Override
+  public boolean accepts(byte[] header, int length) {
+    return length >= 4 &&
+      header[0] == 'q' && header[1] == 'o' && header[2] == 'i' && header[3] == 'f';
+  }
+
+
+  @Override
+  public PImage decode(InputStream input) throws IOException {
+    DataInputStream data = new DataInputStream(input);
+    byte[] magic = new byte[4];
+    data.readFully(magic);
+    int width = data.readInt();
+    int height = data.readInt();
+    int channels = data.readUnsignedByte();
+    data.readUnsignedByte();  // colorspace
+    if (width <= 0 || height <= 0) {
+      throw new IOException("Bad QOI image size " + width + "x" + height);
+    }
+    long pixelCount = (long) width * height;
+    if (pixelCount > PNGDecoder.MAX_PIXELS ||
+        4 * pixelCount > Runtime.getRuntime().maxMemory()) {
+      throw new IOException("QOI image is too large: " + width + "x" + height);
+    }
+
+    PImage image = new PImage(width, height, PConstants.RGB);
+    int[] pixels = image.pixels;
+    int[] index = new int[64];
+    int c = 0xff000000;
+    byte[] buffer = new byte[1 << 16];
+    int length = 0;
+    int pos = 0;
+
+    int i = 0;
+    while (i < pixels.length) {
+      if (length - pos < 5) {
+        // keep at least one whole op (up to 5 bytes) in the buffer
+        System.arraycopy(buffer, pos, buffer, 0, length - pos);
+        length -= pos;
+        pos = 0;
+        int count = data.read(buffer, length, buffer.length - length);
+        if (count == -1) {
+          if (length == 0) {
+            throw new EOFException("Unexpected end of QOI data");
+          }
+        } else {
+          length += count;
+          continue;
+        }
+      }
+      int op = buffer[pos++] & 0xff;
+      if (op == QOIEncoder.OP_RGB) {
+        c = (c & 0xff000000) |
+          (buffer[pos] & 0xff) << 16 | (buffer[pos+1] & 0xff) << 8 | (buffer[pos+2] & 0xff);
+        pos += 3;
+      } else if (op == QOIEncoder.OP_RGBA) {
+        c = (buffer[pos+3] & 0xff) << 24 |
+          (buffer[pos] & 0xff) << 16 | (buffer[pos+1] & 0xff) << 8 | (buffer[pos+2] & 0xff);
+        pos += 4;
+      } else {
+        switch (op & 0xc0) {
+          case QOIEncoder.OP_INDEX:
+            c = index[op];
+            break;
+
+          case QOIEncoder.OP_DIFF: {
+            int r = (c >> 16) + ((op >> 4) & 3) - 2;
+            int g = (c >> 8) + ((op >> 2) & 3) - 2;
+            int b = c + (op & 3) - 2;
+            c = (c & 0xff000000) | (r & 0xff) << 16 | (g & 0xff) << 8 | (b & 0xff);
+            break;
+          }
+
+          case QOIEncoder.OP_LUMA: {
+            int next = buffer[pos++] & 0xff;
+            int vg = (op & 0x3f) - 32;
+            int r = (c >> 16) + vg - 8 + ((next >> 4) & 15);
+            int g = (c >> 8) + vg;
+            int b = c + vg - 8 + (next & 15);
+            c = (c & 0xff000000) | (r & 0xff) << 16 | (g & 0xff) << 8 | (b & 0xff);
+            break;
+          }
+
+          case QOIEncoder.OP_RUN: {
+            int run = Math.min((op & 0x3f) + 1, pixels.length - i);
+            for (int k = 0; k < run; k++) {
+              pixels[i++] = c;
+            }
+            continue;
+          }
+        }
+      }
+      index[QOIEncoder.hash(c)] = c;
+      pixels[i++] = c;
+    }
+    if (channels == 4) {
+      image.checkAlpha();
+    }
+    return image;
+  }
+}
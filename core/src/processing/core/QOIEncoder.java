@@ -0,0 +1,145 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.*;
+
+
+/**
+ * Writes images in the QOI format (https://qoiformat.org), which is
+ * lossless like PNG but several times faster to write, at the cost of
+ * larger files. Useful for saving every frame of an animation.
+ */
+class QOIEncoder {
+  static final int OP_INDEX = 0x00;
+  static final int OP_DIFF  = 0x40;
+  static final int OP_LUMA  = 0x80;
+  static final int OP_RUN   = 0xc0;
+  static final int OP_RGB   = 0xfe;
+  static final int OP_RGBA  = 0xff;
+
+  static final byte[] MAGIC = { 'q', 'o', 'i', 'f' };
+  static final byte[] END = { 0, 0, 0, 0, 0, 0, 0, 1 };
+
+
+  static int hash(int argb) {
+    int r = (argb >> 16) & 0xff;
+    int g = (argb >> 8) & 0xff;
+    int b = argb & 0xff;
+    int a = argb >>> 24;
+    return (r*3 + g*5 + b*7 + a*11) & 63;
+  }
+
+
+  /**
+   * @param format RGB or ARGB, ALPHA is saved as an RGB gray image
+   */
+  static void write(OutputStream output, int[] pixels,
+                    int width, int height, int format) throws IOException {
+    boolean alpha = (format == PConstants.ARGB);
+    // written out in pieces, an op is at most 5 bytes
+    byte[] buffer = new byte[1 << 16];
+
+    System.arraycopy(MAGIC, 0, buffer, 0, 4);
+    int pos = 4;
+    pos = writeInt(buffer, pos, width);
+    pos = writeInt(buffer, pos, height);
+    buffer[pos++] = (byte) (alpha ? 4 : 3);
+    buffer[pos++] = 0;  // sRGB with linear alpha
+
+    int[] index = new int[64];
+    int prev = 0xff000000;
+    int run = 0;
+    int count = width * height;
+    for (int i = 0; i < count; i++) {
+      int c = pixels[i];
+      if (format == PConstants.ALPHA) {
+        int gray = c & 0xff;
+        c = 0xff000000 | gray << 16 | gray << 8 | gray;
+      } else if (!alpha) {
+        c |= 0xff000000;
+      }
+
+      if (pos > buffer.length - 8) {
+        output.write(buffer, 0, pos);
+        pos = 0;
+      }
+
+      if (c == prev) {
+        run++;
+        if (run == 62 || i == count - 1) {
+          buffer[pos++] = (byte) (OP_RUN | (run - 1));
+          run = 0;
+        }
+        continue;
+      }
+      if (run > 0) {
+        buffer[pos++] = (byte) (OP_RUN | (run - 1));
+        run = 0;
+      }
+
+      int slot = hash(c);
+      if (index[slot] == c) {
+        buffer[pos++] = (byte) (OP_INDEX | slot);
+
+      } else {
+        index[slot] = c;
+        if ((c >>> 24) == (prev >>> 24)) {
+          int vr = (byte) ((c >> 16) - (prev >> 16));
+          int vg = (byte) ((c >> 8) - (prev >> 8));
+          int vb = (byte) (c - prev);
+          int vgr = vr - vg;
+          int vgb = vb - vg;
+          if (vr > -3 && vr < 2 && vg > -3 && vg < 2 && vb > -3 && vb < 2) {
+            buffer[pos++] = (byte) (OP_DIFF | (vr + 2) << 4 | (vg + 2) << 2 | (vb + 2));
+          } else if (vgr > -9 && vgr < 8 && vg > -33 && vg < 32 && vgb > -9 && vgb < 8) {
+            buffer[pos++] = (byte) (OP_LUMA | (vg + 32));
+            buffer[pos++] = (byte) ((vgr + 8) << 4 | (vgb + 8));
+          } else {
+            buffer[pos++] = (byte) OP_RGB;
+            buffer[pos++] = (byte) (c >> 16);
+            buffer[pos++] = (byte) (c >> 8);
+            buffer[pos++] = (byte) c;
+          }
+        } else {
+          buffer[pos++] = (byte) OP_RGBA;
+          buffer[pos++] = (byte) (c >> 16);
+          buffer[pos++] = (byte) (c >> 8);
+          buffer[pos++] = (byte) c;
+          buffer[pos++] = (byte) (c >>> 24);
+        }
+      }
+      prev = c;
+    }
+    output.write(buffer, 0, pos);
+    output.write(END);
+    output.flush();
+  }
+
+
+  static private int writeInt(byte[] buffer, int pos, int value) {
+    buffer[pos++] = (byte) (value >>> 24);
+    buffer[pos++] = (byte) (value >>> 16);
+    buffer[pos++] = (byte) (value >>> 8);
+    buffer[pos++] = (byte) value;
+    return pos;
+  }
+}
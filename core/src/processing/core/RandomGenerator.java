@@ -0,0 +1,326 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * Source of random numbers for random(), randomGaussian(), and the tables
+ * behind noise(). Unlike java.util.Random, generators aren't synchronized,
+ * which makes them much faster in tight loops. Instead, a sketch gives each
+ * thread other than its own a separate stream (see PApplet.randomSeed()),
+ * so threads never share one.
+ * <p>
+ * The default is Legacy, which produces exactly the same numbers as
+ * java.util.Random (and so as earlier versions of Processing) for a given
+ * randomSeed(). Xoroshiro128 is faster and has better statistical quality,
+ * and can be chosen with:
+ * <pre>
+ * randomGenerator(new RandomGenerator.Xoroshiro128());
+ * </pre>
+ *
+ * @nowebref
+ */
+public abstract class RandomGenerator {
+  private double nextGaussian;
+  private boolean haveNextGaussian;
+
+
+  /** Next 64 random bits. */
+  abstract public long nextLong();
+
+
+  /** Restart the sequence from a seed. */
+  public void setSeed(long seed) {
+    haveNextGaussian = false;
+    seed(seed);
+  }
+
+
+  abstract protected void seed(long seed);
+
+
+  /** A new generator of the same kind, starting from this seed. */
+  abstract public RandomGenerator create(long seed);
+
+
+  /**
+   * A new generator of the same kind, seeded from this one, for use on
+   * another thread.
+   */
+  public RandomGenerator split() {
+    return create(nextLong());
+  }
+
+
+  public int nextInt() {
+    return (int) (nextLong() >>> 32);
+  }
+
+
+  /** Random int from 0 up to (but not including) bound. */
+  public int nextInt(int bound) {
+    if (bound <= 0) {
+      throw new IllegalArgumentException("bound must be positive");
+    }
+    // Lemire's method, multiply instead of % and only rarely retry
+    long m = (nextLong() >>> 32) * bound;
+    if ((m & 0xffffffffL) < bound) {
+      long threshold = (0x100000000L - bound) % bound;
+      while ((m & 0xffffffffL) < threshold) {
+        m = (nextLong() >>> 32) * bound;
+      }
+    }
+    return (int) (m >>> 32);
+  }
+
+
+  /** Random float from 0 up to (but not including) 1. */
+  public float nextFloat() {
+    return (nextLong() >>> 40) * 0x1.0p-24f;
+  }
+
+
+  /** Random double from 0 up to (but not including) 1. */
+  public double nextDouble() {
+    return (nextLong() >>> 11) * 0x1.0p-53;
+  }
+
+
+  /**
+   * Normally distributed value with a mean of 0 and standard deviation 1,
+   * using the same polar method as java.util.Random.
+   */
+  public double nextGaussian() {
+    if (haveNextGaussian) {
+      haveNextGaussian = false;
+      return nextGaussian;
+    }
+    double v1, v2, s;
+    do {
+      v1 = 2 * nextDouble() - 1;
+      v2 = 2 * nextDouble() - 1;
+      s = v1 * v1 + v2 * v2;
+    } while (s >= 1 || s == 0);
+    double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+    nextGaussian = v2 * multiplier;
+    haveNextGaussian = true;
+    return v1 * multiplier;
+  }
+
+
+  /**
+   * Fill part of an array with floats from low up to (but not including)
+   * high. Gives the same values as calling PApplet.random(low, high) for
+   * each element in turn.
+   */
+  public void nextFloats(float[] out, int offset, int count,
+                         float low, float high) {
+    if (!(low < high)) {
+      Arrays.fill(out, offset, offset + count, low);
+      return;
+    }
+    float diff = high - low;
+    for (int i = offset; i < offset + count; i++) {
+      float value;
+      // because of rounding error, can't just add low, otherwise it may hit high
+      // https://github.com/processing/processing/issues/4551
+      do {
+        do {
+          value = nextFloat() * diff;
+        } while (value == diff);
+        value += low;
+      } while (value == high);
+      out[i] = value;
+    }
+  }
+
+
+  /** Fill part of an array with nextGaussian() values. */
+  public void nextGaussians(float[] out, int offset, int count) {
+    for (int i = offset; i < offset + count; i++) {
+      out[i] = (float) nextGaussian();
+    }
+  }
+
+
+  static long randomSeed() {
+    return ThreadLocalRandom.current().nextLong();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * The 48-bit linear congruential generator used by java.util.Random,
+   * giving the same sequence for the same seed, without the locking.
+   */
+  static public class Legacy extends RandomGenerator {
+    static final long MULTIPLIER = 0x5DEECE66DL;
+    static final long ADDEND = 0xBL;
+    static final long MASK = (1L << 48) - 1;
+
+    long state;
+
+    public Legacy() {
+      this(randomSeed());
+    }
+
+    public Legacy(long seed) {
+      seed(seed);
+    }
+
+    @Override
+    protected void seed(long seed) {
+      state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    public RandomGenerator create(long seed) {
+      return new Legacy(seed);
+    }
+
+    protected int next(int bits) {
+      state = (state * MULTIPLIER + ADDEND) & MASK;
+      return (int) (state >>> (48 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+      return ((long) next(32) << 32) + next(32);
+    }
+
+    @Override
+    public int nextInt() {
+      return next(32);
+    }
+
+    @Override
+    public int nextInt(int bound) {
+      if (bound <= 0) {
+        throw new IllegalArgumentException("bound must be positive");
+      }
+      int r = next(31);
+      int m = bound - 1;
+      if ((bound & m) == 0) {
+        return (int) ((bound * (long) r) >> 31);
+      }
+      for (int u = r; u - (r = u % bound) + m < 0; u = next(31)) { }
+      return r;
+    }
+
+    @Override
+    public float nextFloat() {
+      return next(24) / ((float) (1 << 24));
+    }
+
+    @Override
+    public double nextDouble() {
+      return (((long) next(26) << 27) + next(27)) * 0x1.0p-53;
+    }
+  }
+
+
+  /**
+   * SplitMix64, a very small and fast generator, also used to seed the
+   * state of Xoroshiro128 and the streams for other threads.
+   */
+  static public class SplitMix64 extends RandomGenerator {
+    static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    long state;
+
+    public SplitMix64() {
+      this(randomSeed());
+    }
+
+    public SplitMix64(long seed) {
+      seed(seed);
+    }
+
+    @Override
+    protected void seed(long seed) {
+      state = seed;
+    }
+
+    @Override
+    public RandomGenerator create(long seed) {
+      return new SplitMix64(seed);
+    }
+
+    @Override
+    public long nextLong() {
+      return mix(state += GOLDEN_GAMMA);
+    }
+
+    static long mix(long z) {
+      z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+      z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+      return z ^ (z >>> 31);
+    }
+  }
+
+
+  /**
+   * Xoroshiro128++ by David Blackman and Sebastiano Vigna, fast with
+   * excellent statistical quality and a period of 2^128 - 1.
+   */
+  static public class Xoroshiro128 extends RandomGenerator {
+    long s0, s1;
+
+    public Xoroshiro128() {
+      this(randomSeed());
+    }
+
+    public Xoroshiro128(long seed) {
+      seed(seed);
+    }
+
+    @Override
+    protected void seed(long seed) {
+      // spread the seed over both words, which can't both be zero
+      s0 = SplitMix64.mix(seed += SplitMix64.GOLDEN_GAMMA);
+      s1 = SplitMix64.mix(seed + SplitMix64.GOLDEN_GAMMA);
+      if ((s0 | s1) == 0) {
+        s1 = SplitMix64.GOLDEN_GAMMA;
+      }
+    }
+
+    @Override
+    public RandomGenerator create(long seed) {
+      return new Xoroshiro128(seed);
+    }
+
+    @Override
+    public long nextLong() {
+      long a = s0;
+      long b = s1;
+      long result = Long.rotateLeft(a + b, 17) + a;
+      b ^= a;
+      s0 = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+      s1 = Long.rotateLeft(b, 28);
+      return result;
+    }
+  }
+}
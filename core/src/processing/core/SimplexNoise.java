@@ -0,0 +1,147 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+
+/**
+ * Simplex noise, used by noise() after noiseMode(SIMPLEX). It uses random
+ * gradients instead of random values at each corner, so it's smoother than
+ * the classic noise and doesn't have its grid-aligned artifacts. Based on
+ * the public domain implementation by Stefan Gustavson.
+ */
+class SimplexNoise {
+  static final float F3 = 1f / 3;
+  static final float G3 = 1f / 6;
+
+  static final int[] GRAD3 = {
+    1, 1, 0,  -1, 1, 0,  1, -1, 0,  -1, -1, 0,
+    1, 0, 1,  -1, 0, 1,  1, 0, -1,  -1, 0, -1,
+    0, 1, 1,  0, -1, 1,  0, 1, -1,  0, -1, -1
+  };
+
+  /** Permutation of 0..255, repeated twice to avoid wrapping the index. */
+  final int[] perm = new int[512];
+  /** Gradient for each entry of perm, premultiplied by 3 to index GRAD3. */
+  final int[] gradIndex = new int[512];
+
+
+  SimplexNoise(RandomGenerator random) {
+    int[] p = new int[256];
+    for (int i = 0; i < 256; i++) {
+      p[i] = i;
+    }
+    for (int i = 255; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int t = p[i]; p[i] = p[j]; p[j] = t;
+    }
+    for (int i = 0; i < 512; i++) {
+      perm[i] = p[i & 255];
+      gradIndex[i] = (perm[i] % 12) * 3;
+    }
+  }
+
+
+  /**
+   * Sum of octaves, each one scaled to 0..1 and weighted like the classic
+   * noise so that noiseDetail() has the same effect.
+   */
+  float noise(float x, float y, float z, int octaves, float falloff) {
+    float r = 0;
+    float ampl = 0.5f;
+    for (int i = 0; i < octaves; i++) {
+      r += ampl * (0.5f + 0.5f * octave(x, y, z));
+      ampl *= falloff;
+      x *= 2;
+      y *= 2;
+      z *= 2;
+    }
+    return r;
+  }
+
+
+  /** One octave of 3D simplex noise, between -1 and 1. */
+  float octave(float x, float y, float z) {
+    // skew the input space to find which simplex cell we're in
+    float s = (x + y + z) * F3;
+    int i = fastFloor(x + s);
+    int j = fastFloor(y + s);
+    int k = fastFloor(z + s);
+    float t = (i + j + k) * G3;
+    float x0 = x - (i - t);
+    float y0 = y - (j - t);
+    float z0 = z - (k - t);
+
+    // find which of the six tetrahedra we're in
+    int i1, j1, k1, i2, j2, k2;
+    if (x0 >= y0) {
+      if (y0 >= z0) {
+        i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+      } else if (x0 >= z0) {
+        i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 0; k2 = 1;
+      } else {
+        i1 = 0; j1 = 0; k1 = 1; i2 = 1; j2 = 0; k2 = 1;
+      }
+    } else {
+      if (y0 < z0) {
+        i1 = 0; j1 = 0; k1 = 1; i2 = 0; j2 = 1; k2 = 1;
+      } else if (x0 < z0) {
+        i1 = 0; j1 = 1; k1 = 0; i2 = 0; j2 = 1; k2 = 1;
+      } else {
+        i1 = 0; j1 = 1; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+      }
+    }
+
+    float x1 = x0 - i1 + G3;
+    float y1 = y0 - j1 + G3;
+    float z1 = z0 - k1 + G3;
+    float x2 = x0 - i2 + 2 * G3;
+    float y2 = y0 - j2 + 2 * G3;
+    float z2 = z0 - k2 + 2 * G3;
+    float x3 = x0 - 1 + 3 * G3;
+    float y3 = y0 - 1 + 3 * G3;
+    float z3 = z0 - 1 + 3 * G3;
+
+    int ii = i & 255;
+    int jj = j & 255;
+    int kk = k & 255;
+    int g0 = gradIndex[ii + perm[jj + perm[kk]]];
+    int g1 = gradIndex[ii + i1 + perm[jj + j1 + perm[kk + k1]]];
+    int g2 = gradIndex[ii + i2 + perm[jj + j2 + perm[kk + k2]]];
+    int g3 = gradIndex[ii + 1 + perm[jj + 1 + perm[kk + 1]]];
+
+    return 32 * (corner(g0, x0, y0, z0) + corner(g1, x1, y1, z1) +
+                 corner(g2, x2, y2, z2) + corner(g3, x3, y3, z3));
+  }
+
+
+  static private float corner(int g, float x, float y, float z) {
+    float t = 0.6f - x*x - y*y - z*z;
+    if (t < 0) return 0;
+    t *= t;
+    return t * t * (GRAD3[g] * x + GRAD3[g+1] * y + GRAD3[g+2] * z);
+  }
+
+
+  static private int fastFloor(float x) {
+    int xi = (int) x;
+    return (x < xi) ? xi - 1 : xi;
+  }
+}
@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -25,7 +24,7 @@ public class DoubleDict {
   protected double[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private StringIndex indices = new StringIndex();
 
 
   public DoubleDict() {
@@ -45,6 +44,7 @@ public class DoubleDict {
     count = 0;
     keys = new String[length];
     values = new double[length];
+    indices = new StringIndex(length);
   }
 
 
@@ -164,12 +164,12 @@ public class DoubleDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    indices.clear();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
+    indices = new StringIndex(count);
     for (int i = 0; i < count; i++) {
       indices.put(keys[i], i);
     }
@@ -590,8 +590,7 @@ public class DoubleDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    return indices.get(what);
   }
 
 
@@ -600,7 +599,7 @@ public class DoubleDict {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
     }
-    indices.put(what, Integer.valueOf(count));
+    indices.put(what, count);
     keys[count] = what;
     values[count] = much;
     count++;
@@ -1129,7 +1129,7 @@ public class JSONArray {
         }
       }
     }
-    output.print(format(indentFactor));
+    writeInternal(output, indentFactor, 0);
     output.flush();
     return true;
   }
@@ -1601,7 +1601,7 @@ public class JSONObject {
         }
       }
     }
-    output.print(format(indentFactor));
+    writeInternal(output, indentFactor, 0);
     output.flush();
     return true;
   }
@@ -0,0 +1,742 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+ */
+
+package processing.data;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Reads JSON one piece at a time, without building a JSONObject or
+ * JSONArray for the whole document, so that files much larger than the
+ * available memory can be handled. Each call to next() returns the next
+ * event (START_OBJECT, KEY, NUMBER, END_ARRAY, etc.), and the value for it
+ * is available from getString(), getInt(), getDouble(), and so on.
+ * Numbers are parsed only when asked for, and never boxed.
+ * <p>
+ * To work with one element at a time, use readValue(), readObject(), or
+ * readArray() to build just the current value, or skipValue() to jump past
+ * it. For instance, to go through a large array of objects:
+ * <pre>
+ * JSONReader reader = new JSONReader(createReader("data.json"));
+ * for (JSONObject item : reader.objects()) {
+ *   println(item.getString("name"));
+ * }
+ * reader.close();
+ * </pre>
+ * The same (somewhat relaxed) syntax as JSONObject and JSONArray is
+ * accepted: single-quoted or unquoted strings, '=' or '=>' after keys, and
+ * ';' as a separator. Several values in a row (i.e. newline-delimited JSON)
+ * are read one after another.
+ *
+ * @nowebref
+ * @see JSONWriter
+ */
+public class JSONReader implements Closeable {
+  /** No more input */
+  static public final int END = 0;
+  static public final int START_OBJECT = 1;
+  static public final int END_OBJECT = 2;
+  static public final int START_ARRAY = 3;
+  static public final int END_ARRAY = 4;
+  /** The name of an object member, available from getString() */
+  static public final int KEY = 5;
+  static public final int STRING = 6;
+  static public final int NUMBER = 7;
+  static public final int BOOLEAN = 8;
+  static public final int NULL = 9;
+
+  // where we are inside the current object or array
+  static final int FIRST = 0;
+  static final int AFTER_KEY = 1;
+  static final int AFTER_VALUE = 2;
+
+  static final int KEY_CACHE = 256;
+
+  Reader reader;
+  char[] buffer = new char[8192];
+  int bufferIndex;
+  int bufferLength;
+  int line = 1;
+
+  // one entry per level: true for an object, false for an array
+  boolean[] objectStack = new boolean[32];
+  int[] stateStack = new int[32];
+  int depth;
+
+  int event = -1;
+  char[] text = new char[64];
+  int textLength;
+  String textString;
+  boolean textInteger;  // NUMBER with no fraction or exponent
+
+  // recent keys, so that each one isn't a new String
+  String[] keyCache = new String[KEY_CACHE];
+
+
+  public JSONReader(Reader reader) {
+    this.reader = reader;
+  }
+
+
+  /** Read from a UTF-8 encoded stream. */
+  public JSONReader(InputStream input) {
+    this(new InputStreamReader(input, StandardCharsets.UTF_8));
+  }
+
+
+  public void close() {
+    try {
+      reader.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Move to the next piece of the document.
+   * @return the type of event, one of START_OBJECT, END_OBJECT, START_ARRAY,
+   * END_ARRAY, KEY, STRING, NUMBER, BOOLEAN, NULL, or END.
+   */
+  public int next() {
+    textString = null;
+
+    if (depth == 0) {
+      char c = nextClean();
+      if (c == 0) {
+        return event = END;
+      }
+      return event = startValue(c);
+    }
+
+    char c;
+    int state = stateStack[depth - 1];
+    if (objectStack[depth - 1]) {
+      switch (state) {
+      case FIRST:
+        c = nextClean();
+        if (c == '}') {
+          return event = pop();
+        }
+        return event = startKey(c);
+
+      case AFTER_KEY:
+        // The key is followed by ':'. We will also tolerate '=' or '=>'.
+        c = nextClean();
+        if (c == '=') {
+          if (peek() == '>') {
+            read();
+          }
+        } else if (c != ':') {
+          throw error("Expected a ':' after a key");
+        }
+        stateStack[depth - 1] = AFTER_VALUE;
+        return event = startValue(nextClean());
+
+      default:
+        c = nextClean();
+        if (c == ',' || c == ';') {
+          c = nextClean();
+          if (c == '}') {
+            return event = pop();
+          }
+          return event = startKey(c);
+        } else if (c == '}') {
+          return event = pop();
+        }
+        throw error("Expected a ',' or '}'");
+      }
+
+    } else {
+      c = nextClean();
+      if (state == AFTER_VALUE) {
+        if (c == ',' || c == ';') {
+          c = nextClean();
+        } else if (c != ']') {
+          throw error("Expected a ',' or ']'");
+        }
+      }
+      if (c == ']') {
+        return event = pop();
+      }
+      stateStack[depth - 1] = AFTER_VALUE;
+      if (c == ',' || c == ';') {
+        // an empty entry, i.e. [1,,2]
+        bufferIndex--;
+        return event = NULL;
+      }
+      return event = startValue(c);
+    }
+  }
+
+
+  /** The most recent event returned by next(). */
+  public int event() {
+    return event;
+  }
+
+
+  /**
+   * How many objects and arrays enclose the current position. After a
+   * START_OBJECT or START_ARRAY, this includes the one that just started.
+   */
+  public int depth() {
+    return depth;
+  }
+
+
+  /** The line number in the input, for error messages. */
+  public int line() {
+    return line;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * The text for the current KEY, STRING, NUMBER, or BOOLEAN.
+   * Returns null for NULL and the start or end of objects and arrays.
+   */
+  public String getString() {
+    if (textString == null) {
+      if (event == KEY || event == STRING || event == NUMBER || event == BOOLEAN) {
+        textString = new String(text, 0, textLength);
+      }
+    }
+    return textString;
+  }
+
+
+  public int getInt() {
+    if (textInteger && textLength < 10) {
+      return (int) parseLong();
+    }
+    return (int) getDouble();
+  }
+
+
+  public long getLong() {
+    if (textInteger) {
+      return (textLength < 19) ? parseLong() : Long.parseLong(getString());
+    }
+    return (long) getDouble();
+  }
+
+
+  public float getFloat() {
+    if (textInteger && textLength < 8) {
+      return parseLong();
+    }
+    checkNumber();
+    return Float.parseFloat(getString());
+  }
+
+
+  public double getDouble() {
+    if (textInteger && textLength < 16) {
+      return parseLong();
+    }
+    checkNumber();
+    return Double.parseDouble(getString());
+  }
+
+
+  public boolean getBoolean() {
+    if (event != BOOLEAN) {
+      throw error("Not a boolean");
+    }
+    return text[0] == 't' || text[0] == 'T';
+  }
+
+
+  public boolean isNull() {
+    return event == NULL;
+  }
+
+
+  private void checkNumber() {
+    if (event != NUMBER) {
+      throw error("Not a number");
+    }
+  }
+
+
+  private long parseLong() {
+    checkNumber();
+    int i = 0;
+    boolean negative = false;
+    if (text[0] == '-' || text[0] == '+') {
+      negative = (text[0] == '-');
+      i++;
+    }
+    long value = 0;
+    for (; i < textLength; i++) {
+      value = value*10 + (text[i] - '0');
+    }
+    return negative ? -value : value;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Skip past the current value. After START_OBJECT or START_ARRAY, this
+   * moves to its end, and after a KEY, it skips the value that follows.
+   * For anything else, nothing happens.
+   */
+  public void skipValue() {
+    if (event == KEY) {
+      next();
+    }
+    if (event == START_OBJECT || event == START_ARRAY) {
+      int target = depth - 1;
+      while (depth > target) {
+        if (next() == END) {
+          throw error("Unexpected end of input");
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Build the current value: a JSONObject or JSONArray (after START_OBJECT
+   * or START_ARRAY), or a String, Integer, Long, Double, Boolean, or
+   * JSONObject.NULL. After a KEY, the value that follows is returned.
+   * The same types are used as when the whole document is loaded.
+   */
+  public Object readValue() {
+    switch (event) {
+    case KEY:
+      next();
+      return readValue();
+    case START_OBJECT:
+      return readObject();
+    case START_ARRAY:
+      return readArray();
+    case STRING:
+      return getString();
+    case NUMBER:
+    case BOOLEAN:
+      return JSONObject.stringToValue(getString());
+    case NULL:
+      return JSONObject.NULL;
+    }
+    throw error("No value here");
+  }
+
+
+  /** Build a JSONObject from the current START_OBJECT to its end. */
+  public JSONObject readObject() {
+    if (event == KEY) {
+      next();
+    }
+    if (event != START_OBJECT) {
+      throw error("Not the start of a JSONObject");
+    }
+    JSONObject outgoing = new JSONObject();
+    while (next() != END_OBJECT) {
+      String key = getString();
+      next();
+      Object value = readValue();
+      if (outgoing.hasKey(key)) {
+        throw error("Duplicate key \"" + key + "\"");
+      }
+      outgoing.put(key, value);
+    }
+    return outgoing;
+  }
+
+
+  /** Build a JSONArray from the current START_ARRAY to its end. */
+  public JSONArray readArray() {
+    if (event == KEY) {
+      next();
+    }
+    if (event != START_ARRAY) {
+      throw error("Not the start of a JSONArray");
+    }
+    JSONArray outgoing = new JSONArray();
+    while (next() != END_ARRAY) {
+      outgoing.append(readValue());
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * Go through the elements of an array one at a time, returning each as
+   * a String, Integer, Long, Double, Boolean, JSONObject, JSONArray, or
+   * JSONObject.NULL. Starts with the array that begins at the current
+   * position (or the next one, if nothing has been read yet), and finishes
+   * at its end.
+   */
+  public Iterable<Object> values() {
+    return new Iterable<Object>() {
+      public Iterator<Object> iterator() {
+        return new ElementIterator<Object>(Object.class);
+      }
+    };
+  }
+
+
+  /**
+   * Like values(), for an array that contains only objects.
+   */
+  public Iterable<JSONObject> objects() {
+    return new Iterable<JSONObject>() {
+      public Iterator<JSONObject> iterator() {
+        return new ElementIterator<JSONObject>(JSONObject.class);
+      }
+    };
+  }
+
+
+  class ElementIterator<T> implements Iterator<T> {
+    Class<T> type;
+    int arrayDepth;
+    int index;
+    boolean peeked;
+
+    ElementIterator(Class<T> type) {
+      this.type = type;
+      if (event == -1 || event == KEY) {
+        JSONReader.this.next();
+      }
+      if (event != START_ARRAY) {
+        throw error("Not the start of a JSONArray");
+      }
+      arrayDepth = depth;
+    }
+
+    public boolean hasNext() {
+      if (!peeked) {
+        if (depth < arrayDepth) {
+          return false;  // already finished
+        }
+        JSONReader.this.next();
+        peeked = true;
+      }
+      return event != END_ARRAY || depth >= arrayDepth;
+    }
+
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      peeked = false;
+      Object value = readValue();
+      if (!type.isInstance(value)) {
+        throw new RuntimeException("JSONArray[" + index + "] is not a " +
+                                   type.getSimpleName() + ".");
+      }
+      index++;
+      return type.cast(value);
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private int startValue(char c) {
+    switch (c) {
+    case 0:
+      throw error("Unexpected end of input");
+    case '{':
+      push(true);
+      return START_OBJECT;
+    case '[':
+      push(false);
+      return START_ARRAY;
+    case '"':
+    case '\'':
+      readQuoted(c);
+      return STRING;
+    }
+    readUnquoted(c);
+    if (textLength == 0) {
+      throw error("Missing value");
+    }
+    if (matches("true") || matches("false")) {
+      return BOOLEAN;
+    }
+    if (matches("null")) {
+      return NULL;
+    }
+    return isNumber() ? NUMBER : STRING;
+  }
+
+
+  private int startKey(char c) {
+    if (c == 0) {
+      throw error("A JSONObject text must end with '}'");
+    }
+    if (c == '"' || c == '\'') {
+      readQuoted(c);
+    } else {
+      readUnquoted(c);
+    }
+    textString = cachedKey();
+    stateStack[depth - 1] = AFTER_KEY;
+    return KEY;
+  }
+
+
+  private void push(boolean object) {
+    if (depth == objectStack.length) {
+      objectStack = Arrays.copyOf(objectStack, depth << 1);
+      stateStack = Arrays.copyOf(stateStack, depth << 1);
+    }
+    objectStack[depth] = object;
+    stateStack[depth] = FIRST;
+    depth++;
+  }
+
+
+  private int pop() {
+    depth--;
+    if (depth > 0) {
+      stateStack[depth - 1] = AFTER_VALUE;
+    }
+    return objectStack[depth] ? END_OBJECT : END_ARRAY;
+  }
+
+
+  /** Compare the current text (ignoring case) to a word. */
+  private boolean matches(String word) {
+    if (textLength != word.length()) {
+      return false;
+    }
+    for (int i = 0; i < textLength; i++) {
+      if (Character.toLowerCase(text[i]) != word.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /** Check whether the text is a number, and if so, whether it's an integer. */
+  private boolean isNumber() {
+    int i = 0;
+    if (text[0] == '-' || text[0] == '+') {
+      i++;
+    }
+    int digits = 0;
+    while (i < textLength && text[i] >= '0' && text[i] <= '9') {
+      i++;
+      digits++;
+    }
+    textInteger = (i == textLength && digits > 0);
+    if (i < textLength && text[i] == '.') {
+      i++;
+      while (i < textLength && text[i] >= '0' && text[i] <= '9') {
+        i++;
+        digits++;
+      }
+    }
+    if (digits == 0) {
+      return false;
+    }
+    if (i < textLength && (text[i] == 'e' || text[i] == 'E')) {
+      i++;
+      if (i < textLength && (text[i] == '-' || text[i] == '+')) {
+        i++;
+      }
+      int exp = 0;
+      while (i < textLength && text[i] >= '0' && text[i] <= '9') {
+        i++;
+        exp++;
+      }
+      if (exp == 0) {
+        return false;
+      }
+    }
+    return i == textLength;
+  }
+
+
+  /** Return the current text as a String, reusing one if it was seen recently. */
+  private String cachedKey() {
+    int hash = 0;
+    for (int i = 0; i < textLength; i++) {
+      hash = 31*hash + text[i];
+    }
+    int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE - 1);
+    String found = keyCache[slot];
+    if (found != null && found.length() == textLength) {
+      int i = 0;
+      while (i < textLength && found.charAt(i) == text[i]) {
+        i++;
+      }
+      if (i == textLength) {
+        return found;
+      }
+    }
+    found = new String(text, 0, textLength);
+    keyCache[slot] = found;
+    return found;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private void append(char c) {
+    if (textLength == text.length) {
+      text = Arrays.copyOf(text, textLength << 1);
+    }
+    text[textLength++] = c;
+  }
+
+
+  private void readQuoted(char quote) {
+    textLength = 0;
+    textInteger = false;
+    for (;;) {
+      char c = read();
+      switch (c) {
+      case 0:
+      case '\n':
+      case '\r':
+        throw error("Unterminated string");
+      case '\\':
+        c = read();
+        switch (c) {
+        case 'b': append('\b'); break;
+        case 't': append('\t'); break;
+        case 'n': append('\n'); break;
+        case 'f': append('\f'); break;
+        case 'r': append('\r'); break;
+        case 'u':
+          int value = 0;
+          for (int i = 0; i < 4; i++) {
+            int digit = JSONTokener.dehexchar(read());
+            if (digit == -1) {
+              throw error("Illegal escape.");
+            }
+            value = (value << 4) | digit;
+          }
+          append((char) value);
+          break;
+        case '"':
+        case '\'':
+        case '\\':
+        case '/':
+          append(c);
+          break;
+        default:
+          throw error("Illegal escape.");
+        }
+        break;
+      default:
+        if (c == quote) {
+          return;
+        }
+        append(c);
+      }
+    }
+  }
+
+
+  /** Read text up to a formatting character, the same way JSONTokener does. */
+  private void readUnquoted(char c) {
+    textLength = 0;
+    textInteger = false;
+    while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
+      append(c);
+      c = read();
+    }
+    if (c != 0) {
+      bufferIndex--;  // back up
+      if (c == '\n') {
+        line--;
+      }
+    }
+    // trim trailing whitespace (leading was already skipped)
+    while (textLength > 0 && text[textLength - 1] <= ' ') {
+      textLength--;
+    }
+  }
+
+
+  private char nextClean() {
+    for (;;) {
+      char c = read();
+      if (c == 0 || c > ' ') {
+        return c;
+      }
+    }
+  }
+
+
+  private char peek() {
+    char c = read();
+    if (c != 0) {
+      bufferIndex--;
+      if (c == '\n') {
+        line--;
+      }
+    }
+    return c;
+  }
+
+
+  /** Returns the next character, or 0 at the end of the input. */
+  private char read() {
+    if (bufferIndex == bufferLength) {
+      try {
+        bufferLength = reader.read(buffer, 0, buffer.length);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      bufferIndex = 0;
+      if (bufferLength <= 0) {
+        bufferLength = 0;
+        return 0;
+      }
+    }
+    char c = buffer[bufferIndex++];
+    if (c == '\n') {
+      line++;
+    }
+    return c;
+  }
+
+
+  private RuntimeException error(String message) {
+    return new RuntimeException(message + " (line " + line + ")");
+  }
+}
@@ -0,0 +1,316 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+ */
+
+package processing.data;
+
+import java.io.*;
+import java.util.Arrays;
+
+import processing.core.PApplet;
+
+
+/**
+ * Writes JSON a piece at a time, so that very large arrays can be saved
+ * without first building a JSONArray in memory. Uses the same layout as
+ * JSONObject.format() and JSONArray.format(), except that objects and
+ * arrays with a single entry are not collapsed onto one line.
+ * <pre>
+ * JSONWriter writer = new JSONWriter(createWriter("points.json"));
+ * writer.beginArray();
+ * for (PVector p : points) {
+ *   writer.beginObject();
+ *   writer.key("x").value(p.x);
+ *   writer.key("y").value(p.y);
+ *   writer.endObject();
+ * }
+ * writer.endArray();
+ * writer.close();
+ * </pre>
+ * A JSONObject or JSONArray can also be passed to value() to write it
+ * as a single entry.
+ *
+ * @nowebref
+ * @see JSONReader
+ */
+public class JSONWriter implements Closeable, Flushable {
+  Writer writer;
+  int indentFactor = 2;
+
+  // one entry per level: true for an object, false for an array
+  boolean[] objectStack = new boolean[32];
+  int[] countStack = new int[32];
+  int depth;
+  int topCount;
+
+  // a key has been written, and its value is next
+  boolean keyed;
+
+
+  public JSONWriter(Writer writer) {
+    this(writer, null);
+  }
+
+
+  /**
+   * @param options "compact" and "indent=N", replace N with the number of spaces
+   */
+  public JSONWriter(Writer writer, String options) {
+    this.writer = writer;
+    if (options != null) {
+      String[] opts = PApplet.split(options, ',');
+      for (String opt : opts) {
+        if (opt.equals("compact")) {
+          indentFactor = -1;
+        } else if (opt.startsWith("indent=")) {
+          indentFactor = PApplet.parseInt(opt.substring(7), -2);
+          if (indentFactor == -2) {
+            throw new IllegalArgumentException("Could not read a number from " + opt);
+          }
+        } else {
+          System.err.println("Ignoring " + opt);
+        }
+      }
+    }
+  }
+
+
+  public void flush() {
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  /**
+   * Finish any objects or arrays that are still open, then close the Writer.
+   */
+  public void close() {
+    while (depth > 0) {
+      end(objectStack[depth - 1]);
+    }
+    try {
+      writer.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public JSONWriter beginObject() {
+    begin(true);
+    return this;
+  }
+
+
+  public JSONWriter endObject() {
+    end(true);
+    return this;
+  }
+
+
+  public JSONWriter beginArray() {
+    begin(false);
+    return this;
+  }
+
+
+  public JSONWriter endArray() {
+    end(false);
+    return this;
+  }
+
+
+  /** Write the name for the next value inside an object. */
+  public JSONWriter key(String key) {
+    if (depth == 0 || !objectStack[depth - 1] || keyed) {
+      throw new RuntimeException("key() can only be used inside a JSONObject, before each value");
+    }
+    try {
+      separate();
+      JSONObject.quote(key, writer);
+      writer.write(':');
+      if (indentFactor > 0) {
+        writer.write(' ');
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    keyed = true;
+    return this;
+  }
+
+
+  public JSONWriter value(String value) {
+    startValue();
+    try {
+      if (value == null) {
+        writer.write("null");
+      } else {
+        JSONObject.quote(value, writer);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  public JSONWriter value(int value) {
+    return raw(Integer.toString(value));
+  }
+
+
+  public JSONWriter value(long value) {
+    return raw(Long.toString(value));
+  }
+
+
+  public JSONWriter value(float value) {
+    return value((Object) value);
+  }
+
+
+  public JSONWriter value(double value) {
+    return value((Object) value);
+  }
+
+
+  public JSONWriter value(boolean value) {
+    return raw(value ? "true" : "false");
+  }
+
+
+  public JSONWriter nullValue() {
+    return raw("null");
+  }
+
+
+  /**
+   * Write a JSONObject, JSONArray, or any other value that could be stored
+   * in one, formatted the same way as it would be by JSONObject.
+   */
+  public JSONWriter value(Object value) {
+    startValue();
+    try {
+      JSONObject.writeValue(writer, value, indentFactor, depth * actualFactor());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private int actualFactor() {
+    return (indentFactor == -1) ? 0 : indentFactor;
+  }
+
+
+  private JSONWriter raw(String text) {
+    startValue();
+    try {
+      writer.write(text);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  /** Write the comma, newline, and indent needed before the next entry. */
+  private void separate() throws IOException {
+    if (countStack[depth - 1]++ > 0) {
+      writer.write(',');
+    }
+    if (indentFactor != -1) {
+      writer.write('\n');
+    }
+    JSONObject.indent(writer, depth * actualFactor());
+  }
+
+
+  private void startValue() {
+    try {
+      if (depth == 0) {
+        // several values at the top level, one per line
+        if (topCount++ > 0) {
+          writer.write('\n');
+        }
+      } else if (objectStack[depth - 1]) {
+        if (!keyed) {
+          throw new RuntimeException("Use key() before each value in a JSONObject");
+        }
+        keyed = false;
+      } else {
+        separate();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  private void begin(boolean object) {
+    startValue();
+    if (depth == objectStack.length) {
+      objectStack = Arrays.copyOf(objectStack, depth << 1);
+      countStack = Arrays.copyOf(countStack, depth << 1);
+    }
+    objectStack[depth] = object;
+    countStack[depth] = 0;
+    depth++;
+    try {
+      writer.write(object ? '{' : '[');
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  private void end(boolean object) {
+    if (depth == 0 || objectStack[depth - 1] != object) {
+      throw new RuntimeException(object ?
+                                 "endObject() without a matching beginObject()" :
+                                 "endArray() without a matching beginArray()");
+    }
+    if (keyed) {
+      throw new RuntimeException("Missing a value after the last key()");
+    }
+    try {
+      if (countStack[depth - 1] > 0) {
+        if (indentFactor != -1) {
+          writer.write('\n');
+        }
+        JSONObject.indent(writer, (depth - 1) * actualFactor());
+      }
+      writer.write(object ? '}' : ']');
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    depth--;
+  }
+}
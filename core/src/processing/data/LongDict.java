@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -24,7 +23,7 @@ public class LongDict {
   protected long[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private StringIndex indices = new StringIndex();
 
 
   public LongDict() {
@@ -44,6 +43,7 @@ public class LongDict {
     count = 0;
     keys = new String[length];
     values = new long[length];
+    indices = new StringIndex(length);
   }
 
 
@@ -148,12 +148,12 @@ public class LongDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    indices.clear();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
+    indices = new StringIndex(count);
     for (int i = 0; i < count; i++) {
       indices.put(keys[i], i);
     }
@@ -560,8 +560,7 @@ public class LongDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    return indices.get(what);
   }
 
 
@@ -570,7 +569,7 @@ public class LongDict {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
     }
-    indices.put(what, Integer.valueOf(count));
+    indices.put(what, count);
     keys[count] = what;
     values[count] = much;
     count++;
@@ -0,0 +1,699 @@
+package processing.data;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import processing.core.PApplet;
+
+
+/**
+ * A simple class to use a long as a lookup for a float value. Works like
+ * FloatDict, but without creating a String (or any other object) for each key,
+ * which makes a big difference with very large numbers of entries.
+ * Entries are kept in the order they were added.
+ *
+ * @nowebref
+ * @see FloatDict
+ * @see IntIntDict
+ */
+public class LongFloatDict {
+
+  /** Number of elements in the table */
+  protected int count;
+
+  protected long[] keys;
+  protected float[] values;
+
+  /**
+   * Open addressing hash of keys to (index + 1) in the keys array,
+   * with 0 for an empty slot. Kept at most half full.
+   */
+  private int[] slots;
+
+
+  public LongFloatDict() {
+    this(10);
+  }
+
+
+  /**
+   * Create a new lookup with a specific size. This is more efficient than not
+   * specifying a size. Use it when you know the rough size of the thing you're creating.
+   */
+  public LongFloatDict(int length) {
+    count = 0;
+    keys = new long[length];
+    values = new float[length];
+    slots = new int[slotCount(length)];
+  }
+
+
+  public LongFloatDict(long[] keys, float[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("key and value arrays must be the same length");
+    }
+    this.keys = new long[keys.length];
+    this.values = new float[keys.length];
+    slots = new int[slotCount(keys.length)];
+    for (int i = 0; i < keys.length; i++) {
+      set(keys[i], values[i]);
+    }
+  }
+
+
+  /**
+   * Returns the number of key/value pairs
+   */
+  public int size() {
+    return count;
+  }
+
+
+  /**
+   * Resize the internal data, this can only be used to shrink the list.
+   * Helpful for situations like sorting and then grabbing the top 50 entries.
+   */
+  public void resize(int length) {
+    if (length > count) {
+      throw new IllegalArgumentException("resize() can only be used to shrink the dictionary");
+    }
+    if (length < 1) {
+      throw new IllegalArgumentException("resize(" + length + ") is too small, use 1 or higher");
+    }
+    keys = PApplet.subset(keys, 0, length);
+    values = PApplet.subset(values, 0, length);
+    count = length;
+    resetIndices();
+  }
+
+
+  /**
+   * Remove all entries.
+   */
+  public void clear() {
+    count = 0;
+    Arrays.fill(slots, 0);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static private int slotCount(int length) {
+    int outgoing = 16;
+    while (outgoing < length * 2 && outgoing < (1 << 30)) {
+      outgoing <<= 1;
+    }
+    return outgoing;
+  }
+
+
+  static private int hash(long key) {
+    int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+  /** Slot for this key, or the empty slot where it would go. */
+  private int slot(long key) {
+    int mask = slots.length - 1;
+    int slot = hash(key) & mask;
+    int found;
+    while ((found = slots[slot]) != 0 && keys[found - 1] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+
+  private void resetIndices() {
+    slots = new int[slotCount(keys.length)];
+    int mask = slots.length - 1;
+    for (int i = 0; i < count; i++) {
+      int slot = hash(keys[i]) & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = i + 1;
+    }
+  }
+
+
+  /** Empty a slot, moving back entries so their probe sequences stay intact. */
+  private void closeSlot(int gap) {
+    int mask = slots.length - 1;
+    int slot = (gap + 1) & mask;
+    int found;
+    while ((found = slots[slot]) != 0) {
+      int home = hash(keys[found - 1]) & mask;
+      if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+        slots[gap] = found;
+        gap = slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    slots[gap] = 0;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public class Entry {
+    public long key;
+    public float value;
+
+    Entry(long key, float value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+
+  public Iterable<Entry> entries() {
+    return new Iterable<Entry>() {
+
+      public Iterator<Entry> iterator() {
+        return entryIterator();
+      }
+    };
+  }
+
+
+  public Iterator<Entry> entryIterator() {
+    return new Iterator<Entry>() {
+      int index = -1;
+
+      public void remove() {
+        removeIndex(index);
+        index--;
+      }
+
+      public Entry next() {
+        ++index;
+        return new Entry(keys[index], values[index]);
+      }
+
+      public boolean hasNext() {
+        return index+1 < size();
+      }
+    };
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public long key(int index) {
+    return keys[index];
+  }
+
+
+  public Iterable<Long> keys() {
+    return new Iterable<Long>() {
+
+      @Override
+      public Iterator<Long> iterator() {
+        return keyIterator();
+      }
+    };
+  }
+
+
+  // Use this to iterate when you want to be able to remove elements along the way
+  public Iterator<Long> keyIterator() {
+    return new Iterator<Long>() {
+      int index = -1;
+
+      public void remove() {
+        removeIndex(index);
+        index--;
+      }
+
+      public Long next() {
+        return key(++index);
+      }
+
+      public boolean hasNext() {
+        return index+1 < size();
+      }
+    };
+  }
+
+
+  /**
+   * Return a copy of the internal keys array. This array can be modified.
+   */
+  public long[] keyArray() {
+    return keyArray(null);
+  }
+
+
+  public long[] keyArray(long[] outgoing) {
+    if (outgoing == null || outgoing.length != count) {
+      outgoing = new long[count];
+    }
+    System.arraycopy(keys, 0, outgoing, 0, count);
+    return outgoing;
+  }
+
+
+  public float value(int index) {
+    return values[index];
+  }
+
+
+  public Iterable<Float> values() {
+    return new Iterable<Float>() {
+
+      @Override
+      public Iterator<Float> iterator() {
+        return valueIterator();
+      }
+    };
+  }
+
+
+  public Iterator<Float> valueIterator() {
+    return new Iterator<Float>() {
+      int index = -1;
+
+      public void remove() {
+        removeIndex(index);
+        index--;
+      }
+
+      public Float next() {
+        return value(++index);
+      }
+
+      public boolean hasNext() {
+        return index+1 < size();
+      }
+    };
+  }
+
+
+  /**
+   * Create a new array and copy each of the values into it.
+   */
+  public float[] valueArray() {
+    return valueArray(null);
+  }
+
+
+  /**
+   * Fill an already-allocated array with the values (more efficient than
+   * creating a new array each time). If 'array' is null, or not the same
+   * size as the number of values, a new array will be allocated and returned.
+   */
+  public float[] valueArray(float[] array) {
+    if (array == null || array.length != size()) {
+      array = new float[count];
+    }
+    System.arraycopy(values, 0, array, 0, count);
+    return array;
+  }
+
+
+  /**
+   * Return a value for the specified key.
+   */
+  public float get(long key) {
+    int index = index(key);
+    if (index == -1) {
+      throw new IllegalArgumentException("No key named '" + key + "'");
+    }
+    return values[index];
+  }
+
+
+  public float get(long key, float alternate) {
+    int index = index(key);
+    if (index == -1) return alternate;
+    return values[index];
+  }
+
+
+  /**
+   * Create a new key/value pair or change the value of one.
+   */
+  public void set(long key, float amount) {
+    int slot = slot(key);
+    if (slots[slot] == 0) {
+      create(slot, key, amount);
+    } else {
+      values[slots[slot] - 1] = amount;
+    }
+  }
+
+
+  public boolean hasKey(long key) {
+    return index(key) != -1;
+  }
+
+
+  /**
+   * Increase the value associated with a specific key by 1.
+   */
+  public void increment(long key) {
+    add(key, 1);
+  }
+
+
+  /**
+   * Merge another dictionary into this one.
+   */
+  public void increment(LongFloatDict dict) {
+    for (int i = 0; i < dict.count; i++) {
+      add(dict.key(i), dict.value(i));
+    }
+  }
+
+
+  public void add(long key, float amount) {
+    int slot = slot(key);
+    if (slots[slot] == 0) {
+      create(slot, key, amount);
+    } else {
+      values[slots[slot] - 1] += amount;
+    }
+  }
+
+
+  public void sub(long key, float amount) {
+    add(key, -amount);
+  }
+
+
+  public void mult(long key, float amount) {
+    int index = index(key);
+    if (index != -1) {
+      values[index] *= amount;
+    }
+  }
+
+
+  public void div(long key, float amount) {
+    int index = index(key);
+    if (index != -1) {
+      values[index] /= amount;
+    }
+  }
+
+
+  private void checkMinMax(String functionName) {
+    if (count == 0) {
+      String msg =
+        String.format("Cannot use %s() on an empty %s.",
+                      functionName, getClass().getSimpleName());
+      throw new RuntimeException(msg);
+    }
+  }
+
+
+  // return the index of the minimum value
+  public int minIndex() {
+    if (count == 0) return -1;
+
+    int index = 0;
+    float value = values[0];
+    for (int i = 1; i < count; i++) {
+      if (values[i] < value) {
+        index = i;
+        value = values[i];
+      }
+    }
+    return index;
+  }
+
+
+  // return the key for the minimum value
+  public long minKey() {
+    checkMinMax("minKey");
+    return keys[minIndex()];
+  }
+
+
+  // return the minimum value, or throw an error if there are no values
+  public float minValue() {
+    checkMinMax("minValue");
+    return values[minIndex()];
+  }
+
+
+  // return the index of the max value
+  public int maxIndex() {
+    if (count == 0) return -1;
+
+    int index = 0;
+    float value = values[0];
+    for (int i = 1; i < count; i++) {
+      if (values[i] > value) {
+        index = i;
+        value = values[i];
+      }
+    }
+    return index;
+  }
+
+
+  // return the key corresponding to the maximum value
+  public long maxKey() {
+    checkMinMax("maxKey");
+    return keys[maxIndex()];
+  }
+
+
+  // return the maximum value or throw an error if zero length
+  public float maxValue() {
+    checkMinMax("maxValue");
+    return values[maxIndex()];
+  }
+
+
+  public float sum() {
+    double amount = sumDouble();
+    if (amount > Float.MAX_VALUE) {
+      throw new RuntimeException("sum() exceeds " + Float.MAX_VALUE + ", use sumDouble()");
+    }
+    if (amount < -Float.MAX_VALUE) {
+      throw new RuntimeException("sum() lower than " + -Float.MAX_VALUE + ", use sumDouble()");
+    }
+    return (float) amount;
+  }
+
+
+  public double sumDouble() {
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += values[i];
+    }
+    return sum;
+  }
+
+
+  public int index(long what) {
+    int found = slots[slot(what)];
+    return found - 1;
+  }
+
+
+  protected void create(int slot, long what, float much) {
+    if (count == keys.length) {
+      keys = PApplet.expand(keys);
+      values = PApplet.expand(values);
+    }
+    keys[count] = what;
+    values[count] = much;
+    count++;
+    if (count * 2 > slots.length) {
+      resetIndices();
+    } else {
+      slots[slot] = count;
+    }
+  }
+
+
+  public float remove(long key) {
+    int index = index(key);
+    if (index == -1) {
+      throw new NoSuchElementException("'" + key + "' not found");
+    }
+    float value = values[index];
+    removeIndex(index);
+    return value;
+  }
+
+
+  public float removeIndex(int index) {
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    float value = values[index];
+    closeSlot(slot(keys[index]));
+    for (int i = index; i < count-1; i++) {
+      keys[i] = keys[i+1];
+      values[i] = values[i+1];
+      slots[slot(keys[i])] = i + 1;
+    }
+    count--;
+    return value;
+  }
+
+
+  public void swap(int a, int b) {
+    int slotA = slot(keys[a]);
+    int slotB = slot(keys[b]);
+    swapEntries(a, b);
+    slots[slotA] = b + 1;
+    slots[slotB] = a + 1;
+  }
+
+
+  /** Swap without updating the slots, for sortImpl(). */
+  private void swapEntries(int a, int b) {
+    long tkey = keys[a];
+    float tvalue = values[a];
+    keys[a] = keys[b];
+    values[a] = values[b];
+    keys[b] = tkey;
+    values[b] = tvalue;
+  }
+
+
+  /**
+   * Sort the keys in ascending order.
+   */
+  public void sortKeys() {
+    sortImpl(true, false, true);
+  }
+
+
+  public void sortKeysReverse() {
+    sortImpl(true, true, true);
+  }
+
+
+  /**
+   * Sort by values in ascending order. The smallest value will be at [0].
+   */
+  public void sortValues() {
+    sortValues(true);
+  }
+
+
+  /**
+   * Set true to ensure that the order returned is identical. Slightly
+   * slower because the tie-breaker for identical values compares the keys.
+   */
+  public void sortValues(boolean stable) {
+    sortImpl(false, false, stable);
+  }
+
+
+  /**
+   * Sort by values in descending order. The largest value will be at [0].
+   */
+  public void sortValuesReverse() {
+    sortValuesReverse(true);
+  }
+
+
+  public void sortValuesReverse(boolean stable) {
+    sortImpl(false, true, stable);
+  }
+
+
+  protected void sortImpl(final boolean useKeys, final boolean reverse,
+                          final boolean stable) {
+    Sort s = new Sort() {
+      @Override
+      public int size() {
+        return count;
+      }
+
+      @Override
+      public int compare(int a, int b) {
+        int diff;
+        if (useKeys) {
+          diff = Long.compare(keys[a], keys[b]);
+        } else {  // sort values
+          diff = Float.compare(values[a], values[b]);
+          if (diff == 0 && stable) {
+            diff = Long.compare(keys[a], keys[b]);
+          }
+        }
+        return reverse ? -diff : diff;
+      }
+
+      @Override
+      public void swap(int a, int b) {
+        swapEntries(a, b);
+      }
+    };
+    s.run();
+
+    // Set the indices after sort/swaps
+    resetIndices();
+  }
+
+
+  /** Returns a duplicate copy of this object. */
+  public LongFloatDict copy() {
+    LongFloatDict outgoing = new LongFloatDict(count);
+    System.arraycopy(keys, 0, outgoing.keys, 0, count);
+    System.arraycopy(values, 0, outgoing.values, 0, count);
+    outgoing.count = count;
+    outgoing.resetIndices();
+    return outgoing;
+  }
+
+
+  public void print() {
+    for (int i = 0; i < size(); i++) {
+      System.out.println(keys[i] + " = " + values[i]);
+    }
+  }
+
+
+  /**
+   * Save tab-delimited entries to a file (TSV format, UTF-8 encoding)
+   */
+  public void save(File file) {
+    PrintWriter writer = PApplet.createWriter(file);
+    write(writer);
+    writer.close();
+  }
+
+
+  /**
+   * Write tab-delimited entries to a PrintWriter
+   */
+  public void write(PrintWriter writer) {
+    for (int i = 0; i < count; i++) {
+      writer.println(keys[i] + "\t" + values[i]);
+    }
+    writer.flush();
+  }
+
+
+  /**
+   * Return this dictionary as a String in JSON format.
+   */
+  public String toJSON() {
+    StringList items = new StringList();
+    for (int i = 0; i < count; i++) {
+      items.append("\"" + keys[i] + "\": " + values[i]);
+    }
+    return "{ " + items.join(", ") + " }";
+  }
+
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " size=" + size() + " " + toJSON();
+  }
+}
@@ -0,0 +1,589 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+ */
+
+package processing.data;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import processing.core.PApplet;
+
+
+/**
+ * A read-only Table backed directly by a binary ("bin") table file that has
+ * been mapped into memory. Nothing is decoded when the file is opened except
+ * for the header: individual entries are read straight from the mapping when
+ * getInt(), getFloat(), getString() and friends are called, and category
+ * dictionaries are only loaded the first time a CATEGORY column is used as a
+ * String. The operating system pages data in and out as needed, so memory
+ * use depends on what's touched, not the size of the file.
+ * <p>
+ * Files written by saveTable() with the "bin" option are stored row by row.
+ * For tables with only numeric and category columns, every row has the same
+ * size, so any entry can be located directly. Tables with String columns
+ * have rows of varying length; the first lookup into one of those will scan
+ * the file once to build a sparse index of row positions.
+ * <p>
+ * Use loadTable("data.bin", "mapped") from a sketch, or create one directly
+ * with new MappedTable(file). Any attempt to modify the table will throw an
+ * exception; use copy() to get a regular Table that can be changed.
+ *
+ * @nowebref
+ * @see Table
+ */
+public class MappedTable extends Table {
+  // Mapped regions are limited to 2 GB each, so larger files are split up.
+  static final int SEGMENT_BITS = 30;
+  static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+  static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  // Distance between row offsets stored for tables with String columns.
+  static final int CHECKPOINT_BITS = 6;
+
+  MappedByteBuffer[] segments;
+  long length;
+
+  long dataStart;
+
+  // For tables without String columns: the size of a row in bytes, and the
+  // offset to each column within the row. Zero when rows vary in length.
+  int rowSize;
+  int[] columnOffsets;
+
+  // For tables with String columns: position of every 64th row
+  volatile long[] checkpoints;
+  // The last row that was located, to make sequential access cheaper
+  volatile RowPosition lastPosition;
+
+  // Location of the category dictionary for each CATEGORY column
+  long[] categoryOffsets;
+
+
+  /**
+   * Map a binary table from disk. The file remains mapped for as long as
+   * this object is reachable.
+   */
+  public MappedTable(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      length = channel.size();
+      int count = (int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+      segments = new MappedByteBuffer[count];
+      for (int i = 0; i < count; i++) {
+        long start = (long) i << SEGMENT_BITS;
+        // Overlap each segment with the next by a few bytes, so that primitive
+        // values that straddle a boundary can still be read in a single get.
+        long size = Math.min(SEGMENT_SIZE + 8, length - start);
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+      }
+    } finally {
+      // the mapping stays valid after the channel has been closed
+      raf.close();
+    }
+    readHeader();
+  }
+
+
+  protected void readHeader() throws IOException {
+    long pos = 0;
+    int magic = readInt(pos);
+    if (magic != 0x9007AB1E) {
+      throw new IOException("Not a compatible binary table (magic was " + PApplet.hex(magic) + ")");
+    }
+    rowCount = readInt(pos + 4);
+    int columnCount = readInt(pos + 8);
+    pos += 12;
+
+    columns = new Object[columnCount];
+    columnTypes = new int[columnCount];
+    columnCategories = new HashMapBlows[columnCount];
+
+    boolean hasTitles = readByte(pos++) != 0;
+    if (hasTitles) {
+      columnTitles = new String[columnCount];
+      for (int i = 0; i < columnCount; i++) {
+        columnTitles[i] = readUTF(pos);
+        pos += 2 + readShort(pos);
+      }
+    }
+    for (int col = 0; col < columnCount; col++) {
+      int type = readInt(pos);
+      if (type < STRING || type > CATEGORY) {
+        throw new IOException(type + " is not a valid column type.");
+      }
+      columnTypes[col] = type;
+      pos += 4;
+    }
+
+    // Only note where the dictionaries are, they're loaded when first needed
+    categoryOffsets = new long[columnCount];
+    for (int col = 0; col < columnCount; col++) {
+      if (columnTypes[col] == CATEGORY) {
+        categoryOffsets[col] = pos;
+        int count = readInt(pos);
+        pos += 4;
+        for (int i = 0; i < count; i++) {
+          pos += 2 + readShort(pos);
+        }
+      }
+    }
+
+    if (readByte(pos++) != 0) {
+      missingString = readUTF(pos);
+      pos += 2 + readShort(pos);
+    } else {
+      missingString = null;
+    }
+    missingInt = readInt(pos);
+    missingLong = readLong(pos + 4);
+    missingFloat = Float.intBitsToFloat(readInt(pos + 12));
+    missingDouble = Double.longBitsToDouble(readLong(pos + 16));
+    missingCategory = readInt(pos + 24);
+    pos += 28;
+
+    dataStart = pos;
+
+    columnOffsets = new int[columnCount];
+    int offset = 0;
+    for (int col = 0; col < columnCount; col++) {
+      if (columnTypes[col] == STRING) {
+        offset = 0;
+        break;
+      }
+      columnOffsets[col] = offset;
+      offset += columnSize(col);
+    }
+    rowSize = offset;
+
+    long expected = dataStart + (long) rowSize * rowCount;
+    if (rowSize != 0 && expected > length) {
+      throw new IOException("This binary table has been truncated.");
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public int getInt(int row, int column) {
+    checkBounds(row, column);
+    int type = columnTypes[column];
+    if (type == INT || type == CATEGORY) {
+      return readInt(locate(row, column));
+    }
+    String str = getString(row, column);
+    return (str == null || str.equals(missingString)) ?
+      missingInt : PApplet.parseInt(str, missingInt);
+  }
+
+
+  public long getLong(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == LONG) {
+      return readLong(locate(row, column));
+    }
+    String str = getString(row, column);
+    if (str == null || str.equals(missingString)) {
+      return missingLong;
+    }
+    try {
+      return Long.parseLong(str);
+    } catch (NumberFormatException nfe) {
+      return missingLong;
+    }
+  }
+
+
+  public float getFloat(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == FLOAT) {
+      return Float.intBitsToFloat(readInt(locate(row, column)));
+    }
+    String str = getString(row, column);
+    if (str == null || str.equals(missingString)) {
+      return missingFloat;
+    }
+    return PApplet.parseFloat(str, missingFloat);
+  }
+
+
+  public double getDouble(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == DOUBLE) {
+      return Double.longBitsToDouble(readLong(locate(row, column)));
+    }
+    String str = getString(row, column);
+    if (str == null || str.equals(missingString)) {
+      return missingDouble;
+    }
+    try {
+      return Double.parseDouble(str);
+    } catch (NumberFormatException nfe) {
+      return missingDouble;
+    }
+  }
+
+
+  public String getString(int row, int column) {
+    checkBounds(row, column);
+    long pos = locate(row, column);
+    switch (columnTypes[column]) {
+    case STRING:
+      return (readByte(pos) == 0) ? null : readUTF(pos + 1);
+    case INT:
+      return String.valueOf(readInt(pos));
+    case LONG:
+      return String.valueOf(readLong(pos));
+    case FLOAT:
+      float f = Float.intBitsToFloat(readInt(pos));
+      return Float.isNaN(f) ? null : String.valueOf(f);
+    case DOUBLE:
+      double d = Double.longBitsToDouble(readLong(pos));
+      return Double.isNaN(d) ? null : String.valueOf(d);
+    case CATEGORY:
+      int cat = readInt(pos);
+      if (cat == missingCategory) {
+        return missingString;
+      }
+      return getCategories(column).key(cat);
+    }
+    return null;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // The versions in Table read the String[] arrays directly for speed,
+  // these go through getString() since there aren't any arrays to read.
+
+
+  public int findRowIndex(String value, int column) {
+    checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      return index.findRowIndex(value);
+    }
+    for (int row = 0; row < rowCount; row++) {
+      String str = getString(row, column);
+      if (str == null ? value == null : str.equals(value)) {
+        return row;
+      }
+    }
+    return -1;
+  }
+
+
+  public int[] findRowIndices(String value, int column) {
+    checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      return index.findRowIndices(value);
+    }
+    int[] outgoing = new int[rowCount];
+    int count = 0;
+    for (int row = 0; row < rowCount; row++) {
+      String str = getString(row, column);
+      if (str == null ? value == null : str.equals(value)) {
+        outgoing[count++] = row;
+      }
+    }
+    return PApplet.subset(outgoing, 0, count);
+  }
+
+
+  public int matchRowIndex(String regexp, int column) {
+    checkColumn(column);
+    for (int row = 0; row < rowCount; row++) {
+      String str = getString(row, column);
+      if (str != null && PApplet.match(str, regexp) != null) {
+        return row;
+      }
+    }
+    return -1;
+  }
+
+
+  public int[] matchRowIndices(String regexp, int column) {
+    checkColumn(column);
+    int[] outgoing = new int[rowCount];
+    int count = 0;
+    for (int row = 0; row < rowCount; row++) {
+      String str = getString(row, column);
+      if (str != null && PApplet.match(str, regexp) != null) {
+        outgoing[count++] = row;
+      }
+    }
+    return PApplet.subset(outgoing, 0, count);
+  }
+
+
+  /** Columns are decoded from the file each time they're requested. */
+  Object getColumnData(int column) {
+    switch (columnTypes[column]) {
+    case INT:
+    case CATEGORY:
+      int[] intData = new int[rowCount];
+      for (int row = 0; row < rowCount; row++) {
+        intData[row] = readInt(locate(row, column));
+      }
+      return intData;
+    case LONG:
+      return getLongColumn(column);
+    case FLOAT:
+      return getFloatColumn(column);
+    case DOUBLE:
+      return getDoubleColumn(column);
+    }
+    return getStringColumn(column);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Load the dictionary for a CATEGORY column the first time it's needed. */
+  protected HashMapBlows getCategories(int column) {
+    HashMapBlows categories = columnCategories[column];
+    if (categories == null) {
+      synchronized (this) {
+        categories = columnCategories[column];
+        if (categories == null) {
+          categories = new HashMapBlows();
+          long pos = categoryOffsets[column];
+          int count = readInt(pos);
+          pos += 4;
+          for (int i = 0; i < count; i++) {
+            categories.setCategory(i, readUTF(pos));
+            pos += 2 + readShort(pos);
+          }
+          columnCategories[column] = categories;
+        }
+      }
+    }
+    return categories;
+  }
+
+
+  /** Number of bytes used by an entry, or -1 if it varies (String columns) */
+  protected int columnSize(int column) {
+    switch (columnTypes[column]) {
+    case INT:
+    case FLOAT:
+    case CATEGORY:
+      return 4;
+    case LONG:
+    case DOUBLE:
+      return 8;
+    }
+    return -1;
+  }
+
+
+  /** Return the position in the file of an entry. */
+  protected long locate(int row, int column) {
+    if (rowSize != 0) {
+      return dataStart + (long) row * rowSize + columnOffsets[column];
+    }
+    long pos = locateRow(row);
+    for (int col = 0; col < column; col++) {
+      pos = skipEntry(pos, col);
+    }
+    return pos;
+  }
+
+
+  /** Find the start of a row in a table whose rows vary in length. */
+  protected long locateRow(int row) {
+    RowPosition last = lastPosition;
+    if (last != null && last.row == row) {
+      return last.pos;
+    }
+    int start;
+    long pos;
+    if (last != null && last.row < row &&
+        (row >>> CHECKPOINT_BITS) == (last.row >>> CHECKPOINT_BITS)) {
+      // continue from the previous lookup, most often the row before
+      start = last.row;
+      pos = last.pos;
+    } else {
+      start = (row >>> CHECKPOINT_BITS) << CHECKPOINT_BITS;
+      pos = getCheckpoints()[row >>> CHECKPOINT_BITS];
+    }
+    for (int r = start; r < row; r++) {
+      pos = skipRow(pos);
+    }
+    lastPosition = new RowPosition(row, pos);
+    return pos;
+  }
+
+
+  protected long[] getCheckpoints() {
+    long[] outgoing = checkpoints;
+    if (outgoing == null) {
+      synchronized (this) {
+        outgoing = checkpoints;
+        if (outgoing == null) {
+          int count = (rowCount >>> CHECKPOINT_BITS) + 1;
+          outgoing = new long[count];
+          long pos = dataStart;
+          for (int row = 0; row < rowCount; row++) {
+            if ((row & ((1 << CHECKPOINT_BITS) - 1)) == 0) {
+              outgoing[row >>> CHECKPOINT_BITS] = pos;
+            }
+            pos = skipRow(pos);
+          }
+          if (pos > length) {
+            throw new RuntimeException("This binary table has been truncated.");
+          }
+          checkpoints = outgoing;
+        }
+      }
+    }
+    return outgoing;
+  }
+
+
+  protected long skipRow(long pos) {
+    for (int col = 0; col < columnTypes.length; col++) {
+      pos = skipEntry(pos, col);
+    }
+    return pos;
+  }
+
+
+  protected long skipEntry(long pos, int column) {
+    if (columnTypes[column] == STRING) {
+      if (readByte(pos) == 0) {
+        return pos + 1;
+      }
+      return pos + 3 + readShort(pos + 1);
+    }
+    return pos + columnSize(column);
+  }
+
+
+  static class RowPosition {
+    final int row;
+    final long pos;
+
+    RowPosition(int row, long pos) {
+      this.row = row;
+      this.pos = pos;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // Primitive reads from the mapping, in the big-endian format written by
+  // DataOutputStream in Table.saveBinary()
+
+
+  protected byte readByte(long pos) {
+    return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & SEGMENT_MASK));
+  }
+
+
+  /** Read an unsigned short, used for the length of UTF strings. */
+  protected int readShort(long pos) {
+    return segments[(int) (pos >>> SEGMENT_BITS)].getShort((int) (pos & SEGMENT_MASK)) & 0xffff;
+  }
+
+
+  protected int readInt(long pos) {
+    return segments[(int) (pos >>> SEGMENT_BITS)].getInt((int) (pos & SEGMENT_MASK));
+  }
+
+
+  protected long readLong(long pos) {
+    return segments[(int) (pos >>> SEGMENT_BITS)].getLong((int) (pos & SEGMENT_MASK));
+  }
+
+
+  /**
+   * Decode a String written with DataOutput.writeUTF(), which is a two-byte
+   * length followed by the "modified" UTF-8 version of the characters.
+   */
+  protected String readUTF(long pos) {
+    int count = readShort(pos);
+    pos += 2;
+    char[] c = new char[count];
+    int length = 0;
+    long stop = pos + count;
+    while (pos < stop) {
+      int a = readByte(pos++) & 0xff;
+      if (a < 0x80) {
+        c[length++] = (char) a;
+      } else if ((a & 0xE0) == 0xC0) {
+        int b = readByte(pos++) & 0x3f;
+        c[length++] = (char) (((a & 0x1f) << 6) | b);
+      } else {
+        int b = readByte(pos++) & 0x3f;
+        int d = readByte(pos++) & 0x3f;
+        c[length++] = (char) (((a & 0x0f) << 12) | (b << 6) | d);
+      }
+    }
+    return new String(c, 0, length);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  protected void readOnly() {
+    throw new IllegalArgumentException("This Table is mapped from a file and cannot be modified. Use copy() to make a version that can be changed.");
+  }
+
+
+  public void addColumn(String title, int type) { readOnly(); }
+  public void insertColumn(int index, String title, int type) { readOnly(); }
+  public void removeColumn(int column) { readOnly(); }
+  public void setColumnCount(int newCount) { readOnly(); }
+  public void setColumnType(int column, int newType) { readOnly(); }
+  public void setColumnTitles(String[] titles) { readOnly(); }
+  public void setColumnTitle(int column, String title) { readOnly(); }
+
+  public void setRowCount(int newCount) { readOnly(); }
+  public TableRow setRow(int row, TableRow source) { readOnly(); return null; }
+  public void setRow(int row, String[] pieces) { readOnly(); }
+  public void setRow(int row, Object[] pieces) { readOnly(); }
+  public void insertRow(int insert, Object[] columnData) { readOnly(); }
+  public void removeRow(int row) { readOnly(); }
+
+  public void setInt(int row, int column, int value) { readOnly(); }
+  public void setLong(int row, int column, long value) { readOnly(); }
+  public void setFloat(int row, int column, float value) { readOnly(); }
+  public void setDouble(int row, int column, double value) { readOnly(); }
+  public void setString(int row, int column, String value) { readOnly(); }
+
+  public void replace(String orig, String replacement) { readOnly(); }
+  public void replace(String orig, String replacement, int col) { readOnly(); }
+  public void replaceAll(String regex, String replacement) { readOnly(); }
+  public void replaceAll(String regex, String replacement, int column) { readOnly(); }
+  public void removeTokens(String tokens) { readOnly(); }
+  public void removeTokens(String tokens, int column) { readOnly(); }
+  public void trim() { readOnly(); }
+  public void trim(int column) { readOnly(); }
+  protected void sort(int column, boolean reverse) { readOnly(); }
+}
@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -24,7 +23,7 @@ public class StringDict {
   protected String[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private StringIndex indices = new StringIndex();
 
 
   public StringDict() {
@@ -45,6 +44,7 @@ public class StringDict {
     count = 0;
     keys = new String[length];
     values = new String[length];
+    indices = new StringIndex(length);
   }
 
 
@@ -169,12 +169,12 @@ public class StringDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    indices.clear();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
+    indices = new StringIndex(count);
     for (int i = 0; i < count; i++) {
       indices.put(keys[i], i);
     }
@@ -405,8 +405,7 @@ public class StringDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    return indices.get(what);
   }
 
 
@@ -424,7 +423,7 @@ public class StringDict {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
     }
-    indices.put(key, Integer.valueOf(count));
+    indices.put(key, count);
     keys[count] = key;
     values[count] = value;
     count++;
@@ -0,0 +1,178 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+ */
+
+package processing.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Lookup from a String to its (int) position, used by the Dict classes in
+ * place of a HashMap&lt;String, Integer&gt;. Uses open addressing with linear
+ * probing so that nothing is boxed, and get() and put() for an existing key
+ * don't allocate anything.
+ */
+class StringIndex {
+  static final int MINIMUM = 16;
+
+  String[] slotKeys;
+  int[] slotValues;
+  int mask;
+
+  /** Number of keys in the table, not including null. */
+  int size;
+
+  /** Since null marks an empty slot, the null key is stored separately. */
+  int nullValue = -1;
+
+
+  StringIndex() {
+    this(MINIMUM);
+  }
+
+
+  /** Create an index that can hold 'expected' keys without resizing. */
+  StringIndex(int expected) {
+    // keep the table at most half full
+    int length = MINIMUM;
+    while (length < expected * 2 && length < (1 << 30)) {
+      length <<= 1;
+    }
+    slotKeys = new String[length];
+    slotValues = new int[length];
+    mask = length - 1;
+  }
+
+
+  static int hash(String key) {
+    int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+  /** Returns the value for this key, or -1 if it's not found. */
+  int get(String key) {
+    if (key == null) {
+      return nullValue;
+    }
+    int slot = hash(key) & mask;
+    String found;
+    while ((found = slotKeys[slot]) != null) {
+      if (found == key || found.equals(key)) {
+        return slotValues[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+
+  /** Set the value for a key, replacing the old one if it exists. */
+  void put(String key, int value) {
+    if (key == null) {
+      nullValue = value;
+      return;
+    }
+    int slot = hash(key) & mask;
+    String found;
+    while ((found = slotKeys[slot]) != null) {
+      if (found == key || found.equals(key)) {
+        slotValues[slot] = value;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    slotKeys[slot] = key;
+    slotValues[slot] = value;
+    if (++size * 2 > slotKeys.length) {
+      grow();
+    }
+  }
+
+
+  /** Remove a key, returning its value or -1 if it wasn't found. */
+  int remove(String key) {
+    if (key == null) {
+      int value = nullValue;
+      nullValue = -1;
+      return value;
+    }
+    int slot = hash(key) & mask;
+    String found;
+    while ((found = slotKeys[slot]) != null) {
+      if (found == key || found.equals(key)) {
+        int value = slotValues[slot];
+        close(slot);
+        size--;
+        return value;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+
+  void clear() {
+    Arrays.fill(slotKeys, null);
+    size = 0;
+    nullValue = -1;
+  }
+
+
+  /**
+   * Empty a slot, moving back any of the entries that follow it so that
+   * there aren't any gaps in their probe sequences (no tombstones needed).
+   */
+  private void close(int gap) {
+    int slot = (gap + 1) & mask;
+    String key;
+    while ((key = slotKeys[slot]) != null) {
+      int home = hash(key) & mask;
+      // move it back if its home isn't cyclically within (gap, slot]
+      if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+        slotKeys[gap] = key;
+        slotValues[gap] = slotValues[slot];
+        gap = slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    slotKeys[gap] = null;
+  }
+
+
+  private void grow() {
+    String[] oldKeys = slotKeys;
+    int[] oldValues = slotValues;
+    slotKeys = new String[oldKeys.length << 1];
+    slotValues = new int[slotKeys.length];
+    mask = slotKeys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      String key = oldKeys[i];
+      if (key != null) {
+        int slot = hash(key) & mask;
+        while (slotKeys[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        slotKeys[slot] = key;
+        slotValues[slot] = oldValues[i];
+      }
+    }
+  }
+}
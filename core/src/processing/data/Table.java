@@ -31,8 +31,11 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -94,6 +97,9 @@ public class Table {
 
   protected RowIterator rowIterator;
 
+  // Lookups created with createIndex(), by column. Null until one is made.
+  TableIndex[] indexes;
+
   // 0 for doubling each time, otherwise the number of rows to increment on
   // each expansion.
   protected int expandIncrement;
@@ -142,6 +148,7 @@ public class Table {
    * <li>tsv - parse the table as tab-separated values
    * <li>newlines - this CSV file contains newlines inside individual cells
    * <li>header - this table has a header (title) row
+   * <li>parallel - read the entire file, then parse it using several threads
    * </ul>
    *
    * @nowebref
@@ -263,6 +270,92 @@ public class Table {
   }
 
 
+  /**
+   * Read rows one at a time from a CSV or TSV stream, without loading the
+   * whole table into memory. Each row is parsed only when the iterator gets
+   * to it, and the same TableRow object is reused (and overwritten) for each
+   * row, so copy any values that need to be kept. The Iterable can only be
+   * used once, because the stream is consumed as it's read.
+   * <pre>
+   * for (TableRow row : Table.stream(input, "header,csv")) {
+   *   total += row.getFloat("amount");
+   * }
+   * </pre>
+   * Options are the same as the Table constructor, minus "bin" and "ods".
+   *
+   * @nowebref
+   */
+  static public Iterable<TableRow> stream(InputStream input, String options) throws IOException {
+    return new Table().streamImpl(input, options);
+  }
+
+
+  /**
+   * Like stream(), but uses this table as a dictionary for the titles and
+   * column types, the same way typedParse() does. Columns are converted
+   * while reading, so getInt() or getFloat() on a row don't have to parse.
+   *
+   * @nowebref
+   */
+  public Iterable<TableRow> typedStream(InputStream input, String options) throws IOException {
+    Table table = new Table();
+    table.setColumnTypes(this);
+    return table.streamImpl(input, options);
+  }
+
+
+  protected Iterable<TableRow> streamImpl(InputStream input, String options) throws IOException {
+    boolean header = false;
+    String extension = null;
+    String encoding = "UTF-8";
+
+    if (options != null) {
+      for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+        if (opt.equals("tsv")) {
+          extension = "tsv";
+        } else if (opt.equals("csv")) {
+          extension = "csv";
+        } else if (opt.equals("header")) {
+          header = true;
+        } else if (opt.startsWith("encoding=")) {
+          encoding = opt.substring(9);
+        } else if (opt.equals("bin") || opt.equals("ods")) {
+          throw new IllegalArgumentException("Only csv and tsv files can be streamed");
+        } else if (!opt.startsWith("dictionary=") && !opt.equals("parallel")) {
+          throw new IllegalArgumentException("'" + opt + "' is not a valid option for loading a Table");
+        }
+      }
+    }
+    if (extension == null) {
+      throw new IllegalArgumentException("No extension specified for this Table");
+    }
+
+    BufferedReader reader =
+      new BufferedReader(new InputStreamReader(input, encoding));
+    // strip out the Unicode BOM, if present
+    reader.mark(1);
+    if (reader.read() != '\uFEFF') {
+      reader.reset();
+    }
+    // a single row that's overwritten with each line from the file
+    setRowCount(1);
+
+    final RowStream stream =
+      new RowStream(this, reader, header, "tsv".equals(extension));
+    return new Iterable<TableRow>() {
+      boolean used;
+
+      public Iterator<TableRow> iterator() {
+        if (used) {
+          throw new IllegalStateException("stream() can only be iterated once");
+        }
+        used = true;
+        return stream;
+      }
+    };
+  }
+
+
   protected void init() {
     columns = new Object[0];
     columnTypes = new int[0];
@@ -329,6 +422,7 @@ public class Table {
     boolean header = false;
     String extension = null;
     boolean binary = false;
+    boolean parallel = false;
     String encoding = "UTF-8";
 
     String worksheet = null;
@@ -353,10 +447,15 @@ public class Table {
           extension = "bin";
         } else if (opt.equals("header")) {
           header = true;
+        } else if (opt.equals("parallel")) {
+          parallel = true;
         } else if (opt.startsWith(sheetParam)) {
           worksheet = opt.substring(sheetParam.length());
         } else if (opt.startsWith("dictionary=")) {
           // ignore option, this is only handled by PApplet
+        } else if (opt.equals("mapped")) {
+          // ignore option, PApplet uses MappedTable when reading from a file,
+          // otherwise the stream is loaded into memory as usual
         } else if (opt.startsWith("encoding=")) {
           encoding = opt.substring(9);
         } else {
@@ -396,7 +495,11 @@ public class Table {
         parseBasic(reader, header, false);
       }
       */
-      parseBasic(reader, header, "tsv".equals(extension));
+      if (parallel) {
+        parseParallel(reader, header, "tsv".equals(extension));
+      } else {
+        parseBasic(reader, header, "tsv".equals(extension));
+      }
     }
   }
 
@@ -451,6 +554,263 @@ public class Table {
   }
 
 
+  /** Inputs smaller than this (in chars) aren't worth splitting up. */
+  static final int PARALLEL_MINIMUM = 1 << 20;
+
+
+  /**
+   * How many chunks parseParallel() should aim for, or 1 or less to parse
+   * serially. Defaults to four per processor when there's more than one.
+   */
+  protected int parallelChunks() {
+    int proc = Runtime.getRuntime().availableProcessors();
+    return (proc > 1) ? proc * 4 : 1;
+  }
+
+
+  /**
+   * Same as parseBasic(), but splits the data into chunks at the boundaries
+   * between records, and tokenizes the chunks on separate threads. The entire
+   * file is read into memory first, so this trades memory for speed. The
+   * resulting table is identical to the one built by parseBasic(): each chunk
+   * is handled by the same line parser, and CATEGORY columns are filled in
+   * row order so that their indices don't change.
+   */
+  protected void parseParallel(BufferedReader reader,
+                               boolean header, boolean tsv) throws IOException {
+    char[] text = new char[1 << 16];
+    int length = 0;
+    int count;
+    while ((count = reader.read(text, length, text.length - length)) != -1) {
+      length += count;
+      if (length == text.length) {
+        text = PApplet.expand(text);
+      }
+    }
+
+    int target = parallelChunks();
+    int[] bounds = null;
+    if (length >= PARALLEL_MINIMUM && target > 1) {
+      bounds = findChunks(text, length, target, tsv);
+    }
+    if (bounds == null) {
+      parseBasic(new BufferedReader(new CharArrayReader(text, 0, length)),
+                 header, tsv);
+      return;
+    }
+
+    // Tokenize each chunk, without touching the table itself
+    final int chunkCount = bounds.length - 1;
+    final List<List<String[]>> chunks = new ArrayList<>();
+    List<ForkJoinTask<List<String[]>>> tasks = new ArrayList<>();
+    for (int i = 0; i < chunkCount; i++) {
+      final Reader chunk =
+        new CharArrayReader(text, bounds[i], bounds[i+1] - bounds[i]);
+      tasks.add(ForkJoinPool.commonPool().submit(new Callable<List<String[]>>() {
+        public List<String[]> call() throws IOException {
+          return tokenize(new BufferedReader(chunk), tsv);
+        }
+      }));
+    }
+    try {
+      for (ForkJoinTask<List<String[]>> task : tasks) {
+        chunks.add(task.join());
+      }
+    } catch (RuntimeException e) {
+      // Something in the file is malformed. Run the serial version so that
+      // the error (and the line number it reports) is the same.
+      parseBasic(new BufferedReader(new CharArrayReader(text, 0, length)),
+                 header, tsv);
+      return;
+    }
+    text = null;
+
+    if (header && chunks.get(0).size() > 0) {
+      setColumnTitles(chunks.get(0).remove(0));
+    }
+    int total = 0;
+    int widest = 0;
+    final int[] offsets = new int[chunkCount];
+    for (int i = 0; i < chunkCount; i++) {
+      offsets[i] = total;
+      for (String[] pieces : chunks.get(i)) {
+        widest = Math.max(widest, pieces.length);
+      }
+      total += chunks.get(i).size();
+    }
+    ensureColumn(widest - 1);
+    setRowCount(total);
+
+    // Fill everything except categories in parallel, each row is only
+    // written by a single thread.
+    boolean categories = false;
+    for (int col = 0; col < columns.length; col++) {
+      if (columnTypes[col] == CATEGORY) {
+        categories = true;
+      }
+    }
+    List<ForkJoinTask<?>> fills = new ArrayList<>();
+    for (int i = 0; i < chunkCount; i++) {
+      final int chunk = i;
+      fills.add(ForkJoinPool.commonPool().submit(new Runnable() {
+        public void run() {
+          int row = offsets[chunk];
+          for (String[] pieces : chunks.get(chunk)) {
+            for (int col = 0; col < pieces.length; col++) {
+              if (columnTypes[col] != CATEGORY) {
+                setRowCol(row, col, pieces[col]);
+              }
+            }
+            row++;
+          }
+        }
+      }));
+    }
+    for (ForkJoinTask<?> fill : fills) {
+      fill.join();
+    }
+    if (categories) {
+      int row = 0;
+      for (List<String[]> chunk : chunks) {
+        for (String[] pieces : chunk) {
+          for (int col = 0; col < pieces.length; col++) {
+            if (columnTypes[col] == CATEGORY) {
+              setRowCol(row, col, pieces[col]);
+            }
+          }
+          row++;
+        }
+      }
+    }
+  }
+
+
+  /** Split up a chunk of text the same way parseBasic() does. */
+  static protected List<String[]> tokenize(BufferedReader reader,
+                                           boolean tsv) throws IOException {
+    List<String[]> outgoing = new ArrayList<>();
+    CommaSeparatedLine csl = tsv ? null : new CommaSeparatedLine();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      outgoing.add(tsv ? PApplet.split(line, '\t') : csl.handle(line, reader));
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * Find the offsets that break the text into (roughly) the number of chunks
+   * requested, making sure that each break is at the start of a record.
+   * Returns null if the data can't be split, or if it's malformed.
+   */
+  static protected int[] findChunks(char[] c, int length, int count, boolean tsv) {
+    IntList bounds = new IntList();
+    bounds.append(0);
+    int index = 0;
+    for (int i = 1; i < count; i++) {
+      int target = (int) ((long) length * i / count);
+      if (tsv) {
+        index = Math.max(index, target);
+        while (index < length && c[index] != '\n' && c[index] != '\r') {
+          index++;
+        }
+        index = skipLineBreak(c, index, length);
+      } else {
+        // Quotes can only be tracked by reading every record from the start
+        while (index < length && index < target) {
+          index = nextRecordCSV(c, index, length);
+          if (index == -1) {
+            return null;
+          }
+        }
+      }
+      if (index >= length) {
+        break;
+      }
+      if (index > bounds.get(bounds.size() - 1)) {
+        bounds.append(index);
+      }
+    }
+    bounds.append(length);
+    return (bounds.size() > 2) ? bounds.array() : null;
+  }
+
+
+  static private int skipLineBreak(char[] c, int index, int length) {
+    if (index < length && c[index] == '\r') {
+      index++;
+    }
+    if (index < length && c[index] == '\n') {
+      index++;
+    }
+    return index;
+  }
+
+
+  /**
+   * Return the start of the record after the one that begins at index.
+   * Follows the rules in CommaSeparatedLine: a record only continues past
+   * the end of a line if the line ended inside a quoted field.
+   * Returns -1 for a stray quote, which the parser would reject.
+   */
+  static protected int nextRecordCSV(char[] c, int index, int length) {
+    boolean fieldStart = true;
+    boolean quoted = false;
+    int i = index;
+    while (i < length) {
+      char ch = c[i];
+      if (ch == '\n' || ch == '\r') {
+        i = skipLineBreak(c, i, length);
+        if (!quoted) {
+          return i;
+        }
+        // newline inside a quoted field, keep going on the next line
+
+      } else if (fieldStart && ch == '\"') {
+        quoted = true;
+        fieldStart = false;
+        i++;
+
+      } else if (quoted) {
+        if (ch == '\"') {
+          int next = i + 1;
+          if (next == length || c[next] == '\n' || c[next] == '\r') {
+            // closing quote for the last field on the line
+            quoted = false;
+          } else if (c[next] == '\"') {
+            // escaped quote, step over it
+            next++;
+          } else if (c[next] == ',') {
+            // closing quote for this field
+            quoted = false;
+            fieldStart = true;
+            next++;
+          }
+          i = next;
+        } else {
+          i++;
+        }
+
+      } else {
+        fieldStart = false;
+        if (ch == '\"') {
+          if (i + 1 < length && c[i+1] == '\"') {
+            i += 2;
+          } else {
+            return -1;
+          }
+        } else {
+          if (ch == ',') {
+            fieldStart = true;
+          }
+          i++;
+        }
+      }
+    }
+    return length;
+  }
+
+
 //  public void convertTSV(BufferedReader reader, File outputFile) throws IOException {
 //    convertBasic(reader, true, outputFile);
 //  }
@@ -1823,6 +2183,15 @@ public class Table {
 
 
   public void insertColumn(int index, String title, int type) {
+    if (indexes != null && index < indexes.length) {
+      // Not with splice(), which can't insert a null
+      TableIndex[] indexTemp = new TableIndex[indexes.length + 1];
+      System.arraycopy(indexes, 0, indexTemp, 0, index);
+      System.arraycopy(indexes, index, indexTemp, index+1, indexes.length - index);
+      indexes = indexTemp;
+      renumberIndexes();
+    }
+
     if (title != null && columnTitles == null) {
       columnTitles = new String[columns.length];
     }
@@ -1891,6 +2260,12 @@ public class Table {
     columns = columnsTemp;
     columnCategories = catTemp;
 
+    if (indexes != null && column < indexes.length) {
+      indexes = (TableIndex[]) PApplet.concat(PApplet.subset(indexes, 0, column),
+                                              PApplet.subset(indexes, column + 1));
+      renumberIndexes();
+    }
+
     if (columnTitles != null) {
       String[] titlesTemp = new String[newCount];
       for (int i = 0; i < column; i++) {
@@ -1936,6 +2311,10 @@ public class Table {
       columnTypes = PApplet.expand(columnTypes, newCount);
       columnCategories = (HashMapBlows[])
         PApplet.expand(columnCategories, newCount);
+
+      if (indexes != null && indexes.length > newCount) {
+        indexes = (TableIndex[]) PApplet.subset(indexes, 0, newCount);
+      }
     }
   }
 
@@ -2061,6 +2440,7 @@ public class Table {
     }
 //    System.out.println("new type is " + newType);
     columnTypes[column] = newType;
+    invalidateIndex(column);
   }
 
 
@@ -2280,6 +2660,12 @@ public class Table {
 
 
   public void setRowCount(int newCount) {
+    int oldCount = rowCount;
+    if (newCount < oldCount && indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) index.rowsRemoved(newCount, oldCount);
+      }
+    }
     if (newCount != rowCount) {
       if (newCount > 1000000) {
         System.out.print("Note: setting maximum row count to " + PApplet.nfc(newCount));
@@ -2308,6 +2694,11 @@ public class Table {
       }
     }
     rowCount = newCount;
+    if (newCount > oldCount && indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) index.rowsAdded(oldCount, newCount);
+      }
+    }
   }
 
 
@@ -2355,10 +2746,11 @@ public class Table {
         break;
       case CATEGORY:
         int index = source.getInt(col);
-        setInt(row, col, index);
+        // set the category first, so it's available to any index on this column
         if (!columnCategories[col].hasCategory(index)) {
           columnCategories[col].setCategory(index, source.getString(col));
         }
+        setInt(row, col, index);
         break;
 
       default:
@@ -2431,6 +2823,11 @@ public class Table {
     // Need to increment before setRow(), because it calls ensureBounds()
     // https://github.com/processing/processing/issues/5406
     ++rowCount;
+    if (indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) index.insertRow(insert);
+      }
+    }
     setRow(insert, columnData);
   }
 
@@ -2443,6 +2840,11 @@ public class Table {
    * @see Table#clearRows()
    */
   public void removeRow(int row) {
+    if (indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) index.removeRow(row);
+      }
+    }
     for (int col = 0; col < columns.length; col++) {
       switch (columnTypes[col]) {
         case CATEGORY:
@@ -2559,6 +2961,18 @@ public class Table {
 
 
   protected void setRowCol(int row, int col, Object piece) {
+    TableIndex index = getIndex(col);
+    if (index != null) {
+      index.remove(row);
+      setRowColImpl(row, col, piece);
+      index.add(row);
+    } else {
+      setRowColImpl(row, col, piece);
+    }
+  }
+
+
+  private void setRowColImpl(int row, int col, Object piece) {
     switch (columnTypes[col]) {
       case STRING:
         String[] stringData = (String[]) columns[col];
@@ -2859,6 +3273,89 @@ public class Table {
   }
 
 
+  /**
+   * Parses one line at a time into row 0 of a table that's only used as a
+   * buffer, so that column types are handled the same as in a full Table.
+   */
+  static class RowStream implements Iterator<TableRow> {
+    Table table;
+    RowPointer rp;
+    BufferedReader reader;
+    boolean tsv;
+    CommaSeparatedLine csl;
+
+    String[] pieces;
+    int line;
+
+    public RowStream(Table table, BufferedReader reader,
+                     boolean header, boolean tsv) {
+      this.table = table;
+      this.reader = reader;
+      this.tsv = tsv;
+      if (!tsv) {
+        csl = new CommaSeparatedLine();
+      }
+      rp = new RowPointer(table, 0);
+
+      if (header) {
+        String[] titles = read();
+        if (titles != null) {
+          table.setColumnTitles(titles);
+        }
+      }
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException("remove() not supported");
+    }
+
+    public boolean hasNext() {
+      if (pieces == null) {
+        pieces = read();
+      }
+      return pieces != null;
+    }
+
+    public TableRow next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      table.setRow(0, pieces);
+      // clear entries left over from a previous row that was wider
+      for (int col = pieces.length; col < table.columns.length; col++) {
+        Object data = table.columns[col];
+        if (data instanceof String[]) {
+          ((String[]) data)[0] = null;
+        } else {
+          Array.set(data, 0, 0);
+        }
+      }
+      pieces = null;
+      return rp;
+    }
+
+    /** Read the next line, or return null (and close up) at the end. */
+    protected String[] read() {
+      if (reader == null) {
+        return null;
+      }
+      try {
+        String text = reader.readLine();
+        if (text == null) {
+          reader.close();
+          reader = null;
+          return null;
+        }
+        line++;
+        return tsv ? PApplet.split(text, '\t') : csl.handle(text, reader);
+
+      } catch (Exception e) {
+        throw new RuntimeException("Error reading table on line " + line, e);
+      }
+    }
+  }
+
+
   static class RowIndexIterator implements Iterator<TableRow> {
     Table table;
     RowPointer rp;
@@ -3108,8 +3605,11 @@ public class Table {
           columnTypes[column] != CATEGORY) {
         throw new IllegalArgumentException("Column " + column + " is not an int column.");
       }
+      TableIndex index = getIndex(column);
+      if (index != null) index.remove(row);
       int[] intData = (int[]) columns[column];
       intData[row] = value;
+      if (index != null) index.add(row);
     }
   }
 
@@ -3186,8 +3686,11 @@ public class Table {
       if (columnTypes[column] != LONG) {
         throw new IllegalArgumentException("Column " + column + " is not a 'long' column.");
       }
+      TableIndex index = getIndex(column);
+      if (index != null) index.remove(row);
       long[] longData = (long[]) columns[column];
       longData[row] = value;
+      if (index != null) index.add(row);
     }
   }
 
@@ -3288,8 +3791,11 @@ public class Table {
       if (columnTypes[column] != FLOAT) {
         throw new IllegalArgumentException("Column " + column + " is not a float column.");
       }
+      TableIndex index = getIndex(column);
+      if (index != null) index.remove(row);
       float[] longData = (float[]) columns[column];
       longData[row] = value;
+      if (index != null) index.add(row);
     }
   }
 
@@ -3365,8 +3871,11 @@ public class Table {
       if (columnTypes[column] != DOUBLE) {
         throw new IllegalArgumentException("Column " + column + " is not a 'double' column.");
       }
+      TableIndex index = getIndex(column);
+      if (index != null) index.remove(row);
       double[] doubleData = (double[]) columns[column];
       doubleData[row] = value;
+      if (index != null) index.add(row);
     }
   }
 
@@ -3531,8 +4040,11 @@ public class Table {
     if (columnTypes[column] != STRING) {
       throw new IllegalArgumentException("Column " + column + " is not a String column.");
     }
+    TableIndex index = getIndex(column);
+    if (index != null) index.remove(row);
     String[] stringData = (String[]) columns[column];
     stringData[row] = value;
+    if (index != null) index.add(row);
   }
 
   /**
@@ -3591,6 +4103,10 @@ public class Table {
    */
   public int findRowIndex(String value, int column) {
     checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      return index.findRowIndex(value);
+    }
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       if (value == null) {
@@ -3637,10 +4153,15 @@ public class Table {
    * @param column ID number of the column to search
    */
   public int[] findRowIndices(String value, int column) {
+    checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      return index.findRowIndices(value);
+    }
+
     int[] outgoing = new int[rowCount];
     int count = 0;
 
-    checkColumn(column);
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       if (value == null) {
@@ -3683,6 +4204,122 @@ public class Table {
   }
 
 
+  /**
+   * Return the rows whose values in a column are between low and high
+   * (inclusive), in order. Entries that aren't numbers are skipped. With an
+   * index on the column (see createIndex), this uses a sorted list of values
+   * instead of checking every row.
+   * @param low smallest value to include
+   * @param high largest value to include
+   * @param column ID number of the column to search
+   */
+  public int[] findRowIndicesBetween(double low, double high, int column) {
+    checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      return index.findRowIndicesBetween(low, high);
+    }
+    int[] outgoing = new int[rowCount];
+    int count = 0;
+    for (int row = 0; row < rowCount; row++) {
+      double value = getDouble(row, column);
+      if (value >= low && value <= high) {
+        outgoing[count++] = row;
+      }
+    }
+    return PApplet.subset(outgoing, 0, count);
+  }
+
+
+  /**
+   * @param columnName title of the column to search
+   */
+  public int[] findRowIndicesBetween(double low, double high, String columnName) {
+    return findRowIndicesBetween(low, high, getColumnIndex(columnName));
+  }
+
+
+  public Iterable<TableRow> findRowsBetween(double low, double high, int column) {
+    return rows(findRowIndicesBetween(low, high, column));
+  }
+
+
+  public Iterable<TableRow> findRowsBetween(double low, double high, String columnName) {
+    return findRowsBetween(low, high, getColumnIndex(columnName));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Create an index for a column, so that findRow(), findRowIndex(),
+   * findRows() and findRowIndices() can look up values directly instead of
+   * checking every row, which is much faster when they're called often (i.e.
+   * inside draw). The index is kept up to date as the table is changed, so
+   * changing individual values will be a little slower.
+   *
+   * @param columnName title of the column to index
+   * @see Table#removeIndex(String)
+   */
+  public void createIndex(String columnName) {
+    createIndex(getColumnIndex(columnName));
+  }
+
+
+  public void createIndex(int column) {
+    checkColumn(column);
+    if (indexes == null) {
+      indexes = new TableIndex[columns.length];
+    } else if (indexes.length < columns.length) {
+      indexes = (TableIndex[]) PApplet.expand(indexes, columns.length);
+    }
+    if (indexes[column] == null) {
+      indexes[column] = new TableIndex(this, column);
+    }
+  }
+
+
+  public void removeIndex(String columnName) {
+    removeIndex(getColumnIndex(columnName));
+  }
+
+
+  public void removeIndex(int column) {
+    if (indexes != null && column < indexes.length) {
+      indexes[column] = null;
+    }
+  }
+
+
+  public boolean hasIndex(int column) {
+    return getIndex(column) != null;
+  }
+
+
+  protected TableIndex getIndex(int column) {
+    return (indexes == null || column >= indexes.length) ? null : indexes[column];
+  }
+
+
+  protected void invalidateIndex(int column) {
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      index.invalidate();
+    }
+  }
+
+
+  /** Update the column numbers after columns have been added or removed. */
+  private void renumberIndexes() {
+    for (int col = 0; col < indexes.length; col++) {
+      if (indexes[col] != null) {
+        indexes[col].column = col;
+      }
+    }
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
   /**
@@ -3933,6 +4570,7 @@ public class Table {
 
   public void replace(String orig, String replacement, int col) {
     if (columnTypes[col] == STRING) {
+      invalidateIndex(col);
       String[] stringData = (String[]) columns[col];
 
       if (orig != null) {
@@ -3970,6 +4608,7 @@ public class Table {
   public void replaceAll(String regex, String replacement, int column) {
     checkColumn(column);
     if (columnTypes[column] == STRING) {
+      invalidateIndex(column);
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null) {
@@ -4128,6 +4767,7 @@ public class Table {
    */
   public void trim(int column) {
     if (columnTypes[column] == STRING) {
+      invalidateIndex(column);
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null) {
@@ -4376,6 +5016,11 @@ public class Table {
     };
     s.run();
 
+    if (indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) index.invalidate();
+      }
+    }
     //Object[] newColumns = new Object[getColumnCount()];
     for (int col = 0; col < getColumnCount(); col++) {
       switch (getColumnType(col)) {
@@ -4461,6 +5106,35 @@ public class Table {
   }
 
 
+  /**
+   * Split the rows into groups based on the values in a column, for
+   * calculating statistics (sum, mean, min, max, quantiles, etc.) on the
+   * other columns of each group.
+   *
+   * @nowebref
+   * @see TableGroups
+   */
+  public TableGroups groupBy(String columnName) {
+    return groupBy(getColumnIndex(columnName));
+  }
+
+
+  public TableGroups groupBy(int column) {
+    checkColumn(column);
+    return new TableGroups(this, column);
+  }
+
+
+  /**
+   * The array holding the data for a column: int[] for INT and CATEGORY
+   * columns, String[] for STRING columns, and so on. The array may be longer
+   * than the number of rows.
+   */
+  Object getColumnData(int column) {
+    return columns[column];
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
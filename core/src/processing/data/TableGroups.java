@@ -0,0 +1,714 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+ */
+
+package processing.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * The rows of a Table split into groups by the values in one of its columns,
+ * for calculating sums, averages, and other statistics for each group.
+ * Create one with Table.groupBy(), then ask for as many aggregates as
+ * needed; each one is a single pass over the primitive column data (int[],
+ * float[], etc.) rather than going through getString() for each entry.
+ * <pre>
+ * TableGroups regions = table.groupBy("region");
+ * DoubleDict sales = regions.sum("sales");
+ * DoubleDict price = regions.median("price");
+ * </pre>
+ * Results are returned as a dictionary with one entry for each group, in the
+ * order that the groups first appear in the table. Missing values (NaN for
+ * float and double columns, or entries that can't be parsed as numbers in
+ * String columns) are ignored. Large tables are handled on several threads.
+ * <p>
+ * The groups are a snapshot of the key column at the time groupBy() was
+ * called. If rows are added, removed, or re-sorted, call groupBy() again.
+ *
+ * @nowebref
+ * @see Table#groupBy(String)
+ */
+public class TableGroups {
+  /** Tables with fewer rows than this are aggregated on a single thread. */
+  static final int PARALLEL_ROWS = 1 << 16;
+  /** Maximum number of pieces that a table is split into. */
+  static final int MAX_CHUNKS = 64;
+
+  Table table;
+  int rowCount;
+
+  int groupCount;
+  /** The group for each row */
+  int[] groupOf;
+  /** First row of each group, used to name it */
+  int[] firstRow;
+  /** Value from the grouping column for each group */
+  String[] keys;
+  /** Number of rows in each group */
+  int[] counts;
+
+  /** Row indices sorted by group, created on first use */
+  int[] order;
+  /** Offset in order[] where each group starts */
+  int[] starts;
+
+
+  TableGroups(Table table, int column) {
+    this.table = table;
+    rowCount = table.getRowCount();
+    groupOf = new int[rowCount];
+    firstRow = new int[16];
+
+    Object data = table.getColumnData(column);
+    switch (table.getColumnType(column)) {
+    case Table.INT:
+    case Table.CATEGORY: {
+      int[] values = (int[]) data;
+      LongIndex index = new LongIndex();
+      for (int row = 0; row < rowCount; row++) {
+        groupOf[row] = group(index, values[row], row);
+      }
+      break;
+    }
+    case Table.LONG: {
+      long[] values = (long[]) data;
+      LongIndex index = new LongIndex();
+      for (int row = 0; row < rowCount; row++) {
+        groupOf[row] = group(index, values[row], row);
+      }
+      break;
+    }
+    case Table.FLOAT: {
+      float[] values = (float[]) data;
+      LongIndex index = new LongIndex();
+      for (int row = 0; row < rowCount; row++) {
+        // floatToIntBits() also folds all the NaN values together
+        groupOf[row] = group(index, Float.floatToIntBits(values[row]), row);
+      }
+      break;
+    }
+    case Table.DOUBLE: {
+      double[] values = (double[]) data;
+      LongIndex index = new LongIndex();
+      for (int row = 0; row < rowCount; row++) {
+        groupOf[row] = group(index, Double.doubleToLongBits(values[row]), row);
+      }
+      break;
+    }
+    default: {
+      String[] values = (String[]) data;
+      HashMap<String, Integer> index = new HashMap<>();
+      for (int row = 0; row < rowCount; row++) {
+        Integer group = index.get(values[row]);
+        if (group == null) {
+          group = addGroup(row);
+          index.put(values[row], group);
+        }
+        groupOf[row] = group;
+      }
+    }
+    }
+
+    counts = new int[groupCount];
+    for (int row = 0; row < rowCount; row++) {
+      counts[groupOf[row]]++;
+    }
+    // Column names are only needed once per group, so this can be slow
+    keys = new String[groupCount];
+    for (int g = 0; g < groupCount; g++) {
+      keys[g] = table.getString(firstRow[g], column);
+    }
+  }
+
+
+  private int group(LongIndex index, long value, int row) {
+    int group = index.get(value);
+    if (group == -1) {
+      group = addGroup(row);
+      index.put(value, group);
+    }
+    return group;
+  }
+
+
+  private int addGroup(int row) {
+    if (groupCount == firstRow.length) {
+      firstRow = Arrays.copyOf(firstRow, groupCount << 1);
+    }
+    firstRow[groupCount] = row;
+    return groupCount++;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Number of groups */
+  public int size() {
+    return groupCount;
+  }
+
+
+  /** The value from the grouping column for each group, in order. */
+  public String[] keys() {
+    return keys.clone();
+  }
+
+
+  /** Row indices for each member of a group. */
+  public int[] getRowIndices(String key) {
+    int group = indexOf(key);
+    if (group == -1) {
+      return new int[0];
+    }
+    sortRows();
+    return Arrays.copyOfRange(order, starts[group], starts[group+1]);
+  }
+
+
+  /** Iterate through the rows in a group. */
+  public Iterable<TableRow> rows(String key) {
+    return table.rows(getRowIndices(key));
+  }
+
+
+  protected int indexOf(String key) {
+    for (int g = 0; g < groupCount; g++) {
+      if (key == null ? keys[g] == null : key.equals(keys[g])) {
+        return g;
+      }
+    }
+    return -1;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Number of rows in each group. */
+  public IntDict count() {
+    return new IntDict(keys, counts.clone());
+  }
+
+
+  /** Number of rows in each group that have a (non-missing) value. */
+  public IntDict count(String columnName) {
+    return count(table.getColumnIndex(columnName));
+  }
+
+
+  public IntDict count(int column) {
+    Stats stats = stats(column);
+    int[] outgoing = new int[groupCount];
+    for (int g = 0; g < groupCount; g++) {
+      outgoing[g] = (int) stats.count[g];
+    }
+    return new IntDict(keys, outgoing);
+  }
+
+
+  public DoubleDict sum(String columnName) {
+    return sum(table.getColumnIndex(columnName));
+  }
+
+
+  public DoubleDict sum(int column) {
+    return new DoubleDict(keys, stats(column).sum);
+  }
+
+
+  /** Average of each group, or NaN for groups without any values. */
+  public DoubleDict mean(String columnName) {
+    return mean(table.getColumnIndex(columnName));
+  }
+
+
+  public DoubleDict mean(int column) {
+    Stats stats = stats(column);
+    double[] outgoing = new double[groupCount];
+    for (int g = 0; g < groupCount; g++) {
+      outgoing[g] = (stats.count[g] == 0) ?
+        Double.NaN : stats.sum[g] / stats.count[g];
+    }
+    return new DoubleDict(keys, outgoing);
+  }
+
+
+  /** Smallest value in each group, or NaN for groups without any values. */
+  public DoubleDict min(String columnName) {
+    return min(table.getColumnIndex(columnName));
+  }
+
+
+  public DoubleDict min(int column) {
+    Stats stats = stats(column);
+    return new DoubleDict(keys, stats.finish(stats.min));
+  }
+
+
+  /** Largest value in each group, or NaN for groups without any values. */
+  public DoubleDict max(String columnName) {
+    return max(table.getColumnIndex(columnName));
+  }
+
+
+  public DoubleDict max(int column) {
+    Stats stats = stats(column);
+    return new DoubleDict(keys, stats.finish(stats.max));
+  }
+
+
+  /** Number of different values found in each group. */
+  public IntDict distinct(String columnName) {
+    return distinct(table.getColumnIndex(columnName));
+  }
+
+
+  public IntDict distinct(int column) {
+    sortRows();
+    final int[] outgoing = new int[groupCount];
+    final Object data = table.getColumnData(column);
+
+    if (data instanceof String[]) {
+      String[] values = (String[]) data;
+      for (int g = 0; g < groupCount; g++) {
+        HashSet<String> found = new HashSet<>();
+        for (int i = starts[g]; i < starts[g+1]; i++) {
+          String value = values[order[i]];
+          if (value != null) {
+            found.add(value);
+          }
+        }
+        outgoing[g] = found.size();
+      }
+
+    } else {
+      // Copy the bits for each value into group order, leaving out the
+      // missing ones, then sort each group and count the number of times
+      // the value changes.
+      final long[] bits = new long[rowCount];
+      final int[] found = new int[groupCount];
+      boolean category = table.getColumnType(column) == Table.CATEGORY;
+      for (int g = 0; g < groupCount; g++) {
+        int count = 0;
+        for (int i = starts[g]; i < starts[g+1]; i++) {
+          int row = order[i];
+          if (data instanceof int[]) {
+            // a category is missing if its name is null
+            if (!category || table.getString(row, column) != null) {
+              bits[starts[g] + count++] = ((int[]) data)[row];
+            }
+          } else if (data instanceof long[]) {
+            bits[starts[g] + count++] = ((long[]) data)[row];
+          } else if (data instanceof float[]) {
+            float value = ((float[]) data)[row];
+            if (value == value) {  // skip NaN
+              bits[starts[g] + count++] = Float.floatToIntBits(value);
+            }
+          } else {
+            double value = ((double[]) data)[row];
+            if (value == value) {
+              bits[starts[g] + count++] = Double.doubleToLongBits(value);
+            }
+          }
+        }
+        found[g] = count;
+      }
+      forEachGroup(new GroupTask() {
+        void run(int group, int start, int stop) {
+          int end = start + found[group];
+          Arrays.sort(bits, start, end);
+          int unique = 0;
+          for (int i = start; i < end; i++) {
+            if (i == start || bits[i] != bits[i-1]) {
+              unique++;
+            }
+          }
+          outgoing[group] = unique;
+        }
+      });
+    }
+    return new IntDict(keys, outgoing);
+  }
+
+
+  public DoubleDict median(String columnName) {
+    return quantile(table.getColumnIndex(columnName), 0.5);
+  }
+
+
+  public DoubleDict median(int column) {
+    return quantile(column, 0.5);
+  }
+
+
+  /**
+   * Value below which a fraction of each group falls. For instance, 0.5 is
+   * the median, and 0.9 is the 90th percentile. Uses linear interpolation
+   * between the closest values.
+   */
+  public DoubleDict quantile(String columnName, double fraction) {
+    return quantile(table.getColumnIndex(columnName), fraction);
+  }
+
+
+  public DoubleDict quantile(int column, final double fraction) {
+    if (fraction < 0 || fraction > 1) {
+      throw new IllegalArgumentException("quantile() requires a fraction between 0 and 1");
+    }
+    sortRows();
+    final double[] values = new double[rowCount];
+    final int[] found = new int[groupCount];
+    Object data = table.getColumnData(column);
+    for (int g = 0; g < groupCount; g++) {
+      int count = 0;
+      for (int i = starts[g]; i < starts[g+1]; i++) {
+        double value = value(data, column, order[i]);
+        if (value == value) {  // skip NaN
+          values[starts[g] + count++] = value;
+        }
+      }
+      found[g] = count;
+    }
+
+    final double[] outgoing = new double[groupCount];
+    forEachGroup(new GroupTask() {
+      void run(int group, int start, int stop) {
+        int count = found[group];
+        if (count == 0) {
+          outgoing[group] = Double.NaN;
+        } else {
+          Arrays.sort(values, start, start + count);
+          double pos = fraction * (count - 1);
+          int lo = (int) pos;
+          int hi = Math.min(lo + 1, count - 1);
+          double amt = pos - lo;
+          outgoing[group] =
+            values[start + lo] + (values[start + hi] - values[start + lo]) * amt;
+        }
+      }
+    });
+    return new DoubleDict(keys, outgoing);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Running totals for each group. */
+  class Stats {
+    double[] sum = new double[groupCount];
+    long[] count = new long[groupCount];
+    double[] min = new double[groupCount];
+    double[] max = new double[groupCount];
+
+    Stats() {
+      Arrays.fill(min, Double.POSITIVE_INFINITY);
+      Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+    void add(int group, double value) {
+      sum[group] += value;
+      count[group]++;
+      if (value < min[group]) min[group] = value;
+      if (value > max[group]) max[group] = value;
+    }
+
+    void add(Stats other) {
+      for (int g = 0; g < groupCount; g++) {
+        sum[g] += other.sum[g];
+        count[g] += other.count[g];
+        min[g] = Math.min(min[g], other.min[g]);
+        max[g] = Math.max(max[g], other.max[g]);
+      }
+    }
+
+    /** Replace the placeholder values for empty groups with NaN. */
+    double[] finish(double[] extremes) {
+      double[] outgoing = extremes.clone();
+      for (int g = 0; g < groupCount; g++) {
+        if (count[g] == 0) {
+          outgoing[g] = Double.NaN;
+        }
+      }
+      return outgoing;
+    }
+  }
+
+
+  /**
+   * Calculate sum, count, min, and max for each group in a column. Larger
+   * tables are split into a fixed number of pieces that don't depend on the
+   * number of processors, so the results are the same on any machine.
+   */
+  protected Stats stats(final int column) {
+    final Object data = table.getColumnData(column);
+    int chunks = Math.min(MAX_CHUNKS, rowCount / PARALLEL_ROWS);
+    // Don't spend more memory on partial results than the table itself
+    chunks = Math.min(chunks, rowCount / Math.max(1, groupCount * 4));
+    if (chunks < 2) {
+      Stats stats = new Stats();
+      accumulate(stats, data, column, 0, rowCount);
+      return stats;
+    }
+
+    Stats[] partial = new Stats[chunks];
+    ForkJoinPool.commonPool().invoke(new StatsAction(this, data, column,
+                                                     partial, 0, chunks));
+    Stats stats = partial[0];
+    for (int i = 1; i < chunks; i++) {
+      stats.add(partial[i]);
+    }
+    return stats;
+  }
+
+
+  /** Calculate the totals for one of the pieces that stats() splits into. */
+  protected void accumulateChunk(Stats[] partial, Object data, int column,
+                                 int chunk) {
+    int start = (int) ((long) rowCount * chunk / partial.length);
+    int stop = (int) ((long) rowCount * (chunk + 1) / partial.length);
+    Stats stats = new Stats();
+    accumulate(stats, data, column, start, stop);
+    partial[chunk] = stats;
+  }
+
+
+  protected void accumulate(Stats stats, Object data, int column,
+                            int start, int stop) {
+    int[] groupOf = this.groupOf;
+    if (data instanceof int[] && table.getColumnType(column) == Table.INT) {
+      int[] values = (int[]) data;
+      for (int row = start; row < stop; row++) {
+        stats.add(groupOf[row], values[row]);
+      }
+    } else if (data instanceof long[]) {
+      long[] values = (long[]) data;
+      for (int row = start; row < stop; row++) {
+        stats.add(groupOf[row], values[row]);
+      }
+    } else if (data instanceof float[]) {
+      float[] values = (float[]) data;
+      for (int row = start; row < stop; row++) {
+        float value = values[row];
+        if (value == value) {  // skip NaN
+          stats.add(groupOf[row], value);
+        }
+      }
+    } else if (data instanceof double[]) {
+      double[] values = (double[]) data;
+      for (int row = start; row < stop; row++) {
+        double value = values[row];
+        if (value == value) {
+          stats.add(groupOf[row], value);
+        }
+      }
+    } else {
+      // String and category columns have to be parsed
+      for (int row = start; row < stop; row++) {
+        double value = table.getDouble(row, column);
+        if (value == value) {
+          stats.add(groupOf[row], value);
+        }
+      }
+    }
+  }
+
+
+  /** Get a single value as a double, or NaN if it's missing. */
+  protected double value(Object data, int column, int row) {
+    if (data instanceof int[] && table.getColumnType(column) == Table.INT) {
+      return ((int[]) data)[row];
+    } else if (data instanceof long[]) {
+      return ((long[]) data)[row];
+    } else if (data instanceof float[]) {
+      return ((float[]) data)[row];
+    } else if (data instanceof double[]) {
+      return ((double[]) data)[row];
+    }
+    return table.getDouble(row, column);
+  }
+
+
+  /** Put the row indices in group order (counting sort, so it's stable). */
+  protected void sortRows() {
+    if (order == null) {
+      int[] starts = new int[groupCount + 1];
+      for (int g = 0; g < groupCount; g++) {
+        starts[g+1] = starts[g] + counts[g];
+      }
+      int[] next = Arrays.copyOf(starts, groupCount);
+      int[] order = new int[rowCount];
+      for (int row = 0; row < rowCount; row++) {
+        order[next[groupOf[row]]++] = row;
+      }
+      this.starts = starts;
+      this.order = order;
+    }
+  }
+
+
+  abstract class GroupTask {
+    abstract void run(int group, int start, int stop);
+  }
+
+
+  /** Run a task on each group, in parallel when the table is large. */
+  protected void forEachGroup(final GroupTask task) {
+    if (rowCount < PARALLEL_ROWS) {
+      for (int g = 0; g < groupCount; g++) {
+        task.run(g, starts[g], starts[g+1]);
+      }
+    } else {
+      ForkJoinPool.commonPool().invoke(new GroupAction(task, starts,
+                                                       0, groupCount));
+    }
+  }
+
+
+  /** Splits the list of groups in half until each piece is small enough. */
+  static class GroupAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final GroupTask task;
+    final int[] starts;
+    final int first, last;
+
+    GroupAction(GroupTask task, int[] starts, int first, int last) {
+      this.task = task;
+      this.starts = starts;
+      this.first = first;
+      this.last = last;
+    }
+
+    @Override
+    protected void compute() {
+      if (last - first > 1 && starts[last] - starts[first] > PARALLEL_ROWS) {
+        int middle = (first + last) >>> 1;
+        invokeAll(new GroupAction(task, starts, first, middle),
+                  new GroupAction(task, starts, middle, last));
+      } else {
+        for (int g = first; g < last; g++) {
+          task.run(g, starts[g], starts[g+1]);
+        }
+      }
+    }
+  }
+
+
+  /** Splits the pieces of a column in half until there's one of each. */
+  static class StatsAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final TableGroups groups;
+    final Object data;
+    final int column;
+    final Stats[] partial;
+    final int first, last;
+
+    StatsAction(TableGroups groups, Object data, int column,
+                Stats[] partial, int first, int last) {
+      this.groups = groups;
+      this.data = data;
+      this.column = column;
+      this.partial = partial;
+      this.first = first;
+      this.last = last;
+    }
+
+    @Override
+    protected void compute() {
+      if (last - first > 1) {
+        int middle = (first + last) >>> 1;
+        invokeAll(new StatsAction(groups, data, column, partial, first, middle),
+                  new StatsAction(groups, data, column, partial, middle, last));
+      } else {
+        groups.accumulateChunk(partial, data, column, first);
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Open addressing hash from long values to group numbers. */
+  static class LongIndex {
+    long[] keys = new long[16];
+    int[] values = new int[16];
+    boolean[] used = new boolean[16];
+    int count;
+
+    int get(long key) {
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      while (used[i]) {
+        if (keys[i] == key) {
+          return values[i];
+        }
+        i = (i + 1) & mask;
+      }
+      return -1;
+    }
+
+    void put(long key, int value) {
+      if ((count + 1) * 2 > keys.length) {
+        grow();
+      }
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      while (used[i]) {
+        if (keys[i] == key) {
+          values[i] = value;
+          return;
+        }
+        i = (i + 1) & mask;
+      }
+      used[i] = true;
+      keys[i] = key;
+      values[i] = value;
+      count++;
+    }
+
+    void grow() {
+      long[] oldKeys = keys;
+      int[] oldValues = values;
+      boolean[] oldUsed = used;
+      keys = new long[oldKeys.length << 1];
+      values = new int[keys.length];
+      used = new boolean[keys.length];
+      count = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldUsed[i]) {
+          put(oldKeys[i], oldValues[i]);
+        }
+      }
+    }
+
+    static int hash(long key) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+}
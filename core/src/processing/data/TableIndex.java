@@ -0,0 +1,383 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+ */
+
+package processing.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Lookup structures for a single column of a Table, created by
+ * Table.createIndex(). A hash of each entry (as a String, the same way that
+ * findRowIndex() compares them) to the rows where it's found handles
+ * equality lookups. A sorted list of the numeric values handles range
+ * queries, and is only built the first time one is made.
+ * <p>
+ * Changes to individual entries, and added or removed rows, are applied to
+ * the index as they happen. Operations that rewrite an entire column
+ * (sorting, changing the column type, replace(), etc.) just mark the index
+ * as stale, and it's rebuilt on the next lookup.
+ */
+class TableIndex {
+  /** Changes to more rows than this at once will rebuild the index instead. */
+  static final int BULK_CHANGE = 64;
+
+  Table table;
+  int column;
+
+  // Each value is either an Integer for a single row, or an IntList of rows
+  // (in ascending order) when the entry appears more than once.
+  HashMap<String, Object> lookup;
+  boolean stale = true;
+
+  // Rows sorted by their numeric value (ties by row number),
+  // with NaN (missing or unparseable) values left out.
+  double[] sortedValues;
+  int[] sortedRows;
+  int sortedCount;
+  boolean sortedStale = true;
+
+
+  TableIndex(Table table, int column) {
+    this.table = table;
+    this.column = column;
+  }
+
+
+  /** Mark the index as stale so that it's rebuilt on next use. */
+  void invalidate() {
+    stale = true;
+    sortedStale = true;
+  }
+
+
+  protected void rebuild() {
+    int rowCount = table.getRowCount();
+    lookup = new HashMap<>();
+    for (int row = 0; row < rowCount; row++) {
+      addKey(key(row), row);
+    }
+    stale = false;
+  }
+
+
+  protected void rebuildSorted() {
+    int rowCount = table.getRowCount();
+    final double[] values = new double[rowCount];
+    Integer[] order = new Integer[rowCount];
+    int count = 0;
+    for (int row = 0; row < rowCount; row++) {
+      double value = value(row);
+      if (value == value) {  // skip NaN
+        values[row] = value;
+        order[count++] = row;
+      }
+    }
+    // stable, so rows with the same value stay in order
+    Arrays.sort(order, 0, count, (a, b) -> Double.compare(values[a], values[b]));
+
+    sortedValues = new double[Math.max(count, 16)];
+    sortedRows = new int[sortedValues.length];
+    for (int i = 0; i < count; i++) {
+      sortedRows[i] = order[i];
+      sortedValues[i] = values[order[i]];
+    }
+    sortedCount = count;
+    sortedStale = false;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** The entry for a row, the same as getString() would return. */
+  protected String key(int row) {
+    if (table.columnTypes[column] == Table.CATEGORY) {
+      // New rows in a category column might not have a category yet
+      int index = table.getInt(row, column);
+      Table.HashMapBlows categories = table.columnCategories[column];
+      if (index != table.missingCategory &&
+          categories != null && !categories.hasCategory(index)) {
+        return null;
+      }
+    }
+    return table.getString(row, column);
+  }
+
+
+  /** The value for a row as used for sorting, NaN if it's not a number. */
+  protected double value(int row) {
+    switch (table.columnTypes[column]) {
+    case Table.INT: return table.getInt(row, column);
+    case Table.LONG: return table.getLong(row, column);
+    case Table.FLOAT: return table.getFloat(row, column);
+    case Table.DOUBLE: return table.getDouble(row, column);
+    }
+    String str = key(row);
+    if (str == null) {
+      return Double.NaN;
+    }
+    try {
+      return Double.parseDouble(str);
+    } catch (NumberFormatException nfe) {
+      return Double.NaN;
+    }
+  }
+
+
+  private void addKey(String key, int row) {
+    Object found = lookup.get(key);
+    if (found == null) {
+      lookup.put(key, row);
+    } else if (found instanceof Integer) {
+      int other = (Integer) found;
+      IntList list = new IntList(2);
+      if (other < row) {
+        list.append(other);
+        list.append(row);
+      } else {
+        list.append(row);
+        list.append(other);
+      }
+      lookup.put(key, list);
+    } else {
+      IntList list = (IntList) found;
+      int pos = Arrays.binarySearch(list.data, 0, list.count, row);
+      if (pos < 0) {
+        pos = -(pos + 1);
+        if (pos == list.count) {
+          list.append(row);  // usual case, rows added in order
+        } else {
+          list.insert(pos, row);
+        }
+      }
+    }
+  }
+
+
+  private void removeKey(String key, int row) {
+    Object found = lookup.get(key);
+    if (found instanceof Integer) {
+      if ((Integer) found == row) {
+        lookup.remove(key);
+      }
+    } else if (found != null) {
+      IntList list = (IntList) found;
+      int pos = Arrays.binarySearch(list.data, 0, list.count, row);
+      if (pos >= 0) {
+        list.remove(pos);
+        if (list.size() == 1) {
+          lookup.put(key, list.get(0));
+        }
+      }
+    }
+  }
+
+
+  /** Position in the sorted list for a value/row pair. */
+  private int sortedSearch(double value, int row) {
+    int lo = 0;
+    int hi = sortedCount - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = Double.compare(sortedValues[mid], value);
+      if (c == 0) {
+        c = Integer.compare(sortedRows[mid], row);
+      }
+      if (c < 0) {
+        lo = mid + 1;
+      } else if (c > 0) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(lo + 1);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Call before an entry is changed. */
+  void remove(int row) {
+    if (!stale) {
+      removeKey(key(row), row);
+    }
+    if (!sortedStale) {
+      double value = value(row);
+      if (value == value) {
+        int pos = sortedSearch(value, row);
+        if (pos >= 0) {
+          System.arraycopy(sortedValues, pos+1, sortedValues, pos, sortedCount - pos - 1);
+          System.arraycopy(sortedRows, pos+1, sortedRows, pos, sortedCount - pos - 1);
+          sortedCount--;
+        }
+      }
+    }
+  }
+
+
+  /** Call after an entry has been changed. */
+  void add(int row) {
+    if (!stale) {
+      addKey(key(row), row);
+    }
+    if (!sortedStale) {
+      double value = value(row);
+      if (value == value) {
+        int pos = sortedSearch(value, row);
+        if (pos < 0) {
+          pos = -(pos + 1);
+          if (sortedCount == sortedValues.length) {
+            sortedValues = Arrays.copyOf(sortedValues, sortedCount << 1);
+            sortedRows = Arrays.copyOf(sortedRows, sortedCount << 1);
+          }
+          System.arraycopy(sortedValues, pos, sortedValues, pos+1, sortedCount - pos);
+          System.arraycopy(sortedRows, pos, sortedRows, pos+1, sortedCount - pos);
+          sortedValues[pos] = value;
+          sortedRows[pos] = row;
+          sortedCount++;
+        }
+      }
+    }
+  }
+
+
+  /** Call after rows have been added to the end of the table. */
+  void rowsAdded(int start, int stop) {
+    if (stop - start > BULK_CHANGE) {
+      invalidate();
+    } else {
+      for (int row = start; row < stop; row++) {
+        add(row);
+      }
+    }
+  }
+
+
+  /** Call before rows are removed from the end of the table. */
+  void rowsRemoved(int start, int stop) {
+    if (stop - start > BULK_CHANGE) {
+      invalidate();
+    } else {
+      for (int row = start; row < stop; row++) {
+        remove(row);
+      }
+    }
+  }
+
+
+  /** Call before a row is removed, so that the rows after it can move up. */
+  void removeRow(int row) {
+    remove(row);
+    shift(row, -1);
+  }
+
+
+  /** Call after an empty row has been inserted. */
+  void insertRow(int row) {
+    shift(row, 1);
+    add(row);
+  }
+
+
+  /** Renumber all rows at or after 'start'. */
+  private void shift(int start, int amount) {
+    if (!stale) {
+      for (Map.Entry<String, Object> entry : lookup.entrySet()) {
+        Object found = entry.getValue();
+        if (found instanceof Integer) {
+          int row = (Integer) found;
+          if (row >= start) {
+            entry.setValue(row + amount);
+          }
+        } else {
+          IntList list = (IntList) found;
+          for (int i = 0; i < list.count; i++) {
+            if (list.data[i] >= start) {
+              list.data[i] += amount;
+            }
+          }
+        }
+      }
+    }
+    if (!sortedStale) {
+      for (int i = 0; i < sortedCount; i++) {
+        if (sortedRows[i] >= start) {
+          sortedRows[i] += amount;
+        }
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** First row with this entry, or -1 if not found. */
+  int findRowIndex(String value) {
+    if (stale) {
+      rebuild();
+    }
+    Object found = lookup.get(value);
+    if (found == null) {
+      return -1;
+    } else if (found instanceof Integer) {
+      return (Integer) found;
+    }
+    return ((IntList) found).get(0);
+  }
+
+
+  /** All rows with this entry, in order. */
+  int[] findRowIndices(String value) {
+    if (stale) {
+      rebuild();
+    }
+    Object found = lookup.get(value);
+    if (found == null) {
+      return new int[0];
+    } else if (found instanceof Integer) {
+      return new int[] { (Integer) found };
+    }
+    return ((IntList) found).array();
+  }
+
+
+  /** Rows with values between low and high (inclusive), in row order. */
+  int[] findRowIndicesBetween(double low, double high) {
+    if (sortedStale) {
+      rebuildSorted();
+    }
+    int start = sortedSearch(low, -1);
+    start = (start < 0) ? -(start + 1) : start;
+    int stop = sortedSearch(high, Integer.MAX_VALUE);
+    stop = (stop < 0) ? -(stop + 1) : stop;
+    if (stop <= start) {
+      return new int[0];
+    }
+    int[] outgoing = Arrays.copyOfRange(sortedRows, start, stop);
+    Arrays.sort(outgoing);
+    return outgoing;
+  }
+}
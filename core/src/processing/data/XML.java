@@ -24,8 +24,14 @@
 package processing.data;
 
 import java.io.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import javax.xml.parsers.*;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.*;
 import org.xml.sax.*;
@@ -33,9 +39,6 @@ import org.xml.sax.*;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.*;
 import javax.xml.transform.stream.*;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
 
 import processing.core.PApplet;
 
@@ -60,7 +63,10 @@ public class XML implements Serializable {
   /** The parent element. */
   protected XML parent;
 
-  /** Child elements, once loaded. */
+  /**
+   * Child elements, once loaded. Entries are created as they're used,
+   * so until getChildren() is called, some may still be null.
+   */
   protected XML[] children;
 
   /**
@@ -116,10 +122,21 @@ public class XML implements Serializable {
    * Unlike the loadXML() method in PApplet, this version works with files
    * that are not in UTF-8 format.
    *
+   * @param options "stax" to use the streaming parser, "trim" to remove
+   * whitespace between elements (same as calling trim() afterwards)
    * @nowebref
    */
   public XML(InputStream input, String options) throws IOException, ParserConfigurationException, SAXException {
     //this(PApplet.createReader(input), options);  // won't handle non-UTF8
+    if (hasOption(options, "stax")) {
+      try {
+        node = readDocument(createStreamFactory().createXMLStreamReader(input),
+                            hasOption(options, "trim"));
+      } catch (XMLStreamException e) {
+        throw new SAXException(e);
+      }
+      return;
+    }
     DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 
     try {
@@ -133,6 +150,9 @@ public class XML implements Serializable {
     DocumentBuilder builder = factory.newDocumentBuilder();
     Document document = builder.parse(new InputSource(input));
     node = document.getDocumentElement();
+    if (hasOption(options, "trim")) {
+      trim();
+    }
   }
 
 
@@ -158,6 +178,16 @@ public class XML implements Serializable {
    * @nowebref
    */
   public XML(final Reader reader, String options) throws IOException, ParserConfigurationException, SAXException {
+    if (hasOption(options, "stax")) {
+      try {
+        XMLInputFactory xif = createStreamFactory();
+        node = readDocument(xif.createXMLStreamReader(filterLineSeparators(reader)),
+                            hasOption(options, "trim"));
+      } catch (XMLStreamException e) {
+        throw new SAXException(e);
+      }
+      return;
+    }
     DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 
     // Prevent 503 errors from www.w3.org
@@ -186,7 +216,18 @@ public class XML implements Serializable {
     //    builder = new SAXBuilder();
     //    builder.setValidation(validating);
 
-    Document document = builder.parse(new InputSource(new Reader() {
+    Document document =
+      builder.parse(new InputSource(filterLineSeparators(reader)));
+    node = document.getDocumentElement();
+    if (hasOption(options, "trim")) {
+      trim();
+    }
+  }
+
+
+  /** Replace \u2028 with \n, see the notes for XML(Reader, String). */
+  static private Reader filterLineSeparators(final Reader reader) {
+    return new Reader() {
       @Override
       public int read(char[] cbuf, int off, int len) throws IOException {
         int count = reader.read(cbuf, off, len);
@@ -202,8 +243,19 @@ public class XML implements Serializable {
       public void close() throws IOException {
         reader.close();
       }
-    }));
-    node = document.getDocumentElement();
+    };
+  }
+
+
+  static private boolean hasOption(String options, String name) {
+    if (options != null) {
+      for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+        if (opt.equals(name)) {
+          return true;
+        }
+      }
+    }
+    return false;
   }
 
 
@@ -232,14 +284,17 @@ public class XML implements Serializable {
     this.node = node;
     this.parent = parent;
 
-    for (String attr : parent.listAttributes()) {
-      if (attr.startsWith("xmlns")) {
-        // Copy namespace attributes to the kids, otherwise this XML
-        // can no longer be printed (or manipulated in most ways).
-        // Only do this when it's an Element, otherwise it's trying to set
-        // attributes on text notes (interstitial content).
-        if (node instanceof Element) {
-          setString(attr, parent.getString(attr));
+    // Only do this when it's an Element, otherwise it's trying to set
+    // attributes on text notes (interstitial content).
+    if (node instanceof Element) {
+      NamedNodeMap attrs = parent.node.getAttributes();
+      int count = (attrs == null) ? 0 : attrs.getLength();
+      for (int i = 0; i < count; i++) {
+        String attr = attrs.item(i).getNodeName();
+        if (attr.startsWith("xmlns")) {
+          // Copy namespace attributes to the kids, otherwise this XML
+          // can no longer be printed (or manipulated in most ways).
+          setString(attr, attrs.item(i).getNodeValue());
         }
       }
     }
@@ -264,7 +319,7 @@ public class XML implements Serializable {
    * @nowebref
    */
   static public XML parse(String data, String options) throws IOException, ParserConfigurationException, SAXException {
-    return new XML(new StringReader(data), null);
+    return new XML(new StringReader(data), options);
   }
 
 
@@ -296,6 +351,291 @@ public class XML implements Serializable {
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Read an XML file one element at a time, returning each element with
+   * this tag name (and everything inside it), without loading the rest of
+   * the document. Only one element is kept in memory at a time, so this can
+   * be used with files that are far too large for loadXML(), for instance:
+   * <pre>
+   * for (XML node : XML.stream(createInput("map.osm"), "node")) {
+   *   println(node.getDouble("lat"), node.getDouble("lon"));
+   * }
+   * </pre>
+   * Elements with the same name inside a match are only returned as part of
+   * the outer element. Each element has no parent, and the input is closed
+   * once the end of the document is reached.
+   *
+   * @nowebref
+   * @param tagName name of the elements to return
+   */
+  static public Iterable<XML> stream(InputStream input, String tagName) {
+    return stream(input, tagName, null);
+  }
+
+
+  /**
+   * @param options "trim" to remove whitespace between elements
+   */
+  static public Iterable<XML> stream(final InputStream input,
+                                     final String tagName, String options) {
+    final boolean trim = hasOption(options, "trim");
+    return new Iterable<XML>() {
+      public Iterator<XML> iterator() {
+        try {
+          XMLStreamReader reader = createStreamFactory().createXMLStreamReader(input);
+          return new StreamIterator(reader, input, tagName, trim);
+        } catch (XMLStreamException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public Iterable<XML> stream(Reader reader, String tagName) {
+    return stream(reader, tagName, null);
+  }
+
+
+  static public Iterable<XML> stream(final Reader reader,
+                                     final String tagName, String options) {
+    final boolean trim = hasOption(options, "trim");
+    return new Iterable<XML>() {
+      public Iterator<XML> iterator() {
+        try {
+          Reader filtered = filterLineSeparators(reader);
+          XMLStreamReader xsr = createStreamFactory().createXMLStreamReader(filtered);
+          return new StreamIterator(xsr, filtered, tagName, trim);
+        } catch (XMLStreamException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+
+
+  static class StreamIterator implements Iterator<XML> {
+    XMLStreamReader reader;
+    Closeable input;
+    String tagName;
+    boolean trim;
+    DocumentBuilder builder;
+    XML upcoming;
+
+    // xmlns attributes from the elements enclosing the current position
+    StringList namespaceNames = new StringList();
+    StringList namespaceValues = new StringList();
+    IntList namespaceDepths = new IntList();
+    int depth;
+
+    StreamIterator(XMLStreamReader reader, Closeable input,
+                   String tagName, boolean trim) {
+      this.reader = reader;
+      this.input = input;
+      this.tagName = tagName;
+      this.trim = trim;
+      try {
+        builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      } catch (ParserConfigurationException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    public boolean hasNext() {
+      if (upcoming == null && reader != null) {
+        try {
+          while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+              if (tagName.equals(elementName(reader))) {
+                // each element gets its own Document, so that it
+                // doesn't keep any of the earlier ones from being freed
+                Document document = builder.newDocument();
+                Element element = readElement(reader, document, trim);
+                document.appendChild(element);
+                // copy namespace attributes from the enclosing elements,
+                // otherwise this XML can no longer be printed
+                for (int i = 0; i < namespaceNames.size(); i++) {
+                  String name = namespaceNames.get(i);
+                  if (!element.hasAttribute(name)) {
+                    element.setAttribute(name, namespaceValues.get(i));
+                  }
+                }
+                upcoming = new XML();
+                upcoming.node = element;
+                return true;
+              }
+              depth++;
+              int count = reader.getAttributeCount();
+              for (int i = 0; i < count; i++) {
+                String prefix = reader.getAttributePrefix(i);
+                String name = reader.getAttributeLocalName(i);
+                if (prefix != null && prefix.length() != 0) {
+                  name = prefix + ":" + name;
+                }
+                if (name.startsWith("xmlns")) {
+                  namespaceNames.append(name);
+                  namespaceValues.append(reader.getAttributeValue(i));
+                  namespaceDepths.append(depth);
+                }
+              }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+              while (namespaceDepths.size() > 0 &&
+                     namespaceDepths.get(namespaceDepths.size() - 1) == depth) {
+                namespaceNames.pop();
+                namespaceValues.pop();
+                namespaceDepths.pop();
+              }
+              depth--;
+            }
+          }
+          reader.close();
+          input.close();
+          reader = null;
+
+        } catch (XMLStreamException e) {
+          throw new RuntimeException(e);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return upcoming != null;
+    }
+
+    public XML next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      XML outgoing = upcoming;
+      upcoming = null;
+      return outgoing;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+
+  static private XMLInputFactory createStreamFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    // names are used as-is (i.e. "svg:path"), the same as the DOM parser
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    try {
+      // Prevent 503 errors from www.w3.org
+      factory.setProperty("http://java.sun.com/xml/stream/properties/ignore-external-dtd", true);
+      // keep CDATA sections, the same as the DOM parser
+      factory.setProperty("http://java.sun.com/xml/stream/properties/report-cdata-event", true);
+    } catch (IllegalArgumentException e) {
+      // not available with this implementation
+    }
+    return factory;
+  }
+
+
+  /** Read an entire document with StAX into a DOM, returning the root. */
+  static private Element readDocument(XMLStreamReader reader,
+                                      boolean trim) throws XMLStreamException,
+                                                           ParserConfigurationException {
+    Document document =
+      DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    while (reader.hasNext()) {
+      if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+        Element root = readElement(reader, document, trim);
+        document.appendChild(root);
+        reader.close();
+        return root;
+      }
+    }
+    throw new XMLStreamException("No root element found");
+  }
+
+
+  /**
+   * Build the element at the reader's current START_ELEMENT (and its
+   * contents), leaving the reader at the matching END_ELEMENT.
+   */
+  static private Element readElement(XMLStreamReader reader, Document document,
+                                     boolean trim) throws XMLStreamException {
+    Element root = createElement(reader, document);
+    Node current = root;
+    StringBuilder text = new StringBuilder();
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.CHARACTERS ||
+          event == XMLStreamConstants.SPACE) {
+        // StAX may split text into several pieces
+        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+        continue;
+      }
+      if (text.length() != 0) {
+        if (!trim || !isWhitespace(text)) {
+          current.appendChild(document.createTextNode(text.toString()));
+        }
+        text.setLength(0);
+      }
+      switch (event) {
+      case XMLStreamConstants.START_ELEMENT:
+        Element kid = createElement(reader, document);
+        current.appendChild(kid);
+        current = kid;
+        depth++;
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        current = current.getParentNode();
+        depth--;
+        break;
+      case XMLStreamConstants.CDATA:
+        if (!trim || !isWhitespace(reader.getText())) {
+          current.appendChild(document.createCDATASection(reader.getText()));
+        }
+        break;
+      case XMLStreamConstants.COMMENT:
+        current.appendChild(document.createComment(reader.getText()));
+        break;
+      case XMLStreamConstants.PROCESSING_INSTRUCTION:
+        current.appendChild(document.createProcessingInstruction(reader.getPITarget(),
+                                                                 reader.getPIData()));
+        break;
+      case XMLStreamConstants.END_DOCUMENT:
+        throw new XMLStreamException("Unexpected end of document inside <" +
+                                     root.getNodeName() + ">");
+      }
+    }
+    return root;
+  }
+
+
+  static private Element createElement(XMLStreamReader reader, Document document) {
+    Element element = document.createElement(elementName(reader));
+    int count = reader.getAttributeCount();
+    for (int i = 0; i < count; i++) {
+      String prefix = reader.getAttributePrefix(i);
+      String name = reader.getAttributeLocalName(i);
+      if (prefix != null && prefix.length() != 0) {
+        name = prefix + ":" + name;
+      }
+      element.setAttribute(name, reader.getAttributeValue(i));
+    }
+    return element;
+  }
+
+
+  static private String elementName(XMLStreamReader reader) {
+    String prefix = reader.getPrefix();
+    String name = reader.getLocalName();
+    return (prefix == null || prefix.length() == 0) ? name : prefix + ":" + name;
+  }
+
+
   /**
    * Returns the parent element. This method returns null for the root
    * element.
@@ -356,10 +696,20 @@ public class XML implements Serializable {
    */
   protected void checkChildren() {
     if (children == null) {
-      NodeList kids = node.getChildNodes();
-      int childCount = kids.getLength();
-      children = new XML[childCount];
-      for (int i = 0; i < childCount; i++) {
+      children = new XML[node.getChildNodes().getLength()];
+    }
+  }
+
+
+  /** Make sure that every entry of the children array has been created. */
+  protected void loadChildren() {
+    checkChildren();
+    NodeList kids = null;
+    for (int i = 0; i < children.length; i++) {
+      if (children[i] == null) {
+        if (kids == null) {
+          kids = node.getChildNodes();
+        }
         children[i] = new XML(this, kids.item(i));
       }
     }
@@ -409,9 +759,10 @@ public class XML implements Serializable {
 //      } // otherwise just leave him null
 //    }
     checkChildren();
+    NodeList kids = node.getChildNodes();
     String[] outgoing = new String[children.length];
     for (int i = 0; i < children.length; i++) {
-      outgoing[i] = children[i].getName();
+      outgoing[i] = kids.item(i).getNodeName();
     }
     return outgoing;
   }
@@ -432,7 +783,7 @@ public class XML implements Serializable {
 //      kids[i] = new XMLElement(this, kid);
 //    }
 //    return kids;
-    checkChildren();
+    loadChildren();
     return children;
   }
 
@@ -444,7 +795,12 @@ public class XML implements Serializable {
    */
   public XML getChild(int index) {
     checkChildren();
-    return children[index];
+    XML kid = children[index];
+    if (kid == null) {
+      kid = new XML(this, node.getChildNodes().item(index));
+      children[index] = kid;
+    }
+    return kid;
   }
 
 
@@ -464,11 +820,11 @@ public class XML implements Serializable {
       return getChildRecursive(PApplet.split(name, '/'), 0);
     }
     int childCount = getChildCount();
+    NodeList kids = node.getChildNodes();
     for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
+      String kidName = kids.item(i).getNodeName();
       if (kidName != null && kidName.equals(name)) {
-        return kid;
+        return getChild(i);
       }
     }
     return null;
@@ -494,10 +850,11 @@ public class XML implements Serializable {
       }
     }
     int childCount = getChildCount();
+    NodeList kids = node.getChildNodes();
     for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
+      String kidName = kids.item(i).getNodeName();
       if (kidName != null && kidName.equals(items[offset])) {
+        XML kid = getChild(i);
         if (offset == items.length-1) {
           return kid;
         } else {
@@ -530,13 +887,13 @@ public class XML implements Serializable {
       return new XML[] { getChild(Integer.parseInt(name)) };
     }
     int childCount = getChildCount();
+    NodeList kids = node.getChildNodes();
     XML[] matches = new XML[childCount];
     int matchCount = 0;
     for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
+      String kidName = kids.item(i).getNodeName();
       if (kidName != null && kidName.equals(name)) {
-        matches[matchCount++] = kid;
+        matches[matchCount++] = getChild(i);
       }
     }
     return (XML[]) PApplet.subset(matches, 0, matchCount);
@@ -604,24 +961,40 @@ public class XML implements Serializable {
    * @brief Removes whitespace nodes
    */
   public void trim() {
-    try {
-      XPathFactory xpathFactory = XPathFactory.newInstance();
-      XPathExpression xpathExp =
-        xpathFactory.newXPath().compile("//text()[normalize-space(.) = '']");
-      NodeList emptyTextNodes = (NodeList)
-        xpathExp.evaluate(node, XPathConstants.NODESET);
-
-      // Remove each empty text node from document.
-      for (int i = 0; i < emptyTextNodes.getLength(); i++) {
-        Node emptyTextNode = emptyTextNodes.item(i);
-        emptyTextNode.getParentNode().removeChild(emptyTextNode);
+    trim(node);
+    children = null;
+  }
+
+
+  static private void trim(Node parent) {
+    Node kid = parent.getFirstChild();
+    while (kid != null) {
+      Node next = kid.getNextSibling();
+      short type = kid.getNodeType();
+      if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+        if (isWhitespace(kid.getNodeValue())) {
+          parent.removeChild(kid);
+        }
+      } else if (type == Node.ELEMENT_NODE) {
+        trim(kid);
       }
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+      kid = next;
     }
   }
 
 
+  /** True if only made of the characters that normalize-space() removes. */
+  static private boolean isWhitespace(CharSequence text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
 //  /** Remove whitespace nodes. */
 //  public void trim() {
 //////    public static boolean isWhitespace(XML xml) {
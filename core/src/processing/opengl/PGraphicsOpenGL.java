@@ -32,6 +32,8 @@ import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.nio.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 /**
@@ -7551,6 +7553,21 @@ public class PGraphicsOpenGL extends PGraphics {
       return size - 1;
     }
 
+    /**
+     * Add the entries of another cache, for geometry that was appended
+     * after indexBase indices and vertexBase vertices.
+     */
+    void append(IndexCache other, int indexBase, int vertexBase) {
+      for (int i = 0; i < other.size; i++) {
+        arrayCheck();
+        indexCount[size] = other.indexCount[i];
+        indexOffset[size] = other.indexOffset[i] + indexBase;
+        vertexCount[size] = other.vertexCount[i];
+        vertexOffset[size] = other.vertexOffset[i] + vertexBase;
+        size++;
+      }
+    }
+
     int getLast() {
       if (size == 0) {
         arrayCheck();
@@ -9405,6 +9422,89 @@ public class PGraphicsOpenGL extends PGraphics {
       lastPointIndex = pointIndexCount - 1;
     }
 
+    /**
+     * Add all the geometry in other (which must have the same attributes)
+     * to the end of this one. Since indices are relative to the vertex
+     * offset of their cache entry, they're copied as they are, and only the
+     * offsets in the caches are moved.
+     */
+    void append(TessGeometry other) {
+      int first, count;
+
+      int polyIndexBase = polyIndexCount;
+      int polyVertexBase = polyVertexCount;
+      count = other.polyVertexCount;
+      if (0 < count) {
+        first = polyVertexCount;
+        polyVertexCheck(count);
+        PApplet.arrayCopy(other.polyVertices, 0, polyVertices, 4 * first, 4 * count);
+        PApplet.arrayCopy(other.polyColors, 0, polyColors, first, count);
+        PApplet.arrayCopy(other.polyNormals, 0, polyNormals, 3 * first, 3 * count);
+        PApplet.arrayCopy(other.polyTexCoords, 0, polyTexCoords, 2 * first, 2 * count);
+        PApplet.arrayCopy(other.polyAmbient, 0, polyAmbient, first, count);
+        PApplet.arrayCopy(other.polySpecular, 0, polySpecular, first, count);
+        PApplet.arrayCopy(other.polyEmissive, 0, polyEmissive, first, count);
+        PApplet.arrayCopy(other.polyShininess, 0, polyShininess, first, count);
+        for (String name: polyAttribs.keySet()) {
+          VertexAttribute attrib = polyAttribs.get(name);
+          int size = attrib.tessSize;
+          if (attrib.type == PGL.FLOAT) {
+            PApplet.arrayCopy(other.fpolyAttribs.get(name), 0,
+                              fpolyAttribs.get(name), size * first, size * count);
+          } else if (attrib.type == PGL.INT) {
+            PApplet.arrayCopy(other.ipolyAttribs.get(name), 0,
+                              ipolyAttribs.get(name), size * first, size * count);
+          } else if (attrib.type == PGL.BOOL) {
+            PApplet.arrayCopy(other.bpolyAttribs.get(name), 0,
+                              bpolyAttribs.get(name), size * first, size * count);
+          }
+        }
+      }
+      count = other.polyIndexCount;
+      if (0 < count) {
+        first = polyIndexCount;
+        polyIndexCheck(count);
+        PApplet.arrayCopy(other.polyIndices, 0, polyIndices, first, count);
+      }
+      polyIndexCache.append(other.polyIndexCache, polyIndexBase, polyVertexBase);
+
+      int lineIndexBase = lineIndexCount;
+      int lineVertexBase = lineVertexCount;
+      count = other.lineVertexCount;
+      if (0 < count) {
+        first = lineVertexCount;
+        lineVertexCheck(count);
+        PApplet.arrayCopy(other.lineVertices, 0, lineVertices, 4 * first, 4 * count);
+        PApplet.arrayCopy(other.lineColors, 0, lineColors, first, count);
+        PApplet.arrayCopy(other.lineDirections, 0, lineDirections, 4 * first, 4 * count);
+      }
+      count = other.lineIndexCount;
+      if (0 < count) {
+        first = lineIndexCount;
+        lineIndexCheck(count);
+        PApplet.arrayCopy(other.lineIndices, 0, lineIndices, first, count);
+      }
+      lineIndexCache.append(other.lineIndexCache, lineIndexBase, lineVertexBase);
+
+      int pointIndexBase = pointIndexCount;
+      int pointVertexBase = pointVertexCount;
+      count = other.pointVertexCount;
+      if (0 < count) {
+        first = pointVertexCount;
+        pointVertexCheck(count);
+        PApplet.arrayCopy(other.pointVertices, 0, pointVertices, 4 * first, 4 * count);
+        PApplet.arrayCopy(other.pointColors, 0, pointColors, first, count);
+        PApplet.arrayCopy(other.pointOffsets, 0, pointOffsets, 2 * first, 2 * count);
+      }
+      count = other.pointIndexCount;
+      if (0 < count) {
+        first = pointIndexCount;
+        pointIndexCheck(count);
+        PApplet.arrayCopy(other.pointIndices, 0, pointIndices, first, count);
+      }
+      pointIndexCache.append(other.pointIndexCache, pointIndexBase, pointVertexBase);
+    }
+
     // -----------------------------------------------------------------
     //
     // Query
@@ -10405,6 +10505,22 @@ public class PGraphicsOpenGL extends PGraphics {
       polyShininess[tessIdx] = shine;
     }
 
+    /**
+     * Copies the positions and normals of all the input vertices again, over
+     * the tessellated vertices starting at first, without transforming them.
+     */
+    void setPolyCoords(InGeometry in, int first) {
+      int nvert = in.vertexCount;
+      int first0 = firstPolyVertex;
+      firstPolyVertex = first;
+      if (nvert <= PGL.MIN_ARRAYCOPY_SIZE) {
+        copyFewCoords(in, 0, 0, nvert);
+      } else {
+        copyManyCoords(in, 0, 0, nvert);
+      }
+      firstPolyVertex = first0;
+    }
+
     void addPolyVertices(InGeometry in, boolean clampXY) {
       addPolyVertices(in, 0, in.vertexCount - 1, clampXY);
     }
@@ -10930,6 +11046,11 @@ public class PGraphicsOpenGL extends PGraphics {
 
     PGL.Tessellator gluTess;
     TessellatorCallback callback;
+    // Tessellates polygon fills, either the triangulator or the GLU
+    // tessellator, depending on hint(DISABLE_FAST_TESSELLATION).
+    PGL.Tessellator fillTess;
+    PolygonTriangulator triangulator;
+    PolylineStroker stroker;
 
     boolean fill;
     boolean stroke;
@@ -10973,6 +11094,7 @@ public class PGraphicsOpenGL extends PGraphics {
 
     public Tessellator() {
       rawIndices = new int[512];
+      stroker = new PolylineStroker();
       accurate2DStrokes = true;
       transform = null;
       is2D = false;
@@ -10983,6 +11105,7 @@ public class PGraphicsOpenGL extends PGraphics {
       if (gluTess == null) {
         callback = new TessellatorCallback(tess.polyAttribs);
         gluTess = pg.pgl.createTessellator(callback);
+        triangulator = new PolygonTriangulator(callback, gluTess);
       }
     }
 
@@ -11396,7 +11519,7 @@ public class PGraphicsOpenGL extends PGraphics {
       int nvert = lineCount * 4;
       int nind = lineCount * 2 * 3;
 
-      if (noCapsJoins(nvert)) {
+      if (noCapsJoins2D()) {
         tess.polyVertexCheck(nvert);
         tess.polyIndexCheck(nind);
         int index = in.renderMode == RETAINED ? tess.polyIndexCache.addNew() :
@@ -11410,6 +11533,12 @@ public class PGraphicsOpenGL extends PGraphics {
           index = addLineSegment2D(i0, i1, index, false, clamp);
         }
         lastLineIndexCache = lastPolyIndexCache = index;
+      } else if (strokeDirectly(nvert)) {
+        beginDirectStroke();
+        for (int ln = 0; ln < lineCount; ln++) {
+          stroker.polyline(in.vertices, 3, in.strokeColors, 2 * ln, 2, false);
+        }
+        endDirectStroke();
       } else { // full stroking algorithm
         LinePath path = new LinePath(LinePath.WIND_NON_ZERO);
         for (int ln = 0; ln < lineCount; ln++) {
@@ -11491,7 +11620,7 @@ public class PGraphicsOpenGL extends PGraphics {
       int nvert = lineCount * 4;
       int nind = lineCount * 2 * 3;
 
-      if (noCapsJoins(nvert)) {
+      if (noCapsJoins2D()) {
         tess.polyVertexCheck(nvert);
         tess.polyIndexCheck(nind);
         int index = in.renderMode == RETAINED ? tess.polyIndexCache.addNew() :
@@ -11506,6 +11635,11 @@ public class PGraphicsOpenGL extends PGraphics {
           i0 = i1;
         }
         lastLineIndexCache = lastPolyIndexCache = index;
+      } else if (strokeDirectly(nvert)) {
+        beginDirectStroke();
+        stroker.polyline(in.vertices, 3, in.strokeColors, 0, lineCount + 1,
+                         false);
+        endDirectStroke();
       } else {  // full stroking algorithm
         LinePath path = new LinePath(LinePath.WIND_NON_ZERO);
         path.moveTo(in.vertices[0], in.vertices[1], in.strokeColors[0]);
@@ -11588,7 +11722,7 @@ public class PGraphicsOpenGL extends PGraphics {
       int nvert = lineCount * 4;
       int nind = lineCount * 2 * 3;
 
-      if (noCapsJoins(nvert)) {
+      if (noCapsJoins2D()) {
         tess.polyVertexCheck(nvert);
         tess.polyIndexCheck(nind);
         int index = in.renderMode == RETAINED ? tess.polyIndexCache.addNew() :
@@ -11604,6 +11738,10 @@ public class PGraphicsOpenGL extends PGraphics {
         }
         index = addLineSegment2D(0, in.vertexCount - 1, index, false, clamp);
         lastLineIndexCache = lastPolyIndexCache = index;
+      } else if (strokeDirectly(nvert)) {
+        beginDirectStroke();
+        stroker.polyline(in.vertices, 3, in.strokeColors, 0, lineCount, true);
+        endDirectStroke();
       } else { // full stroking algorithm
         LinePath path = new LinePath(LinePath.WIND_NON_ZERO);
         path.moveTo(in.vertices[0], in.vertices[1], in.strokeColors[0]);
@@ -11701,7 +11839,7 @@ public class PGraphicsOpenGL extends PGraphics {
 
     void tessellateEdges2D() {
       int nInVert = in.getNumEdgeVertices(false);
-      if (noCapsJoins(nInVert)) {
+      if (noCapsJoins2D()) {
         int nInInd = in.getNumEdgeIndices(false);
 
         tess.polyVertexCheck(nInVert);
@@ -11719,6 +11857,35 @@ public class PGraphicsOpenGL extends PGraphics {
           index = addLineSegment2D(i0, i1, index, false, clamp);
         }
         lastLineIndexCache = lastPolyIndexCache = index;
+      } else if (strokeDirectly(nInVert)) {
+        beginDirectStroke();
+        stroker.beginPath();
+        for (int i = 0; i <= in.edgeCount - 1; i++) {
+          int[] edge = in.edges[i];
+          int i0 = edge[0];
+          int i1 = edge[1];
+          switch (edge[2]) {
+          case EDGE_START:
+          case EDGE_SINGLE:
+            stroker.beginPath();
+            addStrokerPoint(i0);
+            addStrokerPoint(i1);
+            if (edge[2] == EDGE_SINGLE) stroker.endPath(false);
+            break;
+          case EDGE_MIDDLE:
+            addStrokerPoint(i1);
+            break;
+          case EDGE_STOP:
+            addStrokerPoint(i1);
+            stroker.endPath(false);
+            break;
+          case EDGE_CLOSE:
+            stroker.endPath(true);
+            stroker.beginPath();
+            break;
+          }
+        }
+        endDirectStroke();
       } else { // full stroking algorithm
         LinePath path = new LinePath(LinePath.WIND_NON_ZERO);
         for (int i = 0; i <= in.edgeCount - 1; i++) {
@@ -11759,6 +11926,11 @@ public class PGraphicsOpenGL extends PGraphics {
       }
     }
 
+    void addStrokerPoint(int i) {
+      stroker.addPoint(strokeVertices[3 * i + 0], strokeVertices[3 * i + 1],
+                       strokeColors[i]);
+    }
+
     boolean clampEdges2D() {
       boolean res = clamp2D();
       if (res) {
@@ -12028,18 +12200,55 @@ public class PGraphicsOpenGL extends PGraphics {
       tess.polyVertices[index++] = x*mm.m10 + y*mm.m11 + mm.m13;
     }
 
-    boolean noCapsJoins(int nInVert) {
+    // 2D strokes also skip the caps and joins when they aren't accurate
+    boolean noCapsJoins2D() {
       if (!accurate2DStrokes) {
         return true;
-      } else if (PGL.MAX_CAPS_JOINS_LENGTH <= nInVert) {
-        // The line path is too long, so it could make the GLU tess
-        // to run out of memory, so full caps and joins are disabled.
-        return true;
       } else {
         return noCapsJoins();
       }
     }
 
+    // Stroking with PolylineStroker is much faster than outlining a LinePath
+    // and tessellating the outline, but its triangles overlap at the joins.
+    // So it's only used where that doesn't show: opaque strokes drawn right
+    // away, in a blend mode that gives the same pixel when it's drawn twice.
+    // Paths that are too long for the GLU tessellator, which could run out
+    // of memory with them, are always stroked this way.
+    boolean strokeDirectly(int nInVert) {
+      if (PGL.MAX_CAPS_JOINS_LENGTH <= nInVert) return true;
+      if (in.renderMode == RETAINED) return false;
+      int mode = pg.blendMode;
+      if (mode != BLEND && mode != REPLACE &&
+          mode != DARKEST && mode != LIGHTEST) return false;
+
+      // The colors are in native order, find where the alpha is
+      int alpha = PGL.javaToNativeARGB(0xFF000000);
+      int count = strokeVertices == pathVertices ? pathVertexCount :
+                                                   in.vertexCount;
+      for (int i = 0; i < count; i++) {
+        if ((strokeColors[i] & alpha) != alpha) return false;
+      }
+      return true;
+    }
+
+    void beginDirectStroke() {
+      int index = in.renderMode == RETAINED ? tess.polyIndexCache.addNew() :
+                                              tess.polyIndexCache.getLast();
+      firstLineIndexCache = index;
+      if (firstPolyIndexCache == -1) firstPolyIndexCache = index; // If the geometry has no fill, needs the first poly index.
+      int detail =
+        PApplet.min(MAX_POINT_ACCURACY, PApplet.max(MIN_POINT_ACCURACY,
+                    (int) (TWO_PI * transformScale() * strokeWeight /
+                    POINT_ACCURACY_FACTOR)));
+      stroker.begin(tess, index, strokeWeight, strokeCap, strokeJoin,
+                    detail, clampLinePath());
+    }
+
+    void endDirectStroke() {
+      lastLineIndexCache = lastPolyIndexCache = stroker.end();
+    }
+
     boolean subPixelStroke(float weight) {
       float sw = transformScale() * weight;
       return PApplet.abs(sw - (int)sw) > 0;
@@ -12554,19 +12763,20 @@ public class PGraphicsOpenGL extends PGraphics {
         firstPolyIndexCache = -1;
 
         initGluTess();
+        fillTess = pg.getHint(DISABLE_FAST_TESSELLATION) ? gluTess : triangulator;
         boolean clamp = clampPolygon();
         callback.init(in.renderMode == RETAINED, false, calcNormals, clamp);
 
         if (fill) {
-          gluTess.beginPolygon();
+          fillTess.beginPolygon();
           if (solid) {
             // Using NONZERO winding rule for solid polygons.
-            gluTess.setWindingRule(PGL.TESS_WINDING_NONZERO);
+            fillTess.setWindingRule(PGL.TESS_WINDING_NONZERO);
           } else {
             // Using ODD winding rule to generate polygon with holes.
-            gluTess.setWindingRule(PGL.TESS_WINDING_ODD);
+            fillTess.setWindingRule(PGL.TESS_WINDING_ODD);
           }
-          gluTess.beginContour();
+          fillTess.beginContour();
         }
 
         if (stroke) {
@@ -12593,8 +12803,8 @@ public class PGraphicsOpenGL extends PGraphics {
               beginStrokePath();
             }
             if (fill) {
-              gluTess.endContour();
-              gluTess.beginContour();
+              fillTess.endContour();
+              fillTess.beginContour();
             }
           }
 
@@ -12617,8 +12827,8 @@ public class PGraphicsOpenGL extends PGraphics {
           endPolygonStroke();
         }
         if (fill) {
-          gluTess.endContour();
-          gluTess.endPolygon();
+          fillTess.endContour();
+          fillTess.endPolygon();
         }
       }
       endTex();
@@ -12678,7 +12888,7 @@ public class PGraphicsOpenGL extends PGraphics {
           vertex[0] = x1;
           vertex[1] = y1;
           vertex[2] = z1;
-          gluTess.addVertex(vertex);
+          fillTess.addVertex(vertex);
         }
         if (stroke) addStrokeVertex(x1, y1, z1, strokeColor, strokeWeight);
       }
@@ -12743,7 +12953,7 @@ public class PGraphicsOpenGL extends PGraphics {
           vertex[0] = x1;
           vertex[1] = y1;
           vertex[2] = z1;
-          gluTess.addVertex(vertex);
+          fillTess.addVertex(vertex);
         }
         if (stroke) addStrokeVertex(x1, y1, z1, strokeColor, strokeWeight);
       }
@@ -12781,7 +12991,7 @@ public class PGraphicsOpenGL extends PGraphics {
         vertex0[0] = x;
         vertex0[1] = y;
         vertex0[2] = z;
-        gluTess.addVertex(vertex0);
+        fillTess.addVertex(vertex0);
       }
       if (stroke) {
         addStrokeVertex(x, y, z, in.strokeColors[i], strokeWeight);
@@ -12828,7 +13038,7 @@ public class PGraphicsOpenGL extends PGraphics {
           vertex1[0] = x;
           vertex1[1] = y;
           vertex1[2] = z;
-          gluTess.addVertex(vertex1);
+          fillTess.addVertex(vertex1);
         }
         if (stroke) addStrokeVertex(x, y, z, strokeColor, strokeWeight);
       }
@@ -12846,7 +13056,7 @@ public class PGraphicsOpenGL extends PGraphics {
         vertex[0] = x;
         vertex[1] = y;
         vertex[2] = z;
-        gluTess.addVertex(vertex);
+        fillTess.addVertex(vertex);
       }
       if (stroke) {
         addStrokeVertex(x, y, z, in.strokeColors[i], in.strokeWeights[i]);
@@ -13064,7 +13274,7 @@ public class PGraphicsOpenGL extends PGraphics {
     // This C implementation of GLU could be useful:
     // http://code.google.com/p/glues/
     // to eventually come up with an optimized GLU tessellator in native code.
-    protected class TessellatorCallback implements PGL.TessellatorCallback {
+    protected class TessellatorCallback implements PolygonTriangulator.Callback {
       AttributeMap attribs;
       boolean calcNormals;
       boolean strokeTess;
@@ -13173,6 +13383,36 @@ public class PGraphicsOpenGL extends PGraphics {
         }
       }
 
+      public void triangles(Object[] vertices, int vertexCount,
+                            int[] indices, int indexCount) {
+        begin(PGL.TRIANGLES);
+        if (PGL.MAX_VERTEX_INDEX1 <= vertFirst + vertexCount) {
+          // Start a new index block, as in end(), but before adding the
+          // vertices since they all go in the same block.
+          cacheIndex = cache.addNew();
+          vertFirst = cache.vertexCount[cacheIndex];
+          vertOffset = cache.vertexOffset[cacheIndex];
+        }
+
+        for (int i = 0; i < vertexCount; i++) {
+          vertex(vertices[i]);
+        }
+        for (int i = 0; i < indexCount; i++) {
+          addIndex(indices[i]);
+        }
+        if (calcNormals) {
+          for (int i = 0; i < indexCount; i += 3) {
+            calcTriNormal(indices[i], indices[i + 1], indices[i + 2]);
+          }
+        }
+
+        cache.incCounts(cacheIndex, indexCount, vertexCount);
+        lastPolyIndexCache = cacheIndex;
+        if (strokeTess) {
+          lastLineIndexCache = cacheIndex;
+        }
+      }
+
       protected void addIndex(int tessIdx) {
         tess.polyIndexCheck();
         tess.polyIndices[tess.polyIndexCount - 1] =
@@ -13319,9 +13559,30 @@ public class PGraphicsOpenGL extends PGraphics {
 
     BitSet marked = new BitSet();
     BitSet swapped = new BitSet();
+    // The bits set in swapped, so it can be cleared without going
+    // through all the triangles
+    int[] swappedIds = new int[16];
+
+    // Used by the fast sort, see hint(ENABLE_FAST_DEPTH_SORT)
+    int[] sortKeys = new int[0];
+    int[] sortKeysTemp = new int[0];
+    int[] sortIndicesTemp = new int[0];
+    int[] radixCounts = new int[RADIX_BUCKETS + 1];
+    float[] boundsTemp = new float[0];
 
     PGraphicsOpenGL pg;
 
+    // How far down the depth order the fast sort looks for triangles that
+    // should be drawn before the current one.
+    static final int FAST_SORT_WINDOW = 16;
+
+    static final int RADIX_BITS = 8;
+    static final int RADIX_BUCKETS = 1 << RADIX_BITS;
+
+    // Vertices or triangles per thread below which the screen-space
+    // transform is done on a single thread.
+    static final int PARALLEL_GRAIN = 8192;
+
     DepthSorter (PGraphicsOpenGL pg) {
       this.pg = pg;
     }
@@ -13338,6 +13599,9 @@ public class PGraphicsOpenGL extends PGraphics {
         maxXBuffer      = new float[newSize];
         maxYBuffer      = new float[newSize];
         maxZBuffer      = new float[newSize];
+        sortKeys        = new int[newSize];
+        sortKeysTemp    = new int[newSize];
+        sortIndicesTemp = new int[newSize];
       }
     }
 
@@ -13387,39 +13651,24 @@ public class PGraphicsOpenGL extends PGraphics {
         }
       }
 
-      { // Map vertices to screen
-        int polyVertexCount = tessGeo.polyVertexCount;
-        checkVertexBuffer(polyVertexCount);
-        float[] screenVertices = this.screenVertices;
+      mapVerticesToScreen(tessGeo);
+      calcTriangleBounds(tessGeo, triangleCount);
 
-        float[] polyVertices = tessGeo.polyVertices;
-
-        PMatrix3D projection = pg.projection;
+      boolean fast = pg.getHint(ENABLE_FAST_DEPTH_SORT);
+      if (fast) {
+        radixSortByMinZ(triangleCount);
+        // Put the triangles and their bounds in that order already, so
+        // the neighbors compared below are next to each other in memory.
+        sortBounds(triangleCount);
+        reorderTriangles(tessGeo, triangleCount);
+      } else {
+        sortByMinZ(0, triangleCount - 1, triangleIndices, minZBuffer);
+      }
 
-        for (int i = 0; i < polyVertexCount; i++) {
-          float x = polyVertices[4*i+X];
-          float y = polyVertices[4*i+Y];
-          float z = polyVertices[4*i+Z];
-          float w = polyVertices[4*i+W];
+      // In the fast sort, each triangle is only compared with the ones that
+      // come shortly after it, the rest are assumed to be in the right order.
+      int window = fast ? FAST_SORT_WINDOW : triangleCount;
 
-          float ox = projection.m00 * x + projection.m01 * y +
-              projection.m02 * z + projection.m03 * w;
-          float oy = projection.m10 * x + projection.m11 * y +
-              projection.m12 * z + projection.m13 * w;
-          float oz = projection.m20 * x + projection.m21 * y +
-              projection.m22 * z + projection.m23 * w;
-          float ow = projection.m30 * x + projection.m31 * y +
-              projection.m32 * z + projection.m33 * w;
-          if (nonZero(ow)) {
-            ox /= ow;
-            oy /= ow;
-            oz /= ow;
-          }
-          screenVertices[3*i+X] = ox;
-          screenVertices[3*i+Y] = oy;
-          screenVertices[3*i+Z] = -oz;
-        }
-      }
       float[] screenVertices = this.screenVertices;
 
       int[] vertexOffset = tessGeo.polyIndexCache.vertexOffset;
@@ -13428,30 +13677,23 @@ public class PGraphicsOpenGL extends PGraphics {
       float[] triA = this.triA;
       float[] triB = this.triB;
 
-      for (int i = 0; i < triangleCount; i++) {
-        fetchTriCoords(triA, i, vertexOffset, voffsetMap, screenVertices, polyIndices);
-        minXBuffer[i] = PApplet.min(triA[X0], triA[X1], triA[X2]);
-        maxXBuffer[i] = PApplet.max(triA[X0], triA[X1], triA[X2]);
-        minYBuffer[i] = PApplet.min(triA[Y0], triA[Y1], triA[Y2]);
-        maxYBuffer[i] = PApplet.max(triA[Y0], triA[Y1], triA[Y2]);
-        minZBuffer[i] = PApplet.min(triA[Z0], triA[Z1], triA[Z2]);
-        maxZBuffer[i] = PApplet.max(triA[Z0], triA[Z1], triA[Z2]);
-      }
-
-      sortByMinZ(0, triangleCount - 1, triangleIndices, minZBuffer);
-
       int activeTid = 0;
 
       BitSet marked = this.marked;
       BitSet swapped = this.swapped;
 
       marked.clear();
+      swapped.clear();
+      int swappedCount = 0;
 
       while (activeTid < triangleCount) {
         int testTid = activeTid + 1;
         boolean draw = false;
 
-        swapped.clear();
+        for (int i = 0; i < swappedCount; i++) {
+          swapped.clear(swappedIds[i]);
+        }
+        swappedCount = 0;
 
         int ati = triangleIndices[activeTid];
         float minXA = minXBuffer[ati];
@@ -13466,7 +13708,8 @@ public class PGraphicsOpenGL extends PGraphics {
           int tti = triangleIndices[testTid];
 
           // TEST 1 // Z overlap
-          if (maxZA <= minZBuffer[tti] && !marked.get(tti)) {
+          if ((maxZA <= minZBuffer[tti] && (fast || !marked.get(tti))) ||
+              window < testTid - activeTid) {
             draw = true; // pass, not overlapping in Z, draw it
 
             // TEST 2 // XY overlap using square window
@@ -13489,6 +13732,10 @@ public class PGraphicsOpenGL extends PGraphics {
             } else {
               if (!swapped.get(tti)) {
                 swapped.set(ati);
+                if (swappedCount == swappedIds.length) {
+                  swappedIds = Arrays.copyOf(swappedIds, 2 * swappedCount);
+                }
+                swappedIds[swappedCount++] = ati;
                 marked.set(tti);
                 rotateRight(triangleIndices, activeTid, testTid);
 
@@ -13512,44 +13759,211 @@ public class PGraphicsOpenGL extends PGraphics {
         activeTid++;
       }
 
-      { // Reorder the buffers
-        for (int id = 0; id < triangleCount; id++) {
-          int mappedId = triangleIndices[id];
-          if (id != mappedId) {
-
-            // put the first index aside
-            short i0 = polyIndices[3*id+0];
-            short i1 = polyIndices[3*id+1];
-            short i2 = polyIndices[3*id+2];
-            int texId = texMap[id];
-            int voffsetId = voffsetMap[id];
-
-            // process the whole permutation cycle
-            int currId = id;
-            int nextId = mappedId;
-            do {
-              triangleIndices[currId] = currId;
-              polyIndices[3*currId+0] = polyIndices[3*nextId+0];
-              polyIndices[3*currId+1] = polyIndices[3*nextId+1];
-              polyIndices[3*currId+2] = polyIndices[3*nextId+2];
-              texMap[currId] = texMap[nextId];
-              voffsetMap[currId] = voffsetMap[nextId];
-
-              currId = nextId;
-              nextId = triangleIndices[nextId];
-            } while (nextId != id);
-
-            // place the first index at the end
+      reorderTriangles(tessGeo, triangleCount);
+    }
+
+    /**
+     * Reorders the triangles in the index buffer (and the texture and
+     * vertex offset maps) as given by triangleIndices, which is reset.
+     */
+    void reorderTriangles(TessGeometry tessGeo, int triangleCount) {
+      int[] triangleIndices = this.triangleIndices;
+      int[] texMap = this.texMap;
+      int[] voffsetMap = this.voffsetMap;
+      short[] polyIndices = tessGeo.polyIndices;
+
+      for (int id = 0; id < triangleCount; id++) {
+        int mappedId = triangleIndices[id];
+        if (id != mappedId) {
+
+          // put the first index aside
+          short i0 = polyIndices[3*id+0];
+          short i1 = polyIndices[3*id+1];
+          short i2 = polyIndices[3*id+2];
+          int texId = texMap[id];
+          int voffsetId = voffsetMap[id];
+
+          // process the whole permutation cycle
+          int currId = id;
+          int nextId = mappedId;
+          do {
             triangleIndices[currId] = currId;
-            polyIndices[3*currId+0] = i0;
-            polyIndices[3*currId+1] = i1;
-            polyIndices[3*currId+2] = i2;
-            texMap[currId] = texId;
-            voffsetMap[currId] = voffsetId;
-          }
+            polyIndices[3*currId+0] = polyIndices[3*nextId+0];
+            polyIndices[3*currId+1] = polyIndices[3*nextId+1];
+            polyIndices[3*currId+2] = polyIndices[3*nextId+2];
+            texMap[currId] = texMap[nextId];
+            voffsetMap[currId] = voffsetMap[nextId];
+
+            currId = nextId;
+            nextId = triangleIndices[nextId];
+          } while (nextId != id);
+
+          // place the first index at the end
+          triangleIndices[currId] = currId;
+          polyIndices[3*currId+0] = i0;
+          polyIndices[3*currId+1] = i1;
+          polyIndices[3*currId+2] = i2;
+          texMap[currId] = texId;
+          voffsetMap[currId] = voffsetId;
+        }
+      }
+    }
+
+    /**
+     * Puts the triangle bounds in the order given by triangleIndices.
+     */
+    void sortBounds(int triangleCount) {
+      minXBuffer = sortBounds(minXBuffer, triangleCount);
+      minYBuffer = sortBounds(minYBuffer, triangleCount);
+      minZBuffer = sortBounds(minZBuffer, triangleCount);
+      maxXBuffer = sortBounds(maxXBuffer, triangleCount);
+      maxYBuffer = sortBounds(maxYBuffer, triangleCount);
+      maxZBuffer = sortBounds(maxZBuffer, triangleCount);
+    }
+
+    float[] sortBounds(float[] bounds, int triangleCount) {
+      if (boundsTemp.length < bounds.length) {
+        boundsTemp = new float[bounds.length];
+      }
+      float[] sorted = boundsTemp;
+      for (int i = 0; i < triangleCount; i++) {
+        sorted[i] = bounds[triangleIndices[i]];
+      }
+      boundsTemp = bounds;
+      return sorted;
+    }
+
+    void mapVerticesToScreen(TessGeometry tessGeo) {
+      int polyVertexCount = tessGeo.polyVertexCount;
+      checkVertexBuffer(polyVertexCount);
+      screenPass(tessGeo, true, polyVertexCount);
+    }
+
+    void calcTriangleBounds(TessGeometry tessGeo, int triangleCount) {
+      screenPass(tessGeo, false, triangleCount);
+    }
+
+    /**
+     * Transforms the vertices to screen space, or finds the bounds of the
+     * triangles, splitting the work across cores if there's enough of it.
+     */
+    void screenPass(TessGeometry tessGeo, boolean vertices, int count) {
+      int cores = ForkJoinPool.getCommonPoolParallelism();
+      if (count < 2 * PARALLEL_GRAIN || cores < 2) {
+        screenPass(tessGeo, vertices, 0, count);
+      } else {
+        int grain = Math.max(PARALLEL_GRAIN, count / (cores * 4));
+        ForkJoinPool.commonPool().invoke(new ScreenAction(this, tessGeo,
+                                                          vertices, 0, count,
+                                                          grain));
+      }
+    }
+
+    void screenPass(TessGeometry tessGeo, boolean vertices,
+                    int start, int stop) {
+      if (vertices) {
+        mapVerticesToScreen(tessGeo, start, stop);
+      } else {
+        calcTriangleBounds(tessGeo, start, stop);
+      }
+    }
+
+    void mapVerticesToScreen(TessGeometry tessGeo, int start, int stop) {
+      float[] screenVertices = this.screenVertices;
+      float[] polyVertices = tessGeo.polyVertices;
+      PMatrix3D projection = pg.projection;
+
+      for (int i = start; i < stop; i++) {
+        float x = polyVertices[4*i+X];
+        float y = polyVertices[4*i+Y];
+        float z = polyVertices[4*i+Z];
+        float w = polyVertices[4*i+W];
+
+        float ox = projection.m00 * x + projection.m01 * y +
+            projection.m02 * z + projection.m03 * w;
+        float oy = projection.m10 * x + projection.m11 * y +
+            projection.m12 * z + projection.m13 * w;
+        float oz = projection.m20 * x + projection.m21 * y +
+            projection.m22 * z + projection.m23 * w;
+        float ow = projection.m30 * x + projection.m31 * y +
+            projection.m32 * z + projection.m33 * w;
+        if (nonZero(ow)) {
+          ox /= ow;
+          oy /= ow;
+          oz /= ow;
+        }
+        screenVertices[3*i+X] = ox;
+        screenVertices[3*i+Y] = oy;
+        screenVertices[3*i+Z] = -oz;
+      }
+    }
+
+    void calcTriangleBounds(TessGeometry tessGeo, int start, int stop) {
+      float[] screenVertices = this.screenVertices;
+      int[] vertexOffset = tessGeo.polyIndexCache.vertexOffset;
+      int[] voffsetMap = this.voffsetMap;
+      short[] polyIndices = tessGeo.polyIndices;
+
+      float[] tri = new float[9];
+      for (int i = start; i < stop; i++) {
+        fetchTriCoords(tri, i, vertexOffset, voffsetMap, screenVertices, polyIndices);
+        minXBuffer[i] = PApplet.min(tri[X0], tri[X1], tri[X2]);
+        maxXBuffer[i] = PApplet.max(tri[X0], tri[X1], tri[X2]);
+        minYBuffer[i] = PApplet.min(tri[Y0], tri[Y1], tri[Y2]);
+        maxYBuffer[i] = PApplet.max(tri[Y0], tri[Y1], tri[Y2]);
+        minZBuffer[i] = PApplet.min(tri[Z0], tri[Z1], tri[Z2]);
+        maxZBuffer[i] = PApplet.max(tri[Z0], tri[Z1], tri[Z2]);
+      }
+    }
+
+    /**
+     * Stable sort of the first count entries of triangleIndices (which
+     * must be in order) by min z, going through the bits of the float
+     * values a byte at a time.
+     */
+    void radixSortByMinZ(int count) {
+      int[] keys = sortKeys;
+      int[] keysTemp = sortKeysTemp;
+      int[] indices = triangleIndices;
+      int[] indicesTemp = sortIndicesTemp;
+      int[] counts = radixCounts;
+      if (count < 2) return;
+
+      for (int i = 0; i < count; i++) {
+        // Flip the bits so that the keys compare as unsigned ints
+        // in the same order as the floats.
+        int bits = Float.floatToIntBits(minZBuffer[i]);
+        keys[i] = bits ^ ((bits >> 31) | 0x80000000);
+      }
+
+      for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < count; i++) {
+          counts[((keys[i] >>> shift) & (RADIX_BUCKETS - 1)) + 1]++;
+        }
+        if (counts[((keys[0] >>> shift) & (RADIX_BUCKETS - 1)) + 1] == count) {
+          continue;  // all the keys have the same digit
         }
+        for (int b = 0; b < RADIX_BUCKETS; b++) {
+          counts[b + 1] += counts[b];
+        }
+        for (int i = 0; i < count; i++) {
+          int b = (keys[i] >>> shift) & (RADIX_BUCKETS - 1);
+          int pos = counts[b]++;
+          keysTemp[pos] = keys[i];
+          indicesTemp[pos] = indices[i];
+        }
+        int[] temp = keys;
+        keys = keysTemp;
+        keysTemp = temp;
+        temp = indices;
+        indices = indicesTemp;
+        indicesTemp = temp;
       }
 
+      if (indices != triangleIndices) {
+        System.arraycopy(indices, 0, triangleIndices, 0, count);
+      }
     }
 
     static void fetchTriCoords(float[] tri, int ti, int[] vertexOffset,
@@ -13659,6 +14073,40 @@ public class PGraphicsOpenGL extends PGraphics {
       array[i1] = temp;
     }
 
+
+    // Threads -------------------------------------------
+
+    /** Splits a screen-space pass in half until the pieces are small. */
+    static class ScreenAction extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      final DepthSorter sorter;
+      final TessGeometry tessGeo;
+      final boolean vertices;
+      final int start, stop, grain;
+
+      ScreenAction(DepthSorter sorter, TessGeometry tessGeo, boolean vertices,
+                   int start, int stop, int grain) {
+        this.sorter = sorter;
+        this.tessGeo = tessGeo;
+        this.vertices = vertices;
+        this.start = start;
+        this.stop = stop;
+        this.grain = grain;
+      }
+
+      @Override
+      protected void compute() {
+        if (stop - start <= grain) {
+          sorter.screenPass(tessGeo, vertices, start, stop);
+        } else {
+          int middle = (start + stop) >>> 1;
+          invokeAll(new ScreenAction(sorter, tessGeo, vertices, start, middle, grain),
+                    new ScreenAction(sorter, tessGeo, vertices, middle, stop, grain));
+        }
+      }
+    }
+
   }
 
 }
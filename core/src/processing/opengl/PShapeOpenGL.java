@@ -41,8 +41,11 @@ import processing.opengl.PGraphicsOpenGL.Tessellator;
 import processing.opengl.PGraphicsOpenGL.VertexAttribute;
 
 import java.nio.Buffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This class holds a 3D model composed of vertices, normals, colors
@@ -225,6 +228,14 @@ public class PShapeOpenGL extends PShape {
   // Current mode for normals, one of AUTO, SHAPE, or VERTEX
   protected int normalMode;
 
+  // Groups with fewer shapes are always tessellated on one thread, see
+  // hint(ENABLE_PARALLEL_TESSELLATION)
+  static protected final int MIN_PARALLEL_SHAPES = 64;
+
+  // Threads that tessellateChildrenParallel() splits the work for, or 0 for
+  // one per processor
+  static int parallelThreads = 0;
+
   // ........................................................
 
   // Modification variables (used only by the root shape)
@@ -1678,6 +1689,11 @@ public class PShapeOpenGL extends PShape {
       inGeo.vertices[3 * index + 0] = x;
       inGeo.vertices[3 * index + 1] = y;
       inGeo.vertices[3 * index + 2] = z;
+      if (!hasLines && !hasPoints && -1 < directPolyVertex(index)) {
+        // Only the fill depends on the position of the vertex
+        updatePolyCoords();
+        return;
+      }
     }
     markForTessellation();
   }
@@ -1705,6 +1721,11 @@ public class PShapeOpenGL extends PShape {
       inGeo.vertices[3 * index + 0] = vec.x;
       inGeo.vertices[3 * index + 1] = vec.y;
       inGeo.vertices[3 * index + 2] = vec.z;
+      if (!hasLines && !hasPoints && -1 < directPolyVertex(index)) {
+        // Only the fill depends on the position of the vertex
+        updatePolyCoords();
+        return;
+      }
     }
     markForTessellation();
   }
@@ -1750,7 +1771,11 @@ public class PShapeOpenGL extends PShape {
     inGeo.normals[3 * index + 0] = nx;
     inGeo.normals[3 * index + 1] = ny;
     inGeo.normals[3 * index + 2] = nz;
-    markForTessellation();
+    if (-1 < directPolyVertex(index)) {
+      updatePolyCoords();
+    } else {
+      markForTessellation();
+    }
   }
 
 
@@ -1761,13 +1786,18 @@ public class PShapeOpenGL extends PShape {
       return;
     }
 
+    boolean existing = polyAttribs.containsKey(name);
     VertexAttribute attrib = attribImpl(name, VertexAttribute.OTHER, PGL.FLOAT,
                                         values.length);
     float[] array = inGeo.fattribs.get(name);
     for (int i = 0; i < values.length; i++) {
       array[attrib.size * index + i] = values[i];
     }
-    markForTessellation();
+    if (existing) {
+      updatePolyAttrib(attrib, index);
+    } else {
+      markForTessellation();
+    }
   }
 
 
@@ -1778,13 +1808,18 @@ public class PShapeOpenGL extends PShape {
       return;
     }
 
+    boolean existing = polyAttribs.containsKey(name);
     VertexAttribute attrib = attribImpl(name, VertexAttribute.OTHER, PGL.INT,
                                         values.length);
     int[] array = inGeo.iattribs.get(name);
     for (int i = 0; i < values.length; i++) {
       array[attrib.size * index + i] = values[i];
     }
-    markForTessellation();
+    if (existing) {
+      updatePolyAttrib(attrib, index);
+    } else {
+      markForTessellation();
+    }
   }
 
 
@@ -1795,13 +1830,18 @@ public class PShapeOpenGL extends PShape {
       return;
     }
 
+    boolean existing = polyAttribs.containsKey(name);
     VertexAttribute attrib = attribImpl(name, VertexAttribute.OTHER, PGL.BOOL,
                                         values.length);
     byte[] array = inGeo.battribs.get(name);
     for (int i = 0; i < values.length; i++) {
       array[attrib.size * index + i] = (byte)(values[i]?1:0);
     }
-    markForTessellation();
+    if (existing) {
+      updatePolyAttrib(attrib, index);
+    } else {
+      markForTessellation();
+    }
   }
 
 
@@ -1831,7 +1871,14 @@ public class PShapeOpenGL extends PShape {
     inGeo.texcoords[2 * index + 0] = u;
     inGeo.texcoords[2 * index + 1] = v;
 
-    markForTessellation();
+    int tessIdx = directPolyVertex(index);
+    if (-1 < tessIdx) {
+      tessGeo.polyTexCoords[2 * tessIdx + 0] = u;
+      tessGeo.polyTexCoords[2 * tessIdx + 1] = v;
+      root.setModifiedPolyTexCoords(tessIdx, tessIdx);
+    } else {
+      markForTessellation();
+    }
   }
 
 
@@ -1925,7 +1972,13 @@ public class PShapeOpenGL extends PShape {
 
     if (image == null) {
       inGeo.colors[index] = PGL.javaToNativeARGB(fill);
-      markForTessellation();
+      int tessIdx = directPolyVertex(index);
+      if (-1 < tessIdx) {
+        tessGeo.polyColors[tessIdx] = inGeo.colors[index];
+        root.setModifiedPolyColors(tessIdx, tessIdx);
+      } else {
+        markForTessellation();
+      }
     }
   }
 
@@ -2011,7 +2064,13 @@ public class PShapeOpenGL extends PShape {
 
     if (image != null) {
       inGeo.colors[index] = PGL.javaToNativeARGB(tint);
-      markForTessellation();
+      int tessIdx = directPolyVertex(index);
+      if (-1 < tessIdx) {
+        tessGeo.polyColors[tessIdx] = inGeo.colors[index];
+        root.setModifiedPolyColors(tessIdx, tessIdx);
+      } else {
+        markForTessellation();
+      }
     }
   }
 
@@ -2316,7 +2375,13 @@ public class PShapeOpenGL extends PShape {
     }
 
     inGeo.ambient[index] = PGL.javaToNativeARGB(ambient);
-    markForTessellation();
+    int tessIdx = directPolyVertex(index);
+    if (-1 < tessIdx) {
+      tessGeo.polyAmbient[tessIdx] = inGeo.ambient[index];
+      root.setModifiedPolyAmbient(tessIdx, tessIdx);
+    } else {
+      markForTessellation();
+    }
     setAmbient = true;
   }
 
@@ -2380,7 +2445,13 @@ public class PShapeOpenGL extends PShape {
     }
 
     inGeo.specular[index] = PGL.javaToNativeARGB(specular);
-    markForTessellation();
+    int tessIdx = directPolyVertex(index);
+    if (-1 < tessIdx) {
+      tessGeo.polySpecular[tessIdx] = inGeo.specular[index];
+      root.setModifiedPolySpecular(tessIdx, tessIdx);
+    } else {
+      markForTessellation();
+    }
   }
 
 
@@ -2443,7 +2514,13 @@ public class PShapeOpenGL extends PShape {
     }
 
     inGeo.emissive[index] = PGL.javaToNativeARGB(emissive);
-    markForTessellation();
+    int tessIdx = directPolyVertex(index);
+    if (-1 < tessIdx) {
+      tessGeo.polyEmissive[tessIdx] = inGeo.emissive[index];
+      root.setModifiedPolyEmissive(tessIdx, tessIdx);
+    } else {
+      markForTessellation();
+    }
   }
 
 
@@ -2504,7 +2581,13 @@ public class PShapeOpenGL extends PShape {
     }
 
     inGeo.shininess[index] = shine;
-    markForTessellation();
+    int tessIdx = directPolyVertex(index);
+    if (-1 < tessIdx) {
+      tessGeo.polyShininess[tessIdx] = inGeo.shininess[index];
+      root.setModifiedPolyShininess(tessIdx, tessIdx);
+    } else {
+      markForTessellation();
+    }
   }
 
   ///////////////////////////////////////////////////////////
@@ -2776,6 +2859,113 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  /**
+   * Returns the tessellated vertex that the input vertex index was copied
+   * to, or -1 if this shape needs to be tessellated again after a change in
+   * that vertex. This is the case unless the shape is made of triangles or
+   * quads, which are tessellated by copying each input vertex to the fill
+   * once and in the same order, so per-vertex changes can be written into
+   * the tessellated geometry directly.
+   */
+  protected int directPolyVertex(int index) {
+    if (family != GEOMETRY || !shapeCreated || !hasPolys ||
+        !tessellated || !root.tessellated) {
+      return -1;
+    }
+    if (kind != TRIANGLE && kind != TRIANGLES &&
+        kind != TRIANGLE_FAN && kind != TRIANGLE_STRIP &&
+        kind != QUAD && kind != QUADS && kind != QUAD_STRIP) {
+      return -1;
+    }
+
+    int last1 = lastPolyVertex + 1;
+    if (is2D()) {
+      // In 2D the strokes are added after the fill in the poly geometry
+      if (-1 < firstLineVertex) last1 = PApplet.min(last1, firstLineVertex);
+      if (-1 < firstPointVertex) last1 = PApplet.min(last1, firstPointVertex);
+    }
+    if (last1 - firstPolyVertex != inGeo.vertexCount) {
+      // Vertices were left out or duplicated
+      return -1;
+    }
+    return firstPolyVertex + index;
+  }
+
+
+  /**
+   * Copies the positions and normals of the input vertices to the
+   * tessellated fill again, and applies the transformations of this shape
+   * and its parents on them like aggregate() does. Only valid when
+   * directPolyVertex() is not -1.
+   */
+  protected void updatePolyCoords() {
+    if (normalMode == NORMAL_MODE_AUTO) {
+      if (kind == TRIANGLE || kind == TRIANGLES) {
+        inGeo.calcTrianglesNormals();
+      } else if (kind == TRIANGLE_FAN) {
+        inGeo.calcTriangleFanNormals();
+      } else if (kind == TRIANGLE_STRIP) {
+        inGeo.calcTriangleStripNormals();
+      } else if (kind == QUAD || kind == QUADS) {
+        inGeo.calcQuadsNormals();
+      } else if (kind == QUAD_STRIP) {
+        inGeo.calcQuadStripNormals();
+      }
+    }
+
+    int first = firstPolyVertex;
+    int last = first + inGeo.vertexCount - 1;
+    tessGeo.setPolyCoords(inGeo, first);
+    PShapeOpenGL shape = this;
+    while (shape != null) {
+      if (shape.matrix != null) {
+        tessGeo.applyMatrixOnPolyGeometry(shape.matrix, first, last);
+      }
+      shape = (PShapeOpenGL) shape.parent;
+    }
+
+    root.setModifiedPolyVertices(first, last);
+    root.setModifiedPolyNormals(first, last);
+    for (VertexAttribute attrib: root.polyAttribs.values()) {
+      if (attrib.isPosition() || attrib.isNormal()) {
+        root.setModifiedPolyAttrib(attrib, first, last);
+      }
+    }
+  }
+
+
+  /**
+   * Copies the values of a custom attribute for the input vertex index to
+   * the tessellated fill, or marks the shape for tessellation if that is
+   * not possible.
+   */
+  protected void updatePolyAttrib(VertexAttribute attrib, int index) {
+    int tessIdx = directPolyVertex(index);
+    VertexAttribute rattrib = root.polyAttribs.get(attrib.name);
+    if (tessIdx == -1 || rattrib == null) {
+      markForTessellation();
+    } else if (attrib.isPosition() || attrib.isNormal()) {
+      updatePolyCoords();
+    } else {
+      int size = attrib.size;
+      if (attrib.isFloat()) {
+        PApplet.arrayCopy(inGeo.fattribs.get(attrib.name), size * index,
+                          tessGeo.fpolyAttribs.get(attrib.name), size * tessIdx,
+                          size);
+      } else if (attrib.isInt()) {
+        PApplet.arrayCopy(inGeo.iattribs.get(attrib.name), size * index,
+                          tessGeo.ipolyAttribs.get(attrib.name), size * tessIdx,
+                          size);
+      } else if (attrib.isBool()) {
+        PApplet.arrayCopy(inGeo.battribs.get(attrib.name), size * index,
+                          tessGeo.bpolyAttribs.get(attrib.name), size * tessIdx,
+                          size);
+      }
+      root.setModifiedPolyAttrib(rattrib, tessIdx, tessIdx);
+    }
+  }
+
+
   protected void initModified() {
     modified = false;
 
@@ -2902,114 +3092,21 @@ public class PShapeOpenGL extends PShape {
         collectPolyAttribs();
       }
 
-      for (int i = 0; i < childCount; i++) {
-        PShapeOpenGL child = (PShapeOpenGL) children[i];
-        child.tessellateImpl();
+      boolean parallel = root == this &&
+                         pg.getHint(ENABLE_PARALLEL_TESSELLATION);
+      if (!parallel || !tessellateChildrenParallel()) {
+        for (int i = 0; i < childCount; i++) {
+          PShapeOpenGL child = (PShapeOpenGL) children[i];
+          child.tessellateImpl();
+        }
       }
     } else {
       if (shapeCreated) {
-        // If the geometry was tessellated previously, then
-        // the edges information will still be stored in the
-        // input object, so it needs to be removed to avoid
-        // duplication.
-        inGeo.clearEdges();
-
-        tessellator.setInGeometry(inGeo);
-        tessellator.setTessGeometry(tessGeo);
-        tessellator.setFill(fill || image != null);
-        tessellator.setTexCache(null, null);
-        tessellator.setStroke(stroke);
-        tessellator.setStrokeColor(strokeColor);
-        tessellator.setStrokeWeight(strokeWeight);
-        tessellator.setStrokeCap(strokeCap);
-        tessellator.setStrokeJoin(strokeJoin);
-        tessellator.setRenderer(pg);
-        tessellator.setTransform(matrix);
-        tessellator.set3D(is3D());
-
-        if (family == GEOMETRY) {
-          if (kind == POINTS) {
-            tessellator.tessellatePoints();
-          } else if (kind == LINES) {
-            tessellator.tessellateLines();
-          } else if (kind == LINE_STRIP) {
-            tessellator.tessellateLineStrip();
-          } else if (kind == LINE_LOOP) {
-            tessellator.tessellateLineLoop();
-          } else if (kind == TRIANGLE || kind == TRIANGLES) {
-            if (stroke) inGeo.addTrianglesEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTrianglesNormals();
-            tessellator.tessellateTriangles();
-          } else if (kind == TRIANGLE_FAN) {
-            if (stroke) inGeo.addTriangleFanEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleFanNormals();
-            tessellator.tessellateTriangleFan();
-          } else if (kind == TRIANGLE_STRIP) {
-            if (stroke) inGeo.addTriangleStripEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleStripNormals();
-            tessellator.tessellateTriangleStrip();
-          } else if (kind == QUAD || kind == QUADS) {
-            if (stroke) inGeo.addQuadsEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadsNormals();
-            tessellator.tessellateQuads();
-          } else if (kind == QUAD_STRIP) {
-            if (stroke) inGeo.addQuadStripEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadStripNormals();
-            tessellator.tessellateQuadStrip();
-          } else if (kind == POLYGON) {
-            boolean bez = inGeo.hasBezierVertex();
-            boolean quad = inGeo.hasQuadraticVertex();
-            boolean curv = inGeo.hasCurveVertex();
-            if (bez || quad) saveBezierVertexSettings();
-            if (curv) {
-              saveCurveVertexSettings();
-              tessellator.resetCurveVertexCount();
-            }
-            tessellator.tessellatePolygon(solid, close,
-                                          normalMode == NORMAL_MODE_AUTO);
-            if (bez ||quad) restoreBezierVertexSettings();
-            if (curv) restoreCurveVertexSettings();
-          }
-        } else if (family == PRIMITIVE) {
-          // The input geometry needs to be cleared because the geometry
-          // generation methods in InGeometry add the vertices of the
-          // new primitive to what is already stored.
-          inGeo.clear();
-
-          if (kind == POINT) {
-            tessellatePoint();
-          } else if (kind == LINE) {
-            tessellateLine();
-          } else if (kind == TRIANGLE) {
-            tessellateTriangle();
-          } else if (kind == QUAD) {
-            tessellateQuad();
-          } else if (kind == RECT) {
-            tessellateRect();
-          } else if (kind == ELLIPSE) {
-            tessellateEllipse();
-          } else if (kind == ARC) {
-            tessellateArc();
-          } else if (kind == BOX) {
-            tessellateBox();
-          } else if (kind == SPHERE) {
-            tessellateSphere();
-          }
-        } else if (family == PATH) {
-          inGeo.clear();
-          tessellatePath();
-        }
+        tessellateShape();
 
         if (image != null && parent != null) {
           ((PShapeOpenGL)parent).addTexture(image);
         }
-
-        firstPolyIndexCache = tessellator.firstPolyIndexCache;
-        lastPolyIndexCache = tessellator.lastPolyIndexCache;
-        firstLineIndexCache = tessellator.firstLineIndexCache;
-        lastLineIndexCache = tessellator.lastLineIndexCache;
-        firstPointIndexCache = tessellator.firstPointIndexCache;
-        lastPointIndexCache = tessellator.lastPointIndexCache;
       }
     }
 
@@ -3021,6 +3118,304 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  /**
+   * Tessellates the input geometry of this (non-group) shape into tessGeo,
+   * using the current tessellator.
+   */
+  protected void tessellateShape() {
+    // If the geometry was tessellated previously, then
+    // the edges information will still be stored in the
+    // input object, so it needs to be removed to avoid
+    // duplication.
+    inGeo.clearEdges();
+
+    tessellator.setInGeometry(inGeo);
+    tessellator.setTessGeometry(tessGeo);
+    tessellator.setFill(fill || image != null);
+    tessellator.setTexCache(null, null);
+    tessellator.setStroke(stroke);
+    tessellator.setStrokeColor(strokeColor);
+    tessellator.setStrokeWeight(strokeWeight);
+    tessellator.setStrokeCap(strokeCap);
+    tessellator.setStrokeJoin(strokeJoin);
+    tessellator.setRenderer(pg);
+    tessellator.setTransform(matrix);
+    tessellator.set3D(is3D());
+
+    if (family == GEOMETRY) {
+      if (kind == POINTS) {
+        tessellator.tessellatePoints();
+      } else if (kind == LINES) {
+        tessellator.tessellateLines();
+      } else if (kind == LINE_STRIP) {
+        tessellator.tessellateLineStrip();
+      } else if (kind == LINE_LOOP) {
+        tessellator.tessellateLineLoop();
+      } else if (kind == TRIANGLE || kind == TRIANGLES) {
+        if (stroke) inGeo.addTrianglesEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTrianglesNormals();
+        tessellator.tessellateTriangles();
+      } else if (kind == TRIANGLE_FAN) {
+        if (stroke) inGeo.addTriangleFanEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleFanNormals();
+        tessellator.tessellateTriangleFan();
+      } else if (kind == TRIANGLE_STRIP) {
+        if (stroke) inGeo.addTriangleStripEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleStripNormals();
+        tessellator.tessellateTriangleStrip();
+      } else if (kind == QUAD || kind == QUADS) {
+        if (stroke) inGeo.addQuadsEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadsNormals();
+        tessellator.tessellateQuads();
+      } else if (kind == QUAD_STRIP) {
+        if (stroke) inGeo.addQuadStripEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadStripNormals();
+        tessellator.tessellateQuadStrip();
+      } else if (kind == POLYGON) {
+        boolean bez = inGeo.hasBezierVertex();
+        boolean quad = inGeo.hasQuadraticVertex();
+        boolean curv = inGeo.hasCurveVertex();
+        if (bez || quad) saveBezierVertexSettings();
+        if (curv) {
+          saveCurveVertexSettings();
+          tessellator.resetCurveVertexCount();
+        }
+        tessellator.tessellatePolygon(solid, close,
+                                      normalMode == NORMAL_MODE_AUTO);
+        if (bez ||quad) restoreBezierVertexSettings();
+        if (curv) restoreCurveVertexSettings();
+      }
+    } else if (family == PRIMITIVE) {
+      // The input geometry needs to be cleared because the geometry
+      // generation methods in InGeometry add the vertices of the
+      // new primitive to what is already stored.
+      inGeo.clear();
+
+      if (kind == POINT) {
+        tessellatePoint();
+      } else if (kind == LINE) {
+        tessellateLine();
+      } else if (kind == TRIANGLE) {
+        tessellateTriangle();
+      } else if (kind == QUAD) {
+        tessellateQuad();
+      } else if (kind == RECT) {
+        tessellateRect();
+      } else if (kind == ELLIPSE) {
+        tessellateEllipse();
+      } else if (kind == ARC) {
+        tessellateArc();
+      } else if (kind == BOX) {
+        tessellateBox();
+      } else if (kind == SPHERE) {
+        tessellateSphere();
+      }
+    } else if (family == PATH) {
+      inGeo.clear();
+      tessellatePath();
+    }
+
+    firstPolyIndexCache = tessellator.firstPolyIndexCache;
+    lastPolyIndexCache = tessellator.lastPolyIndexCache;
+    firstLineIndexCache = tessellator.firstLineIndexCache;
+    lastLineIndexCache = tessellator.lastLineIndexCache;
+    firstPointIndexCache = tessellator.firstPointIndexCache;
+    lastPointIndexCache = tessellator.lastPointIndexCache;
+  }
+
+
+  /**
+   * Tessellates the shapes below this group on several threads, each batch
+   * of consecutive shapes into its own TessGeometry with its own Tessellator.
+   * The batches are then appended to tessGeo in order, so the result is the
+   * same as when tessellateImpl() goes through the children one by one.
+   * Shapes that change the state of the renderer while being tessellated
+   * (curves, spheres, rounded rects) are still done on this thread, in
+   * their turn. Returns false without doing anything if there are too few
+   * shapes for the threads to pay off.
+   */
+  protected boolean tessellateChildrenParallel() {
+    int threads = parallelThreads;
+    if (threads == 0) threads = Runtime.getRuntime().availableProcessors();
+    if (threads < 2) return false;
+
+    ArrayList<PShapeOpenGL> groups = new ArrayList<>();
+    ArrayList<PShapeOpenGL> leaves = new ArrayList<>();
+    for (int i = 0; i < childCount; i++) {
+      ((PShapeOpenGL) children[i]).collectShapes(groups, leaves);
+    }
+    if (leaves.size() < MIN_PARALLEL_SHAPES) return false;
+
+    // Same as what tessellateImpl() does for a group
+    for (PShapeOpenGL group: groups) {
+      group.tessGeo = tessGeo;
+      group.firstPolyIndexCache = group.lastPolyIndexCache = -1;
+      group.firstLineIndexCache = group.lastLineIndexCache = -1;
+      group.firstPointIndexCache = group.lastPointIndexCache = -1;
+      if (group.polyAttribs == null) {
+        group.polyAttribs = PGraphicsOpenGL.newAttributeMap();
+        group.collectPolyAttribs();
+      }
+      group.firstPolyVertex = group.lastPolyVertex = -1;
+      group.firstLineVertex = group.lastLineVertex = -1;
+      group.firstPointVertex = group.lastPointVertex = -1;
+      group.tessellated = true;
+    }
+
+    // Split the runs of shapes that can be done on other threads into
+    // batches of about the same number of input vertices.
+    boolean[] safe = new boolean[leaves.size()];
+    int total = 0;
+    for (int i = 0; i < leaves.size(); i++) {
+      PShapeOpenGL leaf = leaves.get(i);
+      safe[i] = leaf.isParallelSafe();
+      if (safe[i]) total += 1 + leaf.inGeo.vertexCount;
+    }
+    int batchSize = Math.max(1, total / (4 * threads));
+
+    ArrayList<TessellateTask> tasks = new ArrayList<>();
+    TessellateTask[] taskAt = new TessellateTask[leaves.size()];
+    TessellateTask task = null;
+    int weight = 0;
+    for (int i = 0; i < leaves.size(); i++) {
+      if (safe[i]) {
+        if (task == null || batchSize <= weight) {
+          task = new TessellateTask(this, leaves, i);
+          tasks.add(task);
+          weight = 0;
+          taskAt[i] = task;
+        }
+        task.end = i + 1;
+        weight += 1 + leaves.get(i).inGeo.vertexCount;
+      } else {
+        task = null;
+      }
+    }
+    ForkJoinTask.invokeAll(tasks);
+
+    for (int i = 0; i < leaves.size(); i++) {
+      task = taskAt[i];
+      if (task == null) {
+        // Either done as part of the batch it belongs to, or on this thread
+        if (!safe[i]) leaves.get(i).tessellateImpl();
+        continue;
+      }
+
+      int polyBase = tessGeo.polyIndexCache.size;
+      int lineBase = tessGeo.lineIndexCache.size;
+      int pointBase = tessGeo.pointIndexCache.size;
+      tessGeo.append(task.tess);
+      for (int j = task.start; j < task.end; j++) {
+        PShapeOpenGL leaf = leaves.get(j);
+        leaf.tessGeo = tessGeo;
+        // In 2D the strokes and points are in the poly index cache
+        int lineShift = leaf.is3D() ? lineBase : polyBase;
+        int pointShift = leaf.is3D() ? pointBase : polyBase;
+        if (-1 < leaf.firstPolyIndexCache) {
+          leaf.firstPolyIndexCache += polyBase;
+          leaf.lastPolyIndexCache += polyBase;
+        }
+        if (-1 < leaf.firstLineIndexCache) {
+          leaf.firstLineIndexCache += lineShift;
+          leaf.lastLineIndexCache += lineShift;
+        }
+        if (-1 < leaf.firstPointIndexCache) {
+          leaf.firstPointIndexCache += pointShift;
+          leaf.lastPointIndexCache += pointShift;
+        }
+        if (leaf.image != null && leaf.parent != null) {
+          ((PShapeOpenGL)leaf.parent).addTexture(leaf.image);
+        }
+        leaf.firstPolyVertex = leaf.lastPolyVertex = -1;
+        leaf.firstLineVertex = leaf.lastLineVertex = -1;
+        leaf.firstPointVertex = leaf.lastPointVertex = -1;
+        leaf.tessellated = true;
+      }
+    }
+    return true;
+  }
+
+
+  protected void collectShapes(ArrayList<PShapeOpenGL> groups,
+                               ArrayList<PShapeOpenGL> leaves) {
+    if (family == GROUP) {
+      groups.add(this);
+      for (int i = 0; i < childCount; i++) {
+        ((PShapeOpenGL) children[i]).collectShapes(groups, leaves);
+      }
+    } else {
+      leaves.add(this);
+    }
+  }
+
+
+  /**
+   * Whether this shape can be tessellated on another thread: it has
+   * geometry, and doesn't need to change the curve, bezier or sphere detail
+   * of the renderer for that.
+   */
+  protected boolean isParallelSafe() {
+    if (!shapeCreated) return false;
+    if (family == GEOMETRY) {
+      return kind != POLYGON || !(inGeo.hasBezierVertex() ||
+                                  inGeo.hasQuadraticVertex() ||
+                                  inGeo.hasCurveVertex());
+    } else if (family == PRIMITIVE) {
+      return kind != SPHERE && !(kind == RECT && 4 < params.length);
+    } else if (family == PATH) {
+      for (int i = 0; i < vertexCodeCount; i++) {
+        int code = vertexCodes[i];
+        if (code != VERTEX && code != BREAK) return false;
+      }
+      return true;
+    }
+    return false;
+  }
+
+
+  static protected class TessellateTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final PShapeOpenGL root;
+    final ArrayList<PShapeOpenGL> shapes;
+    final int start;
+    int end;
+    TessGeometry tess;
+
+    TessellateTask(PShapeOpenGL root, ArrayList<PShapeOpenGL> shapes,
+                   int start) {
+      this.root = root;
+      this.shapes = shapes;
+      this.start = start;
+      this.end = start;
+    }
+
+    @Override
+    protected void compute() {
+      AttributeMap attribs = root.polyAttribs;
+      tess = PGraphicsOpenGL.newTessGeometry(root.pg, attribs,
+                                             PGraphicsOpenGL.RETAINED);
+      for (int i = 0; i < attribs.size(); i++) {
+        tess.initAttrib(attribs.get(i));
+      }
+      Tessellator tessellator = new Tessellator();
+      tessellator.setRenderer(root.pg);
+
+      for (int i = start; i < end; i++) {
+        PShapeOpenGL shape = shapes.get(i);
+        Tessellator saved = shape.tessellator;
+        shape.tessGeo = tess;
+        shape.tessellator = tessellator;
+        try {
+          shape.tessellateShape();
+        } finally {
+          shape.tessellator = saved;
+        }
+      }
+    }
+  }
+
+
   protected void tessellatePoint() {
     float x = 0, y = 0, z = 0;
     if (params.length == 2) {
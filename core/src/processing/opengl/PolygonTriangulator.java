@@ -0,0 +1,960 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Arrays;
+
+
+/**
+ * Cuts polygons into triangles on the CPU, as a faster alternative to the
+ * GLU tessellator for the usual case: polygons, with or without holes made
+ * by beginContour(), whose edges don't cross. Contours are collected the
+ * same way GLU collects them. Each filled region is then triangulated by
+ * ear clipping, after its holes are joined to the outline with bridge edges.
+ * Larger regions keep a z-order index of their vertices, the way mapbox's
+ * earcut does it.
+ * <p>
+ * If any edges cross or touch, or a region can't be clipped cleanly, the
+ * whole polygon is passed on to the fallback tessellator, which can handle
+ * self-intersecting input.
+ * <p>
+ * Unlike GLU, each vertex goes to the callback only once, and the triangles
+ * refer to the vertices by index. As with GLU, the triangles wind in the
+ * same direction as the polygon.
+ */
+class PolygonTriangulator implements PGL.Tessellator {
+
+  interface Callback extends PGL.TessellatorCallback {
+    /**
+     * @param vertices data of each vertex, as given to addVertex()
+     * @param indices three per triangle, into vertices
+     */
+    void triangles(Object[] vertices, int vertexCount,
+                   int[] indices, int indexCount);
+  }
+
+  /** Regions with more vertices than this are indexed by z-order. */
+  static final int HASH_THRESHOLD = 80;
+
+  /** Most cells on each side of the grid used to find crossing edges. */
+  static final int GRID_MAX = 256;
+
+  protected Callback callback;
+  protected PGL.Tessellator fallback;
+  protected int windingRule;
+
+  // the polygon, as it was added
+  Object[] vertices = new Object[64];
+  double[] coords = new double[3 * 64];
+  int vertexCount;
+  int[] contourStart = new int[9];
+  int contourCount;
+
+  // vertex positions on the plane the polygon is projected to
+  double[] px = new double[64];
+  double[] py = new double[64];
+
+  // contours without repeated points, as indices into the vertices
+  int[] ring = new int[64];
+  int[] ringStart = new int[9];
+  int ringCount;
+  double[] ringArea = new double[8];
+  int[] ringParent = new int[8];
+  int[] nextInRing = new int[64];
+
+  // grid of edges for the intersection check, each cell is a linked list
+  int[] cellHead = new int[64];
+  int[] entryEdge = new int[64];
+  int[] entryNext = new int[64];
+  int entryCount;
+
+  // the linked list of vertices that ear clipping works on
+  int nodeCount;
+  int[] nodeVertex = new int[64];
+  double[] nodeX = new double[64];
+  double[] nodeY = new double[64];
+  int[] prev = new int[64];
+  int[] next = new int[64];
+  int[] prevZ = new int[64];
+  int[] nextZ = new int[64];
+  int[] nodeZ = new int[64];
+  long[] zKeys = new long[64];
+  int[] holes = new int[8];
+
+  boolean hashed;
+  double minX, minY, invSize;
+
+  int[] indices = new int[192];
+  int indexCount;
+
+
+  PolygonTriangulator(Callback callback, PGL.Tessellator fallback) {
+    this.callback = callback;
+    this.fallback = fallback;
+    windingRule = PGL.TESS_WINDING_NONZERO;
+  }
+
+
+  @Override
+  public void setCallback(int flag) {
+    fallback.setCallback(flag);
+  }
+
+
+  @Override
+  public void setWindingRule(int rule) {
+    windingRule = rule;
+  }
+
+
+  @Override
+  public void setProperty(int property, int value) {
+    fallback.setProperty(property, value);
+  }
+
+
+  @Override
+  public void beginPolygon() {
+    vertexCount = 0;
+    contourCount = 0;
+  }
+
+
+  @Override
+  public void beginPolygon(Object data) {
+    beginPolygon();
+  }
+
+
+  @Override
+  public void beginContour() {
+    if (contourCount + 2 > contourStart.length) {
+      contourStart = Arrays.copyOf(contourStart, contourStart.length << 1);
+    }
+    contourStart[contourCount] = vertexCount;
+  }
+
+
+  @Override
+  public void endContour() {
+    contourCount++;
+    contourStart[contourCount] = vertexCount;
+  }
+
+
+  @Override
+  public void addVertex(double[] v) {
+    addVertex(v, 0, v);
+  }
+
+
+  @Override
+  public void addVertex(double[] v, int n, Object data) {
+    if (vertexCount == vertices.length) {
+      int size = vertexCount << 1;
+      vertices = Arrays.copyOf(vertices, size);
+      coords = Arrays.copyOf(coords, 3 * size);
+    }
+    vertices[vertexCount] = data;
+    coords[3 * vertexCount + 0] = v[n + 0];
+    coords[3 * vertexCount + 1] = v[n + 1];
+    coords[3 * vertexCount + 2] = v[n + 2];
+    vertexCount++;
+  }
+
+
+  @Override
+  public void endPolygon() {
+    if (triangulate()) {
+      if (indexCount > 0) {
+        callback.triangles(vertices, vertexCount, indices, indexCount);
+      }
+    } else {
+      fallback.setWindingRule(windingRule);
+      fallback.beginPolygon();
+      for (int c = 0; c < contourCount; c++) {
+        fallback.beginContour();
+        for (int i = contourStart[c]; i < contourStart[c + 1]; i++) {
+          fallback.addVertex((double[]) vertices[i]);
+        }
+        fallback.endContour();
+      }
+      fallback.endPolygon();
+    }
+    // don't hold on to the vertex data
+    Arrays.fill(vertices, 0, vertexCount, null);
+    vertexCount = 0;
+    contourCount = 0;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Fill in indices, or return false if the polygon should go to the
+   * fallback tessellator instead.
+   */
+  protected boolean triangulate() {
+    indexCount = 0;
+    if (vertexCount < 3) {
+      return true;
+    }
+    if (vertexCount >= PGL.MAX_VERTEX_INDEX1 ||
+        !(vertices[0] instanceof double[])) {
+      return false;
+    }
+    if (!project()) {
+      return false;
+    }
+    buildRings();
+    if (ringCount == 0) {
+      return true;  // nothing with any area
+    }
+    if (edgesIntersect()) {
+      return false;
+    }
+    if (!nestRings()) {
+      return false;
+    }
+
+    double totalArea = 0;
+    for (int r = 0; r < ringCount; r++) {
+      totalArea += ringArea[r];
+    }
+    boolean odd = (windingRule == PGL.TESS_WINDING_ODD);
+    for (int r = 0; r < ringCount; r++) {
+      // how many rings enclose this one, and their winding number
+      int depth = 0;
+      int winding = ringArea[r] > 0 ? 1 : -1;
+      for (int p = ringParent[r]; p != -1; p = ringParent[p]) {
+        depth++;
+        winding += ringArea[p] > 0 ? 1 : -1;
+      }
+      boolean filled = odd ? (depth % 2 == 0) : (winding != 0);
+      if (filled && !triangulateRegion(r)) {
+        return false;
+      }
+    }
+
+    if (totalArea < 0) {
+      // match the winding of the polygon, like GLU does
+      for (int i = 0; i < indexCount; i += 3) {
+        int temp = indices[i + 1];
+        indices[i + 1] = indices[i + 2];
+        indices[i + 2] = temp;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Project the vertices onto the coordinate plane that's closest to the
+   * plane of the polygon, using the normal from Newell's method.
+   */
+  protected boolean project() {
+    double nx = 0, ny = 0, nz = 0;
+    for (int c = 0; c < contourCount; c++) {
+      int start = contourStart[c];
+      int end = contourStart[c + 1];
+      for (int i = start, j = end - 1; i < end; j = i++) {
+        double xi = coords[3*i], yi = coords[3*i + 1], zi = coords[3*i + 2];
+        double xj = coords[3*j], yj = coords[3*j + 1], zj = coords[3*j + 2];
+        nx += (yj - yi) * (zj + zi);
+        ny += (zj - zi) * (xj + xi);
+        nz += (xj - xi) * (yj + yi);
+      }
+    }
+    nx = Math.abs(nx);
+    ny = Math.abs(ny);
+    nz = Math.abs(nz);
+    if (nx == 0 && ny == 0 && nz == 0) {
+      return false;
+    }
+    int u, v;
+    if (nz >= nx && nz >= ny) {
+      u = 0; v = 1;
+    } else if (nx >= ny) {
+      u = 1; v = 2;
+    } else {
+      u = 2; v = 0;
+    }
+    if (px.length < vertexCount) {
+      px = new double[vertices.length];
+      py = new double[vertices.length];
+    }
+    for (int i = 0; i < vertexCount; i++) {
+      px[i] = coords[3*i + u];
+      py[i] = coords[3*i + v];
+    }
+    return true;
+  }
+
+
+  /**
+   * Copy each contour into a ring without repeated points, leaving out
+   * contours that are down to fewer than three points.
+   */
+  protected void buildRings() {
+    if (ring.length < vertexCount) {
+      int size = vertices.length;
+      ring = new int[size];
+      nextInRing = new int[size];
+    }
+    if (ringStart.length < contourCount + 1) {
+      ringStart = new int[contourStart.length];
+    }
+    if (ringArea.length < contourCount) {
+      ringArea = new double[contourStart.length];
+      ringParent = new int[contourStart.length];
+    }
+    ringCount = 0;
+    int count = 0;
+    for (int c = 0; c < contourCount; c++) {
+      int start = count;
+      for (int i = contourStart[c]; i < contourStart[c + 1]; i++) {
+        if (count == start ||
+            px[i] != px[ring[count - 1]] || py[i] != py[ring[count - 1]]) {
+          ring[count++] = i;
+        }
+      }
+      while (count - start > 1 &&
+             px[ring[count - 1]] == px[ring[start]] &&
+             py[ring[count - 1]] == py[ring[start]]) {
+        count--;
+      }
+      if (count - start < 3) {
+        count = start;
+        continue;
+      }
+      double area = 0;
+      for (int i = start, j = count - 1; i < count; j = i++) {
+        area += px[ring[j]] * py[ring[i]] - px[ring[i]] * py[ring[j]];
+        nextInRing[j] = i;
+      }
+      ringStart[ringCount] = start;
+      ringArea[ringCount] = area / 2;
+      ringCount++;
+    }
+    ringStart[ringCount] = count;
+  }
+
+
+  /**
+   * Check whether any two edges cross or touch (other than neighbors
+   * meeting at their shared point). The edges are put in a grid of about
+   * one cell per edge, so that each is only checked against edges nearby.
+   */
+  protected boolean edgesIntersect() {
+    int count = ringStart[ringCount];
+    double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+    double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+    for (int e = 0; e < count; e++) {
+      double x = px[ring[e]];
+      double y = py[ring[e]];
+      if (x < x0) x0 = x;
+      if (y < y0) y0 = y;
+      if (x > x1) x1 = x;
+      if (y > y1) y1 = y;
+    }
+    int side = Math.max(1, Math.min(GRID_MAX, (int) Math.sqrt(count)));
+    // a little bigger so that the far edge still lands in the last cell
+    double scaleX = side / ((x1 - x0) * 1.0001 + Double.MIN_NORMAL);
+    double scaleY = side / ((y1 - y0) * 1.0001 + Double.MIN_NORMAL);
+    if (cellHead.length < side * side) {
+      cellHead = new int[side * side];
+    }
+    Arrays.fill(cellHead, 0, side * side, -1);
+    entryCount = 0;
+
+    for (int e = 0; e < count; e++) {
+      int a = ring[e];
+      int b = ring[nextInRing[e]];
+      int cx0 = (int) ((Math.min(px[a], px[b]) - x0) * scaleX);
+      int cx1 = (int) ((Math.max(px[a], px[b]) - x0) * scaleX);
+      int cy0 = (int) ((Math.min(py[a], py[b]) - y0) * scaleY);
+      int cy1 = (int) ((Math.max(py[a], py[b]) - y0) * scaleY);
+      for (int cy = cy0; cy <= cy1; cy++) {
+        for (int cx = cx0; cx <= cx1; cx++) {
+          int cell = cy * side + cx;
+          for (int i = cellHead[cell]; i != -1; i = entryNext[i]) {
+            if (edgesIntersect(e, entryEdge[i])) {
+              return true;
+            }
+          }
+          if (entryCount == entryEdge.length) {
+            entryEdge = Arrays.copyOf(entryEdge, entryCount << 1);
+            entryNext = Arrays.copyOf(entryNext, entryCount << 1);
+          }
+          entryEdge[entryCount] = e;
+          entryNext[entryCount] = cellHead[cell];
+          cellHead[cell] = entryCount++;
+        }
+      }
+    }
+    return false;
+  }
+
+
+  protected boolean edgesIntersect(int e, int f) {
+    int a = ring[e], b = ring[nextInRing[e]];
+    int c = ring[f], d = ring[nextInRing[f]];
+    boolean before = nextInRing[e] == f;  // b and c are the same point
+    boolean after = nextInRing[f] == e;   // d and a are the same point
+    if (before || after) {
+      // neighbors are only a problem if they fold back over each other
+      return (before && foldsBack(a, b, d)) || (after && foldsBack(c, d, b));
+    }
+    double d1 = cross(c, d, a);
+    double d2 = cross(c, d, b);
+    double d3 = cross(a, b, c);
+    double d4 = cross(a, b, d);
+    if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) &&
+        ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+      return true;
+    }
+    return (d1 == 0 && onSegment(c, d, a)) ||
+      (d2 == 0 && onSegment(c, d, b)) ||
+      (d3 == 0 && onSegment(a, b, c)) ||
+      (d4 == 0 && onSegment(a, b, d));
+  }
+
+
+  /** Whether the edges ab and bc overlap. */
+  protected boolean foldsBack(int a, int b, int c) {
+    return cross(a, b, c) == 0 &&
+      (px[a] - px[b]) * (px[c] - px[b]) + (py[a] - py[b]) * (py[c] - py[b]) > 0;
+  }
+
+
+  protected double cross(int a, int b, int c) {
+    return (px[b] - px[a]) * (py[c] - py[a]) - (py[b] - py[a]) * (px[c] - px[a]);
+  }
+
+
+  /** Whether c, which is on the line through a and b, is between them. */
+  protected boolean onSegment(int a, int b, int c) {
+    return Math.min(px[a], px[b]) <= px[c] && px[c] <= Math.max(px[a], px[b]) &&
+      Math.min(py[a], py[b]) <= py[c] && py[c] <= Math.max(py[a], py[b]);
+  }
+
+
+  /**
+   * Find the ring that directly encloses each ring. Since the edges don't
+   * touch, it's enough to check one point of each.
+   */
+  protected boolean nestRings() {
+    for (int r = 0; r < ringCount; r++) {
+      if (ringArea[r] == 0) {
+        return false;
+      }
+      int parent = -1;
+      double x = px[ring[ringStart[r]]];
+      double y = py[ring[ringStart[r]]];
+      for (int s = 0; s < ringCount; s++) {
+        if (s != r && Math.abs(ringArea[s]) > Math.abs(ringArea[r]) &&
+            (parent == -1 || Math.abs(ringArea[s]) < Math.abs(ringArea[parent])) &&
+            ringContains(s, x, y)) {
+          parent = s;
+        }
+      }
+      ringParent[r] = parent;
+    }
+    return true;
+  }
+
+
+  protected boolean ringContains(int r, double x, double y) {
+    boolean inside = false;
+    for (int i = ringStart[r], end = ringStart[r + 1], j = end - 1; i < end; j = i++) {
+      double xi = px[ring[i]], yi = py[ring[i]];
+      double xj = px[ring[j]], yj = py[ring[j]];
+      if ((yi > y) != (yj > y) &&
+          x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+        inside = !inside;
+      }
+    }
+    return inside;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Triangulate the region inside ring r, minus the rings directly inside
+   * it, by ear clipping.
+   */
+  protected boolean triangulateRegion(int r) {
+    int holeCount = 0;
+    int size = ringStart[r + 1] - ringStart[r];
+    for (int s = 0; s < ringCount; s++) {
+      if (ringParent[s] == r) {
+        if (holeCount == holes.length) {
+          holes = Arrays.copyOf(holes, holeCount << 1);
+        }
+        holes[holeCount++] = s;
+        size += ringStart[s + 1] - ringStart[s] + 2;
+      }
+    }
+    nodeCheck(size);
+    nodeCount = 0;
+
+    int outer = linkRing(r, true);
+    if (holeCount > 0) {
+      outer = eliminateHoles(holeCount, outer);
+      if (outer == -1) {
+        return false;
+      }
+    }
+
+    hashed = false;
+    if (size > HASH_THRESHOLD) {
+      minX = Double.POSITIVE_INFINITY;
+      minY = Double.POSITIVE_INFINITY;
+      double maxX = Double.NEGATIVE_INFINITY;
+      double maxY = Double.NEGATIVE_INFINITY;
+      for (int i = ringStart[r]; i < ringStart[r + 1]; i++) {
+        double x = px[ring[i]];
+        double y = py[ring[i]];
+        if (x < minX) minX = x;
+        if (y < minY) minY = y;
+        if (x > maxX) maxX = x;
+        if (y > maxY) maxY = y;
+      }
+      double extent = Math.max(maxX - minX, maxY - minY);
+      if (extent > 0) {
+        invSize = 32767 / extent;
+        hashed = true;
+      }
+    }
+    return earcut(outer, 0);
+  }
+
+
+  protected void nodeCheck(int size) {
+    if (nodeVertex.length < size) {
+      int length = Math.max(size, nodeVertex.length << 1);
+      nodeVertex = new int[length];
+      nodeX = new double[length];
+      nodeY = new double[length];
+      prev = new int[length];
+      next = new int[length];
+      prevZ = new int[length];
+      nextZ = new int[length];
+      nodeZ = new int[length];
+      zKeys = new long[length];
+    }
+  }
+
+
+  /**
+   * Link the points of a ring, counterclockwise for outlines and
+   * clockwise for holes.
+   */
+  protected int linkRing(int r, boolean ccw) {
+    int start = ringStart[r];
+    int end = ringStart[r + 1];
+    int last = -1;
+    if (ccw == (ringArea[r] > 0)) {
+      for (int i = start; i < end; i++) last = insertNode(ring[i], last);
+    } else {
+      for (int i = end - 1; i >= start; i--) last = insertNode(ring[i], last);
+    }
+    return last;
+  }
+
+
+  protected int insertNode(int vertex, int last) {
+    int p = nodeCount++;
+    nodeVertex[p] = vertex;
+    nodeX[p] = px[vertex];
+    nodeY[p] = py[vertex];
+    prevZ[p] = -1;
+    nextZ[p] = -1;
+    nodeZ[p] = 0;
+    if (last == -1) {
+      prev[p] = p;
+      next[p] = p;
+    } else {
+      next[p] = next[last];
+      prev[p] = last;
+      prev[next[last]] = p;
+      next[last] = p;
+    }
+    return p;
+  }
+
+
+  protected void removeNode(int p) {
+    prev[next[p]] = prev[p];
+    next[prev[p]] = next[p];
+    if (prevZ[p] != -1) nextZ[prevZ[p]] = nextZ[p];
+    if (nextZ[p] != -1) prevZ[nextZ[p]] = prevZ[p];
+  }
+
+
+  /** Remove repeated and collinear points. */
+  protected int filterPoints(int start, int end) {
+    if (end == -1) end = start;
+    int p = start;
+    boolean again;
+    do {
+      again = false;
+      if (equals(p, next[p]) || area(prev[p], p, next[p]) == 0) {
+        removeNode(p);
+        p = end = prev[p];
+        if (p == next[p]) break;
+        again = true;
+      } else {
+        p = next[p];
+      }
+    } while (again || p != end);
+    return end;
+  }
+
+
+  protected boolean earcut(int ear, int pass) {
+    if (pass == 0 && hashed) indexCurve(ear);
+
+    int stop = ear;
+    while (prev[ear] != next[ear]) {
+      int a = prev[ear];
+      int c = next[ear];
+      if (hashed ? isEarHashed(ear) : isEar(ear)) {
+        addTriangle(nodeVertex[a], nodeVertex[ear], nodeVertex[c]);
+        removeNode(ear);
+        // skipping the next vertex leads to less sliver triangles
+        ear = next[c];
+        stop = next[c];
+        continue;
+      }
+      ear = c;
+      if (ear == stop) {
+        // no ears left, try again without collinear points, and if that
+        // doesn't work, leave it to the fallback
+        return pass == 0 && earcut(filterPoints(ear, -1), 1);
+      }
+    }
+    return true;
+  }
+
+
+  protected void addTriangle(int a, int b, int c) {
+    if (indexCount + 3 > indices.length) {
+      indices = Arrays.copyOf(indices, indices.length << 1);
+    }
+    indices[indexCount++] = a;
+    indices[indexCount++] = b;
+    indices[indexCount++] = c;
+  }
+
+
+  protected boolean isEar(int ear) {
+    int a = prev[ear], b = ear, c = next[ear];
+    if (area(a, b, c) >= 0) return false;  // reflex
+
+    double ax = nodeX[a], bx = nodeX[b], cx = nodeX[c];
+    double ay = nodeY[a], by = nodeY[b], cy = nodeY[c];
+    double x0 = Math.min(ax, Math.min(bx, cx));
+    double y0 = Math.min(ay, Math.min(by, cy));
+    double x1 = Math.max(ax, Math.max(bx, cx));
+    double y1 = Math.max(ay, Math.max(by, cy));
+
+    // make sure nothing else is inside the ear
+    for (int p = next[c]; p != a; p = next[p]) {
+      if (inEar(p, x0, y0, x1, y1, ax, ay, bx, by, cx, cy)) return false;
+    }
+    return true;
+  }
+
+
+  protected boolean isEarHashed(int ear) {
+    int a = prev[ear], b = ear, c = next[ear];
+    if (area(a, b, c) >= 0) return false;  // reflex
+
+    double ax = nodeX[a], bx = nodeX[b], cx = nodeX[c];
+    double ay = nodeY[a], by = nodeY[b], cy = nodeY[c];
+    double x0 = Math.min(ax, Math.min(bx, cx));
+    double y0 = Math.min(ay, Math.min(by, cy));
+    double x1 = Math.max(ax, Math.max(bx, cx));
+    double y1 = Math.max(ay, Math.max(by, cy));
+
+    // only the points between the z-order of the corners of the bounding
+    // box can be inside it, look both ways from the ear
+    int minZ = zOrder(x0, y0);
+    int maxZ = zOrder(x1, y1);
+    int p = prevZ[ear];
+    int n = nextZ[ear];
+    while (p != -1 && nodeZ[p] >= minZ && n != -1 && nodeZ[n] <= maxZ) {
+      if (p != a && p != c &&
+          inEar(p, x0, y0, x1, y1, ax, ay, bx, by, cx, cy)) return false;
+      p = prevZ[p];
+      if (n != a && n != c &&
+          inEar(n, x0, y0, x1, y1, ax, ay, bx, by, cx, cy)) return false;
+      n = nextZ[n];
+    }
+    while (p != -1 && nodeZ[p] >= minZ) {
+      if (p != a && p != c &&
+          inEar(p, x0, y0, x1, y1, ax, ay, bx, by, cx, cy)) return false;
+      p = prevZ[p];
+    }
+    while (n != -1 && nodeZ[n] <= maxZ) {
+      if (n != a && n != c &&
+          inEar(n, x0, y0, x1, y1, ax, ay, bx, by, cx, cy)) return false;
+      n = nextZ[n];
+    }
+    return true;
+  }
+
+
+  /** Whether p is a reflex point inside the triangle abc. */
+  protected boolean inEar(int p, double x0, double y0, double x1, double y1,
+                          double ax, double ay, double bx, double by,
+                          double cx, double cy) {
+    double x = nodeX[p];
+    double y = nodeY[p];
+    return x >= x0 && x <= x1 && y >= y0 && y <= y1 &&
+      pointInTriangle(ax, ay, bx, by, cx, cy, x, y) &&
+      area(prev[p], p, next[p]) >= 0;
+  }
+
+
+  /** Sort the points of the ring by z-order, linked with prevZ and nextZ. */
+  protected void indexCurve(int start) {
+    int count = 0;
+    int p = start;
+    do {
+      nodeZ[p] = zOrder(nodeX[p], nodeY[p]);
+      zKeys[count++] = (long) nodeZ[p] << 32 | p;
+      p = next[p];
+    } while (p != start);
+    Arrays.sort(zKeys, 0, count);
+    int last = -1;
+    for (int i = 0; i < count; i++) {
+      p = (int) zKeys[i];
+      prevZ[p] = last;
+      if (last != -1) nextZ[last] = p;
+      last = p;
+    }
+    nextZ[last] = -1;
+  }
+
+
+  /** Interleave the bits of x and y, scaled to 15 bits each. */
+  protected int zOrder(double px, double py) {
+    int x = (int) ((px - minX) * invSize);
+    int y = (int) ((py - minY) * invSize);
+    x = (x | (x << 8)) & 0x00FF00FF;
+    x = (x | (x << 4)) & 0x0F0F0F0F;
+    x = (x | (x << 2)) & 0x33333333;
+    x = (x | (x << 1)) & 0x55555555;
+    y = (y | (y << 8)) & 0x00FF00FF;
+    y = (y | (y << 4)) & 0x0F0F0F0F;
+    y = (y | (y << 2)) & 0x33333333;
+    y = (y | (y << 1)) & 0x55555555;
+    return x | (y << 1);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Join each hole to the outline with a pair of bridge edges, working from
+   * left to right. Returns -1 if a hole couldn't be joined.
+   */
+  protected int eliminateHoles(int holeCount, int outer) {
+    for (int h = 0; h < holeCount; h++) {
+      holes[h] = getLeftmost(linkRing(holes[h], false));
+    }
+    // insertion sort by x, there aren't usually many holes
+    for (int i = 1; i < holeCount; i++) {
+      int hole = holes[i];
+      int j = i - 1;
+      while (j >= 0 && nodeX[holes[j]] > nodeX[hole]) {
+        holes[j + 1] = holes[j];
+        j--;
+      }
+      holes[j + 1] = hole;
+    }
+    for (int h = 0; h < holeCount; h++) {
+      int bridge = findHoleBridge(holes[h], outer);
+      if (bridge == -1) {
+        return -1;
+      }
+      int bridgeReverse = splitPolygon(bridge, holes[h]);
+      filterPoints(bridgeReverse, next[bridgeReverse]);
+      outer = filterPoints(bridge, next[bridge]);
+    }
+    return outer;
+  }
+
+
+  protected int getLeftmost(int start) {
+    int p = start;
+    int leftmost = start;
+    do {
+      if (nodeX[p] < nodeX[leftmost] ||
+          (nodeX[p] == nodeX[leftmost] && nodeY[p] < nodeY[leftmost])) {
+        leftmost = p;
+      }
+      p = next[p];
+    } while (p != start);
+    return leftmost;
+  }
+
+
+  /**
+   * Find a point of the outline that can be connected to the leftmost point
+   * of the hole without crossing any edges (David Eberly's method).
+   */
+  protected int findHoleBridge(int hole, int outer) {
+    double hx = nodeX[hole];
+    double hy = nodeY[hole];
+    double qx = Double.NEGATIVE_INFINITY;
+    int m = -1;
+
+    // find the segment to the left of the hole that a ray going left from
+    // the hole hits first
+    int p = outer;
+    do {
+      int n = next[p];
+      if (hy <= nodeY[p] && hy >= nodeY[n] && nodeY[n] != nodeY[p]) {
+        double x = nodeX[p] +
+          (hy - nodeY[p]) * (nodeX[n] - nodeX[p]) / (nodeY[n] - nodeY[p]);
+        if (x <= hx && x > qx) {
+          qx = x;
+          m = nodeX[p] < nodeX[n] ? p : n;
+          if (x == hx) {
+            // the hole touches the outline, use the leftmost end
+            return m;
+          }
+        }
+      }
+      p = n;
+    } while (p != outer);
+    if (m == -1) {
+      return -1;
+    }
+
+    // look for points inside the triangle of the hole point, the ray's
+    // hit, and the end of that segment; if there are any, use the one with
+    // the smallest angle to the ray, so the bridge doesn't cross edges
+    int stop = m;
+    double mx = nodeX[m];
+    double my = nodeY[m];
+    double tanMin = Double.POSITIVE_INFINITY;
+    p = m;
+    do {
+      double x = nodeX[p];
+      double y = nodeY[p];
+      if (hx >= x && x >= mx && hx != x &&
+          pointInTriangle(hy < my ? hx : qx, hy, mx, my,
+                          hy < my ? qx : hx, hy, x, y)) {
+        double tan = Math.abs(hy - y) / (hx - x);
+        if (locallyInside(p, hole) &&
+            (tan < tanMin ||
+             (tan == tanMin &&
+              (x > nodeX[m] || (x == nodeX[m] && sectorContainsSector(m, p)))))) {
+          m = p;
+          tanMin = tan;
+        }
+      }
+      p = next[p];
+    } while (p != stop);
+    return m;
+  }
+
+
+  protected boolean sectorContainsSector(int m, int p) {
+    return area(prev[m], m, prev[p]) < 0 && area(next[p], m, next[m]) < 0;
+  }
+
+
+  /** Whether the diagonal from a to b starts out inside the polygon at a. */
+  protected boolean locallyInside(int a, int b) {
+    return area(prev[a], a, next[a]) < 0 ?
+      area(a, b, next[a]) >= 0 && area(a, prev[a], b) >= 0 :
+      area(a, b, prev[a]) < 0 || area(a, next[a], b) < 0;
+  }
+
+
+  /**
+   * Connect a and b with a pair of bridge edges, splitting the list in two
+   * if they're in the same ring, or joining two rings if they're not.
+   */
+  protected int splitPolygon(int a, int b) {
+    int a2 = nodeCount++;
+    int b2 = nodeCount++;
+    copyNode(a, a2);
+    copyNode(b, b2);
+    int an = next[a];
+    int bp = prev[b];
+
+    next[a] = b;
+    prev[b] = a;
+
+    next[a2] = an;
+    prev[an] = a2;
+
+    next[b2] = a2;
+    prev[a2] = b2;
+
+    next[bp] = b2;
+    prev[b2] = bp;
+
+    return b2;
+  }
+
+
+  protected void copyNode(int from, int to) {
+    nodeVertex[to] = nodeVertex[from];
+    nodeX[to] = nodeX[from];
+    nodeY[to] = nodeY[from];
+    prevZ[to] = -1;
+    nextZ[to] = -1;
+    nodeZ[to] = 0;
+  }
+
+
+  /** Twice the signed area of pqr, negative when it turns left. */
+  protected double area(int p, int q, int r) {
+    return (nodeY[q] - nodeY[p]) * (nodeX[r] - nodeX[q]) -
+           (nodeX[q] - nodeX[p]) * (nodeY[r] - nodeY[q]);
+  }
+
+
+  protected boolean equals(int p, int q) {
+    return nodeX[p] == nodeX[q] && nodeY[p] == nodeY[q];
+  }
+
+
+  static protected boolean pointInTriangle(double ax, double ay,
+                                           double bx, double by,
+                                           double cx, double cy,
+                                           double x, double y) {
+    return (cx - x) * (ay - y) >= (ax - x) * (cy - y) &&
+           (ax - x) * (by - y) >= (bx - x) * (ay - y) &&
+           (bx - x) * (cy - y) >= (cx - x) * (by - y);
+  }
+}
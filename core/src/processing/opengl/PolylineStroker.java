@@ -0,0 +1,332 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.opengl.PGraphicsOpenGL.IndexCache;
+import processing.opengl.PGraphicsOpenGL.TessGeometry;
+
+
+/**
+ * Strokes 2D polylines by writing triangles straight into the poly buffers
+ * of a TessGeometry. This is the fast alternative to building a LinePath,
+ * outlining it with LineStroker, and filling the outline with the polygon
+ * tessellator. Each segment becomes a quad, and each join or cap becomes a
+ * small fan of its own. The work is linear in the number of points, and
+ * nothing is allocated once the point buffers have grown.
+ * <p>
+ * The pieces overlap on the inside of the joins, and wherever the polyline
+ * crosses itself. That can't be seen on an opaque stroke drawn with BLEND,
+ * but a translucent stroke is darker where pieces overlap. The tessellator
+ * decides which paths can be stroked this way.
+ */
+class PolylineStroker {
+  /** Same as the default of LinePath.createStrokedPath(). */
+  static final float MITER_LIMIT = 10;
+
+  static final float EPSILON = 1e-6f;
+
+  protected TessGeometry tess;
+  protected IndexCache cache;
+  protected int index;
+
+  protected float halfWeight;
+  protected int cap;
+  protected int join;
+  protected int detail;
+  protected boolean clamp;
+
+  // points of the current polyline, without consecutive repeats
+  float[] pointX = new float[64];
+  float[] pointY = new float[64];
+  int[] pointColor = new int[64];
+  int pointCount;
+
+  // where the next piece goes
+  int vertIdx;
+  int indIdx;
+  int count;
+
+
+  /**
+   * Start writing into the given index block of tess.
+   * @param cap ROUND, SQUARE or PROJECT
+   * @param join MITER, BEVEL or ROUND
+   * @param detail number of triangles in a full circle, for round caps and
+   *        joins
+   */
+  void begin(TessGeometry tess, int index, float weight, int cap, int join,
+             int detail, boolean clamp) {
+    this.tess = tess;
+    this.cache = tess.polyIndexCache;
+    this.index = index;
+    this.halfWeight = weight / 2;
+    this.cap = cap;
+    this.join = join;
+    this.detail = detail;
+    this.clamp = clamp;
+  }
+
+
+  /**
+   * Returns the index block the last triangles were written to.
+   */
+  int end() {
+    tess = null;
+    cache = null;
+    return index;
+  }
+
+
+  /**
+   * Stroke count points of a polyline in one go.
+   * @param points coordinates, with x and y of point i at stride * i
+   * @param colors one per point, indexed the same way as the points
+   * @param closed join the last point back to the first
+   */
+  void polyline(float[] points, int stride, int[] colors,
+                int first, int count, boolean closed) {
+    beginPath();
+    for (int i = first; i < first + count; i++) {
+      addPoint(points[stride * i], points[stride * i + 1], colors[i]);
+    }
+    endPath(closed);
+  }
+
+
+  void beginPath() {
+    pointCount = 0;
+  }
+
+
+  void addPoint(float x, float y, int color) {
+    if (0 < pointCount &&
+        Math.abs(x - pointX[pointCount - 1]) < EPSILON &&
+        Math.abs(y - pointY[pointCount - 1]) < EPSILON) {
+      return;
+    }
+    if (pointCount == pointX.length) {
+      int newSize = pointCount << 1;
+      pointX = PApplet.expand(pointX, newSize);
+      pointY = PApplet.expand(pointY, newSize);
+      pointColor = PApplet.expand(pointColor, newSize);
+    }
+    pointX[pointCount] = x;
+    pointY[pointCount] = y;
+    pointColor[pointCount] = color;
+    pointCount++;
+  }
+
+
+  void endPath(boolean closed) {
+    int n = pointCount;
+    if (closed) {
+      // the last point is often the first one again
+      while (2 < n && Math.abs(pointX[n - 1] - pointX[0]) < EPSILON &&
+             Math.abs(pointY[n - 1] - pointY[0]) < EPSILON) {
+        n--;
+      }
+      if (n < 3) closed = false;
+    }
+
+    if (n == 0) {
+      return;
+    } else if (n == 1) {
+      addDot(pointX[0], pointY[0], pointColor[0]);
+      return;
+    }
+
+    int segCount = closed ? n : n - 1;
+    float firstDx = 0, firstDy = 0;
+    float prevDx = 0, prevDy = 0;
+    for (int i = 0; i < segCount; i++) {
+      int j = (i + 1) % n;
+      float x0 = pointX[i], y0 = pointY[i];
+      float x1 = pointX[j], y1 = pointY[j];
+      float dx = x1 - x0;
+      float dy = y1 - y0;
+      float len = (float) Math.sqrt(dx * dx + dy * dy);
+      dx /= len;
+      dy /= len;
+
+      if (i == 0) {
+        firstDx = dx;
+        firstDy = dy;
+        if (!closed) addCap(x0, y0, -dx, -dy, pointColor[i]);
+      } else {
+        addJoin(x0, y0, prevDx, prevDy, dx, dy, pointColor[i]);
+      }
+      addSegment(x0, y0, x1, y1, dx, dy, pointColor[i], pointColor[j]);
+      prevDx = dx;
+      prevDy = dy;
+    }
+
+    if (closed) {
+      addJoin(pointX[0], pointY[0], prevDx, prevDy, firstDx, firstDy,
+              pointColor[0]);
+    } else {
+      addCap(pointX[n - 1], pointY[n - 1], prevDx, prevDy,
+             pointColor[n - 1]);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // The quad covering the segment, from (x0, y0) to (x1, y1) in the unit
+  // direction (dx, dy).
+  protected void addSegment(float x0, float y0, float x1, float y1,
+                            float dx, float dy, int c0, int c1) {
+    float nx = -dy * halfWeight;
+    float ny = +dx * halfWeight;
+    reserve(4, 6);
+    addVertex(x0 + nx, y0 + ny, c0);
+    addVertex(x0 - nx, y0 - ny, c0);
+    addVertex(x1 - nx, y1 - ny, c1);
+    addVertex(x1 + nx, y1 + ny, c1);
+    addTriangle(0, 1, 2);
+    addTriangle(2, 3, 0);
+  }
+
+
+  // The cap at an end point, extending in the unit direction (dx, dy).
+  protected void addCap(float x, float y, float dx, float dy, int color) {
+    float nx = -dy * halfWeight;
+    float ny = +dx * halfWeight;
+    if (cap == PConstants.ROUND) {
+      // half a turn from one side of the line to the other
+      addFan(x, y, -nx, -ny, PConstants.PI, color);
+    } else if (cap == PConstants.PROJECT) {
+      float ex = dx * halfWeight;
+      float ey = dy * halfWeight;
+      reserve(4, 6);
+      addVertex(x + nx, y + ny, color);
+      addVertex(x - nx, y - ny, color);
+      addVertex(x - nx + ex, y - ny + ey, color);
+      addVertex(x + nx + ex, y + ny + ey, color);
+      addTriangle(0, 1, 2);
+      addTriangle(2, 3, 0);
+    }
+  }
+
+
+  // A polyline that is a single point, drawn the way JAVA2D draws it.
+  protected void addDot(float x, float y, int color) {
+    if (cap == PConstants.ROUND) {
+      addFan(x, y, halfWeight, 0, PConstants.TWO_PI, color);
+    } else if (cap == PConstants.PROJECT) {
+      addCap(x - halfWeight, y, 1, 0, color);
+      addCap(x, y, 1, 0, color);
+    }
+  }
+
+
+  // Fills the gap on the outside of the turn at (x, y), from the unit
+  // direction (dx0, dy0) to (dx1, dy1).
+  protected void addJoin(float x, float y, float dx0, float dy0,
+                         float dx1, float dy1, int color) {
+    float cross = dx0 * dy1 - dy0 * dx1;
+    float dot = dx0 * dx1 + dy0 * dy1;
+    if (Math.abs(cross) < EPSILON && 0 < dot) return;
+
+    // the outside is opposite to the side the line turns to
+    float side = cross > 0 ? -halfWeight : halfWeight;
+    float ax = -dy0 * side, ay = dx0 * side;
+    float bx = -dy1 * side, by = dx1 * side;
+
+    if (join == PConstants.ROUND) {
+      addFan(x, y, ax, ay, (float) Math.atan2(cross, dot), color);
+    } else if (join == PConstants.MITER &&
+               2 < MITER_LIMIT * MITER_LIMIT * (1 + dot)) {
+      // the tip is along the sum of the normals, 1 / cos(angle / 2) away
+      float scale = 1 / (1 + dot);
+      reserve(4, 6);
+      addVertex(x, y, color);
+      addVertex(x + ax, y + ay, color);
+      addVertex(x + (ax + bx) * scale, y + (ay + by) * scale, color);
+      addVertex(x + bx, y + by, color);
+      addTriangle(0, 1, 2);
+      addTriangle(0, 2, 3);
+    } else {
+      reserve(3, 3);
+      addVertex(x, y, color);
+      addVertex(x + ax, y + ay, color);
+      addVertex(x + bx, y + by, color);
+      addTriangle(0, 1, 2);
+    }
+  }
+
+
+  // A fan around (x, y), starting at the offset (vx, vy) and turning by
+  // angle radians.
+  protected void addFan(float x, float y, float vx, float vy, float angle,
+                        int color) {
+    int steps = Math.max(1, (int) Math.ceil(Math.abs(angle) * detail /
+                                            PConstants.TWO_PI));
+    float step = angle / steps;
+    float cos = (float) Math.cos(step);
+    float sin = (float) Math.sin(step);
+    reserve(steps + 2, 3 * steps);
+    addVertex(x, y, color);
+    addVertex(x + vx, y + vy, color);
+    for (int k = 1; k <= steps; k++) {
+      float rx = vx * cos - vy * sin;
+      vy = vx * sin + vy * cos;
+      vx = rx;
+      addVertex(x + vx, y + vy, color);
+      addTriangle(0, k, k + 1);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // Makes room for a piece with this many vertices and indices, starting a
+  // new index block when they wouldn't fit in the current one.
+  protected void reserve(int nvert, int nind) {
+    count = cache.vertexCount[index];
+    if (PGL.MAX_VERTEX_INDEX1 <= count + nvert) {
+      index = cache.addNew();
+      count = 0;
+    }
+    tess.polyVertexCheck(nvert);
+    tess.polyIndexCheck(nind);
+    vertIdx = cache.vertexOffset[index] + count;
+    indIdx = cache.indexOffset[index] + cache.indexCount[index];
+    cache.incCounts(index, nind, nvert);
+  }
+
+
+  protected void addVertex(float x, float y, int color) {
+    tess.setPolyVertex(vertIdx++, x, y, 0, color, clamp);
+  }
+
+
+  protected void addTriangle(int i0, int i1, int i2) {
+    short[] indices = tess.polyIndices;
+    indices[indIdx++] = (short) (count + i0);
+    indices[indIdx++] = (short) (count + i1);
+    indices[indIdx++] = (short) (count + i2);
+  }
+}
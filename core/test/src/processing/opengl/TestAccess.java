@@ -0,0 +1,305 @@
+package processing.opengl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jogamp.opengl.GL;
+
+import processing.core.PConstants;
+import processing.core.PShape;
+import processing.opengl.PGraphicsOpenGL.AttributeMap;
+import processing.opengl.PGraphicsOpenGL.DepthSorter;
+import processing.opengl.PGraphicsOpenGL.IndexCache;
+import processing.opengl.PGraphicsOpenGL.TessGeometry;
+
+
+/**
+ * The package-private parts of the renderer that the tests in
+ * test.processing.opengl need, and nothing else. Not a test itself.
+ */
+public class TestAccess {
+
+  /**
+   * Depth sorts triangles the way the renderer does, reusing its buffers
+   * from one sort to the next.
+   */
+  static public class Sorter {
+    final PGraphicsOpenGL pg = new PGraphicsOpenGL();
+    final DepthSorter sorter = new DepthSorter(pg);
+
+    /** @param fast whether to use hint(ENABLE_FAST_DEPTH_SORT) */
+    public Sorter(boolean fast) {
+      pg.hint(fast ? PConstants.ENABLE_FAST_DEPTH_SORT :
+                     PConstants.DISABLE_FAST_DEPTH_SORT);
+    }
+
+    /**
+     * Sort triangles that have their own three vertices each (x, y, z and
+     * w for every vertex), with blockSize triangles in each index block.
+     * Returns the vertices of the triangles in drawing order, three per
+     * triangle, or -1 for a triangle that lost its texture cache entry.
+     */
+    public int[] sort(float[] vertices, int blockSize) {
+      int vertexCount = vertices.length / 4;
+      TessGeometry tess =
+        new TessGeometry(null, new AttributeMap(), PGraphicsOpenGL.RETAINED);
+      IndexCache cache = tess.polyIndexCache;
+      for (int first = 0; first < vertexCount; first += 3 * blockSize) {
+        int n = cache.addNew();
+        int count = Math.min(3 * blockSize, vertexCount - first);
+        tess.polyVertexCheck(count);
+        tess.polyIndexCheck(count);
+        System.arraycopy(vertices, 4 * first, tess.polyVertices, 4 * first,
+                         4 * count);
+        for (int i = 0; i < count; i++) {
+          tess.polyIndices[first + i] = (short) i;
+        }
+        cache.incCounts(n, count, count);
+      }
+      pg.texCache.clear();
+      pg.texCache.addTexture(null, 0, 0, tess.polyIndexCount - 1,
+                             cache.size - 1);
+
+      sorter.sort(tess);
+
+      int[] outgoing = new int[tess.polyIndexCount];
+      for (int i = 0; i < outgoing.length; i++) {
+        int t = i / 3;
+        outgoing[i] = sorter.texMap[t] != 0 ? -1 :
+          cache.vertexOffset[sorter.voffsetMap[t]] + tess.polyIndices[i];
+      }
+      return outgoing;
+    }
+  }
+
+
+  /**
+   * Stroke a polyline with PolylineStroker, returning the triangles as
+   * x, y for each of their vertices.
+   */
+  static public float[] strokePolyline(float[] points, boolean closed,
+                                       float weight, int cap, int join,
+                                       int detail) {
+    TessGeometry tess =
+      new TessGeometry(null, new AttributeMap(), PGraphicsOpenGL.RETAINED);
+    PolylineStroker stroker = new PolylineStroker();
+    int count = points.length / 2;
+    int[] colors = new int[count];
+    stroker.begin(tess, tess.polyIndexCache.addNew(), weight, cap, join,
+                  detail, false);
+    stroker.polyline(points, 2, colors, 0, count, closed);
+    stroker.end();
+
+    IndexCache cache = tess.polyIndexCache;
+    List<Float> triangles = new ArrayList<>();
+    for (int n = 0; n < cache.size; n++) {
+      int first = cache.indexOffset[n];
+      for (int i = first; i < first + cache.indexCount[n]; i++) {
+        int v = cache.vertexOffset[n] + tess.polyIndices[i];
+        triangles.add(tess.polyVertices[4 * v]);
+        triangles.add(tess.polyVertices[4 * v + 1]);
+      }
+    }
+    float[] outgoing = new float[triangles.size()];
+    for (int i = 0; i < outgoing.length; i++) {
+      outgoing[i] = triangles.get(i);
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * Tessellate a shape the way the renderer does before drawing it. With
+   * hint(ENABLE_PARALLEL_TESSELLATION), the work is split for this many
+   * threads, whatever the number of processors; 1 tessellates everything
+   * on this thread.
+   */
+  static public void tessellate(PShape shape, int threads) {
+    PShapeOpenGL root = (PShapeOpenGL) shape;
+    int saved = PShapeOpenGL.parallelThreads;
+    PShapeOpenGL.parallelThreads = threads;
+    try {
+      root.markForTessellation();
+      root.updateTessellation();
+    } finally {
+      PShapeOpenGL.parallelThreads = saved;
+    }
+  }
+
+
+  /** The tessellated geometry of a shape, each array cut to its count. */
+  static public Map<String, Object> tessellation(PShape shape) {
+    TessGeometry tess = ((PShapeOpenGL) shape).tessGeo;
+    Map<String, Object> arrays = new LinkedHashMap<>();
+    int pv = tess.polyVertexCount;
+    arrays.put("polyVertices", Arrays.copyOf(tess.polyVertices, 4 * pv));
+    arrays.put("polyColors", Arrays.copyOf(tess.polyColors, pv));
+    arrays.put("polyNormals", Arrays.copyOf(tess.polyNormals, 3 * pv));
+    arrays.put("polyTexCoords", Arrays.copyOf(tess.polyTexCoords, 2 * pv));
+    arrays.put("polyAmbient", Arrays.copyOf(tess.polyAmbient, pv));
+    arrays.put("polySpecular", Arrays.copyOf(tess.polySpecular, pv));
+    arrays.put("polyEmissive", Arrays.copyOf(tess.polyEmissive, pv));
+    arrays.put("polyShininess", Arrays.copyOf(tess.polyShininess, pv));
+    arrays.put("polyIndices", Arrays.copyOf(tess.polyIndices, tess.polyIndexCount));
+    int lv = tess.lineVertexCount;
+    arrays.put("lineVertices", Arrays.copyOf(tess.lineVertices, 4 * lv));
+    arrays.put("lineColors", Arrays.copyOf(tess.lineColors, lv));
+    arrays.put("lineDirections", Arrays.copyOf(tess.lineDirections, 4 * lv));
+    arrays.put("lineIndices", Arrays.copyOf(tess.lineIndices, tess.lineIndexCount));
+    int ptv = tess.pointVertexCount;
+    arrays.put("pointVertices", Arrays.copyOf(tess.pointVertices, 4 * ptv));
+    arrays.put("pointColors", Arrays.copyOf(tess.pointColors, ptv));
+    arrays.put("pointOffsets", Arrays.copyOf(tess.pointOffsets, 2 * ptv));
+    arrays.put("pointIndices", Arrays.copyOf(tess.pointIndices, tess.pointIndexCount));
+    putCache(arrays, "polyIndexCache", tess.polyIndexCache);
+    putCache(arrays, "lineIndexCache", tess.lineIndexCache);
+    putCache(arrays, "pointIndexCache", tess.pointIndexCache);
+    return arrays;
+  }
+
+
+  static void putCache(Map<String, Object> arrays, String name,
+                       IndexCache cache) {
+    int n = cache.size;
+    arrays.put(name + ".indexCount", Arrays.copyOf(cache.indexCount, n));
+    arrays.put(name + ".indexOffset", Arrays.copyOf(cache.indexOffset, n));
+    arrays.put(name + ".vertexCount", Arrays.copyOf(cache.vertexCount, n));
+    arrays.put(name + ".vertexOffset", Arrays.copyOf(cache.vertexOffset, n));
+  }
+
+
+  /**
+   * The index cache and vertex ranges of a shape: first and last poly, line
+   * and point index cache entries, then first and last poly, line and point
+   * vertices.
+   */
+  static public int[] ranges(PShape shape) {
+    PShapeOpenGL s = (PShapeOpenGL) shape;
+    return new int[] {
+      s.firstPolyIndexCache, s.lastPolyIndexCache,
+      s.firstLineIndexCache, s.lastLineIndexCache,
+      s.firstPointIndexCache, s.lastPointIndexCache,
+      s.firstPolyVertex, s.lastPolyVertex,
+      s.firstLineVertex, s.lastLineVertex,
+      s.firstPointVertex, s.lastPointVertex
+    };
+  }
+
+
+  /** Triangles from tessellating a polygon. */
+  static public class Triangulation {
+    /** x, y and z of each vertex, nine per triangle */
+    public double[] triangles = new double[0];
+    public int count;
+    /** whether the polygon went to GLU */
+    public boolean usedGLU;
+
+    void add(double[] v) {
+      if (3 * count == triangles.length) {
+        triangles = Arrays.copyOf(triangles, Math.max(36, 2 * triangles.length));
+      }
+      System.arraycopy(v, 0, triangles, 3 * count, 3);
+      count++;
+    }
+  }
+
+
+  /**
+   * Collects the triangles from PolygonTriangulator, and from GLU in
+   * whatever primitives it uses.
+   */
+  static class TriangleCollector implements PolygonTriangulator.Callback {
+    final Triangulation result = new Triangulation();
+    int primitive;
+    List<double[]> run = new ArrayList<>();
+
+    @Override
+    public void triangles(Object[] vertices, int vertexCount,
+                          int[] indices, int indexCount) {
+      for (int i = 0; i < indexCount; i++) {
+        result.add((double[]) vertices[indices[i]]);
+      }
+    }
+
+    @Override
+    public void begin(int type) {
+      result.usedGLU = true;
+      primitive = type;
+      run.clear();
+    }
+
+    @Override
+    public void vertex(Object data) {
+      run.add((double[]) data);
+    }
+
+    @Override
+    public void end() {
+      for (int i = 2; i < run.size(); i++) {
+        if (primitive == GL.GL_TRIANGLES) {
+          if (i % 3 == 2) {
+            result.add(run.get(i - 2));
+            result.add(run.get(i - 1));
+            result.add(run.get(i));
+          }
+        } else if (primitive == GL.GL_TRIANGLE_FAN) {
+          result.add(run.get(0));
+          result.add(run.get(i - 1));
+          result.add(run.get(i));
+        } else if (primitive == GL.GL_TRIANGLE_STRIP) {
+          // every other triangle flipped, to keep the winding
+          result.add(run.get(i - 2));
+          result.add(run.get(i % 2 == 0 ? i - 1 : i));
+          result.add(run.get(i % 2 == 0 ? i : i - 1));
+        }
+      }
+    }
+
+    @Override
+    public void combine(double[] coords, Object[] data,
+                        float[] weight, Object[] outData) {
+      outData[0] = new double[] { coords[0], coords[1], coords[2] };
+    }
+
+    @Override
+    public void error(int errnum) {
+      throw new RuntimeException("GLU tessellator error " + errnum);
+    }
+  }
+
+
+  /**
+   * Tessellate a polygon made of one or more contours, each given as x, y
+   * and z of its points, with PolygonTriangulator or with GLU directly.
+   */
+  static public Triangulation triangulate(double[][] contours, boolean odd,
+                                          boolean glu) {
+    try {
+      // the PGL constants are only set once PJOGL is loaded, as it always
+      // is by the time the renderer tessellates anything
+      Class.forName(PJOGL.class.getName());
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+    TriangleCollector collector = new TriangleCollector();
+    PGL.Tessellator tess = new PJOGL.Tessellator(collector);
+    if (!glu) {
+      tess = new PolygonTriangulator(collector, tess);
+    }
+    tess.setWindingRule(odd ? PGL.TESS_WINDING_ODD :
+                              PGL.TESS_WINDING_NONZERO);
+    tess.beginPolygon();
+    for (double[] contour : contours) {
+      tess.beginContour();
+      for (int i = 0; i < contour.length; i += 3) {
+        tess.addVertex(Arrays.copyOfRange(contour, i, i + 3));
+      }
+      tess.endContour();
+    }
+    tess.endPolygon();
+    return collector.result;
+  }
+}
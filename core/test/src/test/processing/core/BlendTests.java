@@ -0,0 +1,136 @@
+package test.processing.core;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+
+public class BlendTests {
+
+  static final int[] MODES = {
+    PConstants.REPLACE, PConstants.BLEND, PConstants.ADD, PConstants.SUBTRACT,
+    PConstants.LIGHTEST, PConstants.DARKEST, PConstants.DIFFERENCE,
+    PConstants.EXCLUSION, PConstants.MULTIPLY, PConstants.SCREEN,
+    PConstants.OVERLAY, PConstants.HARD_LIGHT, PConstants.SOFT_LIGHT,
+    PConstants.DODGE, PConstants.BURN
+  };
+
+  /**
+   * Source and destination rectangles, as fractions of the image size:
+   * 1:1, scaled up, scaled down, and clipped at each of the edges.
+   */
+  static final float[][] REGIONS = {
+    { 0, 0, 1, 1,  0, 0, 1, 1 },
+    { 0.1f, 0.2f, 0.5f, 0.4f,  0.3f, 0.1f, 0.5f, 0.4f },
+    { 0.2f, 0.2f, 0.3f, 0.3f,  0, 0, 0.9f, 0.7f },
+    { 0, 0, 1, 1,  0.1f, 0.2f, 0.35f, 0.4f },
+    { 0.5f, 0.5f, 0.6f, 0.6f,  -0.25f, -0.1f, 0.6f, 0.5f },
+    { 0, 0, 0.7f, 0.8f,  0.6f, 0.5f, 0.7f, 0.8f }
+  };
+
+
+  static PImage randomImage(int width, int height, int format, long seed) {
+    PImage image = new PImage(width, height, format);
+    Random random = new Random(seed);
+    for (int i = 0; i < image.pixels.length; i++) {
+      int c = random.nextInt();
+      image.pixels[i] = (format == PConstants.RGB) ? (c | 0xff000000) : c;
+    }
+    return image;
+  }
+
+
+  static PImage copyOf(PImage image) {
+    PImage outgoing = new PImage(image.width, image.height, image.format);
+    System.arraycopy(image.pixels, 0, outgoing.pixels, 0, image.pixels.length);
+    return outgoing;
+  }
+
+
+  /** Compare blend() with the old implementation for every mode and region. */
+  static void check(int width, int height, int format, boolean sameImage) {
+    PImage src = randomImage(width, height, format, 1);
+    PImage dest = randomImage(width, height, format, 2);
+    for (int mode : MODES) {
+      for (float[] r : REGIONS) {
+        int sx = (int) (r[0] * width), sy = (int) (r[1] * height);
+        int sw = (int) (r[2] * width), sh = (int) (r[3] * height);
+        int dx = (int) (r[4] * width), dy = (int) (r[5] * height);
+        int dw = (int) (r[6] * width), dh = (int) (r[7] * height);
+
+        PImage expected = copyOf(dest);
+        PImage actual = copyOf(dest);
+        if (sameImage) {
+          LegacyBlend.blend(expected, expected, sx, sy, sw, sh, dx, dy, dw, dh, mode);
+          actual.blend(sx, sy, sw, sh, dx, dy, dw, dh, mode);
+        } else {
+          LegacyBlend.blend(expected, src, sx, sy, sw, sh, dx, dy, dw, dh, mode);
+          actual.blend(src, sx, sy, sw, sh, dx, dy, dw, dh, mode);
+        }
+        assertArrayEquals("mode " + mode + " region " + Arrays.toString(r),
+                          expected.pixels, actual.pixels);
+      }
+    }
+  }
+
+
+  @Test
+  public void smallRGB() {
+    check(64, 48, PConstants.RGB, false);
+  }
+
+  @Test
+  public void smallARGB() {
+    check(64, 48, PConstants.ARGB, false);
+  }
+
+  @Test
+  public void largeRGB() {
+    // more than PImage.PARALLEL_PIXELS, so the rows are split across cores
+    check(480, 360, PConstants.RGB, false);
+  }
+
+  @Test
+  public void largeARGB() {
+    check(480, 360, PConstants.ARGB, false);
+  }
+
+  @Test
+  public void sameImage() {
+    check(64, 48, PConstants.ARGB, true);
+    check(480, 360, PConstants.ARGB, true);
+  }
+
+  @Test
+  public void copy() {
+    for (int format : new int[] { PConstants.RGB, PConstants.ARGB }) {
+      PImage src = randomImage(300, 250, format, 3);
+      PImage dest = randomImage(320, 240, format, 4);
+      for (float[] r : REGIONS) {
+        int sx = (int) (r[0] * 300), sy = (int) (r[1] * 250);
+        int sw = (int) (r[2] * 300), sh = (int) (r[3] * 250);
+        int dx = (int) (r[4] * 320), dy = (int) (r[5] * 240);
+        int dw = (int) (r[6] * 320), dh = (int) (r[7] * 240);
+
+        PImage expected = copyOf(dest);
+        PImage actual = copyOf(dest);
+        LegacyBlend.blend(expected, src, sx, sy, sw, sh, dx, dy, dw, dh,
+                          PConstants.REPLACE);
+        actual.copy(src, sx, sy, sw, sh, dx, dy, dw, dh);
+        assertArrayEquals(expected.pixels, actual.pixels);
+
+        expected = copyOf(dest);
+        actual = copyOf(dest);
+        LegacyBlend.blend(expected, expected, sx, sy, sw, sh, dx, dy, dw, dh,
+                          PConstants.REPLACE);
+        actual.copy(sx, sy, sw, sh, dx, dy, dw, dh);
+        assertArrayEquals(expected.pixels, actual.pixels);
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package test.processing.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import processing.core.ImageLoader;
+import processing.core.PApplet;
+import processing.core.PImage;
+
+public class ImageLoaderTests {
+  File file;
+  ImageLoader loader;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("loader", ".png");
+    Files.write(file.toPath(), PNGDecoderTests.png(4, 3, 100));
+    PApplet parent = new PApplet();
+    parent.sketchPath();  // so that files can be loaded outside setup()
+    loader = new ImageLoader(parent, 2);
+  }
+
+  @After
+  public void tearDown() {
+    loader.dispose();
+    file.delete();
+  }
+
+  static void await(PImage image) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + 10000;
+    while (image.width == 0 && System.currentTimeMillis() < timeout) {
+      Thread.sleep(5);
+    }
+  }
+
+  @Test
+  public void cachedImagesAreCopies() throws InterruptedException {
+    PImage first = loader.request(file.getAbsolutePath(), null, 0);
+    await(first);
+    assertEquals(4, first.width);
+    first.pixels[0] = 0;
+
+    PImage second = loader.request(file.getAbsolutePath(), null, 0);
+    assertEquals(1, loader.getHitCount());
+    assertEquals(3, second.height);
+    assertEquals(0xff646464, second.pixels[0]);
+    assertNotSame(first.pixels, second.pixels);
+  }
+
+  @Test
+  public void loadsWithoutCache() throws InterruptedException {
+    loader.setCacheSize(0);
+    PImage image = loader.request(file.getAbsolutePath(), null, 0);
+    await(image);
+    assertEquals(4, image.width);
+    assertEquals(0xff646464, image.pixels[11]);
+    assertEquals(0, loader.getCacheBytes());
+    assertEquals(0, loader.getPendingCount());
+  }
+
+  @Test
+  public void requestAfterDispose() {
+    loader.dispose();
+    PImage image = loader.request(file.getAbsolutePath(), null, 0);
+    assertEquals(-1, image.width);
+    assertEquals(-1, image.height);
+  }
+}
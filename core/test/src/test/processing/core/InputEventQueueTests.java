@@ -0,0 +1,105 @@
+package test.processing.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import processing.core.InputEventQueue;
+import processing.core.PConstants;
+import processing.event.Event;
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
+
+public class InputEventQueueTests {
+
+  static MouseEvent mouse(int action, int x) {
+    return new MouseEvent(null, 0, action, 0, x, 0, PConstants.LEFT, 1);
+  }
+
+  @Test
+  public void releaseIsKeptWhenFull() {
+    InputEventQueue queue = new InputEventQueue(8);
+    for (int i = 0; i < queue.getCapacity(); i++) {
+      assertTrue(queue.offer(mouse(MouseEvent.MOVE, i)));
+    }
+    // moves are dropped once the queue is full, but a release never is
+    assertFalse(queue.offer(mouse(MouseEvent.MOVE, 100)));
+    assertTrue(queue.offer(mouse(MouseEvent.RELEASE, 101)));
+    assertFalse(queue.offer(mouse(MouseEvent.MOVE, 102)));
+    KeyEvent key = new KeyEvent(null, 0, KeyEvent.RELEASE, 0, 'a', 'A');
+    assertTrue(queue.offer(key));
+    assertEquals(2, queue.getDroppedCount());
+    assertEquals(queue.getCapacity() + 2, queue.size());
+
+    List<Event> handled = new ArrayList<>();
+    queue.drain(handled::add);
+    assertEquals(queue.getCapacity() + 2, handled.size());
+    for (int i = 0; i < queue.getCapacity(); i++) {
+      assertEquals(i, ((MouseEvent) handled.get(i)).getX());
+    }
+    Event release = handled.get(queue.getCapacity());
+    assertEquals(MouseEvent.RELEASE, release.getAction());
+    assertEquals(key, handled.get(queue.getCapacity() + 1));
+    assertTrue(queue.isEmpty());
+
+    // back to normal once everything has been handled
+    assertTrue(queue.offer(mouse(MouseEvent.MOVE, 200)));
+    assertEquals(200, ((MouseEvent) queue.poll()).getX());
+  }
+
+  @Test
+  public void coalescingStillWorks() {
+    InputEventQueue queue = new InputEventQueue(16);
+    queue.setCoalescing(true);
+    for (int i = 0; i < 5; i++) {
+      queue.offer(mouse(MouseEvent.DRAG, i));
+    }
+    queue.offer(mouse(MouseEvent.RELEASE, 5));
+    List<Event> handled = new ArrayList<>();
+    queue.drain(handled::add);
+    assertEquals(2, handled.size());
+    assertEquals(4, ((MouseEvent) handled.get(0)).getX());
+    assertEquals(4, queue.getCoalescedCount());
+  }
+
+  static List<Integer> drainReentrant(final InputEventQueue queue) {
+    final List<Integer> handled = new ArrayList<>();
+    queue.drain(new Consumer<Event>() {
+      public void accept(Event event) {
+        handled.add(((MouseEvent) event).getX());
+        // like postEvent() calling dequeueEvents() from inside a handler
+        // when the sketch isn't looping
+        if (handled.size() == 1) {
+          queue.drain(this);
+        }
+      }
+    });
+    return handled;
+  }
+
+  @Test
+  public void reentrantDrainKeepsOrder() {
+    int[] actions = {
+      MouseEvent.MOVE, MouseEvent.PRESS, MouseEvent.DRAG,
+      MouseEvent.RELEASE, MouseEvent.MOVE, MouseEvent.MOVE
+    };
+    InputEventQueue queue = new InputEventQueue(16);
+    for (int i = 0; i < actions.length; i++) {
+      queue.offer(mouse(actions[i], i));
+    }
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), drainReentrant(queue));
+
+    queue.setCoalescing(true);
+    for (int i = 0; i < actions.length; i++) {
+      queue.offer(mouse(actions[i], i));
+    }
+    assertEquals(Arrays.asList(0, 1, 2, 3, 5), drainReentrant(queue));
+  }
+}
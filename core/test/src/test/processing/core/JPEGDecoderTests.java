@@ -0,0 +1,54 @@
+package test.processing.core;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class JPEGDecoderTests {
+
+  /** Just a baseline frame header (SOF0) with three components. */
+  static byte[] jpegHeader(int width, int height) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeShort(0xffd8);  // SOI
+    out.writeShort(0xffc0);  // SOF0
+    out.writeShort(8 + 3*3);
+    out.writeByte(8);
+    out.writeShort(height);
+    out.writeShort(width);
+    out.writeByte(3);
+    for (int id = 1; id <= 3; id++) {
+      out.writeByte(id);
+      out.writeByte(0x11);  // no subsampling
+      out.writeByte(0);
+    }
+    out.writeShort(0xffd9);  // EOI
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void rejectsHugeHeader() throws IOException {
+    try {
+      PNGDecoderTests.decode(jpegHeader(30000, 30000));
+      fail("A 30000x30000 image should not be decoded");
+    } catch (IOException e) {
+      // expected, and before any planes are allocated for it
+      assertTrue(e.getMessage(), e.getMessage().contains("too large"));
+    }
+  }
+
+  @Test
+  public void rejectsLargestHeader() throws IOException {
+    try {
+      PNGDecoderTests.decode(jpegHeader(65535, 65535));
+      fail("A 65535x65535 image should not be decoded");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("too large"));
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package test.processing.core;
+
+import static processing.core.PImage.ALPHA_MASK;
+import static processing.core.PImage.BLUE_MASK;
+import static processing.core.PImage.GREEN_MASK;
+import static processing.core.PImage.RED_MASK;
+
+import processing.core.PImage;
+
+
+/**
+ * The blend() and copy() implementation from before the per-mode row
+ * kernels, one pixel at a time through blendColor(), for checking that the
+ * current one gives exactly the same results.
+ */
+public class LegacyBlend {
+  static final int PRECISIONB = 15;
+  static final int PRECISIONF = 1 << PRECISIONB;
+  static final int PREC_MAXVAL = PRECISIONF-1;
+  static final int PREC_ALPHA_SHIFT = 24-PRECISIONB;
+  static final int PREC_RED_SHIFT = 16-PRECISIONB;
+
+  // the filter state that used to be in fields of PImage
+  int[] srcBuffer;
+  int srcXOffset, srcYOffset;
+  int iw, iw1, ih1;
+  int sX, fracV, ifV, v1, v2;
+
+
+  static public void blend(PImage dest, PImage src,
+                           int sx, int sy, int sw, int sh,
+                           int dx, int dy, int dw, int dh, int mode) {
+    int sx2 = sx + sw;
+    int sy2 = sy + sh;
+    int dx2 = dx + dw;
+    int dy2 = dy + dh;
+
+    LegacyBlend blitter = new LegacyBlend();
+    if (src == dest && intersect(sx, sy, sx2, sy2, dx, dy, dx2, dy2)) {
+      blitter.blit_resize(src.get(sx, sy, sw, sh), 0, 0, sw, sh,
+                          dest.pixels, dest.pixelWidth, dest.pixelHeight,
+                          dx, dy, dx2, dy2, mode);
+    } else {
+      blitter.blit_resize(src, sx, sy, sx2, sy2,
+                          dest.pixels, dest.pixelWidth, dest.pixelHeight,
+                          dx, dy, dx2, dy2, mode);
+    }
+  }
+
+
+  static boolean intersect(int sx1, int sy1, int sx2, int sy2,
+                           int dx1, int dy1, int dx2, int dy2) {
+    int sw = sx2 - sx1 + 1;
+    int sh = sy2 - sy1 + 1;
+    int dw = dx2 - dx1 + 1;
+    int dh = dy2 - dy1 + 1;
+
+    if (dx1 < sx1) {
+      dw += dx1 - sx1;
+      if (dw > sw) {
+        dw = sw;
+      }
+    } else {
+      int w = sw + sx1 - dx1;
+      if (dw > w) {
+        dw = w;
+      }
+    }
+    if (dy1 < sy1) {
+      dh += dy1 - sy1;
+      if (dh > sh) {
+        dh = sh;
+      }
+    } else {
+      int h = sh + sy1 - dy1;
+      if (dh > h) {
+        dh = h;
+      }
+    }
+    return !(dw <= 0 || dh <= 0);
+  }
+
+
+  void blit_resize(PImage img,
+                   int srcX1, int srcY1, int srcX2, int srcY2,
+                   int[] destPixels, int screenW, int screenH,
+                   int destX1, int destY1, int destX2, int destY2,
+                   int mode) {
+    if (srcX1 < 0) srcX1 = 0;
+    if (srcY1 < 0) srcY1 = 0;
+    if (srcX2 > img.pixelWidth) srcX2 = img.pixelWidth;
+    if (srcY2 > img.pixelHeight) srcY2 = img.pixelHeight;
+
+    int srcW = srcX2 - srcX1;
+    int srcH = srcY2 - srcY1;
+    int destW = destX2 - destX1;
+    int destH = destY2 - destY1;
+
+    if (destW <= 0 || destH <= 0 ||
+        srcW <= 0 || srcH <= 0 ||
+        destX1 >= screenW || destY1 >= screenH ||
+        srcX1 >= img.pixelWidth || srcY1 >= img.pixelHeight) {
+      return;
+    }
+
+    int dx = (int) (srcW / (float) destW * PRECISIONF);
+    int dy = (int) (srcH / (float) destH * PRECISIONF);
+
+    srcXOffset = destX1 < 0 ? -destX1 * dx : srcX1 * PRECISIONF;
+    srcYOffset = destY1 < 0 ? -destY1 * dy : srcY1 * PRECISIONF;
+
+    if (destX1 < 0) {
+      destW += destX1;
+      destX1 = 0;
+    }
+    if (destY1 < 0) {
+      destH += destY1;
+      destY1 = 0;
+    }
+
+    destW = Math.min(destW, screenW - destX1);
+    destH = Math.min(destH, screenH - destY1);
+
+    int destOffset = destY1 * screenW + destX1;
+    srcBuffer = img.pixels;
+    iw = img.pixelWidth;
+    iw1 = img.pixelWidth - 1;
+    ih1 = img.pixelHeight - 1;
+
+    for (int y = 0; y < destH; y++) {
+      filter_new_scanline();
+      for (int x = 0; x < destW; x++) {
+        destPixels[destOffset + x] =
+          PImage.blendColor(destPixels[destOffset + x], filter_bilinear(), mode);
+        sX += dx;
+      }
+      destOffset += screenW;
+      srcYOffset += dy;
+    }
+  }
+
+
+  void filter_new_scanline() {
+    sX = srcXOffset;
+    fracV = srcYOffset & PREC_MAXVAL;
+    ifV = PREC_MAXVAL - fracV + 1;
+    v1 = (srcYOffset >> PRECISIONB) * iw;
+    v2 = Math.min((srcYOffset >> PRECISIONB) + 1, ih1) * iw;
+  }
+
+
+  int filter_bilinear() {
+    int fracU = sX & PREC_MAXVAL;
+    int ifU = PREC_MAXVAL - fracU + 1;
+    int ul = (ifU * ifV) >> PRECISIONB;
+    int ll = ifU - ul;
+    int ur = ifV - ul;
+    int lr = PREC_MAXVAL + 1 - ul - ll - ur;
+    int u1 = (sX >> PRECISIONB);
+    int u2 = Math.min(u1 + 1, iw1);
+
+    // get color values of the 4 neighbouring texels
+    int cUL = srcBuffer[v1 + u1];
+    int cUR = srcBuffer[v1 + u2];
+    int cLL = srcBuffer[v2 + u1];
+    int cLR = srcBuffer[v2 + u2];
+
+    int r = ((ul*((cUL&RED_MASK)>>16) + ll*((cLL&RED_MASK)>>16) +
+              ur*((cUR&RED_MASK)>>16) + lr*((cLR&RED_MASK)>>16))
+             << PREC_RED_SHIFT) & RED_MASK;
+
+    int g = ((ul*(cUL&GREEN_MASK) + ll*(cLL&GREEN_MASK) +
+              ur*(cUR&GREEN_MASK) + lr*(cLR&GREEN_MASK))
+             >>> PRECISIONB) & GREEN_MASK;
+
+    int b = (ul*(cUL&BLUE_MASK) + ll*(cLL&BLUE_MASK) +
+             ur*(cUR&BLUE_MASK) + lr*(cLR&BLUE_MASK))
+      >>> PRECISIONB;
+
+    int a = ((ul*((cUL&ALPHA_MASK)>>>24) + ll*((cLL&ALPHA_MASK)>>>24) +
+              ur*((cUR&ALPHA_MASK)>>>24) + lr*((cLR&ALPHA_MASK)>>>24))
+             << PREC_ALPHA_SHIFT) & ALPHA_MASK;
+
+    return a | r | g | b;
+  }
+}
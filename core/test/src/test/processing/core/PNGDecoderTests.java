@@ -0,0 +1,98 @@
+package test.processing.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+import processing.core.ImageDecoder;
+import processing.core.PImage;
+
+public class PNGDecoderTests {
+
+  static void chunk(DataOutputStream out, String type,
+                    byte[] data) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(type.getBytes("US-ASCII"));
+    crc.update(data);
+    out.writeInt(data.length);
+    out.writeBytes(type);
+    out.write(data);
+    out.writeInt((int) crc.getValue());
+  }
+
+  /** A gray 8-bit PNG, with every pixel set to value. */
+  static byte[] png(int width, int height, int value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.write(new byte[] { (byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n' });
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    DataOutputStream h = new DataOutputStream(header);
+    h.writeInt(width);
+    h.writeInt(height);
+    h.write(new byte[] { 8, 0, 0, 0, 0 });
+    chunk(out, "IHDR", header.toByteArray());
+
+    // each row is filter type 0 and then the samples, at most 64 rows of 64
+    // since the large images are rejected before their data is read
+    int rowBytes = Math.min(width, 64) + 1;
+    byte[] raw = new byte[rowBytes * Math.min(height, 64)];
+    for (int i = 0; i < raw.length; i++) {
+      raw[i] = (i % rowBytes == 0) ? 0 : (byte) value;
+    }
+    Deflater deflater = new Deflater();
+    deflater.setInput(raw);
+    deflater.finish();
+    byte[] compressed = new byte[raw.length + 64];
+    int length = deflater.deflate(compressed);
+    byte[] idat = new byte[length];
+    System.arraycopy(compressed, 0, idat, 0, length);
+    chunk(out, "IDAT", idat);
+    chunk(out, "IEND", new byte[0]);
+    return bytes.toByteArray();
+  }
+
+  static PImage decode(byte[] data) throws IOException {
+    return ImageDecoder.decodeImage(new BufferedInputStream(new ByteArrayInputStream(data)));
+  }
+
+  @Test
+  public void decodesValidImage() throws IOException {
+    PImage image = decode(png(5, 3, 200));
+    assertEquals(5, image.width);
+    assertEquals(3, image.height);
+    assertEquals(0xffc8c8c8, image.pixels[14]);
+  }
+
+  @Test
+  public void rejectsHugeHeader() {
+    try {
+      decode(png(100000, 100000, 0));
+      fail("A 100000x100000 image should not be decoded");
+    } catch (IOException e) {
+      // expected, so loadImage() falls back to AWT
+    }
+  }
+
+  @Test
+  public void rejectsBadCRC() throws IOException {
+    byte[] data = png(5, 3, 200);
+    // the last byte of the IDAT CRC, before the 12 bytes of IEND
+    data[data.length - 13] ^= 1;
+    try {
+      decode(data);
+      fail("A corrupt CRC should not be accepted");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package test.processing.core;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class QOIDecoderTests {
+
+  /** Just the QOI header, without any pixel data after it. */
+  static byte[] qoiHeader(int width, int height) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeBytes("qoif");
+    out.writeInt(width);
+    out.writeInt(height);
+    out.writeByte(4);  // channels
+    out.writeByte(0);  // colorspace
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void rejectsHugeHeader() throws IOException {
+    try {
+      PNGDecoderTests.decode(qoiHeader(40000, 40000));
+      fail("A 40000x40000 image should not be decoded");
+    } catch (IOException e) {
+      // expected, and before the pixels are allocated
+      assertTrue(e.getMessage(), e.getMessage().contains("too large"));
+    }
+  }
+}
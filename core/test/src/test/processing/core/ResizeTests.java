@@ -0,0 +1,88 @@
+package test.processing.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+
+public class ResizeTests {
+  static final int[] MODES = {
+    PConstants.BOX, PConstants.BILINEAR, PConstants.BICUBIC, PConstants.LANCZOS
+  };
+
+  /** Shrinking and enlarging, by whole and uneven factors. */
+  static final int[][] SIZES = {
+    { 40, 30, 20, 15 }, { 40, 30, 13, 7 }, { 40, 30, 80, 60 },
+    { 40, 30, 57, 41 }, { 40, 30, 40, 11 }, { 7, 5, 1, 1 }
+  };
+
+
+  static PImage filled(int format, int width, int height, int color) {
+    PImage img = new PImage(width, height, format);
+    java.util.Arrays.fill(img.pixels, color);
+    return img;
+  }
+
+
+  static void checkConstant(int format, int color) {
+    for (int mode : MODES) {
+      for (int[] size : SIZES) {
+        PImage img = filled(format, size[0], size[1], color);
+        img.resize(size[2], size[3], mode);
+        for (int c : img.pixels) {
+          assertEquals("mode " + mode + " to " + size[2] + "x" + size[3],
+                       Integer.toHexString(color), Integer.toHexString(c));
+        }
+      }
+    }
+  }
+
+
+  @Test
+  public void constantTranslucent() {
+    checkConstant(PConstants.ARGB, 0x80336699);
+    checkConstant(PConstants.ARGB, 0x01ffffff);
+    checkConstant(PConstants.ARGB, 0x01010203);
+    checkConstant(PConstants.ARGB, 0xfe7f8081);
+  }
+
+
+  @Test
+  public void constantRandom() {
+    Random random = new Random(1);
+    for (int i = 0; i < 100; i++) {
+      int color = random.nextInt();
+      if ((color >>> 24) == 0) {
+        color = 0;  // transparent pixels come back as 0
+      }
+      checkConstant(PConstants.ARGB, color);
+      checkConstant(PConstants.RGB, color | 0xff000000);
+      checkConstant(PConstants.ALPHA, color & 0xff);
+    }
+  }
+
+
+  @Test
+  public void transparentDoesNotBleed() {
+    // the left half is transparent red, the right half opaque blue
+    PImage img = filled(PConstants.ARGB, 40, 30, 0xff0000ff);
+    for (int y = 0; y < img.height; y++) {
+      for (int x = 0; x < img.width / 2; x++) {
+        img.pixels[y * img.width + x] = 0x00ff0000;
+      }
+    }
+    for (int mode : MODES) {
+      PImage copy = img.copy();
+      copy.resize(27, 19, mode);
+      for (int c : copy.pixels) {
+        if ((c >>> 24) != 0) {
+          assertEquals("mode " + mode, 0x0000ff, c & 0xffffff);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import processing.data.DoubleDict;
+import processing.data.IntDict;
+import processing.data.Table;
+import processing.data.TableGroups;
+import processing.data.TableRow;
+
+public class TableTests {
+
+  static Table makeTable() {
+    Table table = new Table();
+    table.addColumn("name");
+    table.addColumn("count", Table.INT);
+    String[] names = { "apple", "pear", "plum", "fig" };
+    for (int i = 0; i < names.length; i++) {
+      TableRow row = table.addRow();
+      row.setString("name", names[i]);
+      row.setInt("count", i * 10);
+    }
+    return table;
+  }
+
+  @Test
+  public void insertColumnBeforeIndex() {
+    Table table = makeTable();
+    table.createIndex("count");
+    table.insertColumn(0, "extra");
+
+    assertEquals(3, table.getColumnCount());
+    assertTrue(table.hasIndex(2));
+    assertEquals(2, table.findRowIndex("20", "count"));
+    assertEquals("plum", table.findRow("20", 2).getString("name"));
+
+    // the index still follows changes to its column
+    table.setInt(3, "count", 99);
+    assertEquals(3, table.findRowIndex("99", 2));
+    assertEquals(-1, table.findRowIndex("30", 2));
+  }
+
+  @Test
+  public void insertColumnAfterIndex() {
+    Table table = makeTable();
+    table.createIndex("name");
+    table.insertColumn(1, "extra", Table.INT);
+
+    assertTrue(table.hasIndex(0));
+    assertEquals(1, table.findRowIndex("pear", "name"));
+    assertEquals(0, table.getInt(1, "extra"));
+  }
+
+  @Test
+  public void distinctIgnoresMissing() {
+    Table table = new Table();
+    table.addColumn("group");
+    table.addColumn("size", Table.FLOAT);
+    table.addColumn("color");
+    table.addColumn("shape");
+    String[] groups = { "a", "a", "a", "a", "b", "b" };
+    float[] sizes = { 1, 2, Float.NaN, 2, Float.NaN, Float.NaN };
+    String[] colors = { "red", null, "red", "blue", null, "green" };
+    String[] shapes = { "round", null, "square", null, null, null };
+    for (int i = 0; i < groups.length; i++) {
+      TableRow row = table.addRow();
+      row.setString("group", groups[i]);
+      row.setFloat("size", sizes[i]);
+      row.setString("color", colors[i]);
+      row.setString("shape", shapes[i]);
+    }
+    table.setColumnType("shape", Table.CATEGORY);
+    TableGroups grouped = table.groupBy("group");
+
+    IntDict size = grouped.distinct("size");
+    assertEquals(2, size.get("a"));
+    assertEquals(0, size.get("b"));
+    IntDict color = grouped.distinct("color");
+    assertEquals(2, color.get("a"));
+    assertEquals(1, color.get("b"));
+    IntDict shape = grouped.distinct("shape");
+    assertEquals(2, shape.get("a"));
+    assertEquals(0, shape.get("b"));
+  }
+
+  @Test
+  public void parallelStatsMatch() {
+    // enough rows that stats() splits the column into several pieces
+    int rows = 300000;
+    Table table = new Table();
+    table.addColumn("group", Table.INT);
+    table.addColumn("value", Table.INT);
+    table.setRowCount(rows);
+    for (int i = 0; i < rows; i++) {
+      table.setInt(i, 0, i % 3);
+      table.setInt(i, 1, i);
+    }
+    TableGroups grouped = table.groupBy("group");
+    DoubleDict sum = grouped.sum("value");
+    DoubleDict min = grouped.min("value");
+    DoubleDict max = grouped.max("value");
+    for (int g = 0; g < 3; g++) {
+      double expected = 0;
+      for (int i = g; i < rows; i += 3) {
+        expected += i;
+      }
+      String key = String.valueOf(g);
+      assertEquals(expected, sum.get(key), 0);
+      assertEquals(g, min.get(key), 0);
+      assertEquals(rows - 3 + g, max.get(key), 0);
+    }
+  }
+
+  /** Chunks for the parallel parser, whatever the number of processors. */
+  static final int CHUNKS = 7;
+
+
+  /** Parses with the "parallel" option split into CHUNKS pieces. */
+  static class SplitTable extends Table {
+    @Override
+    protected int parallelChunks() {
+      return CHUNKS;
+    }
+
+    static Table load(String text, String options,
+                      Table dictionary) throws IOException {
+      SplitTable table = new SplitTable();
+      if (dictionary != null) {
+        table.setColumnTypes(dictionary);
+      }
+      table.parse(new ByteArrayInputStream(text.getBytes("UTF-8")), options);
+      return table;
+    }
+
+    static int[] bounds(String text, boolean tsv) {
+      return findChunks(text.toCharArray(), text.length(), CHUNKS, tsv);
+    }
+  }
+
+
+  /**
+   * Random records, enough to be parsed in parallel, with a few short or
+   * long rows, and in CSV quoted fields with commas, quotes, and line breaks.
+   */
+  static String makeText(long seed, boolean tsv, String eol, boolean header) {
+    Random random = new Random(seed);
+    String sep = tsv ? "\t" : ",";
+    StringBuilder sb = new StringBuilder();
+    if (header) {
+      sb.append("id" + sep + "name" + sep + "amount" + sep + "kind" + sep + "note" + eol);
+    }
+    for (int id = 0; sb.length() < 3 << 19; id++) {
+      String note = "n" + random.nextInt(1000);
+      if (!tsv) {
+        int kind = random.nextInt(4);
+        if (kind == 1) {
+          note = "\"one, two\"";
+        } else if (kind == 2) {
+          note = "\"say \"\"hi\"\"\"";
+        } else if (kind == 3) {
+          // most of the text is in here, so chunks start in the middle of it
+          note = "\"first" + eol;
+          for (int i = random.nextInt(20); i > 0; i--) {
+            note += "more " + random.nextInt(1000) + eol;
+          }
+          note += "last\"";
+        }
+      }
+      String[] fields = {
+        String.valueOf(id), "name" + random.nextInt(100),
+        String.valueOf(random.nextInt(10000) / 100f),
+        // a category's index depends on the row it first shows up in
+        "k" + random.nextInt(1 + id / 500), note, "extra", "extra"
+      };
+      int count = 5;
+      if (random.nextInt(10) == 0) {
+        count = 1 + random.nextInt(7);
+      }
+      for (int i = 0; i < count; i++) {
+        sb.append(i == 0 ? "" : sep).append(fields[i]);
+      }
+      sb.append(eol);
+    }
+    return sb.toString();
+  }
+
+
+  static void assertSameTable(Table expected, Table actual) {
+    assertEquals(expected.getRowCount(), actual.getRowCount());
+    assertEquals(expected.getColumnCount(), actual.getColumnCount());
+    assertArrayEquals(expected.getColumnTitles(), actual.getColumnTitles());
+    for (int col = 0; col < expected.getColumnCount(); col++) {
+      int type = expected.getColumnType(col);
+      assertEquals(type, actual.getColumnType(col));
+      for (int row = 0; row < expected.getRowCount(); row++) {
+        String where = "row " + row + ", column " + col;
+        assertEquals(where, expected.getString(row, col),
+                     actual.getString(row, col));
+        if (type == Table.CATEGORY) {
+          assertEquals(where, expected.getInt(row, col), actual.getInt(row, col));
+        }
+      }
+    }
+  }
+
+
+  static void checkParallel(boolean tsv, String eol, boolean header,
+                            boolean typed) throws IOException {
+    Table dictionary = null;
+    if (typed) {
+      dictionary = new Table();
+      dictionary.addColumn("title");
+      dictionary.addColumn("type");
+      String[][] types = {
+        { "id", "int" }, { "name", "string" }, { "amount", "float" },
+        { "kind", "category" }, { "note", "string" }
+      };
+      for (String[] type : types) {
+        TableRow row = dictionary.addRow();
+        row.setString("title", type[0]);
+        row.setString("type", type[1]);
+      }
+    }
+    String text = makeText(eol.length() + (tsv ? 10 : 0), tsv, eol, header);
+    assertTrue(text.length() > 1 << 20);  // Table.PARALLEL_MINIMUM
+
+    int[] bounds = SplitTable.bounds(text, tsv);
+    assertEquals(CHUNKS + 1, bounds.length);
+    if (!tsv) {
+      // at least one chunk has to start past a quoted line break, or it
+      // would have started on the line after it
+      boolean moved = false;
+      for (int i = 1; i < CHUNKS; i++) {
+        int index = (int) ((long) text.length() * i / CHUNKS) - 1;
+        while (text.charAt(index) != '\n' && text.charAt(index) != '\r') {
+          index++;
+        }
+        if (text.startsWith("\r\n", index)) {
+          index++;
+        }
+        moved |= bounds[i] != index + 1;
+      }
+      assertTrue(moved);
+    }
+
+    String options = (tsv ? "tsv" : "csv") + (header ? ",header" : "");
+    Table serial = SplitTable.load(text, options, dictionary);
+    Table parallel = SplitTable.load(text, options + ",parallel", dictionary);
+    assertSameTable(serial, parallel);
+  }
+
+
+  @Test
+  public void parallelParseMatchesSerial() throws IOException {
+    for (String eol : new String[] { "\n", "\r\n", "\r" }) {
+      checkParallel(false, eol, true, true);
+      checkParallel(false, eol, false, false);
+      checkParallel(true, eol, true, true);
+      checkParallel(true, eol, false, false);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package test.processing.opengl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import processing.core.PMatrix3D;
+import processing.opengl.TestAccess;
+
+public class DepthSorterTests {
+  /** Triangles per index block, so that larger tests use several blocks. */
+  static final int BLOCK = 3000;
+
+
+  /**
+   * Random triangles with their own three vertices each, as x, y, z and w.
+   * Bigger triangles overlap more, and need more swaps.
+   */
+  static float[] randomTriangles(long seed, int count, float size) {
+    Random random = new Random(seed);
+    float[] vertices = new float[12 * count];
+    for (int t = 0; t < count; t++) {
+      float cx = 2 * random.nextFloat() - 1;
+      float cy = 2 * random.nextFloat() - 1;
+      float cz = 2 * random.nextFloat() - 1;
+      for (int k = 0; k < 3; k++) {
+        int v = 4 * (3 * t + k);
+        vertices[v] = cx + size * random.nextFloat();
+        vertices[v + 1] = cy + size * random.nextFloat();
+        vertices[v + 2] = cz + size * random.nextFloat();
+        vertices[v + 3] = 1;
+      }
+    }
+    return vertices;
+  }
+
+
+  /**
+   * The drawing order as the original number of each triangle, checking
+   * that every triangle was drawn once and kept its three vertices.
+   */
+  static int[] order(int[] sorted) {
+    int[] order = new int[sorted.length / 3];
+    boolean[] seen = new boolean[order.length];
+    for (int i = 0; i < order.length; i++) {
+      int v = sorted[3 * i];
+      assertTrue("texture cache lost", v != -1);
+      assertEquals(0, v % 3);
+      assertEquals(v + 1, sorted[3 * i + 1]);
+      assertEquals(v + 2, sorted[3 * i + 2]);
+      int t = v / 3;
+      assertTrue("triangle " + t + " drawn twice", !seen[t]);
+      seen[t] = true;
+      order[i] = t;
+    }
+    return order;
+  }
+
+
+  static void checkExact(long seed, int count, float size) {
+    float[] vertices = randomTriangles(seed, count, size);
+    int[] order = order(new TestAccess.Sorter(false).sort(vertices, BLOCK));
+    assertArrayEquals(LegacyDepthSorter.sort(vertices, new PMatrix3D()), order);
+  }
+
+
+  static void checkFast(long seed, int count, float size) {
+    float[] vertices = randomTriangles(seed, count, size);
+    order(new TestAccess.Sorter(true).sort(vertices, BLOCK));
+  }
+
+
+  @Test
+  public void exactMatchesLegacy() {
+    checkExact(1, 500, 0.5f);
+    checkExact(2, 2000, 0.1f);
+  }
+
+
+  @Test
+  public void exactMatchesLegacyManyBlocks() {
+    // enough vertices for the parallel screen-space passes
+    checkExact(3, 20000, 0.02f);
+  }
+
+
+  @Test
+  public void fastIsPermutation() {
+    checkFast(1, 500, 0.5f);
+    checkFast(2, 2000, 0.1f);
+    checkFast(3, 20000, 0.02f);
+    checkFast(4, 100000, 0.01f);
+  }
+
+
+  @Test
+  public void sorterIsReusable() {
+    // the same sorter, with buffers left over from a bigger sort
+    TestAccess.Sorter sorter = new TestAccess.Sorter(false);
+    order(sorter.sort(randomTriangles(5, 4000, 0.1f), BLOCK));
+    float[] vertices = randomTriangles(6, 700, 0.3f);
+    assertArrayEquals(LegacyDepthSorter.sort(vertices, new PMatrix3D()),
+                      order(sorter.sort(vertices, BLOCK)));
+  }
+}
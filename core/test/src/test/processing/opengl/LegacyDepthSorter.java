@@ -0,0 +1,218 @@
+package test.processing.opengl;
+
+import java.util.BitSet;
+
+import processing.core.PApplet;
+import processing.core.PMatrix3D;
+
+
+/**
+ * The depth sort from before the fast mode and the parallel screen-space
+ * passes, on plain arrays, for checking that the exact mode still gives the
+ * same order.
+ */
+public class LegacyDepthSorter {
+  static final int X0 = 0, Y0 = 1, Z0 = 2;
+  static final int X1 = 3, Y1 = 4, Z1 = 5;
+  static final int X2 = 6, Y2 = 7, Z2 = 8;
+
+  /** What the renderer counts as zero when dividing by w. */
+  static final float FLOAT_EPS = Math.ulp(1.0f);
+
+
+  /**
+   * Sort triangles given as x, y, z and w for each of their three vertices,
+   * returning the triangle numbers in drawing order.
+   */
+  static public int[] sort(float[] vertices, PMatrix3D projection) {
+    int vertexCount = vertices.length / 4;
+    int triangleCount = vertexCount / 3;
+
+    float[] screen = new float[3 * vertexCount];
+    for (int i = 0; i < vertexCount; i++) {
+      float x = vertices[4*i];
+      float y = vertices[4*i+1];
+      float z = vertices[4*i+2];
+      float w = vertices[4*i+3];
+
+      float ox = projection.m00 * x + projection.m01 * y +
+          projection.m02 * z + projection.m03 * w;
+      float oy = projection.m10 * x + projection.m11 * y +
+          projection.m12 * z + projection.m13 * w;
+      float oz = projection.m20 * x + projection.m21 * y +
+          projection.m22 * z + projection.m23 * w;
+      float ow = projection.m30 * x + projection.m31 * y +
+          projection.m32 * z + projection.m33 * w;
+      if (FLOAT_EPS <= Math.abs(ow)) {
+        ox /= ow;
+        oy /= ow;
+        oz /= ow;
+      }
+      screen[3*i] = ox;
+      screen[3*i+1] = oy;
+      screen[3*i+2] = -oz;
+    }
+
+    int[] triangleIndices = new int[triangleCount];
+    float[] minX = new float[triangleCount];
+    float[] minY = new float[triangleCount];
+    float[] minZ = new float[triangleCount];
+    float[] maxX = new float[triangleCount];
+    float[] maxY = new float[triangleCount];
+    float[] maxZ = new float[triangleCount];
+    float[] triA = new float[9];
+    float[] triB = new float[9];
+
+    for (int i = 0; i < triangleCount; i++) {
+      triangleIndices[i] = i;
+      fetch(triA, i, screen);
+      minX[i] = PApplet.min(triA[X0], triA[X1], triA[X2]);
+      maxX[i] = PApplet.max(triA[X0], triA[X1], triA[X2]);
+      minY[i] = PApplet.min(triA[Y0], triA[Y1], triA[Y2]);
+      maxY[i] = PApplet.max(triA[Y0], triA[Y1], triA[Y2]);
+      minZ[i] = PApplet.min(triA[Z0], triA[Z1], triA[Z2]);
+      maxZ[i] = PApplet.max(triA[Z0], triA[Z1], triA[Z2]);
+    }
+
+    sortByMinZ(0, triangleCount - 1, triangleIndices, minZ);
+
+    BitSet marked = new BitSet();
+    BitSet swapped = new BitSet();
+
+    int activeTid = 0;
+    while (activeTid < triangleCount) {
+      int testTid = activeTid + 1;
+      boolean draw = false;
+
+      swapped.clear();
+
+      int ati = triangleIndices[activeTid];
+      float minXA = minX[ati];
+      float maxXA = maxX[ati];
+      float minYA = minY[ati];
+      float maxYA = maxY[ati];
+      float maxZA = maxZ[ati];
+
+      fetch(triA, ati, screen);
+
+      while (!draw && testTid < triangleCount) {
+        int tti = triangleIndices[testTid];
+
+        if (maxZA <= minZ[tti] && !marked.get(tti)) {
+          draw = true;
+        } else if (maxXA <= minX[tti] || maxYA <= minY[tti] ||
+                   minXA >= maxX[tti] || minYA >= maxY[tti]) {
+          testTid++;
+        } else {
+          fetch(triB, tti, screen);
+          if (side(triB, triA, -1) > 0) {
+            testTid++;
+          } else if (side(triA, triB, 1) > 0) {
+            testTid++;
+          } else if (!swapped.get(tti)) {
+            swapped.set(ati);
+            marked.set(tti);
+            rotateRight(triangleIndices, activeTid, testTid);
+
+            ati = tti;
+            System.arraycopy(triB, 0, triA, 0, 9);
+            minXA = minX[ati];
+            maxXA = maxX[ati];
+            minYA = minY[ati];
+            maxYA = maxY[ati];
+            maxZA = maxZ[ati];
+
+            testTid = activeTid + 1;
+          } else {
+            testTid++;
+          }
+        }
+      }
+      activeTid++;
+    }
+    return triangleIndices;
+  }
+
+
+  static void fetch(float[] tri, int ti, float[] screen) {
+    System.arraycopy(screen, 9 * ti, tri, 0, 9);
+  }
+
+
+  static void sortByMinZ(int leftTid, int rightTid, int[] triangleIndices,
+                         float[] minZ) {
+    swap(triangleIndices, leftTid, ((leftTid + rightTid) / 2));
+
+    int k = leftTid;
+    float leftMinZ = minZ[triangleIndices[leftTid]];
+    for (int tid = leftTid+1; tid <= rightTid; tid++) {
+      if (minZ[triangleIndices[tid]] < leftMinZ) {
+        swap(triangleIndices, ++k, tid);
+      }
+    }
+    swap(triangleIndices, leftTid, k);
+
+    if (leftTid < k - 1) sortByMinZ(leftTid, k - 1, triangleIndices, minZ);
+    if (k + 1 < rightTid) sortByMinZ(k + 1, rightTid, triangleIndices, minZ);
+  }
+
+
+  static int side(float[] tri1, float[] tri2, float tz) {
+    float Dx, Dy, Dz, Dw;
+    {
+      float
+          ABx = tri1[X1] - tri1[X0], ACx = tri1[X2] - tri1[X0],
+          ABy = tri1[Y1] - tri1[Y0], ACy = tri1[Y2] - tri1[Y0],
+          ABz = tri1[Z1] - tri1[Z0], ACz = tri1[Z2] - tri1[Z0];
+
+      Dx = ABy*ACz - ABz*ACy; Dy = ABz*ACx - ABx*ACz; Dz = ABx*ACy - ABy*ACx;
+
+      float rMag = 1.0f/(float) Math.sqrt(Dx * Dx + Dy * Dy + Dz * Dz);
+      Dx *= rMag; Dy *= rMag; Dz *= rMag;
+
+      Dw = -dot(Dx, Dy, Dz, tri1[X0], tri1[Y0], tri1[Z0]);
+    }
+
+    float distTest = dot(Dx, Dy, Dz,
+        tri1[X0], tri1[Y0], tri1[Z0] + 100*tz) + Dw;
+
+    float distA = dot(Dx, Dy, Dz, tri2[X0], tri2[Y0], tri2[Z0]) + Dw;
+    float distB = dot(Dx, Dy, Dz, tri2[X1], tri2[Y1], tri2[Z1]) + Dw;
+    float distC = dot(Dx, Dy, Dz, tri2[X2], tri2[Y2], tri2[Z2]) + Dw;
+
+    float absA = Math.abs(distA);
+    float absB = Math.abs(distB);
+    float absC = Math.abs(distC);
+    float eps = PApplet.max(absA, absB, absC) * 0.1f;
+
+    float sideA = ((absA < eps) ? 0.0f : distA) * distTest;
+    float sideB = ((absB < eps) ? 0.0f : distB) * distTest;
+    float sideC = ((absC < eps) ? 0.0f : distC) * distTest;
+
+    boolean sameSide    = sideA >= 0 && sideB >= 0 && sideC >= 0;
+    boolean notSameSide = sideA <= 0 && sideB <= 0 && sideC <= 0;
+
+    return sameSide ? 1 : notSameSide ? -1 : 0;
+  }
+
+
+  static float dot(float a1, float a2, float a3,
+                   float b1, float b2, float b3) {
+    return a1 * b1 + a2 * b2 + a3 * b3;
+  }
+
+
+  static void swap(int[] array, int i1, int i2) {
+    int temp = array[i1];
+    array[i1] = array[i2];
+    array[i2] = temp;
+  }
+
+
+  static void rotateRight(int[] array, int i1, int i2) {
+    if (i1 == i2) return;
+    int temp = array[i2];
+    System.arraycopy(array, i1, array, i1 + 1, i2 - i1);
+    array[i1] = temp;
+  }
+}
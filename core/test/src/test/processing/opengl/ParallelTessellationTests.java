@@ -0,0 +1,150 @@
+package test.processing.opengl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+import processing.core.PShape;
+import processing.opengl.PGraphics2D;
+import processing.opengl.PGraphics3D;
+import processing.opengl.PGraphicsOpenGL;
+import processing.opengl.TestAccess;
+
+public class ParallelTessellationTests {
+  static final int SHAPES = 400;
+
+  /** More than one thread, whatever the number of processors here. */
+  static final int THREADS = 8;
+
+
+  static PGraphicsOpenGL renderer(boolean is3D) {
+    PGraphicsOpenGL pg = is3D ? new PGraphics3D() : new PGraphics2D();
+    pg.setPrimary(true);  // for its tessellator
+    pg.hint(PConstants.ENABLE_PARALLEL_TESSELLATION);
+    return pg;
+  }
+
+
+  /**
+   * A group of random shapes: stroked and textured polygons, lines, points,
+   * primitives, and a nested group. Curves are tessellated on the calling
+   * thread in their turn, so there are a few of those too.
+   */
+  static PShape randomGroup(PGraphicsOpenGL pg, long seed) {
+    Random random = new Random(seed);
+    PImage texture = new PImage(4, 4, PConstants.ARGB);
+    PShape group = pg.createShape(PConstants.GROUP);
+    PShape nested = pg.createShape(PConstants.GROUP);
+    for (int i = 0; i < SHAPES; i++) {
+      PShape shape;
+      int kind = random.nextInt(7);
+      if (kind == 0) {
+        shape = pg.createShape(PConstants.RECT, random.nextFloat() * 100,
+                               random.nextFloat() * 100, 20, 10);
+        shape.setStroke(random.nextBoolean());
+      } else if (kind == 1) {
+        shape = pg.createShape(PConstants.ELLIPSE, random.nextFloat() * 100,
+                               random.nextFloat() * 100, 20, 10);
+      } else {
+        shape = pg.createShape();
+        int mode = kind == 2 ? PConstants.POINTS :
+                   kind == 3 ? PConstants.LINES : PConstants.POLYGON;
+        shape.beginShape(mode);
+        if (kind == 4) {
+          shape.texture(texture);
+        }
+        if (kind == 5 || random.nextBoolean()) {
+          shape.stroke(random.nextInt());
+          shape.strokeWeight(1 + random.nextFloat() * 5);
+        } else {
+          shape.noStroke();
+        }
+        shape.fill(random.nextInt());
+        int count = 2 * (2 + random.nextInt(4));
+        for (int v = 0; v < count; v++) {
+          float x = random.nextFloat() * 100;
+          float y = random.nextFloat() * 100;
+          if (kind == 6 && v % 3 == 0) {
+            shape.curveVertex(x, y);
+          } else if (pg.is3D()) {
+            shape.vertex(x, y, random.nextFloat() * 100, x / 100, y / 100);
+          } else {
+            shape.vertex(x, y, x / 100, y / 100);
+          }
+        }
+        shape.endShape(kind == 3 ? PConstants.OPEN : PConstants.CLOSE);
+      }
+      if (random.nextInt(4) == 0) {
+        shape.translate(random.nextFloat() * 10, random.nextFloat() * 10);
+      }
+      (i % 5 == 0 ? nested : group).addChild(shape);
+    }
+    group.addChild(nested);
+    return group;
+  }
+
+
+  static void collect(PShape shape, List<PShape> shapes) {
+    shapes.add(shape);
+    for (int i = 0; i < shape.getChildCount(); i++) {
+      collect(shape.getChild(i), shapes);
+    }
+  }
+
+
+  static void check(boolean is3D, long seed) {
+    PShape serial = randomGroup(renderer(is3D), seed);
+    TestAccess.tessellate(serial, 1);
+    PShape parallel = randomGroup(renderer(is3D), seed);
+    TestAccess.tessellate(parallel, THREADS);
+
+    Map<String, Object> expected = TestAccess.tessellation(serial);
+    Map<String, Object> actual = TestAccess.tessellation(parallel);
+    assertEquals(expected.keySet(), actual.keySet());
+    for (String name : expected.keySet()) {
+      assertTrue(name, Arrays.deepEquals(new Object[] { expected.get(name) },
+                                         new Object[] { actual.get(name) }));
+    }
+
+    List<PShape> serialShapes = new ArrayList<>();
+    List<PShape> parallelShapes = new ArrayList<>();
+    collect(serial, serialShapes);
+    collect(parallel, parallelShapes);
+    assertEquals(serialShapes.size(), parallelShapes.size());
+    boolean lines = false, points = false;
+    for (int i = 0; i < serialShapes.size(); i++) {
+      int[] ranges = TestAccess.ranges(serialShapes.get(i));
+      assertArrayEquals("shape " + i, ranges,
+                        TestAccess.ranges(parallelShapes.get(i)));
+      lines |= -1 < ranges[8];
+      points |= -1 < ranges[10];
+    }
+    // make sure that the strokes and points were there to check
+    assertTrue(lines);
+    assertTrue(points);
+  }
+
+
+  @Test
+  public void sameAsSerial2D() {
+    check(false, 1);
+    check(false, 2);
+  }
+
+
+  @Test
+  public void sameAsSerial3D() {
+    check(true, 1);
+    check(true, 2);
+  }
+}
@@ -0,0 +1,199 @@
+package test.processing.opengl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import processing.opengl.TestAccess;
+import processing.opengl.TestAccess.Triangulation;
+
+public class PolygonTriangulatorTests {
+  /**
+   * Polygons have whole number coordinates from 0 to SIZE, and coverage is
+   * sampled at the pixel centers in between, so every test is exact.
+   */
+  static final int SIZE = 64;
+
+  static final int POLYGONS = 300;
+
+
+  /**
+   * A random star-shaped contour around a center, which doesn't cross or
+   * touch itself, with its points in the given plane (0 for xy, 1 for yz,
+   * 2 for zx) and going either way around.
+   */
+  static double[] starContour(Random random, int cx, int cy,
+                              int minRadius, int maxRadius,
+                              boolean clockwise, int plane) {
+    // one point in each of the equal slices around, so the outline never
+    // cuts far enough in to reach a hole
+    double[] angles = new double[12 + random.nextInt(12)];
+    for (int i = 0; i < angles.length; i++) {
+      angles[i] = (i + random.nextDouble()) * 2 * Math.PI / angles.length;
+    }
+    int[] xs = new int[angles.length];
+    int[] ys = new int[angles.length];
+    int count = 0;
+    double last = -1;
+    for (double angle : angles) {
+      int r = minRadius + random.nextInt(maxRadius - minRadius + 1);
+      int x = cx + (int) Math.round(r * Math.cos(angle));
+      int y = cy + (int) Math.round(r * Math.sin(angle));
+      // rounding can move a point back past the one before
+      double rounded = Math.atan2(y - cy, x - cx);
+      if (rounded < 0) rounded += 2 * Math.PI;
+      if (rounded > last) {
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+        last = rounded;
+      }
+    }
+    double[] contour = new double[3 * count];
+    for (int i = 0; i < count; i++) {
+      int j = clockwise ? count - 1 - i : i;
+      setPoint(contour, i, xs[j], ys[j], plane);
+    }
+    return contour;
+  }
+
+
+  /** Random points all over, so the edges almost always cross. */
+  static double[] randomContour(Random random, int plane) {
+    int count = 5 + random.nextInt(10);
+    double[] contour = new double[3 * count];
+    for (int i = 0; i < count; i++) {
+      setPoint(contour, i, random.nextInt(SIZE + 1), random.nextInt(SIZE + 1),
+               plane);
+    }
+    return contour;
+  }
+
+
+  static void setPoint(double[] contour, int i, double x, double y,
+                       int plane) {
+    contour[3 * i + plane] = x;
+    contour[3 * i + (plane + 1) % 3] = y;
+    contour[3 * i + (plane + 2) % 3] = 7;  // off the plane through 0
+  }
+
+
+  /**
+   * How many triangles cover each pixel center, either counting the edges
+   * (for the area covered) or not (for overlaps), and the direction the
+   * triangles wind in: bit 1 if any go one way, bit 2 the other.
+   */
+  static int[] coverage(Triangulation tri, int plane, boolean edges) {
+    int[] covered = new int[SIZE * SIZE + 1];
+    double[] t = tri.triangles;
+    for (int i = 0; i < 9 * (tri.count / 3); i += 9) {
+      double x0 = t[i + plane], y0 = t[i + (plane + 1) % 3];
+      double x1 = t[i + 3 + plane], y1 = t[i + 3 + (plane + 1) % 3];
+      double x2 = t[i + 6 + plane], y2 = t[i + 6 + (plane + 1) % 3];
+      double area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+      if (area == 0) continue;
+      covered[SIZE * SIZE] |= area > 0 ? 1 : 2;
+      for (int y = 0; y < SIZE; y++) {
+        for (int x = 0; x < SIZE; x++) {
+          double px = x + 0.5, py = y + 0.5;
+          double d0 = (x1 - x0) * (py - y0) - (y1 - y0) * (px - x0);
+          double d1 = (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+          double d2 = (x0 - x2) * (py - y2) - (y0 - y2) * (px - x2);
+          boolean inside = edges ?
+            (d0 >= 0 && d1 >= 0 && d2 >= 0) || (d0 <= 0 && d1 <= 0 && d2 <= 0) :
+            (d0 > 0 && d1 > 0 && d2 > 0) || (d0 < 0 && d1 < 0 && d2 < 0);
+          if (inside) covered[y * SIZE + x]++;
+        }
+      }
+    }
+    return covered;
+  }
+
+
+  /**
+   * Check that the triangulator covers the same pixels as GLU, without
+   * overlaps, winding the same way. Returns whether it needed GLU.
+   */
+  static boolean check(String name, double[][] contours, boolean odd,
+                       int plane) {
+    Triangulation glu = TestAccess.triangulate(contours, odd, true);
+    Triangulation fast = TestAccess.triangulate(contours, odd, false);
+
+    if (fast.usedGLU) {
+      // replayed into GLU, so exactly what GLU does on its own
+      assertArrayEquals(name, Arrays.copyOf(glu.triangles, 3 * glu.count),
+                        Arrays.copyOf(fast.triangles, 3 * fast.count), 0);
+      return true;
+    }
+    assertEquals(name + ": not triangles", 0, fast.count % 3);
+
+    int[] expected = coverage(glu, plane, true);
+    int[] actual = coverage(fast, plane, true);
+    int[] overlap = coverage(fast, plane, false);
+    for (int i = 0; i < SIZE * SIZE; i++) {
+      assertEquals(name + ": pixel " + i, expected[i] > 0, actual[i] > 0);
+      assertTrue(name + ": overlap at pixel " + i, overlap[i] <= 1);
+    }
+    if (expected[SIZE * SIZE] != 0) {
+      assertEquals(name + ": winding", expected[SIZE * SIZE], actual[SIZE * SIZE]);
+    }
+    return false;
+  }
+
+
+  @Test
+  public void simplePolygons() {
+    Random random = new Random(1);
+    for (int i = 0; i < POLYGONS; i++) {
+      int plane = i % 3;
+      double[][] polygon = {
+        starContour(random, 32, 32, 4, 31, random.nextBoolean(), plane)
+      };
+      assertFalse(check("simple " + i, polygon, false, plane));
+      assertFalse(check("simple odd " + i, polygon, true, plane));
+    }
+  }
+
+
+  @Test
+  public void polygonsWithHoles() {
+    Random random = new Random(2);
+    for (int i = 0; i < POLYGONS; i++) {
+      int plane = i % 3;
+      boolean clockwise = random.nextBoolean();
+      double[][] polygon = {
+        starContour(random, 32, 32, 24, 31, clockwise, plane),
+        // holes going the other way, or the same way, which are filled
+        // again with the non-zero rule
+        starContour(random, 22, 32, 2, 7, random.nextBoolean(), plane),
+        starContour(random, 42, 32, 2, 7, random.nextBoolean(), plane),
+      };
+      assertFalse(check("holes " + i, polygon, false, plane));
+      assertFalse(check("holes odd " + i, polygon, true, plane));
+    }
+  }
+
+
+  @Test
+  public void selfIntersectingUseGLU() {
+    Random random = new Random(3);
+    for (int i = 0; i < POLYGONS; i++) {
+      int plane = i % 3;
+      double[][] polygon = { randomContour(random, plane) };
+      check("crossing " + i, polygon, false, plane);
+      check("crossing odd " + i, polygon, true, plane);
+    }
+    // a figure eight always crosses
+    double[][] eight = { { 0, 0, 0, 10, 10, 0, 10, 0, 0, 0, 10, 0 } };
+    assertTrue(check("figure eight", eight, false, 0));
+    assertTrue(check("figure eight odd", eight, true, 0));
+    assertFalse(check("square", new double[][] {
+      { 0, 0, 0, 10, 0, 0, 10, 10, 0, 0, 10, 0 } }, false, 0));
+  }
+}
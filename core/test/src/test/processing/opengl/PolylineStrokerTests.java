@@ -0,0 +1,196 @@
+package test.processing.opengl;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import processing.core.PConstants;
+import processing.opengl.LinePath;
+import processing.opengl.TestAccess;
+
+public class PolylineStrokerTests {
+  static final int SIZE = 200;
+  static final float WEIGHT = 12;
+  static final int DETAIL = 40;
+
+  static final int[] CAPS = { PConstants.SQUARE, PConstants.PROJECT, PConstants.ROUND };
+  static final int[] JOINS = { PConstants.MITER, PConstants.BEVEL, PConstants.ROUND };
+
+  /** Most differences are sub-pixel, on the edges of round pieces. */
+  static final float MAX_DIFFERENCE = 0.02f;
+
+
+  /** Random polyline inside the grid, leaving room for the stroke. */
+  static float[] randomPolyline(Random random, int count) {
+    float[] points = new float[2 * count];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = 2 * WEIGHT + random.nextFloat() * (SIZE - 4 * WEIGHT);
+    }
+    return points;
+  }
+
+
+  /** Stroke with PolylineStroker, returning the triangles as x, y, ... */
+  static float[] strokeDirectly(float[] points, boolean closed,
+                                int cap, int join) {
+    return TestAccess.strokePolyline(points, closed, WEIGHT, cap, join, DETAIL);
+  }
+
+
+  /** Outline with LinePath and LineStroker, the way the tessellator does. */
+  static LinePath outline(float[] points, boolean closed, int cap, int join) {
+    LinePath path = new LinePath(LinePath.WIND_NON_ZERO);
+    for (int i = 0; i < points.length / 2; i++) {
+      if (i == 0) {
+        path.moveTo(points[0], points[1], 0);
+      } else {
+        path.lineTo(points[2 * i], points[2 * i + 1], 0);
+      }
+    }
+    if (closed) {
+      path.closePath();
+    }
+    int lineCap = cap == PConstants.ROUND ? LinePath.CAP_ROUND :
+                  cap == PConstants.PROJECT ? LinePath.CAP_SQUARE :
+                  LinePath.CAP_BUTT;
+    int lineJoin = join == PConstants.ROUND ? LinePath.JOIN_ROUND :
+                   join == PConstants.BEVEL ? LinePath.JOIN_BEVEL :
+                   LinePath.JOIN_MITER;
+    return LinePath.createStrokedPath(path, WEIGHT, lineCap, lineJoin);
+  }
+
+
+  /** Which pixel centers are inside any of the triangles. */
+  static boolean[] rasterizeTriangles(float[] tri) {
+    boolean[] covered = new boolean[SIZE * SIZE];
+    for (int t = 0; t < tri.length; t += 6) {
+      float x0 = tri[t], y0 = tri[t+1];
+      float x1 = tri[t+2], y1 = tri[t+3];
+      float x2 = tri[t+4], y2 = tri[t+5];
+      int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+      int maxX = Math.min(SIZE - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+      int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+      int maxY = Math.min(SIZE - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+      for (int y = minY; y <= maxY; y++) {
+        for (int x = minX; x <= maxX; x++) {
+          float px = x + 0.5f, py = y + 0.5f;
+          float d0 = (x1 - x0) * (py - y0) - (y1 - y0) * (px - x0);
+          float d1 = (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+          float d2 = (x0 - x2) * (py - y2) - (y0 - y2) * (px - x2);
+          if ((d0 >= 0 && d1 >= 0 && d2 >= 0) ||
+              (d0 <= 0 && d1 <= 0 && d2 <= 0)) {
+            covered[y * SIZE + x] = true;
+          }
+        }
+      }
+    }
+    return covered;
+  }
+
+
+  /** Which pixel centers are inside the path, with the non-zero rule. */
+  static boolean[] rasterizePath(LinePath path) {
+    // collect the edges of each sub-path, closing each one
+    List<float[]> edges = new ArrayList<>();
+    float[] coords = new float[6];
+    float startX = 0, startY = 0, lastX = 0, lastY = 0;
+    LinePath.PathIterator iter = path.getPathIterator();
+    while (!iter.isDone()) {
+      int type = iter.currentSegment(coords);
+      if (type == LinePath.SEG_MOVETO) {
+        if (lastX != startX || lastY != startY) {
+          edges.add(new float[] { lastX, lastY, startX, startY });
+        }
+        startX = lastX = coords[0];
+        startY = lastY = coords[1];
+      } else if (type == LinePath.SEG_LINETO) {
+        edges.add(new float[] { lastX, lastY, coords[0], coords[1] });
+        lastX = coords[0];
+        lastY = coords[1];
+      } else {  // SEG_CLOSE
+        edges.add(new float[] { lastX, lastY, startX, startY });
+        lastX = startX;
+        lastY = startY;
+      }
+      iter.next();
+    }
+    edges.add(new float[] { lastX, lastY, startX, startY });
+
+    boolean[] covered = new boolean[SIZE * SIZE];
+    float[] crossX = new float[edges.size()];
+    int[] crossDir = new int[edges.size()];
+    Integer[] order = new Integer[edges.size()];
+    for (int y = 0; y < SIZE; y++) {
+      float py = y + 0.5f;
+      int count = 0;
+      for (float[] e : edges) {
+        if ((e[1] <= py) != (e[3] <= py)) {
+          crossX[count] = e[0] + (py - e[1]) * (e[2] - e[0]) / (e[3] - e[1]);
+          crossDir[count] = e[3] > e[1] ? 1 : -1;
+          order[count] = count;
+          count++;
+        }
+      }
+      Arrays.sort(order, 0, count, (a, b) -> Float.compare(crossX[a], crossX[b]));
+      int winding = 0;
+      for (int k = 0; k < count - 1; k++) {
+        winding += crossDir[order[k]];
+        if (winding != 0) {
+          int from = Math.max(0, (int) Math.ceil(crossX[order[k]] - 0.5f));
+          int to = Math.min(SIZE - 1, (int) Math.floor(crossX[order[k + 1]] - 0.5f));
+          for (int x = from; x <= to; x++) {
+            covered[y * SIZE + x] = true;
+          }
+        }
+      }
+    }
+    return covered;
+  }
+
+
+  static void check(float[] points, boolean closed) {
+    for (int cap : CAPS) {
+      for (int join : JOINS) {
+        boolean[] direct = rasterizeTriangles(strokeDirectly(points, closed, cap, join));
+        boolean[] outlined = rasterizePath(outline(points, closed, cap, join));
+        int covered = 0, different = 0;
+        for (int i = 0; i < direct.length; i++) {
+          if (direct[i] || outlined[i]) covered++;
+          if (direct[i] != outlined[i]) different++;
+        }
+        String message = "cap " + cap + " join " + join + " closed " + closed +
+          ": " + different + " of " + covered + " pixels differ";
+        assertTrue(message, covered > 0);
+        assertTrue(message, different <= MAX_DIFFERENCE * covered);
+      }
+    }
+  }
+
+
+  @Test
+  public void openPolylines() {
+    Random random = new Random(1);
+    for (int i = 0; i < 20; i++) {
+      check(randomPolyline(random, 3 + i % 5), false);
+    }
+  }
+
+  @Test
+  public void closedPolylines() {
+    Random random = new Random(2);
+    for (int i = 0; i < 20; i++) {
+      check(randomPolyline(random, 3 + i % 5), true);
+    }
+  }
+
+  @Test
+  public void straightLine() {
+    check(new float[] { 40, 100, 160, 100 }, false);
+    check(new float[] { 40, 40, 160, 160 }, false);
+  }
+}